@@ -0,0 +1,210 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.mediator.Mediator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.test.metadata.FakeMetadata;
+import com.redhat.lightblue.util.Constants;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Fixed datasets and metadata for the benchmarks. The documents are
+ * generated using a random number generator with a constant seed, so
+ * every run uses the same data.
+ *
+ * There are two entities: parent, and child. A parent document
+ * references its children using the children reference field.
+ */
+public final class BenchmarkData {
+
+    public static final String BACKEND = "mongo";
+    public static final String VERSION = "1.0.0";
+
+    private static final long SEED = 20160510L;
+    private static final long BASE_DATE = 1451606400000L;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final String[] TAGS = {"red", "green", "blue", "cyan", "magenta", "yellow", "black", "white", "gray", "orange"};
+    private static final String[] CITIES = {"Raleigh", "Boston", "Austin", "Denver", "Portland", "Chicago", "Seattle", "Atlanta"};
+
+    private static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.withExactBigDecimals(false);
+
+    private BenchmarkData() {
+    }
+
+    public static JsonNodeFactory getNodeFactory() {
+        return NODE_FACTORY;
+    }
+
+    public static EntityMetadata getParentMetadata() {
+        return loadMetadata("metadata/parent.json");
+    }
+
+    public static EntityMetadata getChildMetadata() {
+        return loadMetadata("metadata/child.json");
+    }
+
+    private static EntityMetadata loadMetadata(String resource) {
+        try (InputStream in = BenchmarkData.class.getClassLoader().getResourceAsStream(resource)) {
+            JsonNode node = JsonUtils.json(in);
+            EntityMetadata md = MetadataUtil.createEntityMetadata(BACKEND, node, null, null);
+            PredefinedFields.ensurePredefinedFields(md);
+            return md;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns n parent documents
+     */
+    public static List<JsonDoc> getParents(int n) {
+        Random rnd = new Random(SEED);
+        List<JsonDoc> docs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ObjectNode node = NODE_FACTORY.objectNode();
+            node.put("_id", parentId(i));
+            node.put("objectType", "parent");
+            node.put("name", "name" + rnd.nextInt(n));
+            node.put("age", 18 + rnd.nextInt(60));
+            node.put("salary", 30000 + rnd.nextInt(100000) + rnd.nextInt(100) / 100.0);
+            node.put("active", rnd.nextBoolean());
+            node.put("created", Constants.getDateFormat().format(new Date(BASE_DATE + rnd.nextInt(365) * DAY)));
+            ArrayNode tags = node.putArray("tags");
+            for (int j = 0; j < 3; j++) {
+                tags.add(TAGS[rnd.nextInt(TAGS.length)]);
+            }
+            ArrayNode addresses = node.putArray("addresses");
+            for (int j = 0; j < 3; j++) {
+                ObjectNode address = addresses.addObject();
+                address.put("id", "a" + j);
+                address.put("city", CITIES[rnd.nextInt(CITIES.length)]);
+                address.put("zip", String.format("%05d", rnd.nextInt(100000)));
+            }
+            docs.add(new JsonDoc(node));
+        }
+        return docs;
+    }
+
+    /**
+     * Returns childrenPerParent child documents for each of the n parents
+     */
+    public static List<JsonDoc> getChildren(int n, int childrenPerParent) {
+        Random rnd = new Random(SEED + 1);
+        List<JsonDoc> docs = new ArrayList<>(n * childrenPerParent);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < childrenPerParent; j++) {
+                ObjectNode node = NODE_FACTORY.objectNode();
+                node.put("_id", String.format("C%05d_%d", i, j));
+                node.put("objectType", "child");
+                node.put("parent_id", parentId(i));
+                node.put("name", "child" + j);
+                node.put("value", rnd.nextInt(1000));
+                docs.add(new JsonDoc(node));
+            }
+        }
+        return docs;
+    }
+
+    public static String parentId(int i) {
+        return String.format("P%05d", i);
+    }
+
+    /**
+     * Returns a mediator that works on an in-memory backend containing
+     * n parents, and childrenPerParent children for each parent
+     */
+    public static Mediator getMediator(int n, int childrenPerParent) {
+        FakeMetadata metadata = new FakeMetadata();
+        for (EntityMetadata md : new EntityMetadata[]{getParentMetadata(), getChildMetadata()}) {
+            metadata.setEntityInfo(md.getEntityInfo());
+            metadata.setEntityMetadata(md.getName(), VERSION, md);
+        }
+        Map<String, List<JsonDoc>> data = new HashMap<>();
+        data.put("parent", getParents(n));
+        data.put("child", getChildren(n, childrenPerParent));
+
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addCRUDController(BACKEND, new InMemoryCRUDController(data));
+        return new Mediator(metadata, factory);
+    }
+
+    public static QueryExpression query(String s) {
+        try {
+            return QueryExpression.fromJson(json(s));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static Projection projection(String s) {
+        try {
+            return Projection.fromJson(json(s));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static Sort sort(String s) {
+        try {
+            return Sort.fromJson(json(s));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static UpdateExpression update(String s) {
+        try {
+            return UpdateExpression.fromJson(json(s));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses a JSON string that uses single quotes
+     */
+    public static JsonNode json(String s) throws IOException {
+        return JsonUtils.json(s.replaceAll("\'", "\""));
+    }
+}
@@ -0,0 +1,92 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.mediator.Mediator;
+
+/**
+ * Runs composite finds retrieving parents with their children through
+ * the mediator. The backend is in-memory, so this measures the
+ * planning, retrieval and assembly overhead of the composite find
+ * implementation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompositeFindBenchmark {
+
+    @Param({"100", "1000"})
+    public int numParents;
+
+    @Param({"5"})
+    public int childrenPerParent;
+
+    private Mediator mediator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mediator = BenchmarkData.getMediator(numParents, childrenPerParent);
+    }
+
+    /**
+     * Retrieves all parents with all their children
+     */
+    @Benchmark
+    public Response findAll() {
+        return mediator.find(request("{'field':'active','op':'$in','values':[true,false]}"));
+    }
+
+    /**
+     * Retrieves parents by a parent field, and a child field
+     */
+    @Benchmark
+    public Response findByChild() {
+        return mediator.find(request("{'$and':[{'field':'age','op':'>','rvalue':30},"
+                + "{'array':'children','elemMatch':{'field':'value','op':'<','rvalue':100}}]}"));
+    }
+
+    private FindRequest request(String query) {
+        FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("parent", BenchmarkData.VERSION));
+        req.setQuery(BenchmarkData.query(query));
+        req.setProjection(BenchmarkData.projection("[{'field':'*','recursive':1},{'field':'children'}]"));
+        return req;
+    }
+}
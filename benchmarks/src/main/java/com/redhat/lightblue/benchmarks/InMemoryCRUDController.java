@@ -0,0 +1,130 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import com.redhat.lightblue.crud.CRUDController;
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.CRUDUpdateResponse;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.ListDocumentStream;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.eval.QueryEvaluator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.MetadataListener;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * A read-only CRUD controller that keeps all documents in memory, and
+ * evaluates queries by scanning them. Sort is ignored.
+ */
+public class InMemoryCRUDController implements CRUDController {
+
+    private static final JsonNodeFactory NODE_FACTORY = BenchmarkData.getNodeFactory();
+
+    private final Map<String, List<JsonDoc>> data;
+
+    public InMemoryCRUDController(Map<String, List<JsonDoc>> data) {
+        this.data = data;
+    }
+
+    @Override
+    public CRUDInsertionResponse insert(CRUDOperationContext ctx,
+                                        Projection projection) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CRUDSaveResponse save(CRUDOperationContext ctx,
+                                 boolean upsert,
+                                 Projection projection) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CRUDUpdateResponse update(CRUDOperationContext ctx,
+                                     QueryExpression query,
+                                     UpdateExpression update,
+                                     Projection projection) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CRUDDeleteResponse delete(CRUDOperationContext ctx,
+                                     QueryExpression query) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CRUDFindResponse find(CRUDOperationContext ctx,
+                                 QueryExpression query,
+                                 Projection projection,
+                                 Sort sort,
+                                 Long from,
+                                 Long to) {
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        QueryEvaluator eval = query == null ? null : QueryEvaluator.getInstance(query, md);
+        Projector projector = projection == null ? null : Projector.getInstance(projection, md);
+        List<JsonDoc> docs = data.get(ctx.getEntityName());
+        if (docs == null) {
+            docs = Collections.emptyList();
+        }
+        List<DocCtx> output = new ArrayList<>();
+        for (JsonDoc doc : docs) {
+            if (eval == null || eval.evaluate(doc).getResult()) {
+                output.add(new DocCtx(projector == null ? doc.copy() : projector.project(doc, NODE_FACTORY)));
+            }
+        }
+        CRUDFindResponse ret = new CRUDFindResponse();
+        ret.setSize(output.size());
+
+        int f = from == null ? 0 : from.intValue();
+        int t = to == null ? output.size() : to.intValue() + 1;
+        if (t < f || f >= output.size()) {
+            output = new ArrayList<>();
+        } else {
+            output = output.subList(f, Math.min(t, output.size()));
+        }
+        ctx.setDocumentStream(new ListDocumentStream(output));
+        return ret;
+    }
+
+    @Override
+    public MetadataListener getMetadataListener() {
+        return null;
+    }
+
+    @Override
+    public void updatePredefinedFields(CRUDOperationContext ctx, JsonDoc doc) {
+    }
+}
@@ -0,0 +1,102 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.util.DocComparator;
+import com.redhat.lightblue.util.JsonCompare;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Computes differences between pairs of parent documents. The second
+ * document of each pair has a modified field, and a reordered
+ * addresses array.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCompareBenchmark {
+
+    private List<JsonDoc> docs1;
+    private List<JsonDoc> docs2;
+    private JsonCompare noIdCmp;
+    private JsonCompare idCmp;
+
+    @Setup
+    public void setup() {
+        docs1 = BenchmarkData.getParents(1000);
+        docs2 = new ArrayList<>(docs1.size());
+        for (JsonDoc doc : docs1) {
+            JsonDoc copy = doc.copy();
+            ObjectNode root = (ObjectNode) copy.getRoot();
+            root.put("name", root.get("name").asText() + "x");
+            ArrayNode addresses = (ArrayNode) root.get("addresses");
+            addresses.add(addresses.remove(0));
+            docs2.add(copy);
+        }
+        noIdCmp = new JsonCompare();
+        idCmp = new JsonCompare();
+        idCmp.addArrayIdentity(new Path("addresses"), new Path("id"));
+    }
+
+    /**
+     * Compares documents without array identities
+     */
+    @Benchmark
+    public void compareNoArrayId(Blackhole bh) throws Exception {
+        compare(noIdCmp, bh);
+    }
+
+    /**
+     * Compares documents with array identities for addresses
+     */
+    @Benchmark
+    public void compareArrayId(Blackhole bh) throws Exception {
+        compare(idCmp, bh);
+    }
+
+    private void compare(JsonCompare cmp, Blackhole bh)
+            throws DocComparator.InvalidArrayIdentity, DocComparator.DuplicateArrayIdentity {
+        for (int i = 0; i < docs1.size(); i++) {
+            bh.consume(cmp.compareNodes(docs1.get(i).getRoot(), docs2.get(i).getRoot()));
+        }
+    }
+}
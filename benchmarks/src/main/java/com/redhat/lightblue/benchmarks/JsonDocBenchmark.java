@@ -0,0 +1,106 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.KeyValueCursor;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Reads and modifies fields of the parent dataset
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonDocBenchmark {
+
+    private static final Path NAME = new Path("name");
+    private static final Path CITY = new Path("addresses.1.city");
+    private static final Path ANY_CITY = new Path("addresses.*.city");
+    private static final Path NEW_FIELD = new Path("addresses.2.extra");
+
+    private List<JsonDoc> docs;
+    private JsonNode value;
+
+    @Setup
+    public void setup() {
+        docs = BenchmarkData.getParents(1000);
+        value = JsonNodeFactory.instance.textNode("value");
+    }
+
+    @Benchmark
+    public void get(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(doc.get(NAME));
+            bh.consume(doc.get(CITY));
+        }
+    }
+
+    @Benchmark
+    public void getAllNodes(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            KeyValueCursor<Path, JsonNode> cursor = doc.getAllNodes(ANY_CITY);
+            while (cursor.hasNext()) {
+                cursor.next();
+                bh.consume(cursor.getCurrentValue());
+            }
+        }
+    }
+
+    /**
+     * Modifies existing fields, and creates a new field. The new
+     * field is created on the first invocation, and overwritten
+     * afterwards.
+     */
+    @Benchmark
+    public void modify(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(doc.modify(CITY, value, false));
+            bh.consume(doc.modify(NEW_FIELD, value, true));
+        }
+    }
+
+    @Benchmark
+    public void copy(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(doc.copy());
+        }
+    }
+}
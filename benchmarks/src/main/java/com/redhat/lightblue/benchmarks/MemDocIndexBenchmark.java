@@ -0,0 +1,112 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.redhat.lightblue.assoc.QueryFieldInfo;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.mindex.MemDocIndex;
+import com.redhat.lightblue.mindex.MultiValueLookupSpec;
+import com.redhat.lightblue.mindex.SimpleKeySpec;
+import com.redhat.lightblue.mindex.ValueLookupSpec;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Builds in-memory indexes on the child dataset, and looks up
+ * documents using them. This is what the assembler does when it
+ * associates child documents with their parents.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemDocIndexBenchmark {
+
+    private static final int NUM_PARENTS = 1000;
+
+    private List<JsonDoc> docs;
+    private SimpleKeySpec keySpec;
+    private MemDocIndex index;
+    private Set<Object> multiValues;
+
+    @Setup
+    public void setup() {
+        EntityMetadata md = BenchmarkData.getChildMetadata();
+        docs = BenchmarkData.getChildren(NUM_PARENTS, 5);
+        Path field = new Path("parent_id");
+        keySpec = new SimpleKeySpec(new QueryFieldInfo(null, null, md.resolve(field), null, field, field, null, true));
+        index = new MemDocIndex(keySpec);
+        for (JsonDoc doc : docs) {
+            index.add(doc);
+        }
+        multiValues = new HashSet<>();
+        for (int i = 0; i < NUM_PARENTS; i += 50) {
+            multiValues.add(BenchmarkData.parentId(i));
+        }
+    }
+
+    /**
+     * Builds an index containing all documents
+     */
+    @Benchmark
+    public MemDocIndex add() {
+        MemDocIndex ix = new MemDocIndex(keySpec);
+        for (JsonDoc doc : docs) {
+            ix.add(doc);
+        }
+        return ix;
+    }
+
+    /**
+     * Looks up the children of every parent
+     */
+    @Benchmark
+    public void findValue(Blackhole bh) {
+        for (int i = 0; i < NUM_PARENTS; i++) {
+            bh.consume(index.find(new ValueLookupSpec(keySpec, BenchmarkData.parentId(i))));
+        }
+    }
+
+    /**
+     * Looks up the children of a set of parents
+     */
+    @Benchmark
+    public Set<JsonDoc> findMultiValue() {
+        return index.find(new MultiValueLookupSpec(keySpec, multiValues));
+    }
+}
@@ -0,0 +1,108 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Projects the parent dataset using projections of different kinds
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectorBenchmark {
+
+    @Param({"fields", "recursive", "exclude", "arrayMatch"})
+    public String projectionType;
+
+    private EntityMetadata md;
+    private List<JsonDoc> docs;
+    private Projection projection;
+    private Projector projector;
+    private JsonNodeFactory factory;
+
+    @Setup
+    public void setup() {
+        md = BenchmarkData.getParentMetadata();
+        docs = BenchmarkData.getParents(1000);
+        factory = BenchmarkData.getNodeFactory();
+        switch (projectionType) {
+            case "fields":
+                projection = BenchmarkData.projection("[{'field':'_id'},{'field':'name'},{'field':'age'}]");
+                break;
+            case "recursive":
+                projection = BenchmarkData.projection("{'field':'*','recursive':1}");
+                break;
+            case "exclude":
+                projection = BenchmarkData.projection("[{'field':'*','recursive':1},{'field':'addresses','include':false,'recursive':1}]");
+                break;
+            case "arrayMatch":
+                projection = BenchmarkData.projection("[{'field':'_id'},{'field':'addresses','match':{'field':'city','op':'=','rvalue':'Boston'},'project':{'field':'*'}}]");
+                break;
+            default:
+                throw new IllegalArgumentException(projectionType);
+        }
+        projector = Projector.getInstance(projection, md);
+    }
+
+    /**
+     * Projects every document using a precompiled projector
+     */
+    @Benchmark
+    public void project(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(projector.project(doc, factory));
+        }
+    }
+
+    /**
+     * Compiles the projection, and projects every document
+     */
+    @Benchmark
+    public void compileAndProject(Blackhole bh) {
+        Projector p = Projector.getInstance(projection, md);
+        for (JsonDoc doc : docs) {
+            bh.consume(p.project(doc, factory));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.redhat.lightblue.eval.QueryEvaluator;
+import com.redhat.lightblue.eval.QueryEvaluatorCache;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Evaluates queries of different kinds against the parent dataset
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryEvaluatorBenchmark {
+
+    @Param({"value", "in", "regex", "elemMatch", "and"})
+    public String queryType;
+
+    private EntityMetadata md;
+    private List<JsonDoc> docs;
+    private QueryExpression query;
+    private QueryEvaluator evaluator;
+    private final QueryEvaluatorCache evaluators = new QueryEvaluatorCache(1024);
+
+    @Setup
+    public void setup() {
+        md = BenchmarkData.getParentMetadata();
+        docs = BenchmarkData.getParents(1000);
+        switch (queryType) {
+            case "value":
+                query = BenchmarkData.query("{'field':'age','op':'>=','rvalue':40}");
+                break;
+            case "in":
+                query = BenchmarkData.query("{'field':'_id','op':'$in','values':['P00001','P00010','P00100','P00500','P00999']}");
+                break;
+            case "regex":
+                query = BenchmarkData.query("{'field':'name','regex':'name1.*'}");
+                break;
+            case "elemMatch":
+                query = BenchmarkData.query("{'array':'addresses','elemMatch':{'field':'city','op':'=','rvalue':'Boston'}}");
+                break;
+            case "and":
+                query = BenchmarkData.query("{'$and':[{'field':'active','op':'=','rvalue':true},"
+                        + "{'field':'salary','op':'>','rvalue':50000},"
+                        + "{'field':'created','op':'<','rvalue':'20160701T00:00:00.000-0000'},"
+                        + "{'array':'tags','contains':'$any','values':['red','blue']}]}");
+                break;
+            default:
+                throw new IllegalArgumentException(queryType);
+        }
+        evaluator = QueryEvaluator.getInstance(query, md);
+    }
+
+    /**
+     * Evaluates a precompiled query on every document
+     */
+    @Benchmark
+    public void evaluate(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(evaluator.evaluate(doc).getResult());
+        }
+    }
+
+    /**
+     * Compiles the query once, and evaluates it on every document
+     */
+    @Benchmark
+    public void compileAndEvaluate(Blackhole bh) {
+        QueryEvaluator e = QueryEvaluator.getInstance(query, md);
+        for (JsonDoc doc : docs) {
+            bh.consume(e.evaluate(doc).getResult());
+        }
+    }
+
+    /**
+     * Retrieves the evaluator from the evaluator cache, and evaluates
+     * it on every document
+     */
+    @Benchmark
+    public void cachedEvaluate(Blackhole bh) {
+        QueryEvaluator e = evaluators.getInstance(query, md);
+        for (JsonDoc doc : docs) {
+            bh.consume(e.evaluate(doc).getResult());
+        }
+    }
+
+    /**
+     * Compiles the query
+     */
+    @Benchmark
+    public QueryEvaluator compile() {
+        return QueryEvaluator.getInstance(query, md);
+    }
+}
@@ -0,0 +1,101 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.redhat.lightblue.eval.Updater;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Applies update expressions to the parent dataset. The updates are
+ * idempotent, so the same documents can be updated on every
+ * invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UpdaterBenchmark {
+
+    @Param({"set", "setMany", "forEach"})
+    public String updateType;
+
+    private EntityMetadata md;
+    private List<JsonDoc> docs;
+    private UpdateExpression expr;
+    private Updater updater;
+
+    @Setup
+    public void setup() {
+        md = BenchmarkData.getParentMetadata();
+        docs = BenchmarkData.getParents(1000);
+        switch (updateType) {
+            case "set":
+                expr = BenchmarkData.update("{'$set':{'name':'updated'}}");
+                break;
+            case "setMany":
+                expr = BenchmarkData.update("{'$set':{'name':'updated','age':30,'active':true,'salary':1000.5}}");
+                break;
+            case "forEach":
+                expr = BenchmarkData.update("{'$foreach':{'addresses':{'field':'city','op':'=','rvalue':'Boston'},'$update':{'$set':{'zip':'02101'}}}}");
+                break;
+            default:
+                throw new IllegalArgumentException(updateType);
+        }
+        updater = Updater.getInstance(BenchmarkData.getNodeFactory(), md, expr);
+    }
+
+    /**
+     * Updates every document using a precompiled updater
+     */
+    @Benchmark
+    public void update(Blackhole bh) {
+        for (JsonDoc doc : docs) {
+            bh.consume(updater.update(doc, md.getFieldTreeRoot(), Path.EMPTY));
+        }
+    }
+
+    /**
+     * Compiles the update expression
+     */
+    @Benchmark
+    public Updater compile() {
+        return Updater.getInstance(BenchmarkData.getNodeFactory(), md, expr);
+    }
+}
@@ -48,6 +48,7 @@ public abstract class AbstractMetadataConfiguration implements MetadataConfigura
     private final List<Map.Entry<String, PropertyParser>> propertyParsers = new ArrayList<>();
     private final Map<MetadataRole, List<String>> roleMap = new HashMap<>();
     private boolean validateRequests = false;
+    private MetadataCacheConfiguration cacheConfiguration;
 
     @Override
     public boolean isValidateRequests() {
@@ -58,6 +59,15 @@ public abstract class AbstractMetadataConfiguration implements MetadataConfigura
         validateRequests = b;
     }
 
+    @Override
+    public MetadataCacheConfiguration getCacheConfiguration() {
+        return cacheConfiguration;
+    }
+
+    public void setCacheConfiguration(MetadataCacheConfiguration cfg) {
+        cacheConfiguration = cfg;
+    }
+
     /**
      * Register any common bits with the given Extensions instance.
      */
@@ -172,6 +182,12 @@ public abstract class AbstractMetadataConfiguration implements MetadataConfigura
             if (x != null) {
                 validateRequests = x.booleanValue();
             }
+
+            x = node.get("cache");
+            if (x != null) {
+                cacheConfiguration = new MetadataCacheConfiguration();
+                cacheConfiguration.initializeFromJson(x);
+            }
         }
     }
 
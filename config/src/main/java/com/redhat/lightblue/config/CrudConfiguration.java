@@ -49,6 +49,22 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
     private boolean validateRequests = false;
     private int bulkParallelExecutions = 3;
     private int memoryIndexThreshold = 16;
+    private int executionPoolSize = 32;
+    private int compositeFindParallelism = 9;
+    private int resultChunkSize = 0;
+    private int resultProcessingParallelism = 4;
+    private int validationChunkSize = 128;
+    private int validationParallelism = 4;
+    private int ingestionBatchSize = 1000;
+    private int queryPlanCacheSize = 1024;
+    private int queryEvaluatorCacheSize = 1024;
+    private int cardinalityStatisticsSize = 4096;
+    private int topKSortLimit = 10000;
+    private int fieldAccessCacheSize = 1024;
+    private int asyncHookQueueCapacity = 0;
+    private int asyncHookBatchSize = 64;
+    private String asyncHookOverflowPolicy;
+    private String metricsRegistry;
 
     public boolean isValidateRequests() {
         return validateRequests;
@@ -135,6 +151,86 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
             if (x != null) {
                 memoryIndexThreshold = x.intValue();
             }
+
+            x = node.get("executionPoolSize");
+            if (x != null) {
+                executionPoolSize = x.intValue();
+            }
+
+            x = node.get("compositeFindParallelism");
+            if (x != null) {
+                compositeFindParallelism = x.intValue();
+            }
+
+            x = node.get("resultChunkSize");
+            if (x != null) {
+                resultChunkSize = x.intValue();
+            }
+
+            x = node.get("resultProcessingParallelism");
+            if (x != null) {
+                resultProcessingParallelism = x.intValue();
+            }
+
+            x = node.get("validationChunkSize");
+            if (x != null) {
+                validationChunkSize = x.intValue();
+            }
+
+            x = node.get("validationParallelism");
+            if (x != null) {
+                validationParallelism = x.intValue();
+            }
+
+            x = node.get("ingestionBatchSize");
+            if (x != null) {
+                ingestionBatchSize = x.intValue();
+            }
+
+            x = node.get("queryPlanCacheSize");
+            if (x != null) {
+                queryPlanCacheSize = x.intValue();
+            }
+
+            x = node.get("queryEvaluatorCacheSize");
+            if (x != null) {
+                queryEvaluatorCacheSize = x.intValue();
+            }
+
+            x = node.get("cardinalityStatisticsSize");
+            if (x != null) {
+                cardinalityStatisticsSize = x.intValue();
+            }
+
+            x = node.get("topKSortLimit");
+            if (x != null) {
+                topKSortLimit = x.intValue();
+            }
+
+            x = node.get("fieldAccessCacheSize");
+            if (x != null) {
+                fieldAccessCacheSize = x.intValue();
+            }
+
+            x = node.get("asyncHookQueueCapacity");
+            if (x != null) {
+                asyncHookQueueCapacity = x.intValue();
+            }
+
+            x = node.get("asyncHookBatchSize");
+            if (x != null) {
+                asyncHookBatchSize = x.intValue();
+            }
+
+            x = node.get("asyncHookOverflowPolicy");
+            if (x != null) {
+                asyncHookOverflowPolicy = x.asText();
+            }
+
+            x = node.get("metricsRegistry");
+            if (x != null) {
+                metricsRegistry = x.asText();
+            }
         }
     }
 
@@ -145,4 +241,201 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
     void setMemoryIndexThreshold(int memoryIndexThreshold) {
         this.memoryIndexThreshold = memoryIndexThreshold;
     }
+
+    /**
+     * Number of threads in the execution pool shared by all composite
+     * find requests
+     */
+    public int getExecutionPoolSize() {
+        return executionPoolSize;
+    }
+
+    public void setExecutionPoolSize(int executionPoolSize) {
+        this.executionPoolSize = executionPoolSize;
+    }
+
+    /**
+     * Maximum number of tasks a single composite find request can run
+     * in parallel on the shared execution pool
+     */
+    public int getCompositeFindParallelism() {
+        return compositeFindParallelism;
+    }
+
+    public void setCompositeFindParallelism(int compositeFindParallelism) {
+        this.compositeFindParallelism = compositeFindParallelism;
+    }
+
+    /**
+     * If greater than 0, result documents read by the backend are
+     * projected and converted in chunks of this size in parallel. 0
+     * disables parallel result processing.
+     */
+    public int getResultChunkSize() {
+        return resultChunkSize;
+    }
+
+    public void setResultChunkSize(int resultChunkSize) {
+        this.resultChunkSize = resultChunkSize;
+    }
+
+    /**
+     * Maximum number of result chunks processed in parallel for a
+     * request
+     */
+    public int getResultProcessingParallelism() {
+        return resultProcessingParallelism;
+    }
+
+    public void setResultProcessingParallelism(int resultProcessingParallelism) {
+        this.resultProcessingParallelism = resultProcessingParallelism;
+    }
+
+    /**
+     * If greater than 0, input documents of requests with more than
+     * this many documents are validated in chunks of this size in
+     * parallel. 0 disables parallel validation.
+     */
+    public int getValidationChunkSize() {
+        return validationChunkSize;
+    }
+
+    public void setValidationChunkSize(int validationChunkSize) {
+        this.validationChunkSize = validationChunkSize;
+    }
+
+    /**
+     * Maximum number of document chunks validated in parallel for a
+     * request
+     */
+    public int getValidationParallelism() {
+        return validationParallelism;
+    }
+
+    public void setValidationParallelism(int validationParallelism) {
+        this.validationParallelism = validationParallelism;
+    }
+
+    /**
+     * Maximum number of documents of a streamed insert or save request
+     * processed together
+     */
+    public int getIngestionBatchSize() {
+        return ingestionBatchSize;
+    }
+
+    public void setIngestionBatchSize(int ingestionBatchSize) {
+        this.ingestionBatchSize = ingestionBatchSize;
+    }
+
+    /**
+     * Maximum number of query plans cached for composite entities. 0
+     * disables the cache.
+     */
+    public int getQueryPlanCacheSize() {
+        return queryPlanCacheSize;
+    }
+
+    public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+        this.queryPlanCacheSize = queryPlanCacheSize;
+    }
+
+    /**
+     * Maximum number of compiled query evaluators cached for the
+     * association queries of composite entities. 0 disables the cache.
+     */
+    public int getQueryEvaluatorCacheSize() {
+        return queryEvaluatorCacheSize;
+    }
+
+    public void setQueryEvaluatorCacheSize(int queryEvaluatorCacheSize) {
+        this.queryEvaluatorCacheSize = queryEvaluatorCacheSize;
+    }
+
+    /**
+     * Maximum number of result cardinality estimates collected from
+     * composite searches. 0 disables collecting statistics.
+     */
+    public int getCardinalityStatisticsSize() {
+        return cardinalityStatisticsSize;
+    }
+
+    public void setCardinalityStatisticsSize(int cardinalityStatisticsSize) {
+        this.cardinalityStatisticsSize = cardinalityStatisticsSize;
+    }
+
+    /**
+     * Largest page end for which sorted composite find results are
+     * selected using a bounded heap instead of a full sort
+     */
+    public int getTopKSortLimit() {
+        return topKSortLimit;
+    }
+
+    public void setTopKSortLimit(int topKSortLimit) {
+        this.topKSortLimit = topKSortLimit;
+    }
+
+    /**
+     * Maximum number of cached inaccessible field sets used to exclude
+     * fields from backend projections. They are cached only if metadata is
+     * cached. 0 disables caching, the fields are then computed for every
+     * request.
+     */
+    public int getFieldAccessCacheSize() {
+        return fieldAccessCacheSize;
+    }
+
+    public void setFieldAccessCacheSize(int fieldAccessCacheSize) {
+        this.fieldAccessCacheSize = fieldAccessCacheSize;
+    }
+
+    /**
+     * If greater than 0, hooks are called asynchronously, and each hook
+     * has a queue of this capacity. 0 calls hooks synchronously.
+     */
+    public int getAsyncHookQueueCapacity() {
+        return asyncHookQueueCapacity;
+    }
+
+    public void setAsyncHookQueueCapacity(int asyncHookQueueCapacity) {
+        this.asyncHookQueueCapacity = asyncHookQueueCapacity;
+    }
+
+    /**
+     * Maximum number of documents passed to a hook in a single
+     * asynchronous call
+     */
+    public int getAsyncHookBatchSize() {
+        return asyncHookBatchSize;
+    }
+
+    public void setAsyncHookBatchSize(int asyncHookBatchSize) {
+        this.asyncHookBatchSize = asyncHookBatchSize;
+    }
+
+    /**
+     * What to do when the queue of a hook is full: block, discard, or
+     * caller_runs. If null, block.
+     */
+    public String getAsyncHookOverflowPolicy() {
+        return asyncHookOverflowPolicy;
+    }
+
+    public void setAsyncHookOverflowPolicy(String asyncHookOverflowPolicy) {
+        this.asyncHookOverflowPolicy = asyncHookOverflowPolicy;
+    }
+
+    /**
+     * Class name of the MetricsRegistry implementation to record
+     * operation metrics to. If null, the default in-process registry
+     * is used.
+     */
+    public String getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    public void setMetricsRegistry(String metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
 }
@@ -33,6 +33,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.Request;
+import com.redhat.lightblue.assoc.QueryPlanCache;
 import com.redhat.lightblue.crud.BulkRequest;
 import com.redhat.lightblue.crud.CRUDController;
 import com.redhat.lightblue.crud.CrudConstants;
@@ -45,10 +46,14 @@ import com.redhat.lightblue.crud.UpdateRequest;
 import com.redhat.lightblue.crud.interceptors.UIDInterceptor;
 import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
 import com.redhat.lightblue.crud.valuegenerators.GeneratedFieldInterceptor;
+import com.redhat.lightblue.eval.FieldAccessCache;
 import com.redhat.lightblue.extensions.ExtensionSupport;
 import com.redhat.lightblue.extensions.synch.Locking;
 import com.redhat.lightblue.extensions.synch.LockingSupport;
+import com.redhat.lightblue.hooks.AsyncHookDispatcher;
+import com.redhat.lightblue.mediator.CompositeMetadataCache;
 import com.redhat.lightblue.mediator.Mediator;
+import com.redhat.lightblue.metadata.CachingMetadata;
 import com.redhat.lightblue.metadata.EntityInfo;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.EntitySchema;
@@ -59,6 +64,7 @@ import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
 import com.redhat.lightblue.metadata.types.DefaultTypes;
 import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.metrics.MetricsRegistry;
 
 /**
  * Manager class that creates instances of Mediator, Factory, Metadata, etc.
@@ -160,6 +166,26 @@ public final class LightblueFactory implements Serializable {
             Factory f = new Factory();
             f.setBulkParallelExecutions(crudConfiguration.getBulkParallelExecutions());
             f.setMemoryIndexThreshold(crudConfiguration.getMemoryIndexThreshold());
+            f.setExecutionPoolSize(crudConfiguration.getExecutionPoolSize());
+            f.setCompositeFindParallelism(crudConfiguration.getCompositeFindParallelism());
+            f.setResultChunkSize(crudConfiguration.getResultChunkSize());
+            f.setResultProcessingParallelism(crudConfiguration.getResultProcessingParallelism());
+            f.setValidationChunkSize(crudConfiguration.getValidationChunkSize());
+            f.setValidationParallelism(crudConfiguration.getValidationParallelism());
+            f.setIngestionBatchSize(crudConfiguration.getIngestionBatchSize());
+            f.setQueryPlanCacheSize(crudConfiguration.getQueryPlanCacheSize());
+            f.setQueryEvaluatorCacheSize(crudConfiguration.getQueryEvaluatorCacheSize());
+            f.setCardinalityStatisticsSize(crudConfiguration.getCardinalityStatisticsSize());
+            f.setTopKSortLimit(crudConfiguration.getTopKSortLimit());
+            f.setFieldAccessCacheSize(crudConfiguration.getFieldAccessCacheSize());
+            f.setAsyncHookQueueCapacity(crudConfiguration.getAsyncHookQueueCapacity());
+            f.setAsyncHookBatchSize(crudConfiguration.getAsyncHookBatchSize());
+            if (crudConfiguration.getAsyncHookOverflowPolicy() != null) {
+                f.setAsyncHookOverflowPolicy(AsyncHookDispatcher.OverflowPolicy.valueOf(crudConfiguration.getAsyncHookOverflowPolicy().toUpperCase()));
+            }
+            if (crudConfiguration.getMetricsRegistry() != null) {
+                f.setMetricsRegistry((MetricsRegistry) Class.forName(crudConfiguration.getMetricsRegistry()).newInstance());
+            }
             f.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
 
             // Add default interceptors
@@ -210,6 +236,26 @@ public final class LightblueFactory implements Serializable {
 
             metadata = cfg.createMetadata(datasources, getJSONParser(), this);
 
+            MetadataCacheConfiguration cacheCfg = cfg.getCacheConfiguration();
+            if (cacheCfg != null && cacheCfg.isEnabled()) {
+                LOGGER.debug("Caching metadata: {}ms, {} entities, {} composites", cacheCfg.getTtlMillis(),
+                        cacheCfg.getMaxEntityMetadata(), cacheCfg.getMaxCompositeMetadata());
+                CachingMetadata cachingMetadata = new CachingMetadata(metadata, cacheCfg.getTtlMillis(), cacheCfg.getMaxEntityMetadata());
+                CompositeMetadataCache compositeCache = new CompositeMetadataCache(cacheCfg.getTtlMillis(), cacheCfg.getMaxCompositeMetadata());
+                cachingMetadata.addInvalidationListener(compositeCache::invalidate);
+                QueryPlanCache planCache = factory.getQueryPlanCache();
+                if (planCache != null) {
+                    cachingMetadata.addInvalidationListener(planCache::invalidate);
+                }
+                if (factory.getFieldAccessCacheSize() > 0) {
+                    FieldAccessCache fieldAccessCache = new FieldAccessCache(factory.getFieldAccessCacheSize());
+                    cachingMetadata.addInvalidationListener(fieldAccessCache::invalidate);
+                    factory.setFieldAccessCache(fieldAccessCache);
+                }
+                factory.setCompositeMetadataCache(compositeCache);
+                metadata = cachingMetadata;
+            }
+
             factory.setHookResolver(new SimpleHookResolver(cfg.getHookConfigurationParsers(), this));
         }
     }
@@ -340,6 +386,17 @@ public final class LightblueFactory implements Serializable {
         return factory;
     }
 
+    /**
+     * Shuts down the factory, if it is created. Call it when this object
+     * is no longer used.
+     */
+    public void shutdown() {
+        Factory f = factory;
+        if (f != null) {
+            f.shutdown();
+        }
+    }
+
     public Mediator getMediator()
             throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, IOException, NoSuchMethodException, InstantiationException {
         if (mediator == null) {
@@ -0,0 +1,122 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.util.JsonInitializable;
+
+/**
+ * Metadata cache configuration, the "cache" element of the metadata
+ * configuration
+ * <ul>
+ *   <li>enabled: If true, entity metadata and composite metadata are cached. Default is false.</li>
+ *   <li>allowStaleMetadata: Must be true if enabled is true. Cached metadata is
+ *   invalidated when it is modified through this node, but changes made on
+ *   other nodes or directly in the metadata store are not seen until the
+ *   cached metadata expires, and requests can use the old metadata until
+ *   then. Setting this acknowledges that window. Default is false.</li>
+ *   <li>ttlMillis: Time-to-live of cached metadata in milliseconds, which is
+ *   the longest time changes made elsewhere can go unseen. If &lt;=0, cached
+ *   metadata does not expire. Default is 60000.</li>
+ *   <li>maxEntityMetadata: Maximum number of cached entity metadata and entity info. Default is 1024.</li>
+ *   <li>maxCompositeMetadata: Maximum number of cached composite metadata. Default is 1024.</li>
+ * </ul>
+ */
+public class MetadataCacheConfiguration implements JsonInitializable, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private boolean enabled = false;
+    private boolean allowStaleMetadata = false;
+    private long ttlMillis = 60000;
+    private int maxEntityMetadata = 1024;
+    private int maxCompositeMetadata = 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isAllowStaleMetadata() {
+        return allowStaleMetadata;
+    }
+
+    public void setAllowStaleMetadata(boolean allowStaleMetadata) {
+        this.allowStaleMetadata = allowStaleMetadata;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public int getMaxEntityMetadata() {
+        return maxEntityMetadata;
+    }
+
+    public void setMaxEntityMetadata(int maxEntityMetadata) {
+        this.maxEntityMetadata = maxEntityMetadata;
+    }
+
+    public int getMaxCompositeMetadata() {
+        return maxCompositeMetadata;
+    }
+
+    public void setMaxCompositeMetadata(int maxCompositeMetadata) {
+        this.maxCompositeMetadata = maxCompositeMetadata;
+    }
+
+    @Override
+    public void initializeFromJson(JsonNode node) {
+        if (node != null) {
+            JsonNode x = node.get("enabled");
+            if (x != null) {
+                enabled = x.booleanValue();
+            }
+            x = node.get("allowStaleMetadata");
+            if (x != null) {
+                allowStaleMetadata = x.booleanValue();
+            }
+            x = node.get("ttlMillis");
+            if (x != null) {
+                ttlMillis = x.asLong();
+            }
+            x = node.get("maxEntityMetadata");
+            if (x != null) {
+                maxEntityMetadata = x.asInt();
+            }
+            x = node.get("maxCompositeMetadata");
+            if (x != null) {
+                maxCompositeMetadata = x.asInt();
+            }
+            if (enabled && !allowStaleMetadata) {
+                throw new IllegalArgumentException("Metadata cache requires allowStaleMetadata: changes made on other nodes are not seen until cached metadata expires");
+            }
+        }
+    }
+}
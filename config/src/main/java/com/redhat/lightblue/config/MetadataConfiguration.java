@@ -49,4 +49,12 @@ public interface MetadataConfiguration extends JsonInitializable {
      * returns the list of configured hooks
      */
     List<HookConfigurationParser> getHookConfigurationParsers();
+
+    /**
+     * Returns the metadata cache configuration, or null if metadata is
+     * not cached
+     */
+    default MetadataCacheConfiguration getCacheConfiguration() {
+        return null;
+    }
 }
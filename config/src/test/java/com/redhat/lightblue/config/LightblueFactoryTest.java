@@ -22,6 +22,8 @@ import com.redhat.lightblue.metadata.Metadata;
 import com.redhat.lightblue.mediator.Mediator;
 import org.junit.Assert;
 import org.junit.Test;
+import java.util.concurrent.RejectedExecutionException;
+import com.redhat.lightblue.crud.ExecutionPool;
 import com.redhat.lightblue.metadata.test.DatabaseMetadata;
 
 /**
@@ -45,4 +47,17 @@ public class LightblueFactoryTest {
         Mediator m = mgr.getMediator();
         Assert.assertNotNull(m);
     }
+
+    @Test
+    public void shutdown() throws Exception {
+        LightblueFactory mgr = new LightblueFactory(new DataSourcesConfiguration());
+        ExecutionPool pool = mgr.getFactory().getExecutionPool();
+        pool.newSession(1).shutdown();
+        mgr.shutdown();
+        try {
+            pool.newSession(1);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+        }
+    }
 }
@@ -144,4 +144,27 @@ public class MetadataConfigurationTest {
         Assert.assertNotNull(metadata.extensions.getPropertyParser("TestPropertyParser"));
         Assert.assertNotNull(metadata.extensions.getDataStoreParser("TestDataStoreParser"));
     }
+
+    @Test
+    public void testCacheConfiguration() throws Exception {
+        TestConfig config = new TestConfig();
+        config.initializeFromJson(json("{\"cache\":{\"enabled\":true,\"allowStaleMetadata\":true,\"ttlMillis\":1000,\"maxCompositeMetadata\":10}}"));
+
+        MetadataCacheConfiguration cache = config.getCacheConfiguration();
+        Assert.assertTrue(cache.isEnabled());
+        Assert.assertEquals(1000, cache.getTtlMillis());
+        Assert.assertEquals(1024, cache.getMaxEntityMetadata());
+        Assert.assertEquals(10, cache.getMaxCompositeMetadata());
+
+        config = new TestConfig();
+        config.initializeFromJson(json("{}"));
+        Assert.assertNull(config.getCacheConfiguration());
+
+        // Caching must acknowledge the stale window
+        try {
+            new TestConfig().initializeFromJson(json("{\"cache\":{\"enabled\":true}}"));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
 }
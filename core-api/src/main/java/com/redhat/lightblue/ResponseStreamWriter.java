@@ -0,0 +1,132 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.util.JsonUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes a response to a JSON generator, streaming the processed documents as
+ * they become available instead of collecting them in the response.
+ *
+ * The envelope starts with the entity name and version, followed by the
+ * processed documents. All the other fields of the response, including the
+ * status, matchCount, dataErrors, and resultMetadata are written after the
+ * documents, when the response is complete. The envelope has the same fields
+ * as Response.toJson().
+ */
+public class ResponseStreamWriter implements Closeable {
+
+    private static final String PROPERTY_ENTITY = "entity";
+    private static final String PROPERTY_VERSION = "entityVersion";
+    private static final String PROPERTY_PROCESSED = "processed";
+
+    private final JsonGenerator generator;
+    private boolean started = false;
+    private boolean ended = false;
+    private long numDocuments = 0;
+
+    public ResponseStreamWriter(JsonGenerator generator) {
+        this.generator = generator;
+        if (generator.getCodec() == null) {
+            generator.setCodec(JsonUtils.getObjectMapper());
+        }
+    }
+
+    public ResponseStreamWriter(OutputStream out) throws IOException {
+        this(JsonUtils.getObjectMapper().getFactory().createGenerator(out));
+    }
+
+    /**
+     * Writes the beginning of the envelope, up to the start of the processed
+     * documents. The entity of the response should be set before this call.
+     */
+    public void start(Response response) throws IOException {
+        if (!started) {
+            started = true;
+            generator.writeStartObject();
+            EntityVersion entity = response.getEntity();
+            if (entity != null) {
+                if (entity.getEntity() != null) {
+                    generator.writeStringField(PROPERTY_ENTITY, entity.getEntity());
+                }
+                if (entity.getVersion() != null) {
+                    generator.writeStringField(PROPERTY_VERSION, entity.getVersion());
+                }
+            }
+            generator.writeArrayFieldStart(PROPERTY_PROCESSED);
+        }
+    }
+
+    /**
+     * Writes a processed document. start() must be called before this.
+     */
+    public void writeDocument(JsonNode doc) throws IOException {
+        if (!started || ended) {
+            throw new IllegalStateException();
+        }
+        generator.writeTree(doc);
+        numDocuments++;
+    }
+
+    /**
+     * Returns the number of documents written so far
+     */
+    public long getNumDocuments() {
+        return numDocuments;
+    }
+
+    /**
+     * Closes the processed documents, writes the remaining fields of the
+     * response, and closes the envelope. The entity data of the response is
+     * not written.
+     */
+    public void end(Response response) throws IOException {
+        if (!ended) {
+            start(response);
+            ended = true;
+            generator.writeEndArray();
+            JsonNode json = response.toJson();
+            for (Iterator<Map.Entry<String, JsonNode>> itr = json.fields(); itr.hasNext();) {
+                Map.Entry<String, JsonNode> field = itr.next();
+                String name = field.getKey();
+                if (!PROPERTY_ENTITY.equals(name)
+                        && !PROPERTY_VERSION.equals(name)
+                        && !PROPERTY_PROCESSED.equals(name)) {
+                    generator.writeFieldName(name);
+                    generator.writeTree(field.getValue());
+                }
+            }
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,70 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class ResponseStreamWriterTest {
+
+    @Test
+    public void testStreamedDocuments() throws Exception {
+        JsonNodeFactory jnf = JsonNodeFactory.withExactBigDecimals(true);
+        Response response = new Response(jnf);
+        response.setEntity("test", "1.0");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ResponseStreamWriter writer = new ResponseStreamWriter(out)) {
+            writer.start(response);
+            writer.writeDocument(jnf.objectNode().put("a", 1));
+            writer.writeDocument(jnf.objectNode().put("a", 2));
+            response.setStatus(OperationStatus.COMPLETE);
+            response.setMatchCount(2);
+            writer.end(response);
+            Assert.assertEquals(2, writer.getNumDocuments());
+        }
+        JsonNode json = JsonUtils.json(out.toString("UTF-8"));
+        Assert.assertEquals("test", json.get("entity").asText());
+        Assert.assertEquals("1.0", json.get("entityVersion").asText());
+        Assert.assertEquals(2, json.get("processed").size());
+        Assert.assertEquals(2, json.get("processed").get(1).get("a").asInt());
+        Assert.assertEquals("COMPLETE", json.get("status").asText());
+        Assert.assertEquals(2, json.get("matchCount").asInt());
+    }
+
+    @Test
+    public void testErrorWithoutDocuments() throws Exception {
+        Response response = new Response(JsonNodeFactory.withExactBigDecimals(true));
+        response.setStatus(OperationStatus.ERROR);
+        response.getErrors().add(Error.get("err"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ResponseStreamWriter writer = new ResponseStreamWriter(out)) {
+            writer.end(response);
+        }
+        JsonNode json = JsonUtils.json(out.toString("UTF-8"));
+        Assert.assertEquals(0, json.get("processed").size());
+        Assert.assertEquals("ERROR", json.get("status").asText());
+        Assert.assertEquals(1, json.get("errors").size());
+    }
+}
@@ -0,0 +1,222 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.lightblue.util.BoundedCache;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Result cardinalities observed while executing composite searches.
+ *
+ * Two kinds of estimates are kept:
+ * <ul>
+ * <li>Search size: the average number of documents returned by a search of
+ * an entity that has a condition on a field. Searches without conditions
+ * are recorded for the entity itself.</li>
+ * <li>Join size: the average number of documents of an entity returned for
+ * each document, or tuple of documents, of the source entities. These are
+ * recorded for the searches that follow an association.</li>
+ * </ul>
+ *
+ * Estimates are moving averages over the last samples, so they adapt to
+ * changes in data. The number of estimates is bounded, the least recently
+ * used estimates are evicted first.
+ *
+ * Every estimate is in a base 2 bucket: bucket n contains the values
+ * between 2^(n-1) and 2^n. An estimate moves to another bucket only after
+ * it passes the bucket boundary by a margin, so estimates oscillating
+ * around a boundary do not keep changing buckets. Every entity has a
+ * generation that changes when one of its estimates is added, or moves to
+ * another bucket, so plans chosen using older estimates of an entity can
+ * be recognized.
+ */
+public class CardinalityStatistics {
+
+    /**
+     * Number of samples the moving average is computed over
+     */
+    private static final int WINDOW = 64;
+
+    /**
+     * An estimate leaves its bucket when it is this factor beyond the bucket
+     * boundary
+     */
+    private static final double MARGIN = 1.25;
+
+    private final BoundedCache<String, Estimate> estimates;
+    private final Map<String, Long> generations = new HashMap<>();
+
+    private static final class Estimate {
+        private double average;
+        private int samples;
+        private int bucket;
+    }
+
+    /**
+     * @param maxEntries Maximum number of estimates
+     */
+    public CardinalityStatistics(int maxEntries) {
+        this.estimates = new BoundedCache<>(maxEntries);
+    }
+
+    private static String searchKey(String entity, Collection<Path> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return "s:" + entity;
+        } else if (fields.size() == 1) {
+            return "s:" + entity + ":" + fields.iterator().next();
+        } else {
+            List<String> names = new ArrayList<>(fields.size());
+            for (Path field : fields) {
+                names.add(field.toString());
+            }
+            Collections.sort(names);
+            return "s:" + entity + ":" + names;
+        }
+    }
+
+    private static String joinKey(String entity, Collection<String> sourceEntities) {
+        List<String> sources = new ArrayList<>(sourceEntities);
+        Collections.sort(sources);
+        return "j:" + entity + ":" + sources;
+    }
+
+    private static int bucket(double value) {
+        return value < 1 ? 0 : 1 + (int) (Math.log(value) / Math.log(2));
+    }
+
+    /**
+     * Returns the bucket of value, staying in the current bucket unless
+     * value is beyond its boundaries by the margin
+     */
+    private static int bucket(double value, int current) {
+        double low = current == 0 ? 0 : Math.pow(2, current - 1) / MARGIN;
+        double high = Math.pow(2, current) * MARGIN;
+        return value < low || value >= high ? bucket(value) : current;
+    }
+
+    private synchronized void record(String entity, String key, double value) {
+        Estimate e = estimates.get(key);
+        if (e == null) {
+            e = new Estimate();
+            e.average = value;
+            e.samples = 1;
+            e.bucket = bucket(value);
+            estimates.put(key, e);
+            generations.merge(entity, 1l, Long::sum);
+        } else {
+            if (e.samples < WINDOW) {
+                e.samples++;
+            }
+            e.average += (value - e.average) / e.samples;
+            int b = bucket(e.average, e.bucket);
+            if (b != e.bucket) {
+                e.bucket = b;
+                generations.merge(entity, 1l, Long::sum);
+            }
+        }
+    }
+
+    private synchronized Double get(String key) {
+        Estimate e = estimates.get(key);
+        return e == null ? null : e.average;
+    }
+
+    /**
+     * Records the number of documents returned by a search. The result size
+     * is attributed to a single field only if the search has conditions on
+     * that field alone. Searches with conditions on more than one field are
+     * recorded for that combination of fields.
+     *
+     * @param entity The entity name
+     * @param fields The entity relative names of the fields that have
+     * conditions in the search
+     * @param resultSize Number of documents returned
+     */
+    public void recordSearch(String entity, Collection<Path> fields, long resultSize) {
+        record(entity, searchKey(entity, fields), resultSize);
+    }
+
+    /**
+     * Records the number of documents returned by a search following an
+     * association
+     *
+     * @param entity The entity name
+     * @param sourceEntities The names of the entities the search is
+     * following
+     * @param tuples The number of source documents, or tuples of source
+     * documents, the search is run for
+     * @param resultSize Number of documents returned
+     */
+    public void recordJoin(String entity, Collection<String> sourceEntities, long tuples, long resultSize) {
+        if (tuples > 0) {
+            record(entity, joinKey(entity, sourceEntities), (double) resultSize / tuples);
+        }
+    }
+
+    /**
+     * Returns the estimated number of documents returned by a search with
+     * conditions on the given fields, or null if there is no estimate. If
+     * there is no estimate for the combination of fields, but there are
+     * estimates for more than one of the fields, the smallest one is
+     * returned.
+     */
+    public Double getSearchSize(String entity, Collection<Path> fields) {
+        Double size = get(searchKey(entity, fields));
+        if (size != null || fields == null || fields.size() < 2) {
+            return size;
+        }
+        for (Path field : fields) {
+            Double d = get(searchKey(entity, Collections.singletonList(field)));
+            if (d != null && (size == null || d < size)) {
+                size = d;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated number of documents returned for each source
+     * document or tuple, or null if there is no estimate
+     */
+    public Double getJoinSize(String entity, Collection<String> sourceEntities) {
+        return get(joinKey(entity, sourceEntities));
+    }
+
+    /**
+     * Returns the generation of the estimates of the entity
+     */
+    public synchronized long getGeneration(String entity) {
+        Long g = generations.get(entity);
+        return g == null ? 0 : g;
+    }
+
+    /**
+     * Returns the number of estimates
+     */
+    public synchronized int size() {
+        return estimates.size();
+    }
+}
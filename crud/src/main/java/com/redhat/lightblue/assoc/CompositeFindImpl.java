@@ -24,7 +24,6 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
 
-import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +34,8 @@ import com.redhat.lightblue.crud.CRUDFindResponse;
 import com.redhat.lightblue.crud.CRUDFindRequest;
 import com.redhat.lightblue.crud.DocCtx;
 import com.redhat.lightblue.crud.ListDocumentStream;
+import com.redhat.lightblue.crud.ExecutionPool;
+import com.redhat.lightblue.crud.Factory;
 
 import com.redhat.lightblue.metadata.CompositeMetadata;
 
@@ -43,8 +44,9 @@ import com.redhat.lightblue.mediator.OperationContext;
 import com.redhat.lightblue.mediator.Mediator;
 
 import com.redhat.lightblue.assoc.scorers.IndexedFieldScorer;
-import com.redhat.lightblue.assoc.iterators.BruteForceQueryPlanIterator;
+import com.redhat.lightblue.assoc.iterators.GreedyQueryPlanIterator;
 import com.redhat.lightblue.assoc.scorers.SimpleScorer;
+import com.redhat.lightblue.assoc.scorers.StatisticsScorer;
 import com.redhat.lightblue.assoc.iterators.First;
 
 import com.redhat.lightblue.assoc.ep.ExecutionPlan;
@@ -96,17 +98,15 @@ public class CompositeFindImpl implements Finder {
     }
 
     /**
-     * Set maximum number of threads that can run in parallel. There's a hard
-     * limit on 10
+     * Set maximum number of tasks that can run in parallel for a
+     * request. The tasks run on the execution pool shared by all
+     * requests, which bounds the total number of threads.
      */
     public void setParallelism(int n) {
         parallelism = n;
         if (parallelism < 1) {
             parallelism = 1;
         }
-        if (parallelism > 10) {
-            parallelism = 10;
-        }
     }
 
     private void initialize(OperationContext ctx,
@@ -122,12 +122,18 @@ public class CompositeFindImpl implements Finder {
             //      and re-retrieve the documents
             // First: detemine minimal entity tree containing the nodes sufficient to
             // evaluate the query
+            ctx.measure.begin("compositeFind.plan");
             Set<CompositeMetadata> minimalTree = findMinimalSetOfQueryEntities(req.getQuery(),
                                                                                ctx.getTopLevelEntityMetadata());
             
-            selectQueryPlan(req.getQuery(), minimalTree);
+            Factory factory = ctx.getFactory();
+            selectQueryPlan(req.getQuery(), minimalTree,
+                            factory == null ? null : factory.getQueryPlanCache(),
+                            factory == null ? null : factory.getCardinalityStatistics());
+            ctx.measure.end("compositeFind.plan");
             LOGGER.debug("Search query plan:{}, retrieval query plan:{}", searchQPlan, retrievalQPlan);
             
+            ctx.measure.begin("compositeFind.executionPlan");
             executionPlan = new ExecutionPlan(req.getQuery(),
                                               req.getProjection(),
                                               req.getSort(),
@@ -137,6 +143,7 @@ public class CompositeFindImpl implements Finder {
                                               searchQPlan,
                                               retrievalQPlan,
                                               ctx);
+            ctx.measure.end("compositeFind.executionPlan");
         }
     }
     
@@ -160,16 +167,24 @@ public class CompositeFindImpl implements Finder {
         LOGGER.debug("Execution plan:{}", executionPlan);
 
         CRUDFindResponse response = new CRUDFindResponse();
-        ExecutionContext executionContext = new ExecutionContext(ctx,
-                Executors.newWorkStealingPool(parallelism));
+        ExecutionPool pool = ctx.getFactory().getExecutionPool();
+        LOGGER.debug("Execution pool:{}", pool);
+        ExecutionContext executionContext = new ExecutionContext(ctx, pool.newSession(parallelism));
+        // The results are assembled while the document stream is
+        // read, so the execution context is closed when the document
+        // stream is closed
+        boolean streaming=false;
         try {
             StepResult<ResultDocument> results = executionPlan.getResults(executionContext);
-            ctx.setDocumentStream(new StepResultDocumentStream(new MakeDocCtx(results)));            	
+            ctx.setDocumentStream(new StepResultDocumentStream(new MakeDocCtx(results),executionContext::close));
+            streaming=!ctx.hasErrors();
             response.setSize(executionContext.getMatchCount());
             LOGGER.debug("Composite find: end");
             return response;
         } finally {
-            executionContext.close();
+            if(!streaming) {
+                executionContext.close();
+            }
         }
     }
 
@@ -187,18 +202,22 @@ public class CompositeFindImpl implements Finder {
      *
      */
     private void selectQueryPlan(QueryExpression requestQuery,
-                                 Set<CompositeMetadata> minimalTree) {
+                                 Set<CompositeMetadata> minimalTree,
+                                 QueryPlanCache cache,
+                                 CardinalityStatistics stats) {
         searchQPlan = retrievalQPlan = null;
 
         if (minimalTree.size() > 1) {
             // There are multiple entities required to evaluate the query
 
             // Choose a query plan
+            IndexedFieldScorer scorer = newScorer(stats);
             QueryPlan searchQP = new QueryPlanChooser(root,
-                    new BruteForceQueryPlanIterator(),
-                    new IndexedFieldScorer(),
+                    new GreedyQueryPlanIterator(scorer),
+                    scorer,
                     requestQuery,
-                    minimalTree).choose();
+                    minimalTree,
+                    cache).choose();
             LOGGER.debug("Candidate plan: {}", searchQP);
             // If the query plan has only one source, and that source is the root, then
             // we don't need to search and retrieve in two separate steps, we can simply
@@ -209,11 +228,13 @@ public class CompositeFindImpl implements Finder {
                 // Build a new query plan containing all entities. This plan should
                 // have the same root as before. If not, something must be
                 // wrong, and we fall back to a search/retrieve query
+                scorer = newScorer(stats);
                 QueryPlan fullPlan = new QueryPlanChooser(root,
-                        new BruteForceQueryPlanIterator(),
-                        new IndexedFieldScorer(),
+                        new GreedyQueryPlanIterator(scorer),
+                        scorer,
                         requestQuery,
-                        null).choose();
+                        null,
+                        cache).choose();
                 // This plan must also have a single root
                 roots = fullPlan.getSources();
                 if (roots.length == 1 && roots[0].getMetadata() == root) {
@@ -252,6 +273,14 @@ public class CompositeFindImpl implements Finder {
         }
     }
 
+    /**
+     * Returns a scorer using the cardinality statistics if they are
+     * collected, or the index information only otherwise
+     */
+    private static IndexedFieldScorer newScorer(CardinalityStatistics stats) {
+        return stats == null ? new IndexedFieldScorer() : new StatisticsScorer(stats);
+    }
+
     /**
      * Determine which entities are required to evaluate the given query
      */
@@ -0,0 +1,223 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.eval.QueryEvaluatorCache;
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.metadata.EntityInfo;
+import com.redhat.lightblue.metadata.Version;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.util.BoundedCache;
+
+/**
+ * Caches the query plans chosen by QueryPlanChooser.
+ *
+ * A query plan is cached as the directions of its edges. The key
+ * contains the entity paths, names and versions of all the nodes of the
+ * plan, the iterator and scorer used to choose it, the scorer state for
+ * each node, and the shape of the request query, so requests that differ only in query values share
+ * the same plan. The conjuncts of a plan depend on the query values, so
+ * the plan itself is rebuilt for every request, and the cached
+ * directions are applied to it.
+ *
+ * The number of entries is bounded, least recently used entries are
+ * evicted first. Entries containing an entity are invalidated when that
+ * entity changes. A cached plan is also applied only if the nodes of the
+ * plan have the same entity info instances as the nodes of the cached
+ * plan, so a plan chosen with metadata that was reloaded since, for
+ * instance with different indexes, is not reused. If entity metadata is
+ * not cached, every request gets new entity info instances, and plans
+ * are not reused.
+ */
+public class QueryPlanCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryPlanCache.class);
+
+    private final BoundedCache<String, Entry> entries;
+
+    private static final class Entry {
+        private final Set<String> edges;
+        private final Set<String> entityNames;
+        private final List<EntityInfo> entityInfos;
+
+        private Entry(Set<String> edges, Set<String> entityNames, List<EntityInfo> entityInfos) {
+            this.edges = edges;
+            this.entityNames = entityNames;
+            this.entityInfos = entityInfos;
+        }
+    }
+
+    /**
+     * @param maxEntries Maximum number of cached query plans
+     */
+    public QueryPlanCache(int maxEntries) {
+        this.entries = new BoundedCache<>(maxEntries);
+    }
+
+    /**
+     * Returns the cache key for the query plan, or null if the plan cannot
+     * be cached because the shape of the query cannot be determined.
+     *
+     * @param qp The query plan in its initial state
+     * @param itr The query plan iterator
+     * @param scorer The query plan scorer
+     * @param requestQuery The request query, can be null
+     */
+    public static String getKey(QueryPlan qp,
+                                QueryPlanIterator itr,
+                                QueryPlanScorer scorer,
+                                QueryExpression requestQuery) {
+        String shape;
+        if (requestQuery == null) {
+            shape = "";
+        } else {
+            shape = QueryEvaluatorCache.getQueryShape(requestQuery);
+            if (shape == null) {
+                return null;
+            }
+        }
+        StringBuilder bld = new StringBuilder();
+        bld.append(itr.getClass().getName()).append(':').append(scorer.getCacheKey());
+        for (QueryPlanNode node : qp.getAllNodes()) {
+            CompositeMetadata md = node.getMetadata();
+            Version v = md.getVersion();
+            bld.append('|').append(md.getEntityPath()).append('=').append(md.getName())
+                    .append(':').append(v == null ? "" : v.getValue());
+            String nodeKey = scorer.getCacheKey(node);
+            if (nodeKey != null) {
+                bld.append(':').append(nodeKey);
+            }
+        }
+        bld.append('|').append(shape);
+        return bld.toString();
+    }
+
+    private static String edge(QueryPlanNode from, QueryPlanNode to) {
+        return from.getMetadata().getEntityPath() + "->" + to.getMetadata().getEntityPath();
+    }
+
+    private static List<QueryPlanNode[]> getEdges(QueryPlan qp) {
+        List<QueryPlanNode[]> list = new ArrayList<>();
+        for (QueryPlanNode node : qp.getAllNodes()) {
+            for (QueryPlanNode dest : node.getDestinations()) {
+                list.add(new QueryPlanNode[]{node, dest});
+            }
+        }
+        return list;
+    }
+
+    private static List<EntityInfo> getEntityInfos(QueryPlan qp) {
+        QueryPlanNode[] nodes = qp.getAllNodes();
+        List<EntityInfo> list = new ArrayList<>(nodes.length);
+        for (QueryPlanNode node : nodes) {
+            list.add(node.getMetadata().getEntityInfo());
+        }
+        return list;
+    }
+
+    private static boolean isSameMetadata(List<EntityInfo> cached, List<EntityInfo> current) {
+        if (cached.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < cached.size(); i++) {
+            if (cached.get(i) != current.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * If there is a cached plan for the key, directs the edges of qp the
+     * same way as the cached plan, and returns true. Otherwise, returns
+     * false without modifying qp.
+     */
+    public boolean apply(String key, QueryPlan qp) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (!isSameMetadata(entry.entityInfos, getEntityInfos(qp))) {
+            LOGGER.debug("Metadata changed for {}", key);
+            return false;
+        }
+        List<QueryPlanNode[]> edges = getEdges(qp);
+        if (edges.size() != entry.edges.size()) {
+            return false;
+        }
+        List<QueryPlanNode[]> flips = new ArrayList<>();
+        for (QueryPlanNode[] e : edges) {
+            if (entry.edges.contains(edge(e[1], e[0]))) {
+                flips.add(e);
+            } else if (!entry.edges.contains(edge(e[0], e[1]))) {
+                LOGGER.debug("Cached plan does not match {}", key);
+                return false;
+            }
+        }
+        for (QueryPlanNode[] e : flips) {
+            qp.flip(e[0], e[1]);
+        }
+        return true;
+    }
+
+    /**
+     * Stores the directions of the edges of the chosen plan under key
+     */
+    public void put(String key, QueryPlan qp) {
+        Set<String> edges = new HashSet<>();
+        for (QueryPlanNode[] e : getEdges(qp)) {
+            edges.add(edge(e[0], e[1]));
+        }
+        Set<String> names = new HashSet<>();
+        for (QueryPlanNode node : qp.getAllNodes()) {
+            names.add(node.getMetadata().getName());
+        }
+        Entry entry = new Entry(Collections.unmodifiableSet(edges), Collections.unmodifiableSet(names), getEntityInfos(qp));
+        entries.put(key, entry);
+    }
+
+    /**
+     * Invalidates all plans containing the given entity. If entityName is
+     * null, invalidates all plans.
+     */
+    public void invalidate(String entityName) {
+        LOGGER.debug("Invalidating {}", entityName);
+        if (entityName == null) {
+            entries.clear();
+        } else {
+            entries.removeIf((k, e) -> e.entityNames.contains(entityName));
+        }
+    }
+
+    /**
+     * Returns the number of cached plans
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -31,9 +31,8 @@ import com.redhat.lightblue.metadata.ResolvedReferenceField;
 import com.redhat.lightblue.metadata.ReferenceField;
 
 import com.redhat.lightblue.query.QueryExpression;
-import com.redhat.lightblue.query.NaryLogicalExpression;
-import com.redhat.lightblue.query.NaryLogicalOperator;
 
+import com.redhat.lightblue.assoc.qrew.QueryRewriteCache;
 import com.redhat.lightblue.assoc.qrew.QueryRewriter;
 
 import com.redhat.lightblue.util.Path;
@@ -43,12 +42,14 @@ public class QueryPlanChooser {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QueryPlanChooser.class);
 
-    private static final QueryRewriter qrewriter = new QueryRewriter(true);
+    private static final QueryRewriteCache qrewriteCache = new QueryRewriteCache(new QueryRewriter(true), 1024);
 
     private final CompositeMetadata compositeMetadata;
     private final QueryExpression requestQuery;
     private final QueryPlanIterator qplanIterator;
     private final QueryPlanScorer scorer;
+    private final QueryPlanCache cache;
+    private final String cacheKey;
 
     private QueryPlan qplan;
 
@@ -60,6 +61,22 @@ public class QueryPlanChooser {
                             QueryPlanScorer scorer,
                             QueryExpression requestQuery,
                             Set<CompositeMetadata> filter) {
+        this(cmd, qpitr, scorer, requestQuery, filter, null);
+    }
+
+    /**
+     * Constructs a query plan chooser that looks up the chosen plan in the
+     * cache before iterating the plans, and stores the chosen plan in the
+     * cache after iterating them.
+     *
+     * @param cache The query plan cache, can be null
+     */
+    public QueryPlanChooser(CompositeMetadata cmd,
+                            QueryPlanIterator qpitr,
+                            QueryPlanScorer scorer,
+                            QueryExpression requestQuery,
+                            Set<CompositeMetadata> filter,
+                            QueryPlanCache cache) {
         LOGGER.debug("QueryPlanChooser.ctor");
         Error.push("QueryPlanChooser");
         try {
@@ -68,6 +85,8 @@ public class QueryPlanChooser {
             this.scorer = scorer;
             qplan = new QueryPlan(compositeMetadata, scorer, filter);
             LOGGER.debug("Initial query plan:{}", qplan);
+            this.cache = cache;
+            this.cacheKey = cache == null ? null : QueryPlanCache.getKey(qplan, qpitr, scorer, requestQuery);
 
             this.requestQuery = requestQuery;
             LOGGER.debug("Request query:{}", this.requestQuery);
@@ -110,17 +129,11 @@ public class QueryPlanChooser {
         Error.push("rewriteQuery");
         AnalyzeQuery analyzer = new AnalyzeQuery(compositeMetadata, context);
         try {
-            QueryExpression cnf = qrewriter.rewrite(q);
+            List<QueryExpression> cnf = qrewriteCache.getConjuncts(q);
             LOGGER.debug("Query in conjunctive normal form:{}", cnf);
-            if (cnf instanceof NaryLogicalExpression
-                    && ((NaryLogicalExpression) cnf).getOp() == NaryLogicalOperator._and) {
-                for (QueryExpression clause : ((NaryLogicalExpression) cnf).getQueries()) {
-                    analyzer.iterate(clause);
-                    clauseList.add(new Conjunct(clause, analyzer.getFieldInfo(), context));
-                }
-            } else {
-                analyzer.iterate(cnf);
-                clauseList.add(new Conjunct(cnf, analyzer.getFieldInfo(), context));
+            for (QueryExpression clause : cnf) {
+                analyzer.iterate(clause);
+                clauseList.add(new Conjunct(clause, analyzer.getFieldInfo(), context));
             }
         } catch (Error e) {
             // rethrow lightblue error
@@ -298,9 +311,16 @@ public class QueryPlanChooser {
     }
 
     /**
-     * Chooses the best query play after scoring all possible plans.
+     * Chooses the best query play after scoring all possible plans. If the
+     * plan is cached, the cached plan is returned without iterating the
+     * plans.
      */
     public QueryPlan choose() {
+        if (cacheKey != null && cache.apply(cacheKey, qplan)) {
+            LOGGER.debug("Using cached plan:{}", qplan);
+            bestPlan = qplan.deepCopy();
+            return bestPlan;
+        }
         while (qplanIterator.next()) {
             LOGGER.debug("Scoring plan {}", qplan);
             Comparable score = scorer.score(qplan);
@@ -311,6 +331,9 @@ public class QueryPlanChooser {
                 LOGGER.debug("Stored plan:{}", bestPlan);
             }
         }
+        if (cacheKey != null) {
+            cache.put(cacheKey, bestPlan);
+        }
 
         return bestPlan;
     }
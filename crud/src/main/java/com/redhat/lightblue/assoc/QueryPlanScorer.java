@@ -43,4 +43,21 @@ public interface QueryPlanScorer {
      * Returns a score for the query plan
      */
     Comparable score(QueryPlan p);
+
+    /**
+     * Returns a string identifying the scorer for the query plan cache.
+     * Plans chosen by scorers with different keys are cached separately.
+     */
+    default String getCacheKey() {
+        return getClass().getName();
+    }
+
+    /**
+     * Returns a string identifying the state of the scorer for a node of
+     * the plan, or null if the scores do not depend on state. Plans are
+     * cached separately for different node keys.
+     */
+    default String getCacheKey(QueryPlanNode node) {
+        return null;
+    }
 }
@@ -20,6 +20,8 @@ package com.redhat.lightblue.assoc.ep;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 
@@ -46,7 +48,11 @@ import com.redhat.lightblue.mediator.SimpleFindImpl;
 import com.redhat.lightblue.crud.CRUDFindRequest;
 import com.redhat.lightblue.crud.CRUDFindResponse;
 import com.redhat.lightblue.crud.DocumentStream;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.assoc.CardinalityStatistics;
 import com.redhat.lightblue.assoc.Conjunct;
+import com.redhat.lightblue.assoc.QueryFieldInfo;
+import com.redhat.lightblue.util.Path;
 
 /**
  * Shared functionality for search steps
@@ -133,6 +139,7 @@ public abstract class AbstractSearchStep extends Step<ResultDocument> {
             if (recordResultSetSize) {
                 ctx.setMatchCount((int) response.getSize());
             }
+            recordStatistics(ctx, req, response.getSize());
             LOGGER.debug("execute {}: returning {} documents",
                     block.getQueryPlanNode().getName(),
                          response.getSize());
@@ -140,6 +147,44 @@ public abstract class AbstractSearchStep extends Step<ResultDocument> {
         return searchCtx;
     }
 
+    /**
+     * Records the result size of a successful search in the cardinality
+     * statistics. By default, the result size is recorded for the fields
+     * of the queries of this step.
+     */
+    protected void recordStatistics(ExecutionContext ctx, CRUDFindRequest req, long resultSize) {
+        CardinalityStatistics stats = getStatistics(ctx);
+        if (stats != null) {
+            stats.recordSearch(block.getMetadata().getName(), getQueryFields(), resultSize);
+        }
+    }
+
+    /**
+     * Returns the cardinality statistics, or null if statistics are not
+     * collected
+     */
+    protected static CardinalityStatistics getStatistics(ExecutionContext ctx) {
+        Factory factory = ctx.getOperationContext().getFactory();
+        return factory == null ? null : factory.getCardinalityStatistics();
+    }
+
+    /**
+     * Returns the entity relative names of the fields of the single-field
+     * queries of this step
+     */
+    private Set<Path> getQueryFields() {
+        Set<Path> fields = new HashSet<>();
+        if (conjuncts != null) {
+            for (Conjunct c : conjuncts) {
+                List<QueryFieldInfo> fi = c.getFieldInfo();
+                if (fi.size() == 1) {
+                    fields.add(fi.get(0).getEntityRelativeFieldNameWithContext());
+                }
+            }
+        }
+        return fields;
+    }
+
     public void setRecordResultSetSize(boolean b) {
         recordResultSetSize = b;
     }
@@ -22,9 +22,16 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Set;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import java.util.concurrent.Future;
 
@@ -42,6 +49,7 @@ import com.redhat.lightblue.query.NaryLogicalOperator;
 import com.redhat.lightblue.metadata.CompositeMetadata;
 
 import com.redhat.lightblue.assoc.BindQuery;
+import com.redhat.lightblue.assoc.CardinalityStatistics;
 import com.redhat.lightblue.assoc.QueryFieldInfo;
 import com.redhat.lightblue.assoc.AnalyzeQuery;
 
@@ -51,6 +59,8 @@ import com.redhat.lightblue.mindex.KeySpec;
 import com.redhat.lightblue.mindex.LookupSpec;
 
 import com.redhat.lightblue.eval.QueryEvaluator;
+import com.redhat.lightblue.eval.QueryEvaluatorCache;
+import com.redhat.lightblue.mediator.OperationContext;
 
 import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.JsonDoc;
@@ -60,11 +70,22 @@ import com.redhat.lightblue.util.JsonDoc;
  * source, and for each of those documents, it runs the associated queries on
  * the destinations, gets the results, and inserts those documents to the
  * document it got from the source side.
+ *
+ * Assemble is pipelined: source documents are read in batches, and
+ * while the child documents of a batch are being retrieved, the next
+ * batch is read from the source. The documents of a batch are
+ * streamed as soon as all the destinations of that batch are
+ * assembled.
  */
 public class Assemble extends Step<ResultDocument> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Assemble.class);
 
+    /**
+     * Number of source documents assembled together
+     */
+    private static final int BATCH_SIZE = 256;
+
     /**
      * This is used for testing. This is the threshold for the number
      * of slots above which we'll use the memory indexing. If we have
@@ -86,13 +107,22 @@ public class Assemble extends Step<ResultDocument> {
         this.memoryIndexThreshold = memoryIndexThreshold;
     }
 
+    /**
+     * Retrieves the documents of this block matching q. The query is
+     * set in the Retrieve step of the block for the calling thread
+     * only, so retrievals for different batches can run concurrently.
+     */
     public List<ResultDocument> getResultList(QueryExpression q, ExecutionContext ctx) {
         LOGGER.debug("getResultList q={} block={}", q, block);
         Retrieve r = block.getStep(Retrieve.class);
         if (r != null) {
             r.setQuery(q);
-            StepResult<ResultDocument> results = block.getResultStep().getResults(ctx);
-            return results.stream().collect(Collectors.toList());
+            try {
+                StepResult<ResultDocument> results = block.getResultStep().getResults(ctx);
+                return results.stream().collect(Collectors.toList());
+            } finally {
+                r.setQuery(null);
+            }
         } else {
             throw new IllegalStateException("Cannot find a Retrieve step in block");
         }
@@ -114,51 +144,155 @@ public class Assemble extends Step<ResultDocument> {
     @Override
     public StepResult<ResultDocument> getResults(ExecutionContext ctx) {
         LOGGER.debug("getResults, source:{}, destinations={}", source, destinations);
-        // Get the results from the source
-        StepResult<ResultDocument> sourceResults = source.getStep().getResults(ctx);
-        List<ResultDocument> results = sourceResults.stream().collect(Collectors.toList());
+        // Reading the first batch runs the source search, so errors
+        // and the match count are known when we return
+        AssembledResult result=new AssembledResult(ctx);
         if (ctx.hasErrors()) {
             return StepResult.EMPTY;
         }
+        return result;
+    }
 
-        // Assemble results: retrieve results from associated
-        // execution blocks, and insert them into sourceResults
-        // documents
-        List<Future> assemblers = new ArrayList<>();
-        for (Map.Entry<ExecutionBlock, Assemble> destination : destinations.entrySet()) {
-            AssociationQuery aq = destination.getKey().getAssociationQueryForEdge(block);
-            LOGGER.debug("Scheduling batch assembler with aq={} block={}", aq, destination.getKey());
-            BatchAssembler batchAssembler = new BatchAssembler(256, aq, destination.getValue(), ctx);
-            assemblers.add(ctx.getExecutor().submit(() -> {
-                if (aq.getQuery() == null) {
-                    if(aq.isAlwaysTrue()) {
-                        results.stream().forEach(batchAssembler::addDoc);
-                        batchAssembler.endDoc();
-                    }
+    /**
+     * The result of the assemble step. The first call to stream()
+     * continues with the batches already read in getResults(). Any
+     * subsequent calls reassemble the source results.
+     */
+    private class AssembledResult implements StepResult<ResultDocument> {
+        private final ExecutionContext ctx;
+        private BatchIterator primed;
+
+        public AssembledResult(ExecutionContext ctx) {
+            this.ctx = ctx;
+            this.primed = new BatchIterator(ctx);
+            primed.hasNext();
+        }
+
+        @Override
+        public Stream<ResultDocument> stream() {
+            BatchIterator itr;
+            if (primed != null) {
+                itr = primed;
+                primed = null;
+            } else {
+                itr = new BatchIterator(ctx);
+            }
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(itr, Spliterator.ORDERED), false);
+        }
+    }
+
+    /**
+     * A batch of source documents along with the futures of the
+     * destination assemblers working on them
+     */
+    private static class Batch {
+        private final List<ResultDocument> docs;
+        private final List<Future> assemblers = new ArrayList<>();
+
+        public Batch(List<ResultDocument> docs) {
+            this.docs = docs;
+        }
+
+        public void await() {
+            try {
+                for (Future x : assemblers) {
+                    x.get();
+                }
+            } catch (Exception ie) {
+                throw new RuntimeException(ie);
+            }
+        }
+    }
+
+    /**
+     * Iterates through the assembled documents. The next batch is read
+     * from the source and its assemblers are scheduled before waiting
+     * for the current batch.
+     */
+    private class BatchIterator implements Iterator<ResultDocument> {
+        private final ExecutionContext ctx;
+        private Iterator<ResultDocument> sourceItr;
+        private Batch nextBatch;
+        private Iterator<ResultDocument> current;
+        private boolean done = false;
+
+        public BatchIterator(ExecutionContext ctx) {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!done && (current == null || !current.hasNext())) {
+                if (sourceItr == null) {
+                    sourceItr = source.getStep().getResults(ctx).stream().iterator();
+                    nextBatch = readBatch();
+                }
+                Batch batch = nextBatch;
+                if (batch == null || ctx.hasErrors()) {
+                    done = true;
                 } else {
-                    results.stream().forEach(doc -> {
-                        batchAssembler.addDoc(doc);
-                        Map<ChildSlot, QueryExpression> queries = Searches.
-                                writeChildQueriesFromParentDoc(aq, doc);
-                        queries.values().stream().forEach(batchAssembler::addQuery);
-                        batchAssembler.endDoc();
-                    });
+                    nextBatch = readBatch();
+                    batch.await();
+                    if (ctx.hasErrors()) {
+                        done = true;
+                    } else {
+                        current = batch.docs.iterator();
+                    }
                 }
-                batchAssembler.commit();
-            }));
+            }
+            return !done;
         }
-        try {
-            for (Future x : assemblers) {
-                x.get();
+
+        @Override
+        public ResultDocument next() {
+            if (hasNext()) {
+                return current.next();
+            } else {
+                throw new NoSuchElementException();
             }
-        } catch (Exception ie) {
-            throw new RuntimeException(ie);
         }
-        if (ctx.hasErrors()) {
-            return StepResult.EMPTY;
+
+        /**
+         * Reads the next batch of documents from the source, and
+         * schedules the assemblers for them. Returns null if there
+         * are no more source documents.
+         */
+        private Batch readBatch() {
+            List<ResultDocument> docs = new ArrayList<>(BATCH_SIZE);
+            while (docs.size() < BATCH_SIZE && sourceItr.hasNext()) {
+                docs.add(sourceItr.next());
+            }
+            if (docs.isEmpty() || ctx.hasErrors()) {
+                return null;
+            }
+            Batch batch = new Batch(docs);
+            // Assemble results: retrieve results from associated
+            // execution blocks, and insert them into the source
+            // documents
+            for (Map.Entry<ExecutionBlock, Assemble> destination : destinations.entrySet()) {
+                AssociationQuery aq = destination.getKey().getAssociationQueryForEdge(block);
+                LOGGER.debug("Scheduling batch assembler with aq={} block={}", aq, destination.getKey());
+                BatchAssembler batchAssembler = new BatchAssembler(BATCH_SIZE, aq, destination.getValue(), ctx);
+                batch.assemblers.add(ctx.getExecutor().submit(() -> {
+                    if (aq.getQuery() == null) {
+                        if(aq.isAlwaysTrue()) {
+                            docs.stream().forEach(batchAssembler::addDoc);
+                            batchAssembler.endDoc();
+                        }
+                    } else {
+                        docs.stream().forEach(doc -> {
+                            batchAssembler.addDoc(doc);
+                            Map<ChildSlot, QueryExpression> queries = Searches.
+                                    writeChildQueriesFromParentDoc(aq, doc);
+                            queries.values().stream().forEach(batchAssembler::addQuery);
+                            batchAssembler.endDoc();
+                        });
+                    }
+                    batchAssembler.commit();
+                }));
+            }
+            return batch;
         }
-        // Stream results
-        return new ListStepResult(results);
     }
 
     private static class DocAndQ {
@@ -210,6 +344,13 @@ public class Assemble extends Step<ResultDocument> {
                     combinedQuery = null;
                 }
                 List<ResultDocument> destResults = dest.getResultList(combinedQuery, ctx);
+                CardinalityStatistics stats = AbstractSearchStep.getStatistics(ctx);
+                if (stats != null) {
+                    stats.recordJoin(dest.block.getMetadata().getName(),
+                            Collections.singletonList(block.getMetadata().getName()),
+                            docs.size(),
+                            destResults.size());
+                }
                 int numSlots=0;
                 for (DocAndQ parentDocAndQ : docs) {
                     List<ChildSlot> slots=parentDocAndQ.doc.getSlots().get(aq.getReference());
@@ -223,19 +364,43 @@ public class Assemble extends Step<ResultDocument> {
                     LOGGER.debug("In-memory index key spec:{}",keySpec);
                     if(keySpec!=null) {
                         // There is a key spec, meaning we can index the docs
-                        docIndex=new MemDocIndex(keySpec);
+                        // If the lookups are ranges or prefixes, use an ordered index
+                        docIndex=new MemDocIndex(keySpec,lookupNeedsScan());
                         for(ResultDocument child:destResults) {
                             docIndex.add(child.getDoc());
                         }
                     }
                 }
+                QueryEvaluatorCache evaluators=getQueryEvaluatorCache(ctx);
                 for (DocAndQ parentDocAndQ : docs) {
-                    associateDocs(parentDocAndQ.doc, destResults, aq,docIndex);
+                    associateDocs(parentDocAndQ.doc, destResults, aq,docIndex,evaluators);
                 }
             }
             docs = new ArrayList<>();
             queries = new ArrayList<>();
         }
+
+        /**
+         * Returns true if index lookups for the association query need
+         * index scans. All slots use the same association query, only
+         * the bound values differ, so the lookup spec of the first
+         * slot with bindings is checked.
+         */
+        private boolean lookupNeedsScan() {
+            for (DocAndQ parentDocAndQ : docs) {
+                List<ChildSlot> slots=parentDocAndQ.doc.getSlots().get(aq.getReference());
+                if(slots!=null) {
+                    for(ChildSlot slot:slots) {
+                        BindQuery binders = parentDocAndQ.doc.getBindersForSlot(slot, aq);
+                        if(!binders.getBindings().isEmpty()) {
+                            LookupSpec ls=getLookupSpec(binders.iterate(aq.getQuery()),aq);
+                            return ls!=null&&ls.isScan();
+                        }
+                    }
+                }
+            }
+            return false;
+        }
     }
     
     private JsonNode toJson(Step.ToJsonCb<Step> scb,Step.ToJsonCb<ExecutionBlock> bcb) {
@@ -264,6 +429,20 @@ public class Assemble extends Step<ResultDocument> {
                               List<ResultDocument> childDocs,
                               AssociationQuery aq,
                               MemDocIndex childIndex) {
+        associateDocs(parentDoc,childDocs,aq,childIndex,null);
+    }
+
+    /**
+     * Associates child documents obtained from 'aq' to all the slots in the
+     * parent document, using the compiled query evaluators from the
+     * given cache. If the cache is null, the association queries are
+     * compiled for every slot.
+     */
+    public void associateDocs(ResultDocument parentDoc,
+                              List<ResultDocument> childDocs,
+                              AssociationQuery aq,
+                              MemDocIndex childIndex,
+                              QueryEvaluatorCache evaluators) {
         if(!childDocs.isEmpty()) {
             CompositeMetadata childMetadata = childDocs.get(0).getBlock().getMetadata();
             List<ChildSlot> slots = parentDoc.getSlots().get(aq.getReference());        
@@ -275,14 +454,25 @@ public class Assemble extends Step<ResultDocument> {
                     associateAllDocs(parentDoc,childDocs,slot.getSlotFieldName());
                 } else if(aq.getAlways()==null||!aq.getAlways()) { // If query is not always false
                     if(childIndex==null)
-                        associateDocs(childMetadata,parentDoc,slot.getSlotFieldName(),binders,childDocs,aq.getQuery());
+                        associateDocs(childMetadata,parentDoc,slot.getSlotFieldName(),binders,childDocs,aq.getQuery(),evaluators);
                     else 
-                        associateDocsWithIndex(childMetadata,parentDoc,slot.getSlotFieldName(),binders,childDocs,aq,childIndex);
+                        associateDocsWithIndex(childMetadata,parentDoc,slot.getSlotFieldName(),binders,childDocs,aq,childIndex,evaluators);
                 }
             }
         }
     }
 
+    private static QueryEvaluator getQueryEvaluator(QueryExpression query,
+                                                    CompositeMetadata md,
+                                                    QueryEvaluatorCache evaluators) {
+        return evaluators==null?QueryEvaluator.getInstance(query, md):evaluators.getInstance(query, md);
+    }
+
+    private static QueryEvaluatorCache getQueryEvaluatorCache(ExecutionContext ctx) {
+        OperationContext opctx=ctx.getOperationContext();
+        return opctx==null||opctx.getFactory()==null?null:opctx.getFactory().getQueryEvaluatorCache();
+    }
+
     private static void associateAllDocs(ResultDocument parentDoc,List<ResultDocument> childDocs,Path fieldName) {
         ArrayNode destNode=ensureDestNodeExists(parentDoc,null,fieldName);
         for (ResultDocument d : childDocs) {
@@ -319,10 +509,20 @@ public class Assemble extends Step<ResultDocument> {
                                      BindQuery binders,
                                      List<ResultDocument> childDocs,
                                      QueryExpression query) {
+        associateDocs(childMetadata,parentDoc,destFieldName,binders,childDocs,query,null);
+    }
+
+    private static void associateDocs(CompositeMetadata childMetadata,
+                                      ResultDocument parentDoc,
+                                      Path destFieldName,
+                                      BindQuery binders,
+                                      List<ResultDocument> childDocs,
+                                      QueryExpression query,
+                                      QueryEvaluatorCache evaluators) {
         LOGGER.debug("Associating docs");
         QueryExpression boundQuery = binders.iterate(query);
         LOGGER.debug("Association query:{}", boundQuery);
-        QueryEvaluator qeval = QueryEvaluator.getInstance(boundQuery, childMetadata);
+        QueryEvaluator qeval = getQueryEvaluator(boundQuery, childMetadata, evaluators);
         ArrayNode destNode=null;
         for (ResultDocument childDoc : childDocs) {
             if (qeval.evaluate(childDoc.getDoc()).getResult()) {
@@ -338,16 +538,13 @@ public class Assemble extends Step<ResultDocument> {
                                         BindQuery binders,
                                         List<ResultDocument> childDocs,
                                         AssociationQuery aq,
-                                        MemDocIndex childIndex) {
+                                        MemDocIndex childIndex,
+                                        QueryEvaluatorCache evaluators) {
         LOGGER.debug("Associating docs using index");
         QueryExpression boundQuery = binders.iterate(aq.getQuery());
         LOGGER.debug("Association query:{}", boundQuery);
-        QueryEvaluator qeval = QueryEvaluator.getInstance(boundQuery, childMetadata);
-        AnalyzeQuery analyzer=new AnalyzeQuery(block.rootMd,aq.getReference());
-        analyzer.iterate(boundQuery);
-        List<QueryFieldInfo> qfi=analyzer.getFieldInfo();
-        GetIndexLookupSpec gils=new GetIndexLookupSpec(qfi);
-        LookupSpec ls=gils.iterate(boundQuery);
+        QueryEvaluator qeval = getQueryEvaluator(boundQuery, childMetadata, evaluators);
+        LookupSpec ls=getLookupSpec(boundQuery,aq);
         LOGGER.debug("Lookup spec:"+ls);
         List<ResultDocument> docs=reorder(childDocs,childIndex.find(ls));
         ArrayNode destNode=null;
@@ -359,6 +556,17 @@ public class Assemble extends Step<ResultDocument> {
         }
     }
     
+    /**
+     * Builds the index lookup spec for a bound association query
+     */
+    private LookupSpec getLookupSpec(QueryExpression boundQuery,AssociationQuery aq) {
+        AnalyzeQuery analyzer=new AnalyzeQuery(block.rootMd,aq.getReference());
+        analyzer.iterate(boundQuery);
+        List<QueryFieldInfo> qfi=analyzer.getFieldInfo();
+        GetIndexLookupSpec gils=new GetIndexLookupSpec(qfi);
+        return gils.iterate(boundQuery);
+    }
+
     /**
      * Returns the documents in foundList in the order of originalList
      */
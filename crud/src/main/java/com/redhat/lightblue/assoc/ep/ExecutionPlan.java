@@ -233,17 +233,24 @@ public class ExecutionPlan {
                             matchCountSet=true;
                         }
                         Source<ResultDocument> last = new Source<>(u);
-                        // Sort the results
-                        if (requestSort != null) {
-                            last = new Source<>(new SortResults(block, last, requestSort));
-                        }
-                        if(!needsFinalFiltering) {
-                        	if (from != null) {
-                        		last = new Source<>(new Skip(block, from.intValue(), last));
-                        	}
-                        	if (to != null) {
-                        		last = new Source<>(new Limit(block, to.intValue() - (from==null?0:from.intValue()) + 1, last));
-                        	}
+                        if (requestSort != null && !needsFinalFiltering && (from != null || to != null)) {
+                            // Sort, skip, and limit in one step, so only the requested page is sorted
+                            int skip = from == null ? 0 : from.intValue();
+                            Integer limit = to == null ? null : to.intValue() - skip + 1;
+                            last = new Source<>(new SortTopK(block, last, requestSort, skip, limit, ctx.getFactory().getTopKSortLimit()));
+                        } else {
+                            // Sort the results
+                            if (requestSort != null) {
+                                last = new Source<>(new SortResults(block, last, requestSort));
+                            }
+                            if(!needsFinalFiltering) {
+                            	if (from != null) {
+                            		last = new Source<>(new Skip(block, from.intValue(), last));
+                            	}
+                            	if (to != null) {
+                            		last = new Source<>(new Limit(block, to.intValue() - (from==null?0:from.intValue()) + 1, last));
+                            	}
+                            }
                         }
                         block.setResultStep(last);
                     }
@@ -366,7 +373,12 @@ public class ExecutionPlan {
     }
 
     public StepResult<ResultDocument> getResults(ExecutionContext ctx) {
-        return resultStep.getResults(ctx);
+        ctx.getOperationContext().measure.begin("executionPlan.getResults");
+        try {
+            return resultStep.getResults(ctx);
+        } finally {
+            ctx.getOperationContext().measure.end("executionPlan.getResults");
+        }
     }
 
     private List<QueryFieldInfo> getAllQueryFieldInfo(QueryPlan qp) {
@@ -18,10 +18,16 @@
  */
 package com.redhat.lightblue.assoc.ep;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import java.util.concurrent.Future;
@@ -35,8 +41,18 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import com.redhat.lightblue.assoc.BoundValue;
+import com.redhat.lightblue.assoc.QueryFieldInfo;
+import com.redhat.lightblue.metadata.ArrayField;
 import com.redhat.lightblue.metadata.ResolvedReferenceField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.query.BinaryComparisonOperator;
+import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryLogicalOperator;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.ValueComparisonExpression;
 
+import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.Tuples;
 
 /**
@@ -45,6 +61,14 @@ import com.redhat.lightblue.util.Tuples;
  *
  * Input: Result documents from multiple sources Output: List [ ResultDocument
  * ], each element of the list is a ResultDocument from the corresponding source
+ *
+ * If the association queries of more than one source compare the same field
+ * of this entity for equality with a field of the source document, only the
+ * tuples whose documents agree on those values can return results. Then the
+ * source documents are placed into hash tables keyed by those values, and
+ * only the matching tuples are returned. Otherwise, or if some of the
+ * values cannot be converted to the type of the field, all n-tuples are
+ * enumerated.
  */
 public class Join extends Step<JoinTuple> {
 
@@ -87,6 +111,38 @@ public class Join extends Step<JoinTuple> {
             });
         }
 
+        Map<Path, Path>[] joinKeys = getJoinKeys(parentIndex);
+        if (joinKeys != null) {
+            LOGGER.debug("Hash join on {}", Arrays.asList(joinKeys));
+            List<ResultDocument>[] docs = new List[futureResults.length];
+            for (i = 0; i < futureResults.length; i++) {
+                try {
+                    docs[i] = futureResults[i].get().stream().collect(Collectors.toList());
+                } catch (InterruptedException x) {
+                    throw new RuntimeException(x);
+                } catch (ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            if (ctx.hasErrors()) {
+                return StepResult.EMPTY;
+            }
+            Map<Path, Type> keyTypes = getJoinKeyTypes(joinKeys);
+            Iterable<List<ResultDocument>> itr;
+            if (HashJoinIterator.canHash(docs, joinKeys, keyTypes)) {
+                itr = () -> new HashJoinIterator(docs, joinKeys, keyTypes);
+            } else {
+                LOGGER.debug("Join key values cannot be hashed, enumerating tuples");
+                Tuples<ResultDocument> tuples = new Tuples();
+                for (List<ResultDocument> d : docs) {
+                    tuples.add(d::iterator);
+                }
+                itr = tuples::tuples;
+            }
+            return new JoinStream(itr, parentIndex, parentIndex == -1 ? null
+                    : block.getAssociationQueryForEdge(sources[parentIndex].getBlock()).
+                    getReference());
+        }
         Tuples<ResultDocument> tuples = new Tuples();
         i = 0;
         for (Future<StepResult<ResultDocument>> futureResult : futureResults) {
@@ -104,17 +160,118 @@ public class Join extends Step<JoinTuple> {
         if (ctx.hasErrors()) {
             return StepResult.EMPTY;
         }
-        return new JoinStream(tuples, parentIndex, parentIndex == -1 ? null
+        return new JoinStream(tuples::tuples, parentIndex, parentIndex == -1 ? null
                 : block.getAssociationQueryForEdge(sources[parentIndex].getBlock()).
                 getReference());
     }
 
+    /**
+     * Returns the hash join keys for each source, or null if the sources
+     * cannot be hash joined. The key map of a source maps a field of this
+     * entity to the field of the source document whose value it is compared
+     * to. Only the fields compared by more than one source are kept. The
+     * parent document source is not keyed, because its bindings depend on
+     * the slot.
+     */
+    private Map<Path, Path>[] getJoinKeys(int parentIndex) {
+        if (sources.length < 2) {
+            return null;
+        }
+        Map<Path, Path>[] keys = new Map[sources.length];
+        Map<Path, Integer> counts = new HashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            if (i == parentIndex) {
+                keys[i] = new HashMap<>();
+            } else {
+                keys[i] = getEqualityBindings(sources[i].getBlock(),
+                        block.getAssociationQueryForEdge(sources[i].getBlock()));
+                for (Path field : keys[i].keySet()) {
+                    counts.merge(field, 1, Integer::sum);
+                }
+            }
+        }
+        boolean found = false;
+        for (Map<Path, Path> k : keys) {
+            k.keySet().removeIf(field -> counts.get(field) < 2);
+            found |= !k.isEmpty();
+        }
+        return found ? keys : null;
+    }
+
+    /**
+     * Returns the top-level equality comparisons of the association query
+     * between a single-valued field of this entity and a single-valued field
+     * of the source entity
+     */
+    private static Map<Path, Path> getEqualityBindings(ExecutionBlock sourceBlock, AssociationQuery aq) {
+        Map<Path, Path> ret = new HashMap<>();
+        if (aq != null && aq.getQuery() != null) {
+            List<QueryExpression> conjuncts;
+            if (aq.getQuery() instanceof NaryLogicalExpression
+                    && ((NaryLogicalExpression) aq.getQuery()).getOp() == NaryLogicalOperator._and) {
+                conjuncts = ((NaryLogicalExpression) aq.getQuery()).getQueries();
+            } else {
+                conjuncts = Collections.singletonList(aq.getQuery());
+            }
+            for (QueryExpression q : conjuncts) {
+                if (q instanceof ValueComparisonExpression
+                        && ((ValueComparisonExpression) q).getOp() == BinaryComparisonOperator._eq
+                        && ((ValueComparisonExpression) q).getRvalue() instanceof BoundValue) {
+                    Path field = ((ValueComparisonExpression) q).getField();
+                    QueryFieldInfo bound = ((BoundValue) ((ValueComparisonExpression) q).getRvalue()).getFieldInfo();
+                    Path sourceField = bound.getEntityRelativeFieldNameWithContext();
+                    if (field.nAnys() == 0
+                            && sourceField.nAnys() == 0
+                            && bound.getFieldEntity() == sourceBlock.getMetadata()
+                            && !(bound.getFieldMd() instanceof ArrayField)
+                            && isSingleValued(aq, q, field)) {
+                        ret.put(field, sourceField);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns true if the field of this entity in an association query
+     * clause is known, and it is not an array
+     */
+    private static boolean isSingleValued(AssociationQuery aq, QueryExpression clause, Path field) {
+        for (QueryFieldInfo fi : aq.getQueryFieldInfo()) {
+            if (fi.getClause() == clause && fi.getFieldNameInClause().equals(field)) {
+                return fi.getFieldMd().getType() != null && !(fi.getFieldMd() instanceof ArrayField);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the type of each join key field. Values are converted to this
+     * type before hashing, so values of differently typed source fields
+     * match if the backend would match them.
+     */
+    private Map<Path, Type> getJoinKeyTypes(Map<Path, Path>[] joinKeys) {
+        Map<Path, Type> types = new HashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            AssociationQuery aq = block.getAssociationQueryForEdge(sources[i].getBlock());
+            if (aq != null && aq.getQuery() != null) {
+                for (QueryFieldInfo fi : aq.getQueryFieldInfo()) {
+                    if (joinKeys[i].containsKey(fi.getFieldNameInClause())) {
+                        types.putIfAbsent(fi.getFieldNameInClause(), fi.getFieldMd().getType());
+                    }
+                }
+            }
+        }
+        return types;
+    }
+
     private static class JoinStream implements StepResult<JoinTuple> {
-        private final Tuples<ResultDocument> tuples;
+        private final Iterable<List<ResultDocument>> tuples;
         private final int parentIndex;
         private final ResolvedReferenceField parentReference;
 
-        public JoinStream(Tuples<ResultDocument> tuples,
+        public JoinStream(Iterable<List<ResultDocument>> tuples,
                           int parentIndex,
                           ResolvedReferenceField parentReference) {
             this.tuples = tuples;
@@ -124,11 +281,193 @@ public class Join extends Step<JoinTuple> {
 
         @Override
         public Stream<JoinTuple> stream() {
-            Iterable<JoinTuple> itr = () -> new JoinTupleIterator(tuples.tuples(), parentIndex, parentReference);
+            Iterable<JoinTuple> itr = () -> new JoinTupleIterator(tuples.iterator(), parentIndex, parentReference);
             return StreamSupport.stream(itr.spliterator(), false);
         }
     }
 
+    /**
+     * Iterates the document tuples that agree on the join keys. The largest
+     * source is iterated, and the documents of the other sources are placed
+     * into hash tables keyed by the values of the key fields they share with
+     * the sources iterated before them. Sources without shared keys are
+     * enumerated.
+     */
+    static class HashJoinIterator implements Iterator<List<ResultDocument>> {
+        private final List<ResultDocument>[] docs;
+        private final Map<Path, Path>[] keys;
+        private final Map<Path, Type> keyTypes;
+        // Order in which the sources are iterated
+        private final Integer[] order;
+        // For each source, the key fields shared with a source iterated before it
+        private final List<Path>[] probeFields;
+        // For each source and probe field, the source providing the probe value
+        private final int[][] probeSources;
+        private final Map<List<Object>, List<ResultDocument>>[] tables;
+
+        private final List<ResultDocument>[] candidates;
+        private final int[] pos;
+        private final ResultDocument[] current;
+        private int level = 0;
+        private List<ResultDocument> nextTuple;
+
+        HashJoinIterator(List<ResultDocument>[] docs,
+                         Map<Path, Path>[] keys,
+                         Map<Path, Type> keyTypes) {
+            int n = docs.length;
+            this.docs = docs;
+            this.keys = keys;
+            this.keyTypes = keyTypes;
+            order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Integer.compare(docs[y].size(), docs[x].size()));
+            probeFields = new List[n];
+            probeSources = new int[n][];
+            tables = new Map[n];
+            for (int l = 0; l < n; l++) {
+                int src = order[l];
+                List<Path> fields = new ArrayList<>();
+                List<Integer> fieldSources = new ArrayList<>();
+                for (Path field : keys[src].keySet()) {
+                    for (int k = 0; k < l; k++) {
+                        if (keys[order[k]].containsKey(field)) {
+                            fields.add(field);
+                            fieldSources.add(order[k]);
+                            break;
+                        }
+                    }
+                }
+                probeFields[src] = fields;
+                probeSources[src] = fieldSources.stream().mapToInt(Integer::intValue).toArray();
+                if (!fields.isEmpty()) {
+                    Map<List<Object>, List<ResultDocument>> table = new HashMap<>();
+                    for (ResultDocument doc : docs[src]) {
+                        table.computeIfAbsent(getKey(src, fields, doc), x -> new ArrayList<>()).add(doc);
+                    }
+                    tables[src] = table;
+                }
+            }
+            candidates = new List[n];
+            pos = new int[n];
+            current = new ResultDocument[n];
+            candidates[0] = docs[order[0]];
+            pos[0] = -1;
+        }
+
+        /**
+         * Returns true if the key values of all documents can be converted to
+         * the key types. Otherwise, the documents cannot be hash joined.
+         */
+        static boolean canHash(List<ResultDocument>[] docs,
+                               Map<Path, Path>[] keys,
+                               Map<Path, Type> keyTypes) {
+            for (int i = 0; i < docs.length; i++) {
+                for (Map.Entry<Path, Path> key : keys[i].entrySet()) {
+                    Type type = keyTypes.get(key.getKey());
+                    for (ResultDocument doc : docs[i]) {
+                        try {
+                            getKeyValue(type, doc.getDoc().get(key.getValue()));
+                        } catch (RuntimeException e) {
+                            LOGGER.debug("Cannot hash {}: {}", key.getValue(), e);
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Converts a key value to the key type, and normalizes numbers, so
+         * values that compare equal have equal keys
+         *
+         * @throws IllegalArgumentException if the value is an array or an
+         * object
+         */
+        private static Object getKeyValue(Type type, JsonNode node) {
+            if (node == null || node.isNull()) {
+                return null;
+            }
+            if (node.isContainerNode()) {
+                throw new IllegalArgumentException(node.toString());
+            }
+            Object value = type.fromJson(node);
+            if (value instanceof BigDecimal) {
+                BigDecimal d = (BigDecimal) value;
+                return d.signum() == 0 ? BigDecimal.ZERO : d.stripTrailingZeros();
+            } else if (value instanceof Double && (Double) value == 0) {
+                // -0.0 and 0.0 are equal, but not equals()
+                return 0.0;
+            }
+            return value;
+        }
+
+        private Object getKeyValue(Path field, Path sourceField, ResultDocument doc) {
+            return getKeyValue(keyTypes.get(field), doc.getDoc().get(sourceField));
+        }
+
+        private List<Object> getKey(int src, List<Path> fields, ResultDocument doc) {
+            List<Object> key = new ArrayList<>(fields.size());
+            for (Path field : fields) {
+                key.add(getKeyValue(field, keys[src].get(field), doc));
+            }
+            return key;
+        }
+
+        private List<ResultDocument> getCandidates(int src) {
+            if (tables[src] == null) {
+                return docs[src];
+            }
+            List<Path> fields = probeFields[src];
+            List<Object> key = new ArrayList<>(fields.size());
+            for (int i = 0; i < fields.size(); i++) {
+                int k = probeSources[src][i];
+                key.add(getKeyValue(fields.get(i), keys[k].get(fields.get(i)), current[k]));
+            }
+            return tables[src].getOrDefault(key, Collections.emptyList());
+        }
+
+        private List<ResultDocument> seek() {
+            int n = docs.length;
+            while (level >= 0) {
+                int src = order[level];
+                pos[level]++;
+                if (pos[level] >= candidates[level].size()) {
+                    level--;
+                } else {
+                    current[src] = candidates[level].get(pos[level]);
+                    if (level == n - 1) {
+                        return new ArrayList<>(Arrays.asList(current));
+                    }
+                    level++;
+                    candidates[level] = getCandidates(order[level]);
+                    pos[level] = -1;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextTuple == null) {
+                nextTuple = seek();
+            }
+            return nextTuple != null;
+        }
+
+        @Override
+        public List<ResultDocument> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<ResultDocument> ret = nextTuple;
+            nextTuple = null;
+            return ret;
+        }
+    }
+
     /**
      * Converts an iterator over doc tuples to an iterator over join tuples. The
      * difference is that if there is a source block that is a parent document
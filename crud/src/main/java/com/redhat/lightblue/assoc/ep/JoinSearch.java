@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.function.Consumer;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -38,6 +40,8 @@ import com.redhat.lightblue.mediator.OperationContext;
 import com.redhat.lightblue.crud.CRUDFindRequest;
 import com.redhat.lightblue.crud.DocumentStream;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.assoc.CardinalityStatistics;
+import com.redhat.lightblue.assoc.QueryPlanNode;
 
 /**
  * Performs searches based on the n-tuple of result documents obtained from the
@@ -66,7 +70,8 @@ public class JoinSearch extends AbstractSearchStep {
      *
      * When the results are retrieved from the stream, executes a
      * batch of queries, computes results, and streams them to the
-     * caller
+     * caller. The search for the next batch is submitted to the
+     * executor while the current batch is streamed.
      */
     private class BatchQueryIterator implements DocumentStream<ResultDocument> {
         private final int batchSize;
@@ -75,6 +80,8 @@ public class JoinSearch extends AbstractSearchStep {
         private final ArrayList<Consumer<ResultDocument>> listeners=new ArrayList<>();
 
         private DocumentStream<DocCtx> currentIterator;
+        private Future<OperationContext> pendingBatch;
+        private boolean started=false;
         private boolean done=false; // Are we still iterating, or are we done?
         
         public BatchQueryIterator(int batchSize,ExecutionContext ctx) {
@@ -116,6 +123,13 @@ public class JoinSearch extends AbstractSearchStep {
         public void close() {
             if(currentIterator!=null)
                 currentIterator.close();
+            if(pendingBatch!=null&&!pendingBatch.cancel(false)) {
+                OperationContext opctx=await(pendingBatch);
+                if(opctx!=null&&opctx.getDocumentStream()!=null)
+                    opctx.getDocumentStream().close();
+            }
+            pendingBatch=null;
+            done=true;
         }
 
         @Override
@@ -124,27 +138,19 @@ public class JoinSearch extends AbstractSearchStep {
         }
         
         private void retrieveNextBatch() {
+            if(!started) {
+                pendingBatch=submitNextBatch();
+                started=true;
+            }
             do {
-                int n=0;
-                ArrayList<QueryExpression> qBatch=new ArrayList<>(batchSize);
                 if(currentIterator!=null) {
                     currentIterator.close();
                     currentIterator=null;
                 }
-                while(sourceStream.hasNext()&&n<batchSize) {
-                    JoinTuple t=sourceStream.next();
-                    qBatch.addAll(Searches.writeQueriesForJoinTuple(t, block));
-                    n++;
-                }
-                if(!qBatch.isEmpty()) {
-                    QueryExpression q = Searches.combine(NaryLogicalOperator._or, qBatch);
-                    CRUDFindRequest findRequest = new CRUDFindRequest();
-                    findRequest.setQuery(Searches.and(q, query));
-                    findRequest.setProjection(projection);
-                    findRequest.setSort(sort);
-                    findRequest.setFrom(from);
-                    findRequest.setTo(to);
-                    OperationContext opctx = search(ctx, findRequest);
+                if(pendingBatch!=null) {
+                    Future<OperationContext> batch=pendingBatch;
+                    pendingBatch=ctx.hasErrors()?null:submitNextBatch();
+                    OperationContext opctx=await(batch);
                     if(opctx!=null) {
                         currentIterator=opctx.getDocumentStream();
                         if(!currentIterator.hasNext()) {
@@ -156,8 +162,70 @@ public class JoinSearch extends AbstractSearchStep {
                     done=true;
                 }
             } while(!done&&currentIterator==null);
-        }   
-            
+        }
+
+        /**
+         * Reads the next batch of tuples from the source, and submits
+         * the search for it. Returns null if there are no more tuples.
+         */
+        private Future<OperationContext> submitNextBatch() {
+            int n=0;
+            ArrayList<QueryExpression> qBatch=new ArrayList<>(batchSize);
+            while(sourceStream.hasNext()&&n<batchSize) {
+                JoinTuple t=sourceStream.next();
+                qBatch.addAll(Searches.writeQueriesForJoinTuple(t, block));
+                n++;
+            }
+            if(qBatch.isEmpty())
+                return null;
+            // Tuples often bind the same values, so send the distinct values only
+            QueryExpression q = Searches.combine(NaryLogicalOperator._or, Searches.collapseDisjuncts(qBatch));
+            JoinFindRequest findRequest = new JoinFindRequest(n);
+            findRequest.setQuery(Searches.and(q, query));
+            findRequest.setProjection(projection);
+            findRequest.setSort(sort);
+            findRequest.setFrom(from);
+            findRequest.setTo(to);
+            return ctx.getExecutor().submit(() -> search(ctx, findRequest));
+        }
+
+        private OperationContext await(Future<OperationContext> batch) {
+            try {
+                return batch.get();
+            } catch (InterruptedException x) {
+                throw new RuntimeException(x);
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * Find request for a batch of join tuples
+     */
+    private static class JoinFindRequest extends CRUDFindRequest {
+        private static final long serialVersionUID = 1l;
+
+        private final int numTuples;
+
+        public JoinFindRequest(int numTuples) {
+            this.numTuples = numTuples;
+        }
+    }
+
+    /**
+     * Records the number of documents returned for each join tuple
+     */
+    @Override
+    protected void recordStatistics(ExecutionContext ctx, CRUDFindRequest req, long resultSize) {
+        CardinalityStatistics stats = getStatistics(ctx);
+        if (stats != null && req instanceof JoinFindRequest) {
+            List<String> sourceEntities = new ArrayList<>();
+            for (QueryPlanNode x : block.getQueryPlanNode().getSources()) {
+                sourceEntities.add(x.getMetadata().getName());
+            }
+            stats.recordJoin(block.getMetadata().getName(), sourceEntities, ((JoinFindRequest) req).numTuples, resultSize);
+        }
     }
 
     @Override
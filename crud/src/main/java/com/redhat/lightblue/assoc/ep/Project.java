@@ -18,12 +18,17 @@
  */
 package com.redhat.lightblue.assoc.ep;
 
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.ParallelDocumentStream;
 import com.redhat.lightblue.eval.Projector;
 import com.redhat.lightblue.query.Projection;
 
@@ -45,14 +50,34 @@ public class Project extends Step<ResultDocument> {
 
     @Override
     public StepResult<ResultDocument> getResults(ExecutionContext ctx) {
+        Factory factory = ctx.getOperationContext().getFactory();
+        int chunkSize = factory == null ? 0 : factory.getResultChunkSize();
+        if (chunkSize > 0 && ctx.getExecutor() != null) {
+            // Project chunks of documents in parallel, preserving order
+            int parallelism = factory.getResultProcessingParallelism();
+            return new StepResultWrapper<ResultDocument>(source.getStep().getResults(ctx)) {
+                @Override
+                public Stream<ResultDocument> stream() {
+                    Stream<ResultDocument> s = super.stream();
+                    ParallelDocumentStream<ResultDocument, ResultDocument> projected
+                            = new ParallelDocumentStream<>(s.iterator(), doc -> project(doc), ctx.getExecutor(), chunkSize, parallelism, s::close);
+                    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(projected, Spliterator.ORDERED), false).
+                            onClose(projected::close);
+                }
+            };
+        }
         return new StepResultWrapper<ResultDocument>(source.getStep().getResults(ctx)) {
             @Override
             public Stream<ResultDocument> stream() {
-                return super.stream().map(doc -> new ResultDocument(p.project(doc.getDoc(), JsonNodeFactory.instance), doc));
+                return super.stream().map(doc -> project(doc));
             }
         };
     }
 
+    private ResultDocument project(ResultDocument doc) {
+        return new ResultDocument(p.project(doc.getDoc(), JsonNodeFactory.instance), doc);
+    }
+
     @Override
     public JsonNode toJson() {
         ObjectNode o = JsonNodeFactory.instance.objectNode();
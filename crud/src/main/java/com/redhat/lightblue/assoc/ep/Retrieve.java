@@ -27,7 +27,8 @@ import com.redhat.lightblue.crud.CRUDFindRequest;
 
 /**
  * Performs search for doc retrieval. Provides the 'setQuery' API to modify
- * search criteria for every retrieval
+ * search criteria for every retrieval. The search query is kept per thread,
+ * so batches of the same block can be retrieved concurrently.
  *
  * Input: n/a Output: ResultDocument
  */
@@ -35,19 +36,27 @@ public class Retrieve extends Search {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Retrieve.class);
 
-    private QueryExpression searchQuery;
+    private final ThreadLocal<QueryExpression> searchQuery = new ThreadLocal<>();
 
     public Retrieve(ExecutionBlock block) {
         super(block);
     }
 
+    /**
+     * Sets the search query for the retrievals run by the calling
+     * thread. Setting it to null clears it.
+     */
     public void setQuery(QueryExpression q) {
-        this.searchQuery = q;
+        if (q == null) {
+            searchQuery.remove();
+        } else {
+            searchQuery.set(q);
+        }
     }
 
     protected CRUDFindRequest buildFindRequest(ExecutionContext ctx) {
         CRUDFindRequest findRequest = new CRUDFindRequest();
-        findRequest.setQuery(Searches.and(query, searchQuery));
+        findRequest.setQuery(Searches.and(query, searchQuery.get()));
         LOGGER.debug("Building find request with q={}",
                 findRequest.getQuery());
         findRequest.setProjection(projection);
@@ -56,4 +65,16 @@ public class Retrieve extends Search {
         findRequest.setTo(to);
         return findRequest;
     }
+
+    /**
+     * If there is a search query, this step retrieves the documents found
+     * by a search, so the result size is not recorded for the fields of
+     * this step
+     */
+    @Override
+    protected void recordStatistics(ExecutionContext ctx, CRUDFindRequest req, long resultSize) {
+        if (searchQuery.get() == null) {
+            super.recordStatistics(ctx, req, resultSize);
+        }
+    }
 }
@@ -20,10 +20,13 @@ package com.redhat.lightblue.assoc.ep;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Arrays;
+import java.util.Set;
 
 import java.util.stream.Collectors;
 
@@ -34,10 +37,16 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import com.redhat.lightblue.assoc.BindQuery;
+import com.redhat.lightblue.query.BinaryComparisonOperator;
 import com.redhat.lightblue.query.QueryExpression;
 import com.redhat.lightblue.query.NaryLogicalExpression;
 import com.redhat.lightblue.query.NaryLogicalOperator;
+import com.redhat.lightblue.query.NaryRelationalOperator;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
 
+import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.Tuples;
 
 /**
@@ -113,6 +122,52 @@ public final class Searches {
         return ret;
     }
 
+    /**
+     * Collapses a list of queries that will be combined with OR. Equality
+     * and $in comparisons of a field with non-null values are merged into a
+     * single $in comparison for that field containing the distinct values.
+     * All other queries are deduplicated. The returned list contains one
+     * query for each field, followed by the distinct remaining queries.
+     */
+    public static List<QueryExpression> collapseDisjuncts(List<QueryExpression> queries) {
+        Map<Path, Set<Value>> fieldValues = new LinkedHashMap<>();
+        Map<String, QueryExpression> others = new LinkedHashMap<>();
+        for (QueryExpression q : queries) {
+            if (q instanceof ValueComparisonExpression
+                    && ((ValueComparisonExpression) q).getOp() == BinaryComparisonOperator._eq
+                    && isNotNull(((ValueComparisonExpression) q).getRvalue())) {
+                ValueComparisonExpression vce = (ValueComparisonExpression) q;
+                fieldValues.computeIfAbsent(vce.getField(), f -> new LinkedHashSet<>()).add(vce.getRvalue());
+            } else if (q instanceof NaryValueRelationalExpression
+                    && ((NaryValueRelationalExpression) q).getOp() == NaryRelationalOperator._in
+                    && ((NaryValueRelationalExpression) q).getValues().stream().allMatch(Searches::isNotNull)) {
+                NaryValueRelationalExpression nvre = (NaryValueRelationalExpression) q;
+                fieldValues.computeIfAbsent(nvre.getField(), f -> new LinkedHashSet<>()).addAll(nvre.getValues());
+            } else if (q != null) {
+                others.putIfAbsent(q.toString(), q);
+            }
+        }
+        List<QueryExpression> ret = new ArrayList<>(fieldValues.size() + others.size());
+        for (Map.Entry<Path, Set<Value>> entry : fieldValues.entrySet()) {
+            if (entry.getValue().size() == 1) {
+                ret.add(new ValueComparisonExpression(entry.getKey(),
+                        BinaryComparisonOperator._eq,
+                        entry.getValue().iterator().next()));
+            } else {
+                ret.add(new NaryValueRelationalExpression(entry.getKey(),
+                        NaryRelationalOperator._in,
+                        new ArrayList<>(entry.getValue())));
+            }
+        }
+        ret.addAll(others.values());
+        LOGGER.debug("Collapsed {} queries to {}", queries.size(), ret.size());
+        return ret;
+    }
+
+    private static boolean isNotNull(Value v) {
+        return v != null && v.getValue() != null;
+    }
+
     /**
      * Combines queries with AND. Queries can be null, but at least one of them
      * must be non-null
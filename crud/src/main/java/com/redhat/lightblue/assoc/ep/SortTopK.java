@@ -0,0 +1,184 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc.ep;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.query.Sort;
+
+import com.redhat.lightblue.eval.SortFieldInfo;
+import com.redhat.lightblue.eval.SortableItem;
+
+/**
+ * Sorts the result set, and returns only the requested page of it. This is
+ * SortResults followed by Skip and Limit, but if the page ends within the
+ * first <code>maxHeapSize</code> documents, it keeps only the top
+ * <code>skip+limit</code> documents in a bounded heap instead of sorting the
+ * complete result set. Deeper pages are fully sorted. Documents with equal
+ * sort keys are returned in the order they are received, same as
+ * SortResults.
+ *
+ * Input: Step<ResultDocument>
+ * Output: Step<ResultDocument>
+ */
+public class SortTopK extends Step<ResultDocument> {
+
+    private final SortFieldInfo[] sortFields;
+    private final Sort sort;
+    private final Source<ResultDocument> source;
+    private final int skip;
+    private final Integer limit;
+    private final int maxHeapSize;
+
+    /**
+     * @param block The execution block
+     * @param source The source step
+     * @param sort The sort specification
+     * @param skip Number of sorted documents to skip
+     * @param limit Maximum number of documents to return, or null for no limit
+     * @param maxHeapSize Maximum number of documents to keep in the heap.
+     * If skip+limit is larger than this, the result set is fully sorted
+     */
+    public SortTopK(ExecutionBlock block,
+                    Source<ResultDocument> source,
+                    Sort sort,
+                    int skip,
+                    Integer limit,
+                    int maxHeapSize) {
+        super(block);
+        this.source = source;
+        this.sort = sort;
+        this.skip = skip;
+        this.limit = limit;
+        this.maxHeapSize = maxHeapSize;
+        this.sortFields = SortFieldInfo.buildSortFields(sort, block.getMetadata());
+    }
+
+    /**
+     * Returns true if the requested page is selected using a bounded heap
+     */
+    public boolean isBounded() {
+        return limit != null && (long) skip + limit <= maxHeapSize;
+    }
+
+    @Override
+    public StepResult<ResultDocument> getResults(ExecutionContext ctx) {
+        return new StepResultWrapper<ResultDocument>(source.getStep().getResults(ctx)) {
+            @Override
+            public Stream<ResultDocument> stream() {
+                if (isBounded()) {
+                    return top(super.stream(), skip + limit).stream().skip(skip);
+                } else {
+                    Stream<ResultDocument> s = super.stream().
+                            map(d -> new SortableDoc(d, sortFields, 0)).
+                            sorted().
+                            map(d -> d.getDoc()).
+                            skip(skip);
+                    return limit == null ? s : s.limit(limit);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the first k documents of the stream in sorted order. The heap
+     * keeps the largest of the current top k documents at its head, so a
+     * new document either replaces the head, or it is dropped.
+     */
+    private List<ResultDocument> top(Stream<ResultDocument> docs, int k) {
+        if (k <= 0) {
+            docs.forEach(d -> {});
+            return Collections.emptyList();
+        }
+        Comparator<SortableDoc> cmp = SortTopK::compare;
+        PriorityQueue<SortableDoc> heap = new PriorityQueue<>(Math.min(k, 1024), cmp.reversed());
+        long[] seq = new long[1];
+        docs.forEach(d -> {
+            SortableDoc doc = new SortableDoc(d, sortFields, seq[0]++);
+            if (heap.size() < k) {
+                heap.add(doc);
+            } else if (compare(doc, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(doc);
+            }
+        });
+        List<SortableDoc> sorted = new ArrayList<>(heap);
+        sorted.sort(cmp);
+        List<ResultDocument> ret = new ArrayList<>(sorted.size());
+        for (SortableDoc d : sorted) {
+            ret.add(d.getDoc());
+        }
+        return ret;
+    }
+
+    /**
+     * Compares the sort keys of two documents, and if they are equal,
+     * their arrival order
+     */
+    private static int compare(SortableDoc d1, SortableDoc d2) {
+        int result = d1.compareTo(d2);
+        return result == 0 ? Long.compare(d1.seq, d2.seq) : result;
+    }
+
+    private static class SortableDoc extends SortableItem {
+        private final ResultDocument doc;
+        private final long seq;
+
+        public SortableDoc(ResultDocument doc, SortFieldInfo[] fields, long seq) {
+            super(doc.getDoc().getRoot(), fields);
+            this.doc = doc;
+            this.seq = seq;
+        }
+
+        public ResultDocument getDoc() {
+            return doc;
+        }
+    }
+
+    private ObjectNode toJson(JsonNode sourceJson) {
+        ObjectNode o = JsonNodeFactory.instance.objectNode();
+        o.set("sort", sort.toJson());
+        o.set("skip", JsonNodeFactory.instance.numberNode(skip));
+        if (limit != null) {
+            o.set("limit", JsonNodeFactory.instance.numberNode(limit));
+        }
+        o.set("bounded", JsonNodeFactory.instance.booleanNode(isBounded()));
+        o.set("source", sourceJson);
+        return o;
+    }
+
+    @Override
+    public JsonNode toJson() {
+        return toJson(source.getStep().toJson());
+    }
+
+    @Override
+    public JsonNode explain(ExecutionContext ctx) {
+        return toJson(source.getStep().explain(ctx));
+    }
+}
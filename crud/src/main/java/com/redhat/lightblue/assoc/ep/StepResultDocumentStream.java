@@ -15,9 +15,18 @@ public class StepResultDocumentStream implements DocumentStream<DocCtx> {
 
     private final Iterator<DocCtx> itr;
     private final ArrayList<Consumer<DocCtx>> listeners=new ArrayList<>();
+    private final Runnable onClose;
 
     public StepResultDocumentStream(StepResult<DocCtx> result) {
+        this(result,null);
+    }
+
+    /**
+     * Constructs a document stream that calls onClose when the stream is closed
+     */
+    public StepResultDocumentStream(StepResult<DocCtx> result,Runnable onClose) {
         this.itr=result.stream().iterator();
+        this.onClose=onClose;
     }
 
     @Override
@@ -34,7 +43,10 @@ public class StepResultDocumentStream implements DocumentStream<DocCtx> {
     }
 
     @Override
-    public void close() {}
+    public void close() {
+        if(onClose!=null)
+            onClose.run();
+    }
 
     @Override
     public void addListener(Consumer<DocCtx> listener) {
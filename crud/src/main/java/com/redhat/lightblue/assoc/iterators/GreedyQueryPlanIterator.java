@@ -0,0 +1,226 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc.iterators;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.assoc.QueryPlan;
+import com.redhat.lightblue.assoc.QueryPlanIterator;
+import com.redhat.lightblue.assoc.QueryPlanNode;
+import com.redhat.lightblue.assoc.QueryPlanScorer;
+
+/**
+ * Query plan iterator that searches the plans greedily using the scorer,
+ * instead of enumerating all 2^edges plans.
+ *
+ * The search first tries every node as the single source of the plan, with
+ * all edges directed away from it, and moves to the best of those. Then it
+ * repeatedly evaluates all single edge flips, and moves to the best flip if
+ * it improves the score. Every plan returned by this iterator is strictly
+ * better than the previous one, so the iteration stops when there are no
+ * improving flips. The number of plans scored is proportional to
+ * nodes+edges*improvements.
+ *
+ * If the plan has no more than exhaustiveLimit edges, all plans are
+ * enumerated using BruteForceQueryPlanIterator.
+ */
+public class GreedyQueryPlanIterator implements QueryPlanIterator, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GreedyQueryPlanIterator.class);
+
+    public static final int DEFAULT_EXHAUSTIVE_LIMIT = 6;
+
+    private final QueryPlanScorer scorer;
+    private final int exhaustiveLimit;
+
+    private QueryPlan qp;
+    // Edges in their initial direction, edges[i][0] -> edges[i][1]
+    private QueryPlanNode[][] edges;
+    private Map<QueryPlanNode, List<QueryPlanNode[]>> adjacency;
+    private BruteForceQueryPlanIterator exhaustive;
+    private boolean rerooted;
+    private Comparable currentScore;
+
+    /**
+     * Constructs a greedy iterator using the scorer. The scorer should be the
+     * same scorer instance passed to the query plan chooser.
+     */
+    public GreedyQueryPlanIterator(QueryPlanScorer scorer) {
+        this(scorer, DEFAULT_EXHAUSTIVE_LIMIT);
+    }
+
+    /**
+     * @param scorer The scorer used to evaluate plans
+     * @param exhaustiveLimit If the plan has at most this many edges, all
+     * plans are enumerated
+     */
+    public GreedyQueryPlanIterator(QueryPlanScorer scorer, int exhaustiveLimit) {
+        this.scorer = scorer;
+        this.exhaustiveLimit = exhaustiveLimit;
+    }
+
+    private void findEdges(List<QueryPlanNode[]> l, QueryPlanNode from) {
+        for (QueryPlanNode to : from.getDestinations()) {
+            l.add(new QueryPlanNode[]{from, to});
+            findEdges(l, to);
+        }
+    }
+
+    @Override
+    public void reset(QueryPlan qp) {
+        this.qp = qp;
+        List<QueryPlanNode[]> edgeList = new ArrayList<>(16);
+        for (QueryPlanNode x : qp.getSources()) {
+            findEdges(edgeList, x);
+        }
+        edges = edgeList.toArray(new QueryPlanNode[edgeList.size()][]);
+        adjacency = new HashMap<>();
+        for (QueryPlanNode[] edge : edges) {
+            adjacency.computeIfAbsent(edge[0], k -> new ArrayList<>()).add(edge);
+            adjacency.computeIfAbsent(edge[1], k -> new ArrayList<>()).add(edge);
+        }
+        if (edges.length <= exhaustiveLimit) {
+            exhaustive = new BruteForceQueryPlanIterator();
+            exhaustive.reset(qp);
+        } else {
+            exhaustive = null;
+        }
+        rerooted = false;
+        currentScore = null;
+    }
+
+    @Override
+    public boolean next() {
+        if (exhaustive != null) {
+            return exhaustive.next();
+        }
+        if (!rerooted) {
+            rerooted = true;
+            if (reroot()) {
+                return true;
+            }
+        }
+        return improve();
+    }
+
+    private static boolean isBetter(Comparable score, Comparable ref) {
+        return score != null && (ref == null || score.compareTo(ref) < 0);
+    }
+
+    /**
+     * Moves the plan to the best single-source plan if it is better than the
+     * initial plan
+     */
+    private boolean reroot() {
+        currentScore = scorer.score(qp);
+        QueryPlanNode bestRoot = null;
+        Comparable bestScore = currentScore;
+        for (QueryPlanNode node : qp.getAllNodes()) {
+            orient(node);
+            Comparable score = scorer.score(qp);
+            if (isBetter(score, bestScore)) {
+                bestScore = score;
+                bestRoot = node;
+            }
+        }
+        if (bestRoot == null) {
+            restore();
+            return false;
+        } else {
+            LOGGER.debug("Best single source:{}", bestRoot);
+            orient(bestRoot);
+            currentScore = bestScore;
+            return true;
+        }
+    }
+
+    /**
+     * Moves the plan to the best improving single edge flip. If there is
+     * none, restores the initial plan and returns false.
+     */
+    private boolean improve() {
+        QueryPlanNode[] bestEdge = null;
+        Comparable bestScore = currentScore;
+        for (QueryPlanNode[] edge : edges) {
+            qp.flip(edge[0], edge[1]);
+            Comparable score = scorer.score(qp);
+            if (isBetter(score, bestScore)) {
+                bestScore = score;
+                bestEdge = edge;
+            }
+            qp.flip(edge[0], edge[1]);
+        }
+        if (bestEdge == null) {
+            restore();
+            return false;
+        } else {
+            qp.flip(bestEdge[0], bestEdge[1]);
+            currentScore = bestScore;
+            return true;
+        }
+    }
+
+    /**
+     * Directs all edges away from root
+     */
+    private void orient(QueryPlanNode root) {
+        Set<QueryPlanNode> visited = new HashSet<>();
+        ArrayDeque<QueryPlanNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        visited.add(root);
+        while (!queue.isEmpty()) {
+            QueryPlanNode from = queue.remove();
+            List<QueryPlanNode[]> incident = adjacency.get(from);
+            if (incident != null) {
+                for (QueryPlanNode[] edge : incident) {
+                    QueryPlanNode to = edge[0] == from ? edge[1] : edge[0];
+                    if (visited.add(to)) {
+                        if (!qp.isDirectedConnected(from, to)) {
+                            qp.flip(from, to);
+                        }
+                        queue.add(to);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the plan to its initial state
+     */
+    private void restore() {
+        for (QueryPlanNode[] edge : edges) {
+            if (!qp.isDirectedConnected(edge[0], edge[1])) {
+                qp.flip(edge[0], edge[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc.qrew;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.query.ArrayContainsExpression;
+import com.redhat.lightblue.query.ArrayMatchExpression;
+import com.redhat.lightblue.query.FieldComparisonExpression;
+import com.redhat.lightblue.query.NaryFieldRelationalExpression;
+import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryLogicalOperator;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.RegexMatchExpression;
+import com.redhat.lightblue.query.UnaryLogicalExpression;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+import com.redhat.lightblue.util.BoundedCache;
+
+/**
+ * Caches the conjunctive normal form of queries computed by a
+ * QueryRewriter.
+ *
+ * The values of a query are replaced with parameters, and the resulting
+ * skeleton is rewritten and split into its conjuncts once. Later queries
+ * with the same skeleton bind their own values to the cached conjuncts
+ * without running the rewrite rules. A parameter for a list of values
+ * stays a single list element during rewriting, and it is expanded into
+ * the values when bound, so queries with lists of different lengths share
+ * the same skeleton.
+ *
+ * The rewrite rules do not depend on the values, except for removing
+ * duplicate values, so the bound conjuncts are equivalent to the
+ * conjuncts of the rewritten query.
+ */
+public final class QueryRewriteCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryRewriteCache.class);
+
+    private final QueryRewriter rewriter;
+    private final BoundedCache<String, List<QueryExpression>> cache;
+
+    /**
+     * A placeholder for a query value or a list of query values
+     */
+    private static final class Parameter extends Value {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+
+        public Parameter(int index) {
+            super(null);
+            this.index = index;
+        }
+
+        @Override
+        public JsonNode toJson() {
+            ObjectNode node = getFactory().objectNode();
+            node.put("$parameter", index);
+            return node;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Parameter && ((Parameter) obj).index == index;
+        }
+    }
+
+    /**
+     * @param rewriter The query rewriter
+     * @param maxEntries Maximum number of cached skeletons
+     */
+    public QueryRewriteCache(QueryRewriter rewriter, int maxEntries) {
+        this.rewriter = rewriter;
+        this.cache = new BoundedCache<>(maxEntries);
+    }
+
+    /**
+     * Rewrites the query in its conjunctive normal form, and returns the
+     * conjuncts. If the rewritten query is not an $and expression, the
+     * returned list contains only the rewritten query.
+     */
+    public List<QueryExpression> getConjuncts(QueryExpression q) {
+        List<Object> parameters = new ArrayList<>();
+        QueryExpression skeleton = parameterize(q, parameters);
+        if (skeleton == null) {
+            return split(rewriter.rewrite(q));
+        }
+        List<QueryExpression> conjuncts = cache.computeIfAbsent(skeleton.toString(), key -> {
+            LOGGER.debug("Rewriting {}", key);
+            return Collections.unmodifiableList(split(rewriter.rewrite(skeleton)));
+        });
+        List<QueryExpression> ret = new ArrayList<>(conjuncts.size());
+        for (QueryExpression c : conjuncts) {
+            ret.add(bind(c, parameters));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of cached skeletons
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private static List<QueryExpression> split(QueryExpression cnf) {
+        if (cnf instanceof NaryLogicalExpression
+                && ((NaryLogicalExpression) cnf).getOp() == NaryLogicalOperator._and) {
+            return new ArrayList<>(((NaryLogicalExpression) cnf).getQueries());
+        } else {
+            List<QueryExpression> list = new ArrayList<>(1);
+            list.add(cnf);
+            return list;
+        }
+    }
+
+    /**
+     * Returns a copy of the query with its values replaced by parameters,
+     * and adds the values to the parameter list. Returns null if the query
+     * contains an unrecognized expression.
+     */
+    private static QueryExpression parameterize(QueryExpression q, List<Object> parameters) {
+        if (q instanceof ValueComparisonExpression) {
+            ValueComparisonExpression x = (ValueComparisonExpression) q;
+            return new ValueComparisonExpression(x.getField(), x.getOp(), newParameter(x.getRvalue(), parameters));
+        } else if (q instanceof NaryValueRelationalExpression) {
+            NaryValueRelationalExpression x = (NaryValueRelationalExpression) q;
+            return new NaryValueRelationalExpression(x.getField(), x.getOp(), newListParameter(x.getValues(), parameters));
+        } else if (q instanceof ArrayContainsExpression) {
+            ArrayContainsExpression x = (ArrayContainsExpression) q;
+            return new ArrayContainsExpression(x.getArray(), x.getOp(), newListParameter(x.getValues(), parameters));
+        } else if (q instanceof FieldComparisonExpression
+                || q instanceof NaryFieldRelationalExpression
+                || q instanceof RegexMatchExpression) {
+            return q;
+        } else if (q instanceof UnaryLogicalExpression) {
+            UnaryLogicalExpression x = (UnaryLogicalExpression) q;
+            QueryExpression nested = parameterize(x.getQuery(), parameters);
+            return nested == null ? null : new UnaryLogicalExpression(x.getOp(), nested);
+        } else if (q instanceof NaryLogicalExpression) {
+            NaryLogicalExpression x = (NaryLogicalExpression) q;
+            List<QueryExpression> list = new ArrayList<>(x.getQueries().size());
+            for (QueryExpression nested : x.getQueries()) {
+                QueryExpression t = parameterize(nested, parameters);
+                if (t == null) {
+                    return null;
+                }
+                list.add(t);
+            }
+            return new NaryLogicalExpression(x.getOp(), list);
+        } else if (q instanceof ArrayMatchExpression) {
+            ArrayMatchExpression x = (ArrayMatchExpression) q;
+            QueryExpression nested = parameterize(x.getElemMatch(), parameters);
+            return nested == null ? null : new ArrayMatchExpression(x.getArray(), nested);
+        }
+        return null;
+    }
+
+    private static Value newParameter(Value value, List<Object> parameters) {
+        parameters.add(value);
+        return new Parameter(parameters.size() - 1);
+    }
+
+    private static List<Value> newListParameter(List<Value> values, List<Object> parameters) {
+        parameters.add(values);
+        List<Value> list = new ArrayList<>(1);
+        list.add(new Parameter(parameters.size() - 1));
+        return list;
+    }
+
+    /**
+     * Returns a copy of the skeleton with the parameters replaced by their
+     * values
+     */
+    private static QueryExpression bind(QueryExpression q, List<Object> parameters) {
+        if (q instanceof ValueComparisonExpression) {
+            ValueComparisonExpression x = (ValueComparisonExpression) q;
+            Value v = x.getRvalue();
+            if (v instanceof Parameter) {
+                v = (Value) parameters.get(((Parameter) v).index);
+            }
+            return new ValueComparisonExpression(x.getField(), x.getOp(), v);
+        } else if (q instanceof NaryValueRelationalExpression) {
+            NaryValueRelationalExpression x = (NaryValueRelationalExpression) q;
+            return new NaryValueRelationalExpression(x.getField(), x.getOp(), bindList(x.getValues(), parameters));
+        } else if (q instanceof ArrayContainsExpression) {
+            ArrayContainsExpression x = (ArrayContainsExpression) q;
+            return new ArrayContainsExpression(x.getArray(), x.getOp(), bindList(x.getValues(), parameters));
+        } else if (q instanceof UnaryLogicalExpression) {
+            UnaryLogicalExpression x = (UnaryLogicalExpression) q;
+            return new UnaryLogicalExpression(x.getOp(), bind(x.getQuery(), parameters));
+        } else if (q instanceof NaryLogicalExpression) {
+            NaryLogicalExpression x = (NaryLogicalExpression) q;
+            List<QueryExpression> list = new ArrayList<>(x.getQueries().size());
+            for (QueryExpression nested : x.getQueries()) {
+                list.add(bind(nested, parameters));
+            }
+            return new NaryLogicalExpression(x.getOp(), list);
+        } else if (q instanceof ArrayMatchExpression) {
+            ArrayMatchExpression x = (ArrayMatchExpression) q;
+            return new ArrayMatchExpression(x.getArray(), bind(x.getElemMatch(), parameters));
+        }
+        return q;
+    }
+
+    private static List<Value> bindList(List<Value> values, List<Object> parameters) {
+        List<Value> list = new ArrayList<>(values.size());
+        for (Value v : values) {
+            if (v instanceof Parameter) {
+                Object p = parameters.get(((Parameter) v).index);
+                if (p instanceof List) {
+                    list.addAll((List<Value>) p);
+                } else {
+                    list.add((Value) p);
+                }
+            } else {
+                list.add(v);
+            }
+        }
+        return list;
+    }
+}
@@ -151,6 +151,13 @@ public class IndexedFieldScorer implements QueryPlanScorer, Serializable {
         return finalCost;
     }
 
+    /**
+     * Returns the estimated cost and result size of a search for the node
+     */
+    protected CostAndSize getCostAndSize(QueryPlanNode node) {
+        return getData(node).getCostAndSize();
+    }
+
     private boolean aboveRoot(QueryPlanNode node,QueryPlanNode root) {
         QueryPlanNode[] sources=root.getSources();
         if(sources!=null) {
@@ -163,7 +170,7 @@ public class IndexedFieldScorer implements QueryPlanScorer, Serializable {
     }
 
     private BigInteger computeRetrievalCost(QueryPlanNode root) {
-        CostAndSize cs = getData(root).getCostAndSize();
+        CostAndSize cs = getCostAndSize(root);
         BigInteger cost = cs.cost;
         // Compute cost to retrieve destination nodes
         for (QueryPlanNode dest : root.getDestinations()) {
@@ -188,7 +195,7 @@ public class IndexedFieldScorer implements QueryPlanScorer, Serializable {
                 // If there is an edge query with a usable index, the cost is low
                 // Otherwise, the cost is dependent on the node query only
                 // We'll assume that if there is an edge query, that is an efficient query
-                BigInteger associationCost = getData(root).getCostAndSize().cost;
+                BigInteger associationCost = getCostAndSize(root).cost;
                 QueryPlanData edgeData = qp.getEdgeData(root, source);
                 if (edgeData != null) {
                     List<Conjunct> conjuncts = edgeData.getConjuncts();
@@ -201,7 +208,7 @@ public class IndexedFieldScorer implements QueryPlanScorer, Serializable {
             cost = totalAssociationCost.multiply(size);
             cost = cost.add(sourceCost);
         }
-        return new CostAndSize(cost, getData(root).getCostAndSize().size);
+        return new CostAndSize(cost, getCostAndSize(root).size);
     }
 
     @Override
@@ -255,7 +262,7 @@ public class IndexedFieldScorer implements QueryPlanScorer, Serializable {
         }
     }
 
-    private IndexedFieldScorerData getData(QueryPlanNode node) {
+    protected IndexedFieldScorerData getData(QueryPlanNode node) {
         try {
             return (IndexedFieldScorerData) node.getData();
         } catch (ClassCastException e) {
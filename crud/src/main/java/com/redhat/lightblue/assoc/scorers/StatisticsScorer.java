@@ -0,0 +1,79 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc.scorers;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.lightblue.assoc.CardinalityStatistics;
+import com.redhat.lightblue.assoc.QueryPlanNode;
+
+/**
+ * Query plan scorer that uses the result cardinalities observed at runtime
+ * instead of fixed result size estimates. The costs of searches are
+ * estimated as in IndexedFieldScorer, using the indexes. The result size of
+ * a node is the observed number of documents returned for each document of
+ * its sources in the plan, if there are sources and they were observed.
+ * Otherwise, it is the observed number of documents returned by searches
+ * on the fields of the node queries. If there are no observations, the
+ * estimate of IndexedFieldScorer is used.
+ */
+public class StatisticsScorer extends IndexedFieldScorer {
+
+    private static final long serialVersionUID = 1l;
+
+    private final transient CardinalityStatistics statistics;
+
+    public StatisticsScorer(CardinalityStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    protected CostAndSize getCostAndSize(QueryPlanNode node) {
+        CostAndSize cs = super.getCostAndSize(node);
+        String entity = node.getMetadata().getName();
+        Double size = null;
+        QueryPlanNode[] sources = node.getSources();
+        if (sources.length > 0) {
+            List<String> sourceEntities = new ArrayList<>(sources.length);
+            for (QueryPlanNode source : sources) {
+                sourceEntities.add(source.getMetadata().getName());
+            }
+            size = statistics.getJoinSize(entity, sourceEntities);
+        }
+        if (size == null) {
+            size = statistics.getSearchSize(entity, getData(node).getIndexableFields());
+        }
+        if (size == null) {
+            return cs;
+        }
+        return new CostAndSize(cs.cost, BigInteger.valueOf(Math.max(1, (long) Math.ceil(size))));
+    }
+
+    /**
+     * Plans are cached separately for every generation of the statistics of
+     * the entities of the plan, so a plan is chosen again when the estimates
+     * of one of its entities change
+     */
+    @Override
+    public String getCacheKey(QueryPlanNode node) {
+        return Long.toString(statistics.getGeneration(node.getMetadata().getName()));
+    }
+}
@@ -61,7 +61,7 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
     private final Set<String> documentVersions=new HashSet<>();
     private boolean updateIfCurrent;
 
-    public final Measure measure=new Measure();
+    public final Measure measure;
 
     /**
      * This is the constructor used to represent the context of an operation
@@ -74,10 +74,11 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
         this.CRUDOperation = op;
         this.entityName = entityName;
         this.factory = f;
+        this.measure = newMeasure(f, entityName, op);
         if(docs!=null) {
         	setInputDocuments(docs.stream().map(x->new DocCtx(x)).collect(Collectors.toList()));
         }
-        this.hookManager = new HookManager(factory.getHookResolver(), factory.getNodeFactory());
+        this.hookManager = new HookManager(factory.getHookResolver(), factory.getNodeFactory(), factory.getAsyncHookDispatcher());
         this.callerRoles = new HashSet<>();
         this.executionOptions = eo;
     }
@@ -92,6 +93,7 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
         this.CRUDOperation = op;
         this.entityName = entityName;
         this.factory = f;
+        this.measure = newMeasure(f, entityName, op);
         if(docs!=null) {
         	setInputDocuments(docs.stream().map(x->new DocCtx(x)).collect(Collectors.toList()));
         }
@@ -114,12 +116,17 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
         this.CRUDOperation = op;
         this.entityName = entityName;
         this.factory = f;
+        this.measure = newMeasure(f, entityName, op);
         setInputDocuments(docs);
         this.callerRoles = callerRoles;
         this.hookManager = hookManager;
         this.executionOptions = eo;
     }
 
+    private static Measure newMeasure(Factory f, String entityName, CRUDOperation op) {
+        return f == null ? new Measure() : new Measure(f.getMetricsRegistry(), entityName, op == null ? null : op.name().toLowerCase());
+    }
+
     /**
      * If this list is non-empty, then update operations should be
      * performed only if document versions are unchanged
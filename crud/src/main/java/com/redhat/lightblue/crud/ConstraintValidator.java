@@ -22,6 +22,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,11 +41,13 @@ import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.metadata.FieldConstraint;
 import com.redhat.lightblue.metadata.EntityConstraint;
-import com.redhat.lightblue.metadata.Field;
-import com.redhat.lightblue.metadata.FieldCursor;
-import com.redhat.lightblue.metadata.SimpleArrayElement;
-import com.redhat.lightblue.metadata.ResolvedReferenceField;
 
+/**
+ * Validates documents using the constraints of an entity. The
+ * constraints are checked using a ValidationPlan compiled for the
+ * entity metadata, so the field tree is not walked for every
+ * document.
+ */
 public class ConstraintValidator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConstraintValidator.class);
@@ -50,6 +55,7 @@ public class ConstraintValidator {
     private final Registry<String, FieldConstraintChecker> fRegistry;
     private final Registry<String, EntityConstraintChecker> eRegistry;
     private final EntityMetadata md;
+    private final ValidationPlan plan;
 
     private final Map<JsonDoc, List<Error>> docErrors = new HashMap<>();
     private final List<Error> errors = new ArrayList<>();
@@ -60,13 +66,22 @@ public class ConstraintValidator {
     private Path currentFieldPath;
     private FieldConstraint currentFieldConstraint;
     private EntityConstraint currentEntityConstraint;
+    // Set in a chunk validator if validation of the chunk fails
+    private RuntimeException chunkFailure;
 
     protected ConstraintValidator(Registry<String, FieldConstraintChecker> r,
                                   Registry<String, EntityConstraintChecker> e,
                                   EntityMetadata md) {
+        this(r, e, ValidationPlan.compile(md, r, e));
+    }
+
+    protected ConstraintValidator(Registry<String, FieldConstraintChecker> r,
+                                  Registry<String, EntityConstraintChecker> e,
+                                  ValidationPlan plan) {
         this.fRegistry = r;
         this.eRegistry = e;
-        this.md = md;
+        this.md = plan.getEntityMetadata();
+        this.plan = plan;
     }
 
     public void clearErrors() {
@@ -158,6 +173,80 @@ public class ConstraintValidator {
         LOGGER.debug("validateDocs() complete");
     }
 
+    /**
+     * Validates the documents in chunks of <code>chunkSize</code>
+     * documents using the given executor. Each chunk is validated by a
+     * separate validator sharing the validation plan of this validator,
+     * and the errors of the chunks are collected in document order, so
+     * the errors are the same as if the documents were validated
+     * serially. If validation of a document fails with an exception,
+     * the errors of the documents before it are collected, and the
+     * exception is rethrown.
+     */
+    public void validateDocs(List<? extends JsonDoc> docList, ExecutorService executor, int chunkSize) {
+        if (executor == null || chunkSize <= 0 || docList.size() <= chunkSize || plan.isEmpty()) {
+            validateDocs(docList);
+            return;
+        }
+        currentDocList = docList;
+        currentDoc = null;
+
+        LOGGER.debug("validateDocs() enter with {} docs, chunk size {}", docList.size(), chunkSize);
+        Error.push("validateDocs");
+        try {
+            final List<String> context = Error.getThreadContext();
+            List<Future<ConstraintValidator>> chunks = new ArrayList<>();
+            for (int from = 0; from < docList.size(); from += chunkSize) {
+                final List<? extends JsonDoc> chunk = docList.subList(from, Math.min(docList.size(), from + chunkSize));
+                chunks.add(executor.submit(() -> validateChunk(chunk, context)));
+            }
+            for (Future<ConstraintValidator> chunk : chunks) {
+                ConstraintValidator v;
+                try {
+                    v = chunk.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                docErrors.putAll(v.docErrors);
+                errors.addAll(v.errors);
+                if (v.chunkFailure != null) {
+                    throw v.chunkFailure;
+                }
+            }
+        } catch (Error e) {
+            // rethrow lightblue error
+            throw e;
+        } catch (Exception e) {
+            // throw new Error (preserves current error context)
+            LOGGER.error(e.getMessage(), e);
+            throw Error.get(CrudConstants.ERR_CRUD, e.getMessage());
+        } finally {
+            Error.pop();
+        }
+        LOGGER.debug("validateDocs() complete");
+    }
+
+    /**
+     * Validates a chunk of documents with a new validator using the
+     * error context of the calling thread
+     */
+    private ConstraintValidator validateChunk(List<? extends JsonDoc> chunk, List<String> context) {
+        ConstraintValidator v = new ConstraintValidator(fRegistry, eRegistry, plan);
+        v.currentDocList = currentDocList;
+        List<String> saved = Error.getThreadContext();
+        Error.setThreadContext(context);
+        try {
+            for (JsonDoc doc : chunk) {
+                v.validateDoc(doc);
+            }
+        } catch (RuntimeException e) {
+            v.chunkFailure = e;
+        } finally {
+            Error.setThreadContext(saved);
+        }
+        return v;
+    }
+
     public void validateDoc(JsonDoc doc) {
         currentDoc = doc;
         Error.push("validateDoc");
@@ -166,11 +255,9 @@ public class ConstraintValidator {
             currentFieldConstraint = null;
             currentFieldNode = null;
             currentFieldPath = null;
-            Path currentValuePath = null;
-            JsonNode currentValue = null;
             checkEntityConstraints(doc);
             currentEntityConstraint = null;
-            checkConstraints(doc, currentValuePath, currentValue);
+            checkConstraints(doc);
         } catch (Error e) {
             // rethrow lightblue error
             throw e;
@@ -190,17 +277,16 @@ public class ConstraintValidator {
 
     private void checkEntityConstraints(JsonDoc doc) {
         LOGGER.debug("checking entity constraints");
-        for (EntityConstraint x : md.getConstraints()) {
-            currentEntityConstraint = x;
+        for (ValidationPlan.EntityConstraintStep x : plan.getEntityConstraints()) {
+            currentEntityConstraint = x.constraint;
             String constraintType = currentEntityConstraint.getType();
-            LOGGER.debug("checking entity constraint " + constraintType);
+            LOGGER.debug("checking entity constraint {}", constraintType);
             Error.push(constraintType);
             try {
-                EntityConstraintChecker checker = eRegistry.find(constraintType);
-                if (checker == null) {
+                if (x.checker == null) {
                     throw Error.get(CrudConstants.ERR_NO_CONSTRAINT);
                 }
-                checker.checkConstraint(this, currentEntityConstraint, doc);
+                x.checker.checkConstraint(this, currentEntityConstraint, doc);
             } catch (Error e) {
                 // rethrow lightblue error
                 throw e;
@@ -214,59 +300,37 @@ public class ConstraintValidator {
         }
     }
 
-    private void checkConstraints(JsonDoc doc, Path currentValuePath, JsonNode currentValue) {
+    private void checkConstraints(JsonDoc doc) {
         LOGGER.debug("checking field constraints");
-        FieldCursor cursor = md.getFieldCursor();
-        Path skip=null;
-        while (cursor.next()) {
-            currentFieldNode = cursor.getCurrentNode();
-            currentFieldPath = cursor.getCurrentPath();
-            // Skip any fields reached by crossing entity boundaries
-            if(skip!=null) {
-                if(!currentFieldPath.prefix(skip.numSegments()).equals(skip))
-                    skip=null;
-            }
-            if(skip==null) {
-                if(currentFieldNode instanceof ResolvedReferenceField)
-                    skip=currentFieldNode.getFullPath();
-            } 
-            if(skip==null) {
-                LOGGER.debug("checking field {} for {} - {}", currentFieldPath,currentFieldNode);
-                Error.push(currentFieldPath.toString());
-                try {
-                    List<FieldConstraint> constraints = null;
-                    if (currentFieldNode instanceof Field) {
-                        constraints = ((Field) currentFieldNode).getConstraints();
-                    } else if (currentFieldNode instanceof SimpleArrayElement) {
-                        constraints = ((SimpleArrayElement) currentFieldNode).getConstraints();
-                    }
-                    LOGGER.debug("Constraints:{}",constraints);
-                    if (constraints != null && !constraints.isEmpty()) {
-                        checkFieldConstraints(doc, constraints, currentValuePath, currentValue);
-                    }
-                } catch (Error e) {
-                    // rethrow lightblue error
-                    throw e;
-                } catch (Exception e) {
-                    // throw new Error (preserves current error context)
-                    LOGGER.error(e.getMessage(), e);
-                    throw Error.get(CrudConstants.ERR_CRUD, e.getMessage());
-                } finally {
-                    Error.pop();
-                }
+        for (ValidationPlan.FieldStep field : plan.getFields()) {
+            currentFieldNode = field.node;
+            currentFieldPath = field.path;
+            LOGGER.debug("checking field {}", currentFieldPath);
+            Error.push(field.pathString);
+            try {
+                checkFieldConstraints(doc, field.constraints);
+            } catch (Error e) {
+                // rethrow lightblue error
+                throw e;
+            } catch (Exception e) {
+                // throw new Error (preserves current error context)
+                LOGGER.error(e.getMessage(), e);
+                throw Error.get(CrudConstants.ERR_CRUD, e.getMessage());
+            } finally {
+                Error.pop();
             }
         }
     }
 
-    private void checkFieldConstraints(JsonDoc doc, List<FieldConstraint> constraints, Path currentValuePath, JsonNode currentValue) {
+    private void checkFieldConstraints(JsonDoc doc, List<ValidationPlan.FieldConstraintStep> constraints) {
 
-        for (FieldConstraint x : constraints) {
-            currentFieldConstraint = x;
+        for (ValidationPlan.FieldConstraintStep x : constraints) {
+            currentFieldConstraint = x.constraint;
             String constraintType = currentFieldConstraint.getType();
-            LOGGER.debug("checking constraint " + constraintType);
+            LOGGER.debug("checking constraint {}", constraintType);
             Error.push(constraintType);
             try {
-                FieldConstraintChecker checker = fRegistry.find(constraintType);
+                FieldConstraintChecker checker = x.checker;
                 if (checker == null) {
                     throw Error.get(CrudConstants.ERR_NO_CONSTRAINT);
                 }
@@ -275,7 +339,7 @@ public class ConstraintValidator {
                     checkFieldContraints(doc, (FieldConstraintDocChecker) checker);
                 } else if (checker instanceof FieldConstraintValueChecker) {
                     // Constraint needs to be checked for all the values in the doc
-                    checkValueContraints(doc, (FieldConstraintChecker) checker, currentValuePath, currentValue);
+                    checkValueContraints(doc, checker);
                 }
             } catch (Error e) {
                 // rethrow lightblue error
@@ -298,12 +362,12 @@ public class ConstraintValidator {
                 doc);
     }
 
-    private void checkValueContraints(JsonDoc doc, FieldConstraintChecker checker, Path currentValuePath, JsonNode currentValue) {
+    private void checkValueContraints(JsonDoc doc, FieldConstraintChecker checker) {
         KeyValueCursor<Path, JsonNode> fieldValues = doc.getAllNodes(currentFieldPath);
         while (fieldValues.hasNext()) {
             fieldValues.next();
-            currentValuePath = fieldValues.getCurrentKey();
-            currentValue = fieldValues.getCurrentValue();
+            Path currentValuePath = fieldValues.getCurrentKey();
+            JsonNode currentValue = fieldValues.getCurrentValue();
             Error.push(currentValuePath.toString());
             try {
                 ((FieldConstraintValueChecker) checker).checkConstraint(this,
@@ -329,4 +393,11 @@ public class ConstraintValidator {
     public EntityMetadata getEntityMetadata() {
         return md;
     }
+
+    /**
+     * Returns the validation plan used by this validator
+     */
+    public ValidationPlan getValidationPlan() {
+        return plan;
+    }
 }
@@ -0,0 +1,204 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Parses an insert or save request, and returns the documents in "data" one
+ * at a time.
+ *
+ * The request fields other than "data" are read into an envelope object.
+ * Request fields may follow "data" (the request serializers write "data"
+ * first), so the whole request is read when the parser is constructed: the
+ * tokens of "data" are kept in a token buffer, and each document is parsed
+ * from the buffer only when it is requested. This way the envelope is
+ * complete before the first document is returned, and the request built
+ * from it applies to all batches. The envelope does not contain the "data"
+ * field, so it can be passed to InsertionRequest.fromJson or
+ * SaveRequest.fromJson to build a request without entity data.
+ */
+public class DocRequestParser implements DocumentStream<JsonDoc> {
+
+    private static final String DATA = "data";
+
+    private final JsonParser parser;
+    private final ObjectNode envelope;
+    private final List<Consumer<JsonDoc>> listeners = new ArrayList<>();
+    // Parser for the buffered data field, null if there is no data
+    private JsonParser dataParser;
+    // true if data is an array, and the data parser is in the array
+    private boolean inArray = false;
+    private JsonDoc nextDoc;
+
+    /**
+     * Constructs a parser reading the request from the given parser. The
+     * request is read until the end of the request object.
+     */
+    public DocRequestParser(JsonParser parser, JsonNodeFactory nodeFactory) throws IOException {
+        this.parser = parser;
+        if (parser.getCodec() == null) {
+            ObjectMapper mapper = JsonUtils.getObjectMapper();
+            mapper.setNodeFactory(nodeFactory);
+            parser.setCodec(mapper);
+        }
+        envelope = nodeFactory.objectNode();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw Error.get(CrudConstants.ERR_INVALID_REQUEST, "Expected object");
+        }
+        readRequest();
+        if (dataParser != null) {
+            if (dataParser.nextToken() == JsonToken.START_ARRAY) {
+                inArray = true;
+                readNextElement();
+            } else {
+                nextDoc = new JsonDoc(dataParser.readValueAsTree());
+            }
+        }
+    }
+
+    /**
+     * Constructs a parser reading the request from the given stream
+     */
+    public DocRequestParser(InputStream in, JsonNodeFactory nodeFactory) throws IOException {
+        this(createParser(in, nodeFactory), nodeFactory);
+    }
+
+    private static JsonParser createParser(InputStream in, JsonNodeFactory nodeFactory) throws IOException {
+        ObjectMapper mapper = JsonUtils.getObjectMapper();
+        mapper.setNodeFactory(nodeFactory);
+        return mapper.getFactory().createParser(in);
+    }
+
+    /**
+     * Returns the request fields, without the entity data
+     */
+    public ObjectNode getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * Reads the fields of the request object into the envelope until the end
+     * of the object. The data field is copied into a token buffer.
+     */
+    private void readRequest() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            token = parser.nextToken();
+            if (DATA.equals(name)) {
+                if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                    TokenBuffer buffer = new TokenBuffer(parser);
+                    buffer.copyCurrentStructure(parser);
+                    dataParser = buffer.asParser(parser.getCodec());
+                } else if (token != JsonToken.VALUE_NULL) {
+                    throw Error.get(CrudConstants.ERR_INVALID_REQUEST, DATA);
+                }
+            } else {
+                envelope.set(name, (JsonNode) parser.readValueAsTree());
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw Error.get(CrudConstants.ERR_INVALID_REQUEST, "Unexpected " + token);
+        }
+    }
+
+    /**
+     * Reads the next element of the data array
+     */
+    private void readNextElement() throws IOException {
+        JsonToken token = dataParser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            inArray = false;
+        } else if (token == JsonToken.START_OBJECT) {
+            nextDoc = new JsonDoc(dataParser.readValueAsTree());
+        } else {
+            throw Error.get(CrudConstants.ERR_INVALID_REQUEST, DATA);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextDoc != null;
+    }
+
+    @Override
+    public JsonDoc next() {
+        JsonDoc doc = nextDoc;
+        if (doc == null) {
+            throw new NoSuchElementException();
+        }
+        nextDoc = null;
+        try {
+            if (inArray) {
+                readNextElement();
+            }
+        } catch (IOException e) {
+            throw Error.get(CrudConstants.ERR_INVALID_REQUEST, e.getMessage());
+        }
+        for (Consumer<JsonDoc> c : listeners) {
+            c.accept(doc);
+        }
+        return doc;
+    }
+
+    /**
+     * Returns up to n documents from the stream
+     */
+    public List<JsonDoc> nextBatch(int n) {
+        List<JsonDoc> list = new ArrayList<>(n);
+        while (list.size() < n && hasNext()) {
+            list.add(next());
+        }
+        return list;
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+            if (dataParser != null) {
+                dataParser.close();
+            }
+        } catch (IOException e) {
+            throw Error.get(CrudConstants.ERR_INVALID_REQUEST, e.getMessage());
+        }
+    }
+
+    @Override
+    public void addListener(Consumer<JsonDoc> listener) {
+        listeners.add(listener);
+    }
+}
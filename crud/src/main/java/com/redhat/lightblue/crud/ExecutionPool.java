@@ -0,0 +1,536 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.util.metrics.MetricKey;
+import com.redhat.lightblue.util.metrics.MetricsRegistry;
+import com.redhat.lightblue.util.metrics.Timer;
+
+/**
+ * A bounded thread pool shared by all requests. A request gets its
+ * own session using {@link #newSession(int)}. A session is an
+ * executor service with a parallelism budget: at most that many
+ * tasks of a session run on the pool threads at the same time. The
+ * sessions with pending tasks are served in round-robin order, so a
+ * request with a lot of tasks cannot starve others.
+ *
+ * A thread waiting for a task of a session using Future.get() runs
+ * the pending tasks of that session while it waits. This prevents
+ * deadlocks when tasks wait for other tasks of the same session
+ * while all pool threads are busy.
+ *
+ * The pool metrics can be published to a metrics registry using
+ * {@link #registerMetrics(MetricsRegistry)}.
+ */
+public class ExecutionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionPool.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final ArrayDeque<Session> readySessions = new ArrayDeque<>();
+    // The session of the task the current thread is running
+    private final ThreadLocal<Session> currentSession = new ThreadLocal<>();
+    private final Thread[] threads;
+    private boolean shutdown = false;
+
+    // Metrics, guarded by lock
+    private int queueDepth;
+    private int maxQueueDepth;
+    private int activeTasks;
+    private int openSessions;
+    private long completedTasks;
+    private volatile Timer waitTimer;
+
+    /**
+     * Creates a pool with the given number of threads
+     */
+    public ExecutionPool(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize:" + poolSize);
+        }
+        threads = new Thread[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            threads[i] = new PoolThread(this::work, "lightblue-exec-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Creates a new session that runs at most <code>parallelism</code>
+     * tasks concurrently on the pool threads. Shutting down the session
+     * does not shut down the pool.
+     */
+    public ExecutorService newSession(int parallelism) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Execution pool is shut down");
+            }
+            openSessions++;
+        } finally {
+            lock.unlock();
+        }
+        return new Session(Math.max(1, parallelism));
+    }
+
+    /**
+     * Stops the pool threads after the pending tasks are executed
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers the pool size, queue depth, active task, open session
+     * and completed task gauges, and the timer of the time tasks wait
+     * in the queue, with the registry. The metrics are named
+     * executionPool.&lt;name&gt;.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge(metricKey("poolSize"), this::getPoolSize);
+        registry.gauge(metricKey("queueDepth"), this::getQueueDepth);
+        registry.gauge(metricKey("maxQueueDepth"), this::getMaxQueueDepth);
+        registry.gauge(metricKey("activeTasks"), this::getActiveTaskCount);
+        registry.gauge(metricKey("openSessions"), this::getOpenSessionCount);
+        registry.gauge(metricKey("completedTasks"), this::getCompletedTaskCount);
+        waitTimer = registry.timer(metricKey("wait"));
+    }
+
+    private static MetricKey metricKey(String name) {
+        return new MetricKey(null, "executionPool", name);
+    }
+
+    /**
+     * Returns true if the calling thread is a pool thread. A task
+     * running on a pool thread must not block waiting for other tasks
+     * unless it waits using Future.get() of a session task, because
+     * all pool threads may be waiting.
+     */
+    public static boolean isPoolThread() {
+        return Thread.currentThread() instanceof PoolThread;
+    }
+
+    public int getPoolSize() {
+        return threads.length;
+    }
+
+    /**
+     * Returns the number of tasks waiting to be executed
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queueDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum queue depth observed so far
+     */
+    public int getMaxQueueDepth() {
+        lock.lock();
+        try {
+            return maxQueueDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of session tasks running, on the pool threads
+     * or on threads waiting for a session task
+     */
+    public int getActiveTaskCount() {
+        lock.lock();
+        try {
+            return activeTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of sessions that are not shut down
+     */
+    public int getOpenSessionCount() {
+        lock.lock();
+        try {
+            return openSessions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of session tasks completed, on the pool threads
+     * or on threads waiting for a session task
+     */
+    public long getCompletedTaskCount() {
+        lock.lock();
+        try {
+            return completedTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "poolSize=" + threads.length
+                    + " queueDepth=" + queueDepth
+                    + " maxQueueDepth=" + maxQueueDepth
+                    + " activeTasks=" + activeTasks
+                    + " openSessions=" + openSessions
+                    + " completedTasks=" + completedTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts the session to the end of the ready queue if it has pending
+     * tasks and it is below its parallelism budget. Called with the lock
+     * held.
+     */
+    private void schedule(Session s) {
+        if (!s.ready && !s.tasks.isEmpty() && s.running < s.parallelism) {
+            s.ready = true;
+            readySessions.addLast(s);
+            workAvailable.signal();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Session session;
+            Runnable task;
+            lock.lock();
+            try {
+                while (readySessions.isEmpty() && !shutdown) {
+                    workAvailable.await();
+                }
+                session = readySessions.pollFirst();
+                if (session == null) {
+                    return;
+                }
+                session.ready = false;
+                // A thread waiting on the session may have taken the
+                // budget or the task since the session was scheduled. The
+                // session is scheduled again when that task completes.
+                if (session.running >= session.parallelism) {
+                    continue;
+                }
+                task = session.take();
+                if (task == null) {
+                    continue;
+                }
+                session.running++;
+                activeTasks++;
+                schedule(session);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            currentSession.set(session);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Task failed", e);
+            } finally {
+                currentSession.remove();
+                lock.lock();
+                try {
+                    session.running--;
+                    activeTasks--;
+                    completedTasks++;
+                    schedule(session);
+                    session.changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private class Session extends AbstractExecutorService {
+        private final int parallelism;
+        private final ArrayDeque<QueuedTask> tasks = new ArrayDeque<>();
+        private final Condition changed = lock.newCondition();
+        private int running;
+        private boolean ready;
+        private boolean closed;
+
+        public Session(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public void execute(Runnable r) {
+            lock.lock();
+            try {
+                if (closed || shutdown) {
+                    throw new RejectedExecutionException("Session is shut down");
+                }
+                tasks.addLast(new QueuedTask(r));
+                queueDepth++;
+                if (queueDepth > maxQueueDepth) {
+                    maxQueueDepth = queueDepth;
+                }
+                schedule(this);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Removes the next task from the queue and records the time it
+         * waited. Called with the lock held. Returns null if there are no
+         * pending tasks.
+         */
+        Runnable take() {
+            QueuedTask t = tasks.pollFirst();
+            if (t == null) {
+                return null;
+            }
+            queueDepth--;
+            Timer timer = waitTimer;
+            if (timer != null) {
+                timer.stop(t.queuedAt);
+            }
+            return t.task;
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return new SessionTask<>(this, callable);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return new SessionTask<>(this, runnable, value);
+        }
+
+        /**
+         * Runs the pending tasks of this session until the future is
+         * done. The tasks are counted against the parallelism budget of
+         * the session, and in the pool metrics, as if they were run by a
+         * pool thread. A thread running a task of this session lends the
+         * slot of that task to the tasks it runs while it waits, so the
+         * waiting task cannot be blocked by the budget it already uses.
+         */
+        void helpUntilDone(Future<?> f) throws InterruptedException {
+            boolean ownSlot = currentSession.get() == this;
+            while (!f.isDone()) {
+                Runnable task = null;
+                lock.lock();
+                try {
+                    if (f.isDone()) {
+                        return;
+                    }
+                    if (ownSlot || running < parallelism) {
+                        task = take();
+                    }
+                    if (task == null) {
+                        changed.await();
+                    } else {
+                        if (!ownSlot) {
+                            running++;
+                        }
+                        activeTasks++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (task != null) {
+                    Session previous = currentSession.get();
+                    currentSession.set(this);
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Task failed", e);
+                    } finally {
+                        currentSession.set(previous);
+                        lock.lock();
+                        try {
+                            if (!ownSlot) {
+                                running--;
+                            }
+                            activeTasks--;
+                            completedTasks++;
+                            schedule(this);
+                            changed.signalAll();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            lock.lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    openSessions--;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            lock.lock();
+            try {
+                shutdown();
+                List<Runnable> list = new ArrayList<>(tasks.size());
+                for (QueuedTask t : tasks) {
+                    list.add(t.task);
+                }
+                queueDepth -= tasks.size();
+                tasks.clear();
+                for (Runnable r : list) {
+                    if (r instanceof Future) {
+                        ((Future) r).cancel(false);
+                    }
+                }
+                return list;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            lock.lock();
+            try {
+                return closed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            lock.lock();
+            try {
+                return closed && running == 0 && tasks.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while (!(closed && running == 0 && tasks.isEmpty())) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = changed.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class PoolThread extends Thread {
+        PoolThread(Runnable r, String name) {
+            super(r, name);
+        }
+    }
+
+    private static final class QueuedTask {
+        private final Runnable task;
+        private final long queuedAt = System.nanoTime();
+
+        QueuedTask(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    private class SessionTask<T> extends FutureTask<T> {
+        private final Session session;
+
+        public SessionTask(Session session, Callable<T> callable) {
+            super(callable);
+            this.session = session;
+        }
+
+        public SessionTask(Session session, Runnable runnable, T value) {
+            super(runnable, value);
+            this.session = session;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            session.helpUntilDone(this);
+            return super.get();
+        }
+
+        @Override
+        protected void done() {
+            lock.lock();
+            try {
+                session.changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
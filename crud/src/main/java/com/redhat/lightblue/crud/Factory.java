@@ -23,20 +23,30 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import com.redhat.lightblue.util.DefaultRegistry;
 import com.redhat.lightblue.util.Resolver;
+import com.redhat.lightblue.util.metrics.DefaultMetricsRegistry;
+import com.redhat.lightblue.util.metrics.MetricsRegistry;
 
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.ValueGenerator;
 
 import com.redhat.lightblue.hooks.HookResolver;
+import com.redhat.lightblue.hooks.AsyncHookDispatcher;
 import com.redhat.lightblue.hooks.CRUDHook;
 
 import com.redhat.lightblue.interceptor.InterceptorManager;
 
+import com.redhat.lightblue.mediator.CompositeMetadataCache;
+import com.redhat.lightblue.eval.FieldAccessCache;
+import com.redhat.lightblue.eval.QueryEvaluatorCache;
+import com.redhat.lightblue.assoc.CardinalityStatistics;
+import com.redhat.lightblue.assoc.QueryPlanCache;
+
 import com.redhat.lightblue.crud.valuegenerators.GeneratorsRegistry;
 import com.redhat.lightblue.extensions.valuegenerator.ValueGeneratorSupport;
 import com.redhat.lightblue.extensions.ExtensionSupport;
@@ -62,6 +72,30 @@ public class Factory implements Serializable {
     private JsonNodeFactory nodeFactory;
     private int bulkParallelExecutions = 3;
     private int memoryIndexThreshold = 16;
+    private int executionPoolSize = 32;
+    private int compositeFindParallelism = 9;
+    private int resultChunkSize = 0;
+    private int resultProcessingParallelism = 4;
+    private int validationChunkSize = 128;
+    private int validationParallelism = 4;
+    private int ingestionBatchSize = 1000;
+    private int queryPlanCacheSize = 1024;
+    private int queryEvaluatorCacheSize = 1024;
+    private int cardinalityStatisticsSize = 4096;
+    private int topKSortLimit = 10000;
+    private int fieldAccessCacheSize = 1024;
+    private int asyncHookQueueCapacity = 0;
+    private int asyncHookBatchSize = 64;
+    private AsyncHookDispatcher.OverflowPolicy asyncHookOverflowPolicy = AsyncHookDispatcher.OverflowPolicy.BLOCK;
+    private transient volatile ExecutionPool executionPool;
+    private transient volatile MetricsRegistry metricsRegistry;
+    private transient volatile AsyncHookDispatcher asyncHookDispatcher;
+    private transient CompositeMetadataCache compositeMetadataCache;
+    private transient FieldAccessCache fieldAccessCache;
+    private transient volatile QueryPlanCache queryPlanCache;
+    private transient volatile QueryEvaluatorCache queryEvaluatorCache;
+    private transient volatile CardinalityStatistics cardinalityStatistics;
+    private transient volatile Map<String, ValidationPlan> validationPlans;
 
     /**
      * Adds a field constraint validator
@@ -71,6 +105,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addFieldConstraintValidator(String name, FieldConstraintChecker checker) {
         fieldConstraintValidatorRegistry.add(name, checker);
+        validationPlans = null;
     }
 
     /**
@@ -81,6 +116,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addFieldConstraintValidators(Resolver<String, FieldConstraintChecker> r) {
         fieldConstraintValidatorRegistry.add(r);
+        validationPlans = null;
     }
 
     /**
@@ -91,6 +127,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addEntityConstraintValidator(String name, EntityConstraintChecker checker) {
         entityConstraintValidatorRegistry.add(name, checker);
+        validationPlans = null;
     }
 
     /**
@@ -101,6 +138,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addEntityConstraintValidators(Resolver<String, EntityConstraintChecker> r) {
         entityConstraintValidatorRegistry.add(r);
+        validationPlans = null;
     }
 
     public void setBulkParallelExecutions(int i) {
@@ -118,7 +156,31 @@ public class Factory implements Serializable {
     public ConstraintValidator getConstraintValidator(EntityMetadata md) {
         return new ConstraintValidator(fieldConstraintValidatorRegistry,
                 entityConstraintValidatorRegistry,
-                md);
+                getValidationPlan(md));
+    }
+
+    /**
+     * Returns the validation plan for the given entity metadata. Plans
+     * are compiled once per entity version, and reused as long as the
+     * same entity metadata instance is used for that version.
+     */
+    public ValidationPlan getValidationPlan(EntityMetadata md) {
+        Map<String, ValidationPlan> plans = validationPlans;
+        if (plans == null) {
+            synchronized (this) {
+                if (validationPlans == null) {
+                    validationPlans = new ConcurrentHashMap<>();
+                }
+                plans = validationPlans;
+            }
+        }
+        String key = md.getName() + ":" + (md.getVersion() == null ? null : md.getVersion().getValue());
+        ValidationPlan plan = plans.get(key);
+        if (plan == null || plan.getEntityMetadata() != md) {
+            plan = ValidationPlan.compile(md, fieldConstraintValidatorRegistry, entityConstraintValidatorRegistry);
+            plans.put(key, plan);
+        }
+        return plan;
     }
 
     /**
@@ -227,4 +289,354 @@ public class Factory implements Serializable {
     public void setMemoryIndexThreshold(int memoryIndexThreshold) {
         this.memoryIndexThreshold = memoryIndexThreshold;
     }
+
+    public int getExecutionPoolSize() {
+        return executionPoolSize;
+    }
+
+    /**
+     * Sets the number of threads in the shared execution pool. Has no
+     * effect once the pool is created.
+     */
+    public void setExecutionPoolSize(int executionPoolSize) {
+        this.executionPoolSize = executionPoolSize;
+    }
+
+    public int getCompositeFindParallelism() {
+        return compositeFindParallelism;
+    }
+
+    /**
+     * Sets the maximum number of tasks a single composite find request
+     * can run in parallel on the shared execution pool
+     */
+    public void setCompositeFindParallelism(int compositeFindParallelism) {
+        this.compositeFindParallelism = compositeFindParallelism;
+    }
+
+    public int getResultChunkSize() {
+        return resultChunkSize;
+    }
+
+    /**
+     * Sets the chunk size for parallel result processing. If greater
+     * than 0, the documents read by the backend for a simple entity are
+     * read in chunks of this size on the shared execution pool, ahead of
+     * the response being built, and the function the backend gave to
+     * {@link DocumentStream#map} to project and convert them runs on the
+     * pool threads, so that function must be thread safe. Listeners of
+     * the result stream are still called on the request thread. If 0,
+     * results are processed serially.
+     */
+    public void setResultChunkSize(int resultChunkSize) {
+        this.resultChunkSize = resultChunkSize;
+    }
+
+    public int getResultProcessingParallelism() {
+        return resultProcessingParallelism;
+    }
+
+    /**
+     * Sets the maximum number of result chunks processed in parallel
+     * for a single request
+     */
+    public void setResultProcessingParallelism(int resultProcessingParallelism) {
+        this.resultProcessingParallelism = resultProcessingParallelism;
+    }
+
+    public int getValidationChunkSize() {
+        return validationChunkSize;
+    }
+
+    /**
+     * Sets the chunk size for parallel constraint validation. If greater
+     * than 0, input documents of requests with more than this many
+     * documents are validated in chunks of this size on the shared
+     * execution pool. If 0, documents are validated serially.
+     */
+    public void setValidationChunkSize(int validationChunkSize) {
+        this.validationChunkSize = validationChunkSize;
+    }
+
+    public int getValidationParallelism() {
+        return validationParallelism;
+    }
+
+    /**
+     * Sets the maximum number of document chunks validated in parallel
+     * for a single request
+     */
+    public void setValidationParallelism(int validationParallelism) {
+        this.validationParallelism = validationParallelism;
+    }
+
+    public int getIngestionBatchSize() {
+        return ingestionBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of documents of a streamed insert or save
+     * request that are parsed and processed together
+     */
+    public void setIngestionBatchSize(int ingestionBatchSize) {
+        this.ingestionBatchSize = ingestionBatchSize;
+    }
+
+    public int getQueryPlanCacheSize() {
+        return queryPlanCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of query plans cached for composite
+     * entities. 0 disables the cache. Has no effect once the cache is
+     * created.
+     */
+    public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+        this.queryPlanCacheSize = queryPlanCacheSize;
+    }
+
+    public int getQueryEvaluatorCacheSize() {
+        return queryEvaluatorCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of compiled query evaluators cached for
+     * the association queries of composite entities. 0 disables the
+     * cache. Has no effect once the cache is created.
+     */
+    public void setQueryEvaluatorCacheSize(int queryEvaluatorCacheSize) {
+        this.queryEvaluatorCacheSize = queryEvaluatorCacheSize;
+    }
+
+    public int getCardinalityStatisticsSize() {
+        return cardinalityStatisticsSize;
+    }
+
+    /**
+     * Sets the maximum number of result cardinality estimates collected
+     * from composite searches. 0 disables collecting statistics, and
+     * query plans are chosen using index information only. Has no effect
+     * once the statistics are created.
+     */
+    public void setCardinalityStatisticsSize(int cardinalityStatisticsSize) {
+        this.cardinalityStatisticsSize = cardinalityStatisticsSize;
+    }
+
+    public int getTopKSortLimit() {
+        return topKSortLimit;
+    }
+
+    /**
+     * Sets the largest page end (from+limit) for which sorted and limited
+     * composite find results are selected using a bounded heap. Deeper
+     * pages are fully sorted.
+     */
+    public void setTopKSortLimit(int topKSortLimit) {
+        this.topKSortLimit = topKSortLimit;
+    }
+
+    public int getFieldAccessCacheSize() {
+        return fieldAccessCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of cached inaccessible field sets, one for
+     * each entity version and caller role set. 0 disables caching, the
+     * inaccessible fields are then computed for every request.
+     */
+    public void setFieldAccessCacheSize(int fieldAccessCacheSize) {
+        this.fieldAccessCacheSize = fieldAccessCacheSize;
+    }
+
+    public int getAsyncHookQueueCapacity() {
+        return asyncHookQueueCapacity;
+    }
+
+    /**
+     * Sets the capacity of the queue of each hook for asynchronous hook
+     * dispatch. If greater than 0, hooks other than SynchronousHooks are
+     * called asynchronously. If 0, all hooks are called synchronously
+     * after the operation. Has no effect once the dispatcher is created.
+     */
+    public void setAsyncHookQueueCapacity(int asyncHookQueueCapacity) {
+        this.asyncHookQueueCapacity = asyncHookQueueCapacity;
+    }
+
+    public int getAsyncHookBatchSize() {
+        return asyncHookBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of documents passed to a hook in a single
+     * asynchronous call
+     */
+    public void setAsyncHookBatchSize(int asyncHookBatchSize) {
+        this.asyncHookBatchSize = asyncHookBatchSize;
+    }
+
+    public AsyncHookDispatcher.OverflowPolicy getAsyncHookOverflowPolicy() {
+        return asyncHookOverflowPolicy;
+    }
+
+    /**
+     * Sets what to do when the queue of a hook is full
+     */
+    public void setAsyncHookOverflowPolicy(AsyncHookDispatcher.OverflowPolicy asyncHookOverflowPolicy) {
+        this.asyncHookOverflowPolicy = asyncHookOverflowPolicy;
+    }
+
+    /**
+     * Returns the asynchronous hook dispatcher, or null if hooks are
+     * called synchronously. The dispatcher is created on first access.
+     */
+    public AsyncHookDispatcher getAsyncHookDispatcher() {
+        if (asyncHookQueueCapacity <= 0) {
+            return null;
+        }
+        if (asyncHookDispatcher == null) {
+            synchronized (this) {
+                if (asyncHookDispatcher == null) {
+                    asyncHookDispatcher = new AsyncHookDispatcher(asyncHookQueueCapacity,
+                            asyncHookBatchSize,
+                            asyncHookOverflowPolicy,
+                            getMetricsRegistry());
+                }
+            }
+        }
+        return asyncHookDispatcher;
+    }
+
+    /**
+     * Stops the asynchronous hook dispatcher after the queued hook calls
+     * are processed, and the execution pool after the pending tasks are
+     * run. Call it when the factory is no longer used.
+     */
+    public void shutdown() {
+        AsyncHookDispatcher dispatcher = asyncHookDispatcher;
+        ExecutionPool pool = executionPool;
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the execution pool shared by all requests. The pool is
+     * created on first access, and its metrics are registered with the
+     * metrics registry.
+     */
+    public ExecutionPool getExecutionPool() {
+        if (executionPool == null) {
+            synchronized (this) {
+                if (executionPool == null) {
+                    ExecutionPool pool = new ExecutionPool(executionPoolSize);
+                    pool.registerMetrics(getMetricsRegistry());
+                    executionPool = pool;
+                }
+            }
+        }
+        return executionPool;
+    }
+
+    /**
+     * Returns the query plan cache shared by all requests, or null if
+     * query plans are not cached. The cache is created on first access.
+     */
+    public QueryPlanCache getQueryPlanCache() {
+        if (queryPlanCache == null && queryPlanCacheSize > 0) {
+            synchronized (this) {
+                if (queryPlanCache == null) {
+                    queryPlanCache = new QueryPlanCache(queryPlanCacheSize);
+                }
+            }
+        }
+        return queryPlanCache;
+    }
+
+    /**
+     * Returns the query evaluator cache shared by all requests, or null
+     * if query evaluators are not cached. The cache is created on first
+     * access.
+     */
+    public QueryEvaluatorCache getQueryEvaluatorCache() {
+        if (queryEvaluatorCache == null && queryEvaluatorCacheSize > 0) {
+            synchronized (this) {
+                if (queryEvaluatorCache == null) {
+                    queryEvaluatorCache = new QueryEvaluatorCache(queryEvaluatorCacheSize);
+                }
+            }
+        }
+        return queryEvaluatorCache;
+    }
+
+    /**
+     * Returns the result cardinality statistics shared by all requests, or
+     * null if statistics are not collected. The statistics are created on
+     * first access.
+     */
+    public CardinalityStatistics getCardinalityStatistics() {
+        if (cardinalityStatistics == null && cardinalityStatisticsSize > 0) {
+            synchronized (this) {
+                if (cardinalityStatistics == null) {
+                    cardinalityStatistics = new CardinalityStatistics(cardinalityStatisticsSize);
+                }
+            }
+        }
+        return cardinalityStatistics;
+    }
+
+    /**
+     * Returns the metrics registry operation metrics are recorded
+     * to. If no registry is set, a DefaultMetricsRegistry is created
+     * on first access.
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        if (metricsRegistry == null) {
+            synchronized (this) {
+                if (metricsRegistry == null) {
+                    metricsRegistry = new DefaultMetricsRegistry();
+                }
+            }
+        }
+        return metricsRegistry;
+    }
+
+    /**
+     * Sets the metrics registry. If the execution pool is already
+     * created, its metrics are registered with the new registry as well.
+     */
+    public synchronized void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        if (executionPool != null && metricsRegistry != null) {
+            executionPool.registerMetrics(metricsRegistry);
+        }
+    }
+
+    /**
+     * Returns the cache for composite metadata, or null if composite
+     * metadata is not cached
+     */
+    public CompositeMetadataCache getCompositeMetadataCache() {
+        return compositeMetadataCache;
+    }
+
+    public void setCompositeMetadataCache(CompositeMetadataCache compositeMetadataCache) {
+        this.compositeMetadataCache = compositeMetadataCache;
+    }
+
+    /**
+     * Returns the cache for the fields inaccessible to caller roles, or null
+     * if they are not cached. It is set only if metadata is cached, so cached
+     * entries can be invalidated when metadata changes. Without the cache,
+     * the inaccessible fields are computed for every request.
+     */
+    public FieldAccessCache getFieldAccessCache() {
+        return fieldAccessCache;
+    }
+
+    public void setFieldAccessCache(FieldAccessCache fieldAccessCache) {
+        this.fieldAccessCache = fieldAccessCache;
+    }
 }
@@ -0,0 +1,256 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A document stream that reads and maps the documents of a source
+ * iterator in chunks on an executor, ahead of the consumer.
+ *
+ * Chunks are read from the source one after the other, so the source
+ * is never accessed concurrently, and chunks are read in order. Once
+ * a chunk is read, it is mapped on the executor, so mapping of
+ * different chunks can proceed in parallel. At most maxPendingChunks
+ * chunks are read or mapped ahead of the consumer. The documents are
+ * returned in source order, and listeners of this stream are called
+ * from next() on the consumer thread, as with the other document
+ * streams. Listeners of the source stream are called when the source
+ * is read, on the executor threads, possibly before the consumer gets
+ * those documents. Source reads are sequential, and close() waits for
+ * the last read, so the effects of those listeners are visible to the
+ * consumer after the stream is closed.
+ *
+ * If the consumer is a thread of an {@link ExecutionPool}, the chunks
+ * are read and mapped on the consumer thread instead. Waiting for
+ * chunks on a pool thread could exhaust the pool threads, because the
+ * waits do not run the pending tasks.
+ */
+public class ParallelDocumentStream<S, D> implements DocumentStream<D> {
+
+    private final Iterator<S> source;
+    private final Function<S, D> map;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int maxPendingChunks;
+    private final Runnable onClose;
+    private final ArrayList<Consumer<D>> listeners = new ArrayList<>();
+    private final ArrayDeque<CompletableFuture<List<D>>> pending = new ArrayDeque<>();
+
+    private CompletableFuture<List<S>> lastRead = CompletableFuture.completedFuture(null);
+    private Iterator<D> current = Collections.emptyIterator();
+    private volatile boolean exhausted = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param source The source documents
+     * @param map The mapping function, or null to return source documents unchanged
+     * @param executor The executor to read and map the chunks on
+     * @param chunkSize Number of documents in a chunk
+     * @param maxPendingChunks Maximum number of chunks read ahead of the consumer
+     * @param onClose Called when the stream is closed, can be null
+     */
+    public ParallelDocumentStream(Iterator<S> source,
+                                  Function<S, D> map,
+                                  Executor executor,
+                                  int chunkSize,
+                                  int maxPendingChunks,
+                                  Runnable onClose) {
+        this.source = source;
+        this.map = map;
+        this.executor = executor;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxPendingChunks = Math.max(1, maxPendingChunks);
+        this.onClose = onClose;
+    }
+
+    /**
+     * Constructs a parallel stream that closes the source document
+     * stream when closed
+     */
+    public ParallelDocumentStream(DocumentStream<S> source,
+                                  Function<S, D> map,
+                                  Executor executor,
+                                  int chunkSize,
+                                  int maxPendingChunks) {
+        this(source, map, executor, chunkSize, maxPendingChunks, source::close);
+    }
+
+    /**
+     * Returns true if the stream was built by {@link DocumentStream#map},
+     * so that its mapping function can be run on an executor using
+     * {@link #mapInParallel}
+     */
+    public static boolean isMapped(DocumentStream<?> stream) {
+        return stream instanceof DocumentStream.DocumentStreamMapper;
+    }
+
+    /**
+     * Returns a parallel stream for a stream built by {@link
+     * DocumentStream#map}. The source of the given stream is read ahead
+     * in chunks, and the mapping function of the given stream is run on
+     * the executor, so it must be thread safe. The listeners added to
+     * the given stream, before or after this call, are called on the
+     * consumer thread as the documents are returned, as they would be
+     * when the given stream is iterated. Closing the returned stream
+     * calls onClose, which should close the given stream.
+     *
+     * @throws IllegalArgumentException if the stream is not built by
+     * {@link DocumentStream#map}
+     */
+    public static <D> ParallelDocumentStream<?, D> mapInParallel(DocumentStream<D> stream,
+                                                                 Executor executor,
+                                                                 int chunkSize,
+                                                                 int maxPendingChunks,
+                                                                 Runnable onClose) {
+        if (!isMapped(stream)) {
+            throw new IllegalArgumentException("Not a mapped stream");
+        }
+        return mapInParallel((DocumentStream.DocumentStreamMapper<?, D>) stream, executor, chunkSize, maxPendingChunks, onClose);
+    }
+
+    private static <S, D> ParallelDocumentStream<S, D> mapInParallel(DocumentStream.DocumentStreamMapper<S, D> mapper,
+                                                                     Executor executor,
+                                                                     int chunkSize,
+                                                                     int maxPendingChunks,
+                                                                     Runnable onClose) {
+        ParallelDocumentStream<S, D> stream = new ParallelDocumentStream<>(mapper.source, mapper.map, executor, chunkSize, maxPendingChunks, onClose);
+        stream.addListener(doc -> {
+            for (Consumer<D> c : mapper.listeners) {
+                c.accept(doc);
+            }
+        });
+        return stream;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            readAhead();
+            if (pending.isEmpty()) {
+                return false;
+            }
+            current = await(pending.removeFirst()).iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public D next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        D doc = current.next();
+        for (Consumer<D> c : listeners) {
+            c.accept(doc);
+        }
+        return doc;
+    }
+
+    /**
+     * Waits for the chunks being read, and closes the stream
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            for (CompletableFuture<List<D>> f : pending) {
+                f.cancel(false);
+            }
+            pending.clear();
+            try {
+                lastRead.join();
+            } catch (RuntimeException e) {
+                // Error will be reported by the consumer, if it reads the chunk
+            }
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+    }
+
+    @Override
+    public void addListener(Consumer<D> listener) {
+        listeners.add(listener);
+    }
+
+    private void readAhead() {
+        if (ExecutionPool.isPoolThread()) {
+            // All scheduled reads are done if nothing is pending
+            if (pending.isEmpty() && !exhausted && !closed) {
+                pending.addLast(CompletableFuture.completedFuture(mapChunk(readChunk())));
+            }
+            return;
+        }
+        while (!exhausted && !closed && pending.size() < maxPendingChunks) {
+            lastRead = lastRead.thenApplyAsync(x -> readChunk(), executor);
+            pending.addLast(lastRead.thenApplyAsync(this::mapChunk, executor));
+        }
+    }
+
+    private List<S> readChunk() {
+        List<S> chunk = new ArrayList<>(chunkSize);
+        while (!closed && chunk.size() < chunkSize && source.hasNext()) {
+            chunk.add(source.next());
+        }
+        if (chunk.size() < chunkSize) {
+            exhausted = true;
+        }
+        return chunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<D> mapChunk(List<S> chunk) {
+        if (map == null) {
+            return (List<D>) chunk;
+        }
+        List<D> ret = new ArrayList<>(chunk.size());
+        for (S s : chunk) {
+            ret.add(map.apply(s));
+        }
+        return ret;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof java.lang.Error) {
+                throw (java.lang.Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.lightblue.metadata.EntityConstraint;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Field;
+import com.redhat.lightblue.metadata.FieldConstraint;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.ResolvedReferenceField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.Registry;
+
+/**
+ * The constraints of an entity, compiled into a flat list so that
+ * documents can be validated without walking the field tree of the
+ * entity for every document. The plan contains the entity constraints,
+ * and the fields that have constraints, in field tree order, with the
+ * constraint checkers resolved from the registries. Fields reached by
+ * crossing an entity boundary are not included.
+ *
+ * A plan is immutable, and can be shared between threads.
+ */
+public final class ValidationPlan {
+
+    private final EntityMetadata md;
+    private final List<EntityConstraintStep> entityConstraints;
+    private final List<FieldStep> fields;
+
+    /**
+     * An entity constraint with its checker. The checker is null if
+     * there is no checker for the constraint type.
+     */
+    static final class EntityConstraintStep {
+        final EntityConstraint constraint;
+        final EntityConstraintChecker checker;
+
+        EntityConstraintStep(EntityConstraint constraint, EntityConstraintChecker checker) {
+            this.constraint = constraint;
+            this.checker = checker;
+        }
+    }
+
+    /**
+     * A field constraint with its checker. The checker is null if there
+     * is no checker for the constraint type.
+     */
+    static final class FieldConstraintStep {
+        final FieldConstraint constraint;
+        final FieldConstraintChecker checker;
+
+        FieldConstraintStep(FieldConstraint constraint, FieldConstraintChecker checker) {
+            this.constraint = constraint;
+            this.checker = checker;
+        }
+    }
+
+    /**
+     * A field with constraints
+     */
+    static final class FieldStep {
+        final FieldTreeNode node;
+        final Path path;
+        final String pathString;
+        final List<FieldConstraintStep> constraints;
+
+        FieldStep(FieldTreeNode node, Path path, List<FieldConstraintStep> constraints) {
+            this.node = node;
+            this.path = path;
+            this.pathString = path.toString();
+            this.constraints = constraints;
+        }
+    }
+
+    private ValidationPlan(EntityMetadata md,
+                           List<EntityConstraintStep> entityConstraints,
+                           List<FieldStep> fields) {
+        this.md = md;
+        this.entityConstraints = entityConstraints;
+        this.fields = fields;
+    }
+
+    /**
+     * Compiles the validation plan for the given entity metadata
+     */
+    public static ValidationPlan compile(EntityMetadata md,
+                                         Registry<String, FieldConstraintChecker> fRegistry,
+                                         Registry<String, EntityConstraintChecker> eRegistry) {
+        List<EntityConstraintStep> entityConstraints = new ArrayList<>();
+        List<EntityConstraint> ec = md.getConstraints();
+        if (ec != null) {
+            for (EntityConstraint x : ec) {
+                entityConstraints.add(new EntityConstraintStep(x, eRegistry.find(x.getType())));
+            }
+        }
+
+        List<FieldStep> fields = new ArrayList<>();
+        FieldCursor cursor = md.getFieldCursor();
+        Path skip = null;
+        while (cursor.next()) {
+            FieldTreeNode node = cursor.getCurrentNode();
+            Path path = cursor.getCurrentPath();
+            // Skip any fields reached by crossing entity boundaries
+            if (skip != null) {
+                if (!path.prefix(skip.numSegments()).equals(skip)) {
+                    skip = null;
+                }
+            }
+            if (skip == null) {
+                if (node instanceof ResolvedReferenceField) {
+                    skip = node.getFullPath();
+                }
+            }
+            if (skip == null) {
+                List<FieldConstraint> constraints = null;
+                if (node instanceof Field) {
+                    constraints = ((Field) node).getConstraints();
+                } else if (node instanceof SimpleArrayElement) {
+                    constraints = ((SimpleArrayElement) node).getConstraints();
+                }
+                if (constraints != null && !constraints.isEmpty()) {
+                    List<FieldConstraintStep> steps = new ArrayList<>(constraints.size());
+                    for (FieldConstraint x : constraints) {
+                        steps.add(new FieldConstraintStep(x, fRegistry.find(x.getType())));
+                    }
+                    fields.add(new FieldStep(node, path.immutableCopy(), Collections.unmodifiableList(steps)));
+                }
+            }
+        }
+        return new ValidationPlan(md,
+                Collections.unmodifiableList(entityConstraints),
+                Collections.unmodifiableList(fields));
+    }
+
+    /**
+     * Returns the entity metadata the plan is compiled for
+     */
+    public EntityMetadata getEntityMetadata() {
+        return md;
+    }
+
+    List<EntityConstraintStep> getEntityConstraints() {
+        return entityConstraints;
+    }
+
+    List<FieldStep> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns true if there are no constraints to check
+     */
+    public boolean isEmpty() {
+        return entityConstraints.isEmpty() && fields.isEmpty();
+    }
+}
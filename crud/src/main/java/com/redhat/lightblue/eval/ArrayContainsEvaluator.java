@@ -67,7 +67,7 @@ public class ArrayContainsEvaluator extends QueryEvaluator {
         JsonNode node = ctx.getNode(expr.getArray());
         if (node instanceof ArrayNode) {
             ArrayNode array = (ArrayNode) node;
-            List<Value> values = expr.getValues();
+            List<Value> values = ctx.resolve(expr.getValues());
             ContainsOperator op = expr.getOp();
             Type t = elem.getType();
             int numElementsContained = 0;
@@ -75,7 +75,7 @@ public class ArrayContainsEvaluator extends QueryEvaluator {
                 JsonNode valueNode = itr.next();
                 for (Value value : values) {
                     Object v = value.getValue();
-                    if (isValueInNode(valueNode, v, t)) {
+                    if (isValueInNode(ctx, valueNode, v, t)) {
                         numElementsContained++;
                         break;
                     }
@@ -87,12 +87,12 @@ public class ArrayContainsEvaluator extends QueryEvaluator {
         return ret;
     }
 
-    private boolean isValueInNode(JsonNode valueNode, Object value, Type type) {
+    private boolean isValueInNode(QueryEvaluationContext ctx, JsonNode valueNode, Object value, Type type) {
         if (valueNode == null || valueNode instanceof NullNode) {
             if (value == null) {
                 return true;
             }
-        } else if (value != null && elem.getType().compare(value, type.fromJson(valueNode)) == 0) {
+        } else if (value != null && elem.getType().compare(value, ctx.getValue(valueNode, type)) == 0) {
             return true;
         }
         return false;
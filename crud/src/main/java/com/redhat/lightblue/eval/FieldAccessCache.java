@@ -0,0 +1,112 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Version;
+import com.redhat.lightblue.util.BoundedCache;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Caches the fields inaccessible to a set of caller roles for an entity
+ * version. Computing the inaccessible fields requires evaluating the access
+ * of every field in the metadata, so for frequently used entities it is
+ * cached. Entries of an entity have to be invalidated when the metadata of
+ * that entity changes, so this cache should only be used together with a
+ * metadata cache that notifies invalidations.
+ */
+public class FieldAccessCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FieldAccessCache.class);
+
+    private final BoundedCache<String, Entry> entries;
+
+    private static final class Entry {
+        private final String entityName;
+        private final Set<Path> fields;
+
+        private Entry(String entityName, Set<Path> fields) {
+            this.entityName = entityName;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * @param maxEntries Maximum number of cached (entity version, operation,
+     * role set) entries
+     */
+    public FieldAccessCache(int maxEntries) {
+        this.entries = new BoundedCache<>(maxEntries);
+    }
+
+    /**
+     * Returns the fields of the entity inaccessible to the caller roles for
+     * the operation. The returned set is unmodifiable.
+     */
+    public Set<Path> getInaccessibleFields(EntityMetadata md,
+                                           Set<String> roles,
+                                           FieldAccessRoleEvaluator.Operation op) {
+        return entries.computeIfAbsent(getKey(md, roles, op), key -> {
+            LOGGER.debug("Computing inaccessible fields for {}", key);
+            Set<Path> fields = new FieldAccessRoleEvaluator(md, roles).getInaccessibleFields(op);
+            return new Entry(md.getName(), Collections.unmodifiableSet(fields));
+        }).fields;
+    }
+
+    private static String getKey(EntityMetadata md, Set<String> roles, FieldAccessRoleEvaluator.Operation op) {
+        Version v = md.getVersion();
+        List<String> sortedRoles = new ArrayList<>(roles);
+        Collections.sort(sortedRoles);
+        StringBuilder bld = new StringBuilder();
+        bld.append(md.getName()).append(':').append(v == null ? "" : v.getValue()).
+                append(':').append(op.name());
+        for (String role : sortedRoles) {
+            bld.append('|').append(role);
+        }
+        return bld.toString();
+    }
+
+    /**
+     * Invalidates all entries of the given entity. If entityName is null,
+     * invalidates all entries.
+     */
+    public void invalidate(String entityName) {
+        LOGGER.debug("Invalidating {}", entityName);
+        if (entityName == null) {
+            entries.clear();
+        } else {
+            entries.removeIf((k, e) -> e.entityName.equals(entityName));
+        }
+    }
+
+    /**
+     * Returns the number of cached entries
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -123,6 +123,11 @@ public final class FieldAccessRoleEvaluator {
         return ret;
     }
 
+    /**
+     * Returns the difference computed by the last call to
+     * getInaccessibleFields_Update. The difference only contains the changes
+     * to the inaccessible fields.
+     */
     public DocComparator.Difference<JsonNode> getLastDiff() {
         return diff;
     }
@@ -143,7 +148,8 @@ public final class FieldAccessRoleEvaluator {
         Set<Path> ret = new HashSet<>();
         if (!inaccessibleFields.isEmpty()) {
             try {
-                diff = comparator.compareNodes(oldDoc.getRoot(), newDoc.getRoot());
+                // Only the inaccessible fields are compared
+                diff = comparator.compareNodes(oldDoc.getRoot(), newDoc.getRoot(), inaccessibleFields);
             } catch (Exception e) {
                 // Any exception at this point is a bug
                 throw new RuntimeException(e);
@@ -156,17 +162,19 @@ public final class FieldAccessRoleEvaluator {
                         || (d instanceof DocComparator.Modification
                         && ((DocComparator.Modification<JsonNode>) d).getUnmodifiedNode().isValueNode())) {
                     FieldTreeNode fieldMd = md.resolve(d.getField());
-                    boolean modified = true;
-                    if (d instanceof JsonCompare.Modification) {
-                        // Is it really modified
-                        Object o1 = fieldMd.getType().fromJson(((DocComparator.Modification<JsonNode>) d).getUnmodifiedNode());
-                        Object o2 = fieldMd.getType().fromJson(((DocComparator.Modification<JsonNode>) d).getModifiedNode());
-                        if (o1.equals(o2)) {
-                            modified = false;
+                    if (inaccessibleFields.contains(fieldMd.getFullPath())) {
+                        boolean modified = true;
+                        if (d instanceof JsonCompare.Modification) {
+                            // Is it really modified
+                            Object o1 = fieldMd.getType().fromJson(((DocComparator.Modification<JsonNode>) d).getUnmodifiedNode());
+                            Object o2 = fieldMd.getType().fromJson(((DocComparator.Modification<JsonNode>) d).getModifiedNode());
+                            if (o1.equals(o2)) {
+                                modified = false;
+                            }
+                        }
+                        if (modified) {
+                            ret.add(d.getField());
                         }
-                    }
-                    if (modified && inaccessibleFields.contains(fieldMd.getFullPath())) {
-                        ret.add(d.getField());
                     }
                 }
                 // In case of an addition, removal, or move, check if the parent node is an object or an array
@@ -211,6 +219,30 @@ public final class FieldAccessRoleEvaluator {
         return ret;
     }
 
+    /**
+     * Returns a projection that adds the exclusions of the inaccessible fields
+     * to the given projection, so a backend can skip those fields instead of
+     * retrieving them. Only the fields the projection needs are excluded,
+     * the others are not returned by the projection anyway. If the
+     * projection is null or there is nothing to exclude, returns the
+     * projection itself.
+     */
+    public static Projection excludeFields(Projection projection, Set<Path> inaccessibleFields) {
+        if (projection == null || inaccessibleFields.isEmpty()) {
+            return projection;
+        }
+        List<Projection> list = new ArrayList<>();
+        for (Path x : inaccessibleFields) {
+            if (projection.isFieldRequiredToEvaluateProjection(x)) {
+                list.add(new FieldProjection(x, false, true));
+            }
+        }
+        if (list.isEmpty()) {
+            return projection;
+        }
+        return Projection.add(projection, list.size() == 1 ? list.get(0) : new ProjectionList(list));
+    }
+
     private abstract static class AccAccessor {
         public abstract Access getFieldAccess(FieldAccess f);
     }
@@ -38,6 +38,18 @@ public class FieldProjector extends Projector {
         recursive = p.isRecursive();
     }
 
+    public Path getField() {
+        return field;
+    }
+
+    public boolean isInclude() {
+        return include;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
     @Override
     public Projector getNestedProjector() {
         return null;
@@ -18,6 +18,7 @@
  */
 package com.redhat.lightblue.eval;
 
+import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -41,6 +42,8 @@ public class NaryValueRelationalExpressionEvaluator extends QueryEvaluator {
     private final FieldTreeNode fieldMd;
     private final NaryRelationalOperator operator;
     private final Set<Object> values;
+    // If the values are parameterized, the index of the parameter
+    private final int parameterIndex;
 
     public NaryValueRelationalExpressionEvaluator(NaryValueRelationalExpression expr, FieldTreeNode context) {
         field = expr.getField();
@@ -49,22 +52,37 @@ public class NaryValueRelationalExpressionEvaluator extends QueryEvaluator {
             throw new EvaluationError(expr, CrudConstants.ERR_FIELD_NOT_THERE + field);
         }
         operator = expr.getOp();
-        values = new HashSet<>();
-        for (Value x : expr.getValues()) {
-            values.add(fieldMd.getType().cast(x.getValue()));
+        List<Value> list = expr.getValues();
+        if (list.size() == 1 && list.get(0) instanceof ParameterValue) {
+            parameterIndex = ((ParameterValue) list.get(0)).getIndex();
+            values = null;
+        } else {
+            parameterIndex = -1;
+            values = castValues(list);
         }
         LOGGER.debug("ctor {} {} {}", expr.getField(), operator, values);
     }
 
+    private Set<Object> castValues(List<Value> list) {
+        Set<Object> set = new HashSet<>();
+        for (Value x : list) {
+            set.add(fieldMd.getType().cast(x.getValue()));
+        }
+        return set;
+    }
+
     @Override
+    @SuppressWarnings("unchecked")
     public boolean evaluate(QueryEvaluationContext ctx) {
+        Set<Object> values = parameterIndex == -1 ? this.values
+                : ctx.getParameters().getPrepared(parameterIndex, v -> castValues((List<Value>) v));
         LOGGER.debug("evaluate {} {} {}", field, operator, values);
         KeyValueCursor<Path, JsonNode> cursor = ctx.getNodes(field, true);
         boolean ret = false;
         while (cursor.hasNext()) {
             cursor.next();
             JsonNode valueNode = cursor.getCurrentValue();
-            Object docValue = fieldMd.getType().fromJson(valueNode);
+            Object docValue = ctx.getValue(valueNode, fieldMd.getType());
             LOGGER.debug(" value={}", valueNode);
             boolean in = values.contains(docValue);
             LOGGER.debug(" result={}", in);
@@ -0,0 +1,62 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.query.Value;
+
+/**
+ * A placeholder for a query value that is supplied when the query is
+ * evaluated. If a list of values is parameterized, the list contains
+ * only the parameter value, and the parameter is the list of values.
+ */
+final class ParameterValue extends Value {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+
+    public ParameterValue(int index) {
+        super(null);
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public JsonNode toJson() {
+        ObjectNode node = getFactory().objectNode();
+        node.put("$parameter", index);
+        return node;
+    }
+
+    @Override
+    public int hashCode() {
+        return index;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ParameterValue && ((ParameterValue) obj).index == index;
+    }
+}
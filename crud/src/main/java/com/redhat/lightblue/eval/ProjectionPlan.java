@@ -0,0 +1,221 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A compiled projection for projectors that consist only of field inclusions.
+ * The included fields are kept in a tree of field name segments, and a
+ * document is projected by visiting only the fields that are on an included
+ * path, or under a recursively included field. The rest of the document is
+ * never visited.
+ *
+ * The result is the same as the result of the projector: a field is included
+ * if it is an ancestor of, or matches an included field, or if it is under a
+ * recursively included field. Objects and non-empty arrays are included only
+ * if something under them is included. Fields are returned in document order.
+ */
+public final class ProjectionPlan {
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node any;
+        private boolean recursive;
+
+        Node child(String segment) {
+            if (Path.ANY.equals(segment)) {
+                if (any == null) {
+                    any = new Node();
+                }
+                return any;
+            }
+            return children.computeIfAbsent(segment, s -> new Node());
+        }
+    }
+
+    private final Node root = new Node();
+
+    private ProjectionPlan() {
+    }
+
+    /**
+     * Compiles the projector into a plan. Returns null if the projector
+     * contains anything other than non-recursive or recursive field
+     * inclusions. Then the projector has to evaluate every field of the
+     * document.
+     */
+    public static ProjectionPlan compile(Projector projector) {
+        List<FieldProjector> fields = new ArrayList<>();
+        if (!getFieldProjectors(projector, fields)) {
+            return null;
+        }
+        ProjectionPlan plan = new ProjectionPlan();
+        for (FieldProjector fp : fields) {
+            Path field = fp.getField().normalize();
+            int n = field.numSegments();
+            if (n == 0) {
+                return null;
+            }
+            Node node = plan.root;
+            for (int i = 0; i < n; i++) {
+                String segment = field.head(i);
+                if (Path.PARENT.equals(segment) || Path.THIS.equals(segment)) {
+                    return null;
+                }
+                node = node.child(segment);
+            }
+            if (fp.isRecursive()) {
+                node.recursive = true;
+            }
+        }
+        return plan;
+    }
+
+    private static boolean getFieldProjectors(Projector p, List<FieldProjector> dest) {
+        if (p instanceof FieldProjector) {
+            if (!((FieldProjector) p).isInclude()) {
+                return false;
+            }
+            dest.add((FieldProjector) p);
+            return true;
+        } else if (p instanceof ListProjector) {
+            for (Projector x : ((ListProjector) p).getItems()) {
+                if (!getFieldProjectors(x, dest)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Projects a document
+     */
+    public JsonDoc project(JsonDoc doc, JsonNodeFactory factory) {
+        List<Node> nodes = new ArrayList<>(1);
+        nodes.add(root);
+        JsonNode result = null;
+        if (doc.getRoot() instanceof ObjectNode) {
+            result = projectObject((ObjectNode) doc.getRoot(), nodes, false, factory);
+        }
+        return new JsonDoc(result == null ? factory.objectNode() : result);
+    }
+
+    /**
+     * Projects an included node. <code>nodes</code> are the plan nodes
+     * matching the field, and <code>recursive</code> is true if the field is
+     * under a recursively included field. Returns null if the node should
+     * not be included.
+     */
+    private JsonNode project(JsonNode node, List<Node> nodes, boolean recursive, JsonNodeFactory factory) {
+        if (node instanceof NullNode) {
+            return node;
+        }
+        if (!recursive) {
+            for (Node x : nodes) {
+                if (x.recursive) {
+                    recursive = true;
+                    break;
+                }
+            }
+        }
+        if (node instanceof ObjectNode) {
+            return projectObject((ObjectNode) node, nodes, recursive, factory);
+        } else if (node instanceof ArrayNode) {
+            if (node.size() == 0) {
+                return factory.arrayNode();
+            }
+            ArrayNode ret = null;
+            int index = 0;
+            for (Iterator<JsonNode> itr = node.elements(); itr.hasNext(); index++) {
+                JsonNode element = itr.next();
+                JsonNode newNode = projectChild(element, Integer.toString(index), nodes, recursive, factory);
+                if (newNode != null) {
+                    if (ret == null) {
+                        ret = factory.arrayNode();
+                    }
+                    ret.add(newNode);
+                }
+            }
+            return ret;
+        } else {
+            return node;
+        }
+    }
+
+    private JsonNode projectObject(ObjectNode node, List<Node> nodes, boolean recursive, JsonNodeFactory factory) {
+        ObjectNode ret = null;
+        for (Iterator<Map.Entry<String, JsonNode>> itr = node.fields(); itr.hasNext();) {
+            Map.Entry<String, JsonNode> entry = itr.next();
+            JsonNode newNode = projectChild(entry.getValue(), entry.getKey(), nodes, recursive, factory);
+            if (newNode != null) {
+                if (ret == null) {
+                    ret = factory.objectNode();
+                }
+                ret.set(entry.getKey(), newNode);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Projects a child of an included node. The child is skipped without
+     * being visited if it is not on an included path.
+     */
+    private JsonNode projectChild(JsonNode child, String name, List<Node> nodes, boolean recursive, JsonNodeFactory factory) {
+        List<Node> childNodes = null;
+        for (Node x : nodes) {
+            Node c = x.children.get(name);
+            if (c != null) {
+                if (childNodes == null) {
+                    childNodes = new ArrayList<>(nodes.size());
+                }
+                childNodes.add(c);
+            }
+            if (x.any != null) {
+                if (childNodes == null) {
+                    childNodes = new ArrayList<>(nodes.size());
+                }
+                childNodes.add(x.any);
+            }
+        }
+        if (childNodes == null) {
+            if (!recursive) {
+                return null;
+            }
+            childNodes = new ArrayList<>(0);
+        }
+        return project(child, childNodes, recursive, factory);
+    }
+}
@@ -73,6 +73,11 @@ public abstract class Projector {
     private final FieldTreeNode rootMdNode;
     private final Path rootMdPath;
 
+    // The plan is compiled on first use. It is published by the volatile
+    // write to planCompiled, after it is completely built.
+    private volatile ProjectionPlan plan;
+    private volatile boolean planCompiled = false;
+
     protected Projector(Path ctxPath, FieldTreeNode ctx) {
         this.rootMdNode = ctx;
         this.rootMdPath = ctxPath;
@@ -119,10 +124,33 @@ public abstract class Projector {
     }
 
     /**
-     * Projects a document
+     * Projects a document. If the projection consists only of field
+     * inclusions, only the included paths of the document are visited
+     * using a compiled projection plan. Otherwise, all fields of the
+     * document are evaluated.
      */
     public JsonDoc project(JsonDoc doc,
                            JsonNodeFactory factory) {
+        ProjectionPlan p;
+        if (planCompiled) {
+            p = plan;
+        } else {
+            p = ProjectionPlan.compile(this);
+            plan = p;
+            planCompiled = true;
+        }
+        if (p != null) {
+            return p.project(doc, factory);
+        }
+        return projectAllFields(doc, factory);
+    }
+
+    /**
+     * Projects a document by evaluating the projection for all fields of
+     * the document
+     */
+    JsonDoc projectAllFields(JsonDoc doc,
+                             JsonNodeFactory factory) {
         JsonNodeCursor cursor = doc.cursor();
         cursor.firstChild();
 
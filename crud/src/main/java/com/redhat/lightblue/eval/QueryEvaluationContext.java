@@ -18,7 +18,13 @@
  */
 package com.redhat.lightblue.eval;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.query.Value;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.KeyValueCursor;
 import com.redhat.lightblue.util.MutablePath;
@@ -36,6 +42,12 @@ public class QueryEvaluationContext {
     private JsonNode contextRoot;
     private final MutablePath contextPath;
     private boolean result;
+    private QueryParameters parameters;
+    // Document values converted to their field types, by type and node,
+    // shared with the nested contexts. Jackson shares node instances
+    // for some values, so the same node can be converted to different
+    // types.
+    private Map<Type, Map<JsonNode, Object>> typedValues;
 
     public QueryEvaluationContext(JsonNode root) {
         this(root, root, Path.EMPTY);
@@ -52,6 +64,8 @@ public class QueryEvaluationContext {
         this.contextRoot = root;
         this.contextPath = new MutablePath(ctx.contextPath);
         this.contextPath.push(relativePath);
+        this.parameters = ctx.parameters;
+        this.typedValues = ctx.getTypedValues();
     }
 
     public JsonNode getRoot() {
@@ -115,4 +129,65 @@ public class QueryEvaluationContext {
     public void setResult(boolean b) {
         result = b;
     }
+
+    private Map<Type, Map<JsonNode, Object>> getTypedValues() {
+        if (typedValues == null) {
+            typedValues = new IdentityHashMap<>();
+        }
+        return typedValues;
+    }
+
+    /**
+     * Returns the value of the document node converted to the type. The
+     * converted values are remembered during the evaluation, so a node
+     * used in multiple clauses is converted once.
+     */
+    public Object getValue(JsonNode node, Type type) {
+        if (node == null) {
+            return null;
+        }
+        Map<Type, Map<JsonNode, Object>> typeValues = getTypedValues();
+        Map<JsonNode, Object> values = typeValues.get(type);
+        if (values == null) {
+            values = new IdentityHashMap<>();
+            typeValues.put(type, values);
+        }
+        Object value = values.get(node);
+        if (value == null) {
+            value = type.fromJson(node);
+            if (value != null) {
+                values.put(node, value);
+            }
+        }
+        return value;
+    }
+
+    QueryParameters getParameters() {
+        return parameters;
+    }
+
+    void setParameters(QueryParameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * If the value is a parameter, returns the parameter value
+     */
+    Value resolve(Value v) {
+        if (v instanceof ParameterValue) {
+            return (Value) parameters.get(((ParameterValue) v).getIndex());
+        }
+        return v;
+    }
+
+    /**
+     * If the list of values is a parameter, returns the parameter value
+     */
+    @SuppressWarnings("unchecked")
+    List<Value> resolve(List<Value> values) {
+        if (values.size() == 1 && values.get(0) instanceof ParameterValue) {
+            return (List<Value>) parameters.get(((ParameterValue) values.get(0)).getIndex());
+        }
+        return values;
+    }
 }
@@ -0,0 +1,192 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.ArrayContainsExpression;
+import com.redhat.lightblue.query.ArrayMatchExpression;
+import com.redhat.lightblue.query.FieldComparisonExpression;
+import com.redhat.lightblue.query.NaryFieldRelationalExpression;
+import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.RegexMatchExpression;
+import com.redhat.lightblue.query.UnaryLogicalExpression;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+import com.redhat.lightblue.util.BoundedCache;
+
+/**
+ * Caches compiled query evaluators. The values of a query are replaced
+ * with parameters before the evaluator is compiled, so queries that
+ * differ only in their values share the same evaluator. Useful when a
+ * query is evaluated many times with different values, like the
+ * association queries during document assembly.
+ *
+ * Evaluators are cached for an entity metadata instance, so reloaded
+ * metadata gets new evaluators. The number of cached evaluators is
+ * bounded, least recently used evaluators are evicted first. Regular
+ * expression matches are not parameterized, because their evaluators
+ * compile the pattern, so queries with different patterns get different
+ * evaluators.
+ */
+public final class QueryEvaluatorCache {
+
+    private final BoundedCache<Key, QueryEvaluator> evaluators;
+
+    private static final class Key {
+        private final EntityMetadata md;
+        private final String shape;
+
+        Key(EntityMetadata md, String shape) {
+            this.md = md;
+            this.shape = shape;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(md) * 31 + shape.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key k = (Key) o;
+                return md == k.md && shape.equals(k.shape);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param maxEntries Maximum number of cached evaluators
+     */
+    public QueryEvaluatorCache(int maxEntries) {
+        evaluators = new BoundedCache<>(maxEntries);
+    }
+
+    /**
+     * Returns an evaluator for the query. The returned evaluator is
+     * bound to the values of the query, and it should not be shared
+     * between threads.
+     */
+    public QueryEvaluator getInstance(QueryExpression q, EntityMetadata md) {
+        List<Object> parameters = new ArrayList<>();
+        QueryExpression template = parameterize(q, parameters);
+        if (template == null) {
+            return QueryEvaluator.getInstance(q, md);
+        }
+        QueryEvaluator compiled = evaluators.computeIfAbsent(new Key(md, template.toString()),
+                k -> QueryEvaluator.getInstance(template, md));
+        return new BoundQueryEvaluator(compiled, new QueryParameters(parameters.toArray()));
+    }
+
+    /**
+     * Returns the number of cached evaluators
+     */
+    public int size() {
+        return evaluators.size();
+    }
+
+    /**
+     * Returns the shape of the query, that is, the query with its values
+     * replaced by parameters, as a string. Queries that differ only in
+     * their values have the same shape. Returns null if the query
+     * contains an unrecognized expression.
+     */
+    public static String getQueryShape(QueryExpression q) {
+        QueryExpression template = parameterize(q, new ArrayList<>());
+        return template == null ? null : template.toString();
+    }
+
+    /**
+     * Returns a copy of the query with its values replaced by parameters,
+     * and adds the values to the parameter list. Returns null if the
+     * query contains an unrecognized expression.
+     */
+    private static QueryExpression parameterize(QueryExpression q, List<Object> parameters) {
+        if (q instanceof ValueComparisonExpression) {
+            ValueComparisonExpression x = (ValueComparisonExpression) q;
+            return new ValueComparisonExpression(x.getField(), x.getOp(), newParameter(x.getRvalue(), parameters));
+        } else if (q instanceof NaryValueRelationalExpression) {
+            NaryValueRelationalExpression x = (NaryValueRelationalExpression) q;
+            return new NaryValueRelationalExpression(x.getField(), x.getOp(), newListParameter(x.getValues(), parameters));
+        } else if (q instanceof ArrayContainsExpression) {
+            ArrayContainsExpression x = (ArrayContainsExpression) q;
+            return new ArrayContainsExpression(x.getArray(), x.getOp(), newListParameter(x.getValues(), parameters));
+        } else if (q instanceof FieldComparisonExpression
+                || q instanceof NaryFieldRelationalExpression
+                || q instanceof RegexMatchExpression) {
+            return q;
+        } else if (q instanceof UnaryLogicalExpression) {
+            UnaryLogicalExpression x = (UnaryLogicalExpression) q;
+            QueryExpression nested = parameterize(x.getQuery(), parameters);
+            return nested == null ? null : new UnaryLogicalExpression(x.getOp(), nested);
+        } else if (q instanceof NaryLogicalExpression) {
+            NaryLogicalExpression x = (NaryLogicalExpression) q;
+            List<QueryExpression> list = new ArrayList<>(x.getQueries().size());
+            for (QueryExpression nested : x.getQueries()) {
+                QueryExpression t = parameterize(nested, parameters);
+                if (t == null) {
+                    return null;
+                }
+                list.add(t);
+            }
+            return new NaryLogicalExpression(x.getOp(), list);
+        } else if (q instanceof ArrayMatchExpression) {
+            ArrayMatchExpression x = (ArrayMatchExpression) q;
+            QueryExpression nested = parameterize(x.getElemMatch(), parameters);
+            return nested == null ? null : new ArrayMatchExpression(x.getArray(), nested);
+        }
+        return null;
+    }
+
+    private static Value newParameter(Value value, List<Object> parameters) {
+        parameters.add(value);
+        return new ParameterValue(parameters.size() - 1);
+    }
+
+    private static List<Value> newListParameter(List<Value> values, List<Object> parameters) {
+        parameters.add(values);
+        return Collections.<Value>singletonList(new ParameterValue(parameters.size() - 1));
+    }
+
+    /**
+     * A compiled evaluator bound to a set of parameter values
+     */
+    private static final class BoundQueryEvaluator extends QueryEvaluator {
+        private final QueryEvaluator evaluator;
+        private final QueryParameters parameters;
+
+        public BoundQueryEvaluator(QueryEvaluator evaluator, QueryParameters parameters) {
+            this.evaluator = evaluator;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean evaluate(QueryEvaluationContext ctx) {
+            ctx.setParameters(parameters);
+            return evaluator.evaluate(ctx);
+        }
+    }
+}
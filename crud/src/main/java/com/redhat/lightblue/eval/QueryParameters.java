@@ -0,0 +1,54 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.function.Function;
+
+/**
+ * The values for the parameters of a compiled query evaluator. The
+ * values derived from the parameters, such as the cast values of an
+ * in-list, are computed once and kept here, so they are not
+ * recomputed for every document. Not thread safe.
+ */
+final class QueryParameters {
+
+    private final Object[] values;
+    private final Object[] prepared;
+
+    public QueryParameters(Object[] values) {
+        this.values = values;
+        this.prepared = new Object[values.length];
+    }
+
+    public Object get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the value computed from the parameter at the given index,
+     * computing it on first call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getPrepared(int index, Function<Object, T> f) {
+        if (prepared[index] == null) {
+            prepared[index] = f.apply(values[index]);
+        }
+        return (T) prepared[index];
+    }
+}
@@ -79,7 +79,7 @@ public class RegexEvaluator extends QueryEvaluator {
             JsonNode valueNode = cursor.getCurrentValue();
             Object docValue;
             if (valueNode != null) {
-                docValue = fieldMd.getType().fromJson(valueNode);
+                docValue = ctx.getValue(valueNode, fieldMd.getType());
             } else {
                 docValue = null;
             }
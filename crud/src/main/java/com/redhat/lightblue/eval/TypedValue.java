@@ -0,0 +1,114 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.metadata.types.BooleanType;
+import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.DoubleType;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.util.Error;
+
+/**
+ * A query value cast to the type of the field it is compared with.
+ * Integer, double, boolean, and date values are kept as primitives, so
+ * comparing them with document values does not box values or parse
+ * dates for every comparison.
+ */
+final class TypedValue {
+
+    private enum Kind {
+        LONG, DOUBLE, BOOLEAN, DATE, OBJECT
+    }
+
+    private final Type type;
+    private final Kind kind;
+    private final Object value;
+    private final long longValue;
+    private final double doubleValue;
+    private final boolean booleanValue;
+
+    private TypedValue(Type type, Kind kind, Object value, long longValue, double doubleValue, boolean booleanValue) {
+        this.type = type;
+        this.kind = kind;
+        this.value = value;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.booleanValue = booleanValue;
+    }
+
+    /**
+     * Casts the value to the type. If the value cannot be cast, the
+     * value is kept as is, and the comparison fails the same way it would
+     * without the typed value.
+     */
+    public static TypedValue of(Type type, Object value) {
+        try {
+            Object v = type.cast(value);
+            if (v != null) {
+                if (type instanceof IntegerType) {
+                    return new TypedValue(type, Kind.LONG, v, (Long) v, 0, false);
+                } else if (type instanceof DoubleType) {
+                    return new TypedValue(type, Kind.DOUBLE, v, 0, (Double) v, false);
+                } else if (type instanceof BooleanType) {
+                    return new TypedValue(type, Kind.BOOLEAN, v, 0, 0, (Boolean) v);
+                } else if (type instanceof DateType) {
+                    return new TypedValue(type, Kind.DATE, v, ((Date) v).getTime(), 0, false);
+                }
+                return new TypedValue(type, Kind.OBJECT, v, 0, 0, false);
+            }
+        } catch (Error e) {
+            // Incompatible value, let the type report it when compared
+        }
+        return new TypedValue(type, Kind.OBJECT, value, 0, 0, false);
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Compares the value of the document node with this value
+     */
+    public int compareNode(JsonNode node, QueryEvaluationContext ctx) {
+        if (node == null || node instanceof NullNode) {
+            return type.compare(null, value);
+        }
+        if (node.isValueNode()) {
+            switch (kind) {
+                case LONG:
+                    return Long.compare(node.asLong(), longValue);
+                case DOUBLE:
+                    return Double.compare(node.asDouble(), doubleValue);
+                case BOOLEAN:
+                    return Boolean.compare(node.asBoolean(), booleanValue);
+                case DATE:
+                    return Long.compare(((Date) ctx.getValue(node, type)).getTime(), longValue);
+                default:
+                    break;
+            }
+        }
+        return type.compare(ctx.getValue(node, type), value);
+    }
+}
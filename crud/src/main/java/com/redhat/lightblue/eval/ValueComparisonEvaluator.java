@@ -39,6 +39,7 @@ public class ValueComparisonEvaluator extends QueryEvaluator {
     private final Path field;
     private final BinaryComparisonOperator operator;
     private final Value rvalue;
+    private final TypedValue typedRvalue;
 
     /**
      * Constructs evaluator for {field op value} style comparison
@@ -54,16 +55,18 @@ public class ValueComparisonEvaluator extends QueryEvaluator {
         }
         operator = expr.getOp();
         rvalue = expr.getRvalue();
+        typedRvalue = rvalue instanceof ParameterValue ? null : TypedValue.of(fieldMd.getType(), rvalue.getValue());
         LOGGER.debug("ctor {} {}", field, operator);
     }
 
     @Override
     public boolean evaluate(QueryEvaluationContext ctx) {
         ctx.setResult(false);
-        Object value = rvalue.getValue();
+        Object value = ctx.resolve(rvalue).getValue();
         LOGGER.debug("evaluate {} {} {}", field, operator, value);
         KeyValueCursor<Path, JsonNode> cursor = ctx.getNodes(field);
         boolean fieldValueExists = false;
+        TypedValue typedValue = null;
         while (cursor.hasNext()) {
             fieldValueExists = true;
             cursor.next();
@@ -79,14 +82,12 @@ public class ValueComparisonEvaluator extends QueryEvaluator {
                 }
 
             } else {
-                Object docValue;
-                if (valueNode != null) {
-                    docValue = fieldMd.getType().fromJson(valueNode);
-                } else {
-                    docValue = null;
+                if (typedValue == null) {
+                    typedValue = typedRvalue == null ? ctx.getParameters().getPrepared(((ParameterValue) rvalue).getIndex(),
+                            v -> TypedValue.of(fieldMd.getType(), ((Value) v).getValue())) : typedRvalue;
                 }
-                LOGGER.debug(" fieldvalue={} value={} type={}", docValue, value, fieldMd.getType().getName());
-                result = fieldMd.getType().compare(docValue, value);
+                LOGGER.debug(" fieldvalue={} value={} type={}", valueNode, value, fieldMd.getType().getName());
+                result = typedValue.compareNode(valueNode, ctx);
             }
             LOGGER.debug(" result={}", result);
             ctx.setResult(operator.apply(result));
@@ -0,0 +1,355 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.hooks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.HookConfiguration;
+import com.redhat.lightblue.util.metrics.MetricKey;
+import com.redhat.lightblue.util.metrics.MetricsRegistry;
+
+/**
+ * Calls hooks asynchronously. Each hook has its own bounded queue and
+ * a worker thread, so a slow hook does not delay the others, and the
+ * documents are delivered to a hook in the order they are queued.
+ *
+ * The worker takes all queued deliveries, and combines consecutive
+ * deliveries for the same entity metadata and hook configuration into
+ * a single call to the hook, with up to maxBatchSize documents.
+ *
+ * When the queue of a hook is full, the overflow policy determines
+ * what happens: BLOCK waits until there is room in the queue, DISCARD
+ * drops the documents, and CALLER_RUNS calls the hook in the calling
+ * thread. A hook is never called concurrently: a caller running the
+ * hook waits for the call in progress on the worker. The documents of
+ * a caller run call are delivered before the documents already in the
+ * queue.
+ *
+ * A hook failing with an exception or an error is logged and recorded
+ * as failed, and the worker continues with the next call.
+ *
+ * For each hook and entity, the number of queued, dropped, and caller
+ * run hook calls, the number of delivered and failed documents, the
+ * batch sizes, the queue depth, and the hook processing times are
+ * recorded to the metrics registry, with operation
+ * "hook.&lt;hookName&gt;".
+ */
+public class AsyncHookDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncHookDispatcher.class);
+
+    public enum OverflowPolicy {
+        BLOCK, DISCARD, CALLER_RUNS
+    }
+
+    private static final Delivery STOP = new Delivery(null, null, null, null);
+
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final MetricsRegistry metrics;
+    private final Map<String, HookQueue> queues = new ConcurrentHashMap<>();
+    private volatile boolean shutdown = false;
+
+    private static final class Delivery {
+        final CRUDHook hook;
+        final EntityMetadata md;
+        final HookConfiguration cfg;
+        final Supplier<List<HookDoc>> docs;
+
+        Delivery(CRUDHook hook, EntityMetadata md, HookConfiguration cfg, Supplier<List<HookDoc>> docs) {
+            this.hook = hook;
+            this.md = md;
+            this.cfg = cfg;
+            this.docs = docs;
+        }
+    }
+
+    private final class HookQueue implements Runnable {
+        final String name;
+        final BlockingQueue<Delivery> queue;
+        final Thread worker;
+        // Held while the hook is called, so the worker and callers
+        // running the hook do not call it concurrently
+        final Object callLock = new Object();
+        // Number of deliveries queued but not yet processed
+        private int pending;
+
+        HookQueue(String name) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.worker = new Thread(this, "lightblue-hook-" + name);
+            worker.setDaemon(true);
+        }
+
+        synchronized void inc() {
+            pending++;
+        }
+
+        synchronized void dec(int n) {
+            pending -= n;
+            if (pending == 0) {
+                notifyAll();
+            }
+        }
+
+        synchronized boolean await(long deadline) throws InterruptedException {
+            while (pending > 0) {
+                long t = deadline - System.currentTimeMillis();
+                if (t <= 0) {
+                    return false;
+                }
+                wait(t);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            List<Delivery> drained = new ArrayList<>();
+            try {
+                while (true) {
+                    drained.add(queue.take());
+                    queue.drainTo(drained);
+                    boolean stop = drained.remove(STOP);
+                    try {
+                        deliver(this, drained);
+                    } catch (Throwable t) {
+                        LOGGER.error("Hook worker " + name + " failed", t);
+                    } finally {
+                        dec(drained.size());
+                        drained.clear();
+                    }
+                    if (stop) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Hook worker {} interrupted", name);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param queueCapacity The maximum number of deliveries queued for a
+     * hook
+     * @param maxBatchSize The maximum number of documents combined into
+     * a single hook call
+     * @param overflowPolicy What to do when a hook queue is full
+     * @param metrics The registry to record metrics to, can be null
+     */
+    public AsyncHookDispatcher(int queueCapacity,
+                               int maxBatchSize,
+                               OverflowPolicy overflowPolicy,
+                               MetricsRegistry metrics) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a hook call. The documents are computed by the worker
+     * thread of the hook.
+     *
+     * @param hookName Name of the hook
+     * @param hook The hook
+     * @param md Entity metadata
+     * @param cfg Hook configuration
+     * @param docs Supplies the documents to pass to the hook
+     *
+     * @return true if the call is queued or run, false if it is dropped
+     */
+    public boolean dispatch(String hookName,
+                            CRUDHook hook,
+                            EntityMetadata md,
+                            HookConfiguration cfg,
+                            Supplier<List<HookDoc>> docs) {
+        if (shutdown) {
+            throw new IllegalStateException("Hook dispatcher is shut down");
+        }
+        HookQueue q = getQueue(hookName);
+        Delivery d = new Delivery(hook, md, cfg, docs);
+        q.inc();
+        boolean queued;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                q.queue.put(d);
+                queued = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+        } else {
+            queued = q.queue.offer(d);
+        }
+        if (metrics != null) {
+            metrics.histogram(key(md, hookName, "queueDepth")).update(q.queue.size());
+        }
+        if (queued) {
+            count(md, hookName, "queued", 1);
+            return true;
+        }
+        q.dec(1);
+        if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+            LOGGER.debug("Queue of hook {} is full, calling hook in caller thread", hookName);
+            count(md, hookName, "callerRuns", 1);
+            List<Delivery> list = new ArrayList<>(1);
+            list.add(d);
+            deliver(q, list);
+            return true;
+        }
+        LOGGER.warn("Queue of hook {} is full, dropping hook call for {}", hookName, md.getName());
+        count(md, hookName, "dropped", 1);
+        return false;
+    }
+
+    /**
+     * Waits until all queued hook calls are processed, or the timeout
+     * expires
+     *
+     * @return true if all queued calls are processed
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (HookQueue q : queues.values()) {
+            if (!q.await(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of hook calls queued for the given hook
+     */
+    public int getQueueDepth(String hookName) {
+        HookQueue q = queues.get(hookName);
+        return q == null ? 0 : q.queue.size();
+    }
+
+    /**
+     * Stops accepting new hook calls, and stops the worker threads after
+     * the queued calls are processed
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (HookQueue q : queues.values()) {
+            try {
+                q.queue.put(STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                q.worker.interrupt();
+            }
+        }
+    }
+
+    private HookQueue getQueue(String hookName) {
+        HookQueue q = queues.get(hookName);
+        if (q == null) {
+            synchronized (queues) {
+                q = queues.get(hookName);
+                if (q == null) {
+                    q = new HookQueue(hookName);
+                    q.worker.start();
+                    queues.put(hookName, q);
+                }
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Calls the hook for the deliveries, combining consecutive
+     * deliveries with the same metadata and configuration
+     */
+    private void deliver(HookQueue q, List<Delivery> deliveries) {
+        synchronized (q.callLock) {
+            deliver(q.name, deliveries);
+        }
+    }
+
+    private void deliver(String hookName, List<Delivery> deliveries) {
+        Delivery batchHead = null;
+        List<HookDoc> batch = new ArrayList<>();
+        for (Delivery d : deliveries) {
+            List<HookDoc> docs;
+            try {
+                docs = d.docs.get();
+            } catch (Throwable e) {
+                LOGGER.error("Cannot build documents for hook " + hookName, e);
+                count(d.md, hookName, "failed", 1);
+                continue;
+            }
+            if (batchHead != null
+                    && (batchHead.md != d.md || batchHead.cfg != d.cfg || batch.size() + docs.size() > maxBatchSize)) {
+                call(hookName, batchHead, batch);
+                batch = new ArrayList<>();
+                batchHead = null;
+            }
+            if (batchHead == null) {
+                batchHead = d;
+            }
+            batch.addAll(docs);
+        }
+        if (batchHead != null) {
+            call(hookName, batchHead, batch);
+        }
+    }
+
+    private void call(String hookName, Delivery d, List<HookDoc> docs) {
+        if (docs.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            d.hook.processHook(d.md, d.cfg, docs);
+            count(d.md, hookName, "delivered", docs.size());
+        } catch (Throwable e) {
+            LOGGER.error("Exception while processing hook of type: " + d.hook.getClass(), e);
+            count(d.md, hookName, "failed", docs.size());
+        } finally {
+            if (metrics != null) {
+                metrics.timer(key(d.md, hookName, "process")).stop(start);
+                metrics.histogram(key(d.md, hookName, "batchSize")).update(docs.size());
+            }
+        }
+    }
+
+    private void count(EntityMetadata md, String hookName, String phase, long n) {
+        if (metrics != null) {
+            metrics.counter(key(md, hookName, phase)).inc(n);
+        }
+    }
+
+    private static MetricKey key(EntityMetadata md, String hookName, String phase) {
+        return new MetricKey(md.getName(), "hook." + hookName, phase);
+    }
+}
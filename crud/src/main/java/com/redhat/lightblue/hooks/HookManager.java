@@ -50,10 +50,19 @@ import com.redhat.lightblue.util.JsonDoc;
  * order.
  *
  * Each hook receives a list containing pre- and post- update versions of the
- * documents. If there are multiple hooks for the given operation, the hooks of
- * that operation share the document copies. Because of this, hooks must treat
- * documents as read-only.
+ * documents. The documents are copied once when they are queued, and every
+ * hook receives its own version of them: hooks with a projection receive the
+ * projection of the copy, which shares only immutable value nodes with it,
+ * and hooks without a projection receive their own copy. If a document is
+ * queued for a single hook without a projection, the hook receives the queued
+ * copy itself. So a hook can modify the documents it receives without
+ * affecting the other hooks.
  *
+ * Documents of a non-rewindable stream are queued by a listener of the
+ * stream, so they are queued on the thread iterating the stream. The
+ * mediator iterates the result streams on the request thread, also when
+ * the results are processed in parallel, so the hook manager of a
+ * request is never accessed concurrently.
  *
  */
 public class HookManager {
@@ -61,6 +70,7 @@ public class HookManager {
 
     private final HookResolver resolver;
     private final JsonNodeFactory factory;
+    private final AsyncHookDispatcher dispatcher;
 
     private final List<QueuedHook> queuedHooks = new ArrayList<>();
 
@@ -68,6 +78,8 @@ public class HookManager {
         private final JsonDoc pre;
         private final JsonDoc post;
         private final CRUDOperation op;
+        // Number of hooks the document is queued for
+        private int numHooks;
 
         public HookDocInfo(DocCtx doc) {
             op = doc.getCRUDOperationPerformed();
@@ -110,6 +122,31 @@ public class HookManager {
         }
 
         void call(String who) {
+            List<HookDoc> processedDocuments = getHookDocs(who);
+            if(!processedDocuments.isEmpty()) {
+                try {
+                    resolvedHook.processHook(md, hook.getConfiguration(), processedDocuments);
+                } catch (RuntimeException e) {
+                    if (e.getClass().isAnnotationPresent(StopHookProcessing.class)) {
+                        throw e;
+                    } else {
+                        LOGGER.error("Exception while processing hook of type: " + resolvedHook.getClass(), e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Queues the hook call to the async dispatcher. The documents
+         * are projected by the hook worker.
+         */
+        void dispatch(String who) {
+            if (!docList.isEmpty()) {
+                dispatcher.dispatch(hook.getName(), resolvedHook, md, hook.getConfiguration(), () -> getHookDocs(who));
+            }
+        }
+
+        List<HookDoc> getHookDocs(String who) {
             List<HookDoc> processedDocuments = new ArrayList<>(docList.size());
             if (hook.getProjection() != null) {
                 // Project the docs
@@ -123,24 +160,22 @@ public class HookManager {
                 }
             } else {
                 for (HookDocInfo doc : docList) {
+                    JsonDoc pre = doc.pre;
+                    JsonDoc post = doc.post;
+                    if (doc.numHooks > 1) {
+                        // Other hooks read the queued copy, so this hook
+                        // gets a copy of its own
+                        pre = pre == null ? null : pre.copy();
+                        post = doc.post == doc.pre ? pre : post == null ? null : post.copy();
+                    }
                     processedDocuments.add(new HookDoc(md,
-                                                       doc.pre,
-                                                       doc.post,
+                                                       pre,
+                                                       post,
                                                        doc.op,
                                                        who));
                 }
             }
-            if(!processedDocuments.isEmpty()) {
-                try {
-                    resolvedHook.processHook(md, hook.getConfiguration(), processedDocuments);
-                } catch (RuntimeException e) {
-                    if (e.getClass().isAnnotationPresent(StopHookProcessing.class)) {
-                        throw e;
-                    } else {
-                        LOGGER.error("Exception while processing hook of type: " + resolvedHook.getClass(), e);
-                    }
-                }
-            }
+            return processedDocuments;
         }
     }
 
@@ -155,7 +190,11 @@ public class HookManager {
 
         void call() {
             for(HookAndDocs hook:hooks) {
-                hook.call(who);
+                if(dispatcher!=null&&!(hook.resolvedHook instanceof SynchronousHook)) {
+                    hook.dispatch(who);
+                } else {
+                    hook.call(who);
+                }
             }
         }
     }
@@ -164,8 +203,18 @@ public class HookManager {
      * Construct hooks with the given hook resolver
      */
     public HookManager(HookResolver r, JsonNodeFactory factory) {
+        this(r, factory, null);
+    }
+
+    /**
+     * Construct hooks with the given hook resolver. If dispatcher is
+     * not null, hooks that are not SynchronousHooks are called
+     * asynchronously using the dispatcher.
+     */
+    public HookManager(HookResolver r, JsonNodeFactory factory, AsyncHookDispatcher dispatcher) {
         resolver = r;
         this.factory = factory;
+        this.dispatcher = dispatcher;
     }
 
     /**
@@ -221,7 +270,9 @@ public class HookManager {
     /**
      * Calls all queued hooks, and then clears the queued hooks. Any hook that
      * failed will be logged, but hook execution will continue unless one of the
-     * hooks throws an exception with @StopHookProcessing annotation.
+     * hooks throws an exception with @StopHookProcessing annotation. If there
+     * is an async dispatcher, hooks other than SynchronousHooks are queued to
+     * the dispatcher instead, and their failures do not stop hook processing.
      */
     public void callQueuedHooks() {
         for (QueuedHook q: queuedHooks) {
@@ -233,6 +284,8 @@ public class HookManager {
     
     private void addDocument(List<HookAndDocs> hooks,DocCtx doc) {
         if(!doc.hasErrors()) {
+            // The document is copied once for all hooks, see getHookDocs
+            HookDocInfo info=null;
             for(HookAndDocs hook:hooks) {
                 boolean queue=false;
                 if(doc.getCRUDOperationPerformed()!=null) {
@@ -243,7 +296,11 @@ public class HookManager {
                     case FIND: queue=hook.hook.isFind();break;
                     }
                     if(queue) {
-                        hook.docList.add(new HookDocInfo(doc));
+                        if(info==null) {
+                            info=new HookDocInfo(doc);
+                        }
+                        info.numHooks++;
+                        hook.docList.add(info);
                     }
                 }
             }
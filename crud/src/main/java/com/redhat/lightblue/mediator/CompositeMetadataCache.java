@@ -0,0 +1,261 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mediator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.metadata.AbstractGetMetadata;
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Caches composite metadata built by DefaultMetadataResolver.
+ *
+ * The shape of a composite metadata tree depends on the root entity,
+ * the requested version, and the set of references the query and
+ * projection of the request touch. While building the tree, the
+ * resolver asks whether each reference field it encounters is
+ * required by the request. These answers are recorded with the cached
+ * tree, and a cached tree is reused for a later request if that
+ * request gives the same answers for the same reference fields.
+ *
+ * Entries expire after a time-to-live, and the number of entries is
+ * bounded, least recently used entries are evicted first. Entries
+ * containing an entity are invalidated when that entity changes.
+ */
+public class CompositeMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompositeMetadataCache.class);
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, List<Entry>> entries = new HashMap<>();
+    private int size;
+    private long generation;
+
+    /**
+     * A cached composite metadata, with the reference fields that were
+     * checked while building it
+     */
+    public static final class Entry {
+        private final String key;
+        private final Map<Path, Boolean> references;
+        private final CompositeMetadata compositeMetadata;
+        private final Map<String, EntityMetadata> metadataMap;
+        private final Set<String> roles;
+        private final long expires;
+        private volatile long lastAccess;
+
+        private Entry(String key,
+                      Map<Path, Boolean> references,
+                      CompositeMetadata compositeMetadata,
+                      Map<String, EntityMetadata> metadataMap,
+                      Set<String> roles,
+                      long expires) {
+            this.key = key;
+            this.references = references;
+            this.compositeMetadata = compositeMetadata;
+            this.metadataMap = metadataMap;
+            this.roles = roles;
+            this.expires = expires;
+        }
+
+        /**
+         * Returns true if gmd requires the same references as the
+         * request this entry was built for
+         */
+        private boolean matches(AbstractGetMetadata gmd) {
+            for (Map.Entry<Path, Boolean> ref : references.entrySet()) {
+                if (gmd.isRequired(ref.getKey()) != ref.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public CompositeMetadata getCompositeMetadata() {
+            return compositeMetadata;
+        }
+
+        /**
+         * Entity name to entity metadata map for all entities in the
+         * composite metadata
+         */
+        public Map<String, EntityMetadata> getMetadataMap() {
+            return metadataMap;
+        }
+
+        public Set<String> getRoles() {
+            return roles;
+        }
+    }
+
+    /**
+     * @param ttlMillis Time-to-live for cached entries in milliseconds. If
+     * &lt;=0, entries do not expire.
+     * @param maxEntries Maximum number of cached entries
+     */
+    public CompositeMetadataCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    private static String key(String entityName, String version) {
+        return version == null ? entityName : entityName + ":" + version;
+    }
+
+    /**
+     * Returns a cached composite metadata for the entity and version
+     * that was built for a request requiring the same references as
+     * gmd, or null if there is none
+     */
+    public Entry get(String entityName, String version, AbstractGetMetadata gmd) {
+        List<Entry> candidates;
+        synchronized (this) {
+            List<Entry> list = entries.get(key(entityName, version));
+            if (list == null) {
+                return null;
+            }
+            candidates = new ArrayList<>(list);
+        }
+        long now = System.currentTimeMillis();
+        for (Entry e : candidates) {
+            if (e.expires >= now && e.matches(gmd)) {
+                e.lastAccess = now;
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current generation. The generation changes at every
+     * invalidation. Get the generation before loading the metadata, and
+     * pass it to put, so metadata loaded concurrently with an
+     * invalidation is not cached.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Adds a composite metadata to the cache
+     *
+     * @param entityName Requested entity name
+     * @param version Requested version, can be null
+     * @param references The reference fields checked while building the
+     * composite metadata, and whether they were required
+     * @param cmd The composite metadata
+     * @param metadataMap Entity metadata of all entities in the composite
+     * metadata
+     * @param roles The roles referenced in the composite metadata
+     * @param gen The generation obtained before the metadata is loaded
+     */
+    public synchronized void put(String entityName,
+                                 String version,
+                                 Map<Path, Boolean> references,
+                                 CompositeMetadata cmd,
+                                 Map<String, EntityMetadata> metadataMap,
+                                 Set<String> roles,
+                                 long gen) {
+        if (gen != generation) {
+            return;
+        }
+        String key = key(entityName, version);
+        List<Entry> list = entries.get(key);
+        if (list == null) {
+            entries.put(key, list = new ArrayList<>());
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(key,
+                Collections.unmodifiableMap(references),
+                cmd,
+                Collections.unmodifiableMap(new HashMap<>(metadataMap)),
+                Collections.unmodifiableSet(roles),
+                ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE);
+        entry.lastAccess = now;
+        list.add(entry);
+        size++;
+        if (size > maxEntries) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    /**
+     * Invalidates all entries containing the given entity. If
+     * entityName is null, invalidates all entries.
+     */
+    public synchronized void invalidate(String entityName) {
+        LOGGER.debug("Invalidating {}", entityName);
+        generation++;
+        if (entityName == null) {
+            entries.clear();
+            size = 0;
+        } else {
+            for (Iterator<List<Entry>> itr = entries.values().iterator(); itr.hasNext();) {
+                List<Entry> list = itr.next();
+                for (Iterator<Entry> eitr = list.iterator(); eitr.hasNext();) {
+                    if (eitr.next().metadataMap.containsKey(entityName)) {
+                        eitr.remove();
+                        size--;
+                    }
+                }
+                if (list.isEmpty()) {
+                    itr.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached entries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Entry lru = null;
+        for (List<Entry> list : entries.values()) {
+            for (Entry e : list) {
+                if (lru == null || e.lastAccess < lru.lastAccess) {
+                    lru = e;
+                }
+            }
+        }
+        if (lru != null) {
+            List<Entry> list = entries.get(lru.key);
+            list.remove(lru);
+            if (list.isEmpty()) {
+                entries.remove(lru.key);
+            }
+            size--;
+        }
+    }
+}
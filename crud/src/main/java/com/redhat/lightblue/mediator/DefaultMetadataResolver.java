@@ -22,6 +22,7 @@ import java.io.Serializable;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Deque;
@@ -84,6 +85,7 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
 
     private final Map<String, EntityMetadata> metadataMap = new HashMap<>();
     private final Metadata md;
+    private final transient CompositeMetadataCache cache;
 
     private CompositeMetadata cmd;
     private Set<String> roles;
@@ -92,6 +94,8 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
         // the metadata version of the initial request
         private final String requestVersion;
         private final String requestEntityName;
+        // The reference fields checked while building the composite metadata
+        private final Map<Path, Boolean> references = new LinkedHashMap<>();
 
         public Gmd(Projection projection, QueryExpression query, String requestEntityName, String requestVersion) {
             super(projection, query);
@@ -99,6 +103,12 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
             this.requestEntityName = requestEntityName;
         }
 
+        @Override
+        public EntityMetadata getMetadata(Path injectionField, String entityName, String version) {
+            references.put(injectionField, isRequired(injectionField));
+            return super.getMetadata(injectionField, entityName, version);
+        }
+
         @Override
         protected EntityMetadata retrieveMetadata(Path injectionPath, String entityName, String entityVersion) {
             EntityMetadata metadata=metadataMap.get(entityName);
@@ -128,7 +138,17 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
      * Constructs the metadata resolver with the given metadata implementation
      */
     public DefaultMetadataResolver(Metadata metadata) {
+        this(metadata, null);
+    }
+
+    /**
+     * Constructs the metadata resolver with the given metadata
+     * implementation, using the composite metadata cache if it is not
+     * null
+     */
+    public DefaultMetadataResolver(Metadata metadata, CompositeMetadataCache cache) {
         this.md = metadata;
+        this.cache = cache;
     }
 
     /**
@@ -140,6 +160,19 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
         }
 
         LOGGER.debug("Initializing with {}:{}", entityName, entityVersion);
+        Gmd gmd = new Gmd(projection, query, entityName, entityVersion);
+        long generation = 0;
+        if (cache != null) {
+            CompositeMetadataCache.Entry entry = cache.get(entityName, entityVersion, gmd);
+            if (entry != null) {
+                LOGGER.debug("Using cached composite metadata for {}:{}", entityName, entityVersion);
+                metadataMap.putAll(entry.getMetadataMap());
+                cmd = entry.getCompositeMetadata();
+                roles = entry.getRoles();
+                return;
+            }
+            generation = cache.getGeneration();
+        }
         // first call to getMetadata will preload metadataMap
         EntityMetadata emd = md.getEntityMetadata(entityName, entityVersion);
         if (emd == null || emd.getEntitySchema() == null) {
@@ -148,7 +181,7 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
             throw Error.get(CrudConstants.ERR_DISABLED_METADATA, entityName + ":" + entityVersion);
         }
         metadataMap.put(entityName,emd);
-        cmd = CompositeMetadata.buildCompositeMetadata(emd, new Gmd(projection, query, entityName, entityVersion));
+        cmd = CompositeMetadata.buildCompositeMetadata(emd, gmd);
         LOGGER.debug("Composite metadata:{}", cmd);
 
         LOGGER.debug("Collecting metadata roles");
@@ -163,6 +196,9 @@ public class DefaultMetadataResolver implements MetadataResolver, Serializable {
             }
         }
         LOGGER.debug("Metadata roles:{}", roles);
+        if (cache != null) {
+            cache.put(entityName, entityVersion, gmd.references, cmd, metadataMap, roles, generation);
+        }
     }
 
     /**
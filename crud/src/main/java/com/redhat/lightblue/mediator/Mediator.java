@@ -18,13 +18,18 @@
  */
 package com.redhat.lightblue.mediator;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import java.util.concurrent.Future;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Callable;
 
@@ -32,9 +37,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.redhat.lightblue.EntityVersion;
 import com.redhat.lightblue.OperationStatus;
 import com.redhat.lightblue.Request;
 import com.redhat.lightblue.Response;
+import com.redhat.lightblue.ResponseStreamWriter;
 import com.redhat.lightblue.DataError;
 import com.redhat.lightblue.ResultMetadata;
 import com.redhat.lightblue.crud.BulkRequest;
@@ -49,6 +57,7 @@ import com.redhat.lightblue.crud.CRUDUpdateResponse;
 import com.redhat.lightblue.crud.ConstraintValidator;
 import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.crud.DeleteRequest;
+import com.redhat.lightblue.crud.DocRequest;
 import com.redhat.lightblue.crud.DocCtx;
 import com.redhat.lightblue.crud.Factory;
 import com.redhat.lightblue.crud.FindRequest;
@@ -56,6 +65,7 @@ import com.redhat.lightblue.crud.InsertionRequest;
 import com.redhat.lightblue.crud.SaveRequest;
 import com.redhat.lightblue.crud.UpdateRequest;
 import com.redhat.lightblue.crud.DocumentStream;
+import com.redhat.lightblue.crud.ParallelDocumentStream;
 import com.redhat.lightblue.crud.WithQuery;
 import com.redhat.lightblue.crud.WithRange;
 import com.redhat.lightblue.crud.WithIfCurrent;
@@ -67,8 +77,11 @@ import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.DocId;
 import com.redhat.lightblue.metadata.DocIdExtractor;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.metadata.Metadata;
 import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.ReferenceField;
 import com.redhat.lightblue.query.BinaryComparisonOperator;
 import com.redhat.lightblue.query.FieldProjection;
 import com.redhat.lightblue.query.NaryLogicalExpression;
@@ -143,7 +156,7 @@ public class Mediator {
                     response.setModifiedCount(ir.getNumInserted());
                     List<DataError> dataErrors=setResponseResults(ctx,req,response);
                     response.getDataErrors().addAll(dataErrors);
-                    ctx.measure.begin("postProcessInsertedDocs");
+                    ctx.measure.end("postProcessInsertedDocs");
                     if (!ctx.hasErrors() && dataErrors.isEmpty() && ctx.getInputDocuments().size()==ir.getNumInserted()) {
                         ctx.setStatus(OperationStatus.COMPLETE);
                     } else if (ir.getNumInserted()>0) {
@@ -171,6 +184,7 @@ public class Mediator {
         } finally {
             if(ctx!=null) {
                 ctx.measure.end("insert");
+                recordCounts(ctx, response);
                 METRICS.debug("insert: {}",ctx.measure);
             }
             Error.pop();
@@ -244,6 +258,7 @@ public class Mediator {
         } finally {
             if(ctx!=null) {
                 ctx.measure.end("save");
+                recordCounts(ctx, response);
                 METRICS.debug("save: {}",ctx.measure);
             }
             Error.pop();
@@ -251,6 +266,89 @@ public class Mediator {
         return response;
     }
 
+    /**
+     * Inserts documents read from a stream. The documents are inserted in
+     * batches of at most Factory.getIngestionBatchSize() documents, so only
+     * one batch of the input is in memory at any time. Each batch is
+     * processed as a separate insertion request, and the responses are
+     * combined. The entity data of the request is ignored.
+     *
+     * @param req Insertion request without entity data
+     * @param docs The documents to insert
+     */
+    public Response insert(InsertionRequest req, DocumentStream<JsonDoc> docs) {
+        return processBatches(req, docs, () -> insert(req));
+    }
+
+    /**
+     * Saves documents read from a stream. The documents are saved in batches
+     * of at most Factory.getIngestionBatchSize() documents, so only one batch
+     * of the input is in memory at any time. Each batch is processed as a
+     * separate save request, and the responses are combined. The entity data
+     * of the request is ignored.
+     *
+     * @param req Save request without entity data
+     * @param docs The documents to save
+     */
+    public Response save(SaveRequest req, DocumentStream<JsonDoc> docs) {
+        return processBatches(req, docs, () -> save(req));
+    }
+
+    private Response processBatches(DocRequest req, DocumentStream<JsonDoc> docs, Supplier<Response> op) {
+        int batchSize = Math.max(1, factory.getIngestionBatchSize());
+        Response response = null;
+        try {
+            do {
+                ArrayNode batch = factory.getNodeFactory().arrayNode();
+                while (batch.size() < batchSize && docs.hasNext()) {
+                    batch.add(docs.next().getRoot());
+                }
+                req.setEntityData(batch);
+                Response batchResponse = op.get();
+                req.setEntityData(null);
+                if (response == null) {
+                    response = batchResponse;
+                } else {
+                    mergeResponse(response, batchResponse);
+                }
+            } while (docs.hasNext());
+        } catch (Error e) {
+            if (response == null) {
+                response = new Response(factory.getNodeFactory());
+                response.setEntity(req.getEntityVersion());
+            }
+            response.setStatus(response.getModifiedCount() > 0 ? OperationStatus.PARTIAL : OperationStatus.ERROR);
+            response.getErrors().add(e);
+        } finally {
+            docs.close();
+        }
+        return response;
+    }
+
+    /**
+     * Adds the results of a batch response to the response
+     */
+    private static void mergeResponse(Response response, Response batch) {
+        if (response.getStatus() != batch.getStatus()) {
+            response.setStatus(OperationStatus.PARTIAL);
+        }
+        response.setModifiedCount(response.getModifiedCount() + batch.getModifiedCount());
+        response.setMatchCount(response.getMatchCount() + batch.getMatchCount());
+        if (batch.getEntityData() != null) {
+            response.addEntityData(batch.getEntityData());
+        }
+        if (batch.getResultMetadata() != null) {
+            List<ResultMetadata> rmd = new ArrayList<>();
+            if (response.getResultMetadata() != null) {
+                rmd.addAll(response.getResultMetadata());
+            }
+            rmd.addAll(batch.getResultMetadata());
+            response.setResultMetadata(rmd);
+        }
+        response.getDataErrors().addAll(batch.getDataErrors());
+        response.getErrors().addAll(batch.getErrors());
+    }
+
     /**
      * Updates documents that match the given search criteria
      *
@@ -330,6 +428,7 @@ public class Mediator {
         } finally {
              if(ctx!=null) {
                 ctx.measure.end("update");
+                recordCounts(ctx, response);
                 METRICS.debug("update: {}",ctx.measure);
             }
            Error.pop();
@@ -392,6 +491,7 @@ public class Mediator {
         } finally {
             if(ctx!=null) {
                 ctx.measure.end("delete");
+                recordCounts(ctx, response);
                 METRICS.debug("delete: {}",ctx.measure);
             }
             Error.pop();
@@ -422,7 +522,7 @@ public class Mediator {
 
         OperationContext findCtx = new OperationContext(freq, CRUDOperation.FIND, ctx);
         CompositeFindImpl finder = new CompositeFindImpl(md);
-        finder.setParallelism(9);
+        finder.setParallelism(factory.getCompositeFindParallelism());
         CRUDFindResponse response = finder.find(findCtx, freq.getCRUDFindRequest());
         if(findCtx.hasErrors()) {
             ctx.addErrors(findCtx.getErrors());
@@ -454,6 +554,11 @@ public class Mediator {
                 }
             }
             docStream.close();
+            if(findCtx.hasErrors()) {
+                // Errors can happen while the documents are streamed
+                ctx.addErrors(findCtx.getErrors());
+                return null;
+            }
             if (orq.isEmpty()) {
                 return null;
             } else if (orq.size() == 1) {
@@ -473,9 +578,75 @@ public class Mediator {
      * The implementation passes the request to the back-end.
      */
     public Response find(FindRequest req) {
+        Response response = new Response(factory.getNodeFactory());
+        find(req, response, new ResultSink() {
+                @Override
+                public void begin(Response response) {
+                    response.setEntityData(factory.getNodeFactory().arrayNode());
+                }
+
+                @Override
+                public void add(Response response, JsonNode doc) {
+                    response.addEntityData(doc);
+                }
+            });
+        return response;
+    }
+
+    /**
+     * Finds documents, and writes the response to the given writer. The
+     * documents are written as they are retrieved and projected, so they are
+     * not collected in memory. The returned response contains everything
+     * except the entity data, and it is also written to the writer after the
+     * documents.
+     *
+     * @param req Find request
+     * @param writer The response writer
+     *
+     * @throws IOException if the response cannot be written
+     */
+    public Response find(FindRequest req, ResponseStreamWriter writer) throws IOException {
+        Response response = new Response(factory.getNodeFactory());
+        find(req, response, new ResultSink() {
+                @Override
+                public void begin(Response response) throws IOException {
+                    writer.start(response);
+                }
+
+                @Override
+                public void add(Response response, JsonNode doc) throws IOException {
+                    writer.writeDocument(doc);
+                }
+
+                @Override
+                public long getNumDocuments() {
+                    return writer.getNumDocuments();
+                }
+            });
+        writer.end(response);
+        return response;
+    }
+
+    /**
+     * Receives the documents found by find()
+     */
+    private interface ResultSink {
+        void begin(Response response) throws IOException;
+
+        void add(Response response, JsonNode doc) throws IOException;
+
+        /**
+         * Returns the number of documents that are not added to the
+         * response entity data
+         */
+        default long getNumDocuments() {
+            return 0;
+        }
+    }
+
+    private void find(FindRequest req, Response response, ResultSink sink) {
         LOGGER.debug("find {}", req.getEntityVersion());
         Error.push("find(" + req.getEntityVersion().toString() + ")");
-        Response response = new Response(factory.getNodeFactory());
         response.setStatus(OperationStatus.ERROR);
         OperationContext ctx=null;
         try {
@@ -496,8 +667,7 @@ public class Mediator {
                 } else {
                     LOGGER.debug("Composite entity");
                     finder = new CompositeFindImpl(md);
-                    // This can be read from a configuration
-                    ((CompositeFindImpl) finder).setParallelism(9);
+                    ((CompositeFindImpl) finder).setParallelism(factory.getCompositeFindParallelism());
                 }
 
                 ctx.measure.begin("finder.find");
@@ -506,24 +676,28 @@ public class Mediator {
 
                 if(!ctx.hasErrors()) {
                     ctx.measure.begin("postProcessFound");
-                    DocumentStream<DocCtx> docStream=ctx.getDocumentStream();
+                    DocumentStream<DocCtx> docStream=getResultStream(ctx);
                     List<ResultMetadata> rmd=new ArrayList<>();
-                    response.setEntityData(factory.getNodeFactory().arrayNode());
-                    for(;docStream.hasNext();) {
-                        DocCtx doc=docStream.next();
-                        if(!doc.hasErrors()) {          
-                            response.addEntityData(doc.getOutputDocument().getRoot());
-                            rmd.add(doc.getResultMetadata());
-                    } else {
-                            DataError error=doc.getDataError();
-                            if(error!=null)
-                                response.getDataErrors().add(error);
+                    sink.begin(response);
+                    try {
+                        for(;docStream.hasNext();) {
+                            DocCtx doc=docStream.next();
+                            if(!doc.hasErrors()) {          
+                                sink.add(response, doc.getOutputDocument().getRoot());
+                                rmd.add(doc.getResultMetadata());
+                            } else {
+                                DataError error=doc.getDataError();
+                                if(error!=null)
+                                    response.getDataErrors().add(error);
+                            }
                         }
+                    } finally {
+                        docStream.close();
                     }
-                    docStream.close();
                     response.setResultMetadata(rmd);
                     ctx.measure.end("postProcessFound");
-                    ctx.setStatus(OperationStatus.COMPLETE);
+                    // Composite finds can add errors while the documents are streamed
+                    ctx.setStatus(ctx.hasErrors()?OperationStatus.ERROR:OperationStatus.COMPLETE);
                 } else {
                     ctx.setStatus(OperationStatus.ERROR);
                 }
@@ -545,11 +719,14 @@ public class Mediator {
         } finally {
             if(ctx!=null) {
                 ctx.measure.end("find");
+                recordCounts(ctx, response);
+                if (sink.getNumDocuments() > 0) {
+                    ctx.measure.count("documents", sink.getNumDocuments());
+                }
                 METRICS.debug("find: {}",ctx.measure);
             }
             Error.pop();
         }
-        return response;
     }
 
     /**
@@ -573,8 +750,7 @@ public class Mediator {
             } else {
                 LOGGER.debug("Composite entity");
                 finder = new CompositeFindImpl(md);
-                // This can be read from a configuration
-                ((CompositeFindImpl) finder).setParallelism(9);
+                ((CompositeFindImpl) finder).setParallelism(factory.getCompositeFindParallelism());
             }
             
             finder.explain(ctx, req.getCRUDFindRequest());
@@ -620,10 +796,10 @@ public class Mediator {
         for (int i = 0; i < ctx.futures.length; i++) {
             if (ctx.futures[i] != null) {
                 try {
-                    LOGGER.debug("Waiting for a find request to complete");
+                    LOGGER.debug("Waiting for a request to complete");
                     ctx.responses[i] = ctx.futures[i].get();
                 } catch (Exception e) {
-                    LOGGER.debug("Find request wait failed", e);
+                    LOGGER.debug("Request wait failed", e);
                 }
             }
         }
@@ -634,57 +810,169 @@ public class Mediator {
             @Override
             public Response call() {
                 LOGGER.debug("Starting a future {} request",req.getOperation());
-                switch (req.getOperation()) {
-                    case FIND:
-                        return find((FindRequest) req);
-                    case INSERT:
-                        return insert((InsertionRequest) req);
-                    case DELETE:
-                        return delete((DeleteRequest) req);
-                    case UPDATE:
-                        return update((UpdateRequest) req);
-                    case SAVE:
-                        return save((SaveRequest) req);
-                    default:
-                        throw new UnsupportedOperationException("CRUD operation '"+req.getOperation()+"' is not supported!");
+                // Error context is per thread, so push it again on the thread running the request
+                Error.push("bulk operation");
+                try {
+                    switch (req.getOperation()) {
+                        case FIND:
+                            return find((FindRequest) req);
+                        case INSERT:
+                            return insert((InsertionRequest) req);
+                        case DELETE:
+                            return delete((DeleteRequest) req);
+                        case UPDATE:
+                            return update((UpdateRequest) req);
+                        case SAVE:
+                            return save((SaveRequest) req);
+                        default:
+                            throw new UnsupportedOperationException("CRUD operation '"+req.getOperation()+"' is not supported!");
+                    }
+                } finally {
+                    Error.pop();
                 }
             }
         };
     }
 
+    /**
+     * Keeps the requests of an entity submitted during an ordered bulk
+     * execution, so that a request can be started once the requests it
+     * depends on are completed
+     */
+    private static class BulkEntityDependencies {
+        CompletableFuture<Response> lastWrite;
+        final List<CompletableFuture<Response>> readsSinceLastWrite = new ArrayList<>();
+    }
+
+    private static BulkEntityDependencies getDependencies(Map<String, BulkEntityDependencies> dependencies,
+                                                          String entity) {
+        BulkEntityDependencies d = dependencies.get(entity);
+        if (d == null) {
+            d = new BulkEntityDependencies();
+            dependencies.put(entity, d);
+        }
+        return d;
+    }
+
+    /**
+     * Returns the entities referenced from the given entity, directly or
+     * through other referenced entities. A request on a composite entity
+     * may read any of these. The referenced entities of an entity version
+     * are computed once for a bulk request, and kept in the given map.
+     * The returned set is a copy that can be modified.
+     */
+    private Set<String> getReferencedEntities(EntityVersion ev,
+                                              Map<String, Set<String>> referencedEntities) {
+        if (ev == null) {
+            return new HashSet<>();
+        }
+        Set<String> entities = referencedEntities.computeIfAbsent(ev.getEntity() + ":" + ev.getVersion(), k -> {
+            Set<String> s = new HashSet<>();
+            addReferencedEntities(ev.getEntity(), ev.getVersion(), s);
+            return s;
+        });
+        return new HashSet<>(entities);
+    }
+
+    private void addReferencedEntities(String entity, String version, Set<String> entities) {
+        EntityMetadata md;
+        try {
+            md = metadata.getEntityMetadata(entity, version);
+        } catch (Exception e) {
+            // The request itself will report the metadata error
+            LOGGER.debug("Cannot get metadata for {}:{}", entity, version, e);
+            return;
+        }
+        if (md != null) {
+            FieldCursor cursor = md.getFieldCursor();
+            while (cursor.next()) {
+                FieldTreeNode node = cursor.getCurrentNode();
+                if (node instanceof ReferenceField) {
+                    ReferenceField ref = (ReferenceField) node;
+                    if (entities.add(ref.getEntityName())) {
+                        addReferencedEntities(ref.getEntityName(), ref.getVersionValue(), entities);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules a request of an ordered bulk execution. A request reads
+     * its entity if it is a find request, and all the entities referenced
+     * from its entity, because composite requests may retrieve them. A
+     * write request writes its entity. A request waits for the last
+     * write on all the entities it reads. A write request also waits for
+     * the last write and all the reads after it on the entity it
+     * writes. Requests on unrelated entities, and reads without any
+     * writes in between run in parallel.
+     */
+    private Future<Response> submitOrdered(ExecutorService executor,
+                                           Map<String, BulkEntityDependencies> dependencies,
+                                           Map<String, Set<String>> referencedEntities,
+                                           Request req) {
+        String entity = req.getEntityVersion() == null ? null : req.getEntityVersion().getEntity();
+        boolean write = req.getOperation() != CRUDOperation.FIND;
+        Set<String> reads = getReferencedEntities(req.getEntityVersion(), referencedEntities);
+        if (write) {
+            reads.remove(entity);
+        } else {
+            reads.add(entity);
+        }
+        LOGGER.debug("Request on {} reads {}", entity, reads);
+        List<CompletableFuture<Response>> waitFor = new ArrayList<>();
+        for (String e : reads) {
+            BulkEntityDependencies d = dependencies.get(e);
+            if (d != null && d.lastWrite != null) {
+                waitFor.add(d.lastWrite);
+            }
+        }
+        if (write) {
+            BulkEntityDependencies d = getDependencies(dependencies, entity);
+            if (d.lastWrite != null) {
+                waitFor.add(d.lastWrite);
+            }
+            waitFor.addAll(d.readsSinceLastWrite);
+        }
+        Callable<Response> call = getFutureRequest(req);
+        CompletableFuture<Response> future = CompletableFuture.allOf(waitFor.toArray(new CompletableFuture[waitFor.size()])).
+                thenApplyAsync(x -> {
+                    try {
+                        return call.call();
+                    } catch (Exception e) {
+                        LOGGER.debug("Request failed", e);
+                        return null;
+                    }
+                }, executor);
+        for (String e : reads) {
+            getDependencies(dependencies, e).readsSinceLastWrite.add(future);
+        }
+        if (write) {
+            BulkEntityDependencies d = getDependencies(dependencies, entity);
+            d.lastWrite = future;
+            d.readsSinceLastWrite.clear();
+        }
+        return future;
+    }
+
     public BulkResponse bulkRequest(BulkRequest requests) {
         LOGGER.debug("Bulk request start");
         Error.push("bulk operation");
-        ExecutorService executor = Executors.newFixedThreadPool(factory.getBulkParallelExecutions());
+        ExecutorService executor = factory.getExecutionPool().newSession(factory.getBulkParallelExecutions());
         try {
             LOGGER.debug("Executing up to {} requests in parallel, ordered = {}", factory.getBulkParallelExecutions(), requests.isOrdered());
             List<Request> requestList = requests.getEntries();
             int n = requestList.size();
             BulkExecutionContext ctx = new BulkExecutionContext(n);
+            Map<String, BulkEntityDependencies> dependencies = new HashMap<>();
+            // Referenced entities of each entity:version in this request
+            Map<String, Set<String>> referencedEntities = new HashMap<>();
 
             for (int i = 0; i < n; i++) {
                 Request req = requestList.get(i);
                 if (requests.isOrdered()) {
-                    // ordered - only consecutive finds in parallel
-                    if (req.getOperation() == CRUDOperation.FIND) {
-                        ctx.futures[i] = executor.submit(getFutureRequest(req));
-                    } else {
-                        wait(ctx);
-                        switch (req.getOperation()) {
-                            case INSERT:
-                                ctx.responses[i] = insert((InsertionRequest) req);
-                                break;
-                            case DELETE:
-                                ctx.responses[i] = delete((DeleteRequest) req);
-                                break;
-                            case UPDATE:
-                                ctx.responses[i] = update((UpdateRequest) req);
-                                break;
-                            case SAVE:
-                                ctx.responses[i] = save((SaveRequest) req);
-                                break;
-                        }
-                    }
+                    // ordered - requests run in parallel unless they depend on a previous request
+                    ctx.futures[i] = submitOrdered(executor, dependencies, referencedEntities, req);
                 } else {
                     LOGGER.debug("Scheduling a future operation");
                     // unordered - do them all in parallel
@@ -717,6 +1005,23 @@ public class Mediator {
         return ctx;
     }
 
+    /**
+     * Records the request, error, and document counters of the
+     * operation
+     */
+    private static void recordCounts(OperationContext ctx, Response response) {
+        ctx.measure.count("requests", 1);
+        if (response.getStatus() == OperationStatus.ERROR) {
+            ctx.measure.count("failedRequests", 1);
+        }
+        if (!response.getDataErrors().isEmpty()) {
+            ctx.measure.count("dataErrors", response.getDataErrors().size());
+        }
+        if (response.getEntityData() != null) {
+            ctx.measure.count("documents", response.getEntityData().size());
+        }
+    }
+
     /**
      * Runs constraint validation
      */
@@ -727,7 +1032,17 @@ public class Mediator {
         ConstraintValidator constraintValidator = factory.getConstraintValidator(md);
         List<DocCtx> docs = ctx.getInputDocumentsWithoutErrors();
         if(docs!=null) {
-            constraintValidator.validateDocs(docs);
+            int chunkSize = factory.getValidationChunkSize();
+            if (chunkSize > 0 && docs.size() > chunkSize) {
+                ExecutorService executor = factory.getExecutionPool().newSession(factory.getValidationParallelism());
+                try {
+                    constraintValidator.validateDocs(docs, executor, chunkSize);
+                } finally {
+                    executor.shutdown();
+                }
+            } else {
+                constraintValidator.validateDocs(docs);
+            }
             Map<JsonDoc, List<Error>> docErrors = constraintValidator.getDocErrors();
             for (Map.Entry<JsonDoc, List<Error>> entry : docErrors.entrySet()) {
                 JsonDoc doc = entry.getKey();
@@ -797,26 +1112,58 @@ public class Mediator {
         int f=from==null?0:from.intValue();
         int t=to==null?Integer.MAX_VALUE:to.intValue();
         int ix=0;
-        DocumentStream<DocCtx> docStream=ctx.getDocumentStream();
+        DocumentStream<DocCtx> docStream=getResultStream(ctx);
         if(docStream!=null) {
             List<ResultMetadata> rmd=new ArrayList<>();
-            for(;docStream.hasNext();) {
-                DocCtx doc=docStream.next();
-                if(!doc.hasErrors()) {                
-                    if(ix>=f&&ix<=t) {                
-                        response.addEntityData(doc.getOutputDocument().getRoot());
-                        rmd.add(doc.getResultMetadata());
+            try {
+                for(;docStream.hasNext();) {
+                    DocCtx doc=docStream.next();
+                    if(!doc.hasErrors()) {                
+                        if(ix>=f&&ix<=t) {                
+                            response.addEntityData(doc.getOutputDocument().getRoot());
+                            rmd.add(doc.getResultMetadata());
+                        }
+                        ix++;
+                    } else {
+                        DataError error=doc.getDataError();
+                        if(error!=null)
+                            dataErrors.add(error);
                     }
-                    ix++;
-                } else {
-                    DataError error=doc.getDataError();
-                    if(error!=null)
-                        dataErrors.add(error);
                 }
+            } finally {
+                docStream.close();
             }
-            docStream.close();
             response.setResultMetadata(rmd);
         }
         return dataErrors;
     }
+
+    /**
+     * Returns the document stream of the context. If parallel result
+     * processing is enabled and the context stream of a simple entity
+     * maps the documents read by the backend, such as a backend stream
+     * that projects and converts the documents it reads, the backend
+     * documents are read in chunks on the shared execution pool and the
+     * mapping function is run on the pool threads, ahead of the response
+     * being built. The returned stream gives the documents in the
+     * original order, and the listeners of the context stream, such as
+     * the hook manager, are called on the calling thread. Other streams
+     * are returned as is: composite entity results are already projected
+     * in parallel by the execution plan.
+     */
+    private DocumentStream<DocCtx> getResultStream(OperationContext ctx) {
+        DocumentStream<DocCtx> docStream=ctx.getDocumentStream();
+        if(docStream!=null&&factory.getResultChunkSize()>0&&ctx.isSimple()&&ParallelDocumentStream.isMapped(docStream)) {
+            int parallelism=factory.getResultProcessingParallelism();
+            ExecutorService executor=factory.getExecutionPool().newSession(parallelism);
+            return ParallelDocumentStream.mapInParallel(docStream,executor,factory.getResultChunkSize(),parallelism,()-> {
+                    try {
+                        docStream.close();
+                    } finally {
+                        executor.shutdown();
+                    }
+                });
+        }
+        return docStream;
+    }
 }
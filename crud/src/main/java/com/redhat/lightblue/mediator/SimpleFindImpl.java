@@ -20,6 +20,7 @@
 package com.redhat.lightblue.mediator;
 
 import java.util.ArrayList;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,8 +35,13 @@ import com.redhat.lightblue.crud.Factory;
 import com.redhat.lightblue.crud.ListDocumentStream;
 import com.redhat.lightblue.crud.ExplainQuerySupport;
 
+import com.redhat.lightblue.eval.FieldAccessCache;
+import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
+
 import com.redhat.lightblue.metadata.EntityMetadata;
 
+import com.redhat.lightblue.query.Projection;
+
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.Path;
 
@@ -43,10 +49,12 @@ public class SimpleFindImpl implements Finder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleFindImpl.class);
 
+    private final EntityMetadata md;
     private final CRUDController controller;
 
     public SimpleFindImpl(EntityMetadata md,
                           Factory factory) {
+        this.md = md;
         this.controller = factory.getCRUDController(md);
         LOGGER.debug("Controller for {}:{}", md.getName(), controller.getClass().getName());
     }
@@ -56,7 +64,7 @@ public class SimpleFindImpl implements Finder {
                                  CRUDFindRequest req) {
         CRUDFindResponse result = controller.find(ctx,
                 req.getQuery(),
-                req.getProjection(),
+                getProjection(ctx, req),
                 req.getSort(),
                 req.getFrom(),
                 req.getTo());
@@ -80,7 +88,7 @@ public class SimpleFindImpl implements Finder {
                 doc.modify(new Path("request.to"),JsonNodeFactory.instance.numberNode(req.getTo()),true);
             ((ExplainQuerySupport)controller).explain(ctx,
                                                       req.getQuery(),
-                                                      req.getProjection(),
+                                                      getProjection(ctx, req),
                                                       req.getSort(),
                                                       req.getFrom(),
                                                       req.getTo(),
@@ -91,4 +99,29 @@ public class SimpleFindImpl implements Finder {
             ctx.setDocumentStream(new ListDocumentStream<DocCtx>(l));
         }
     }
+
+    /**
+     * Returns the request projection with the fields the caller roles cannot
+     * read excluded, so the backend does not retrieve them. The request
+     * projection is returned as is if there is no projection. The
+     * inaccessible fields are computed for this request if they are not
+     * cached.
+     */
+    private Projection getProjection(OperationContext ctx,
+                                     CRUDFindRequest req) {
+        if (req.getProjection() == null) {
+            return null;
+        }
+        FieldAccessCache cache = ctx.getFactory().getFieldAccessCache();
+        Set<Path> inaccessibleFields;
+        if (cache == null) {
+            inaccessibleFields = new FieldAccessRoleEvaluator(md, ctx.getCallerRoles()).
+                    getInaccessibleFields(FieldAccessRoleEvaluator.Operation.find);
+        } else {
+            inaccessibleFields = cache.getInaccessibleFields(md, ctx.getCallerRoles(), FieldAccessRoleEvaluator.Operation.find);
+        }
+        Projection p = FieldAccessRoleEvaluator.excludeFields(req.getProjection(), inaccessibleFields);
+        LOGGER.debug("Projection with field access exclusions:{}", p);
+        return p;
+    }
 }
@@ -62,7 +62,7 @@ public class ArrayKeySpec implements KeySpec,Comparator<ArrayKey> {
     @Override
     public int compare(ArrayKey v1,ArrayKey v2) {
         for(int i=0;i<keyFields.length;i++) {
-            int result=keyFields[i].compareKeys(v1.values[i],v2.values[i]);
+            int result=BoundaryKey.compare(keyFields[i],v1.values[i],v2.values[i]);
             if(result!=0)
                 return result;
         }
@@ -0,0 +1,65 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mindex;
+
+/**
+ * A sentinel key that sorts before (MIN) or after (MAX) all other
+ * keys. Used to build lower and upper bounds for composite and
+ * array keys when some of the components of a lookup are unbounded.
+ */
+final class BoundaryKey implements Key {
+
+    static final BoundaryKey MIN=new BoundaryKey("MIN");
+    static final BoundaryKey MAX=new BoundaryKey("MAX");
+
+    private final String name;
+
+    private BoundaryKey(String name) {
+        this.name=name;
+    }
+
+    /**
+     * Compares two keys, either of which can be a boundary key. If
+     * none of them are boundary keys, uses the key spec to compare
+     * them.
+     */
+    static int compare(KeySpec spec,Key k1,Key k2) {
+        if(k1==k2) {
+            return 0;
+        } else if(k1==MIN||k2==MAX) {
+            return -1;
+        } else if(k1==MAX||k2==MIN) {
+            return 1;
+        } else {
+            return spec.compareKeys(k1,k2);
+        }
+    }
+
+    /**
+     * Returns k if it is not null, or the boundary key otherwise
+     */
+    static Key orElse(Key k,BoundaryKey boundary) {
+        return k==null?boundary:k;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
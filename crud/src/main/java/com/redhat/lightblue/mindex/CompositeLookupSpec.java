@@ -51,6 +51,40 @@ public class CompositeLookupSpec extends LookupSpec {
         }
     }
     
+    /**
+     * Component-wise lower bound. Any key whose components are all
+     * greater than or equal to the corresponding bounds is
+     * lexicographically greater than or equal to the bound key.
+     */
+    @Override
+    protected Key lowerBound() {
+        Key[] keys=new Key[values.length];
+        boolean bounded=false;
+        for(int i=0;i<keys.length;i++) {
+            Key k=values[i].lowerBound();
+            if(k!=null)
+                bounded=true;
+            keys[i]=BoundaryKey.orElse(k,BoundaryKey.MIN);
+        }
+        return bounded?new ArrayKey(keys):null;
+    }
+
+    /**
+     * Component-wise upper bound
+     */
+    @Override
+    protected Key upperBound() {
+        Key[] keys=new Key[values.length];
+        boolean bounded=false;
+        for(int i=0;i<keys.length;i++) {
+            Key k=values[i].upperBound();
+            if(k!=null)
+                bounded=true;
+            keys[i]=BoundaryKey.orElse(k,BoundaryKey.MAX);
+        }
+        return bounded?new ArrayKey(keys):null;
+    }
+
     @Override
     protected boolean needsScan() {
         for(LookupSpec lv:values)
@@ -19,6 +19,7 @@
 package com.redhat.lightblue.mindex;
 
 import java.util.Iterator;
+import java.util.List;
 
 import com.redhat.lightblue.util.Tuples;
 
@@ -34,6 +35,43 @@ public abstract class LookupSpec {
      * lookups don't need a scan. Prefix and ranges do.
      */
     protected abstract boolean needsScan();
+
+    /**
+     * Returns the smallest index key that can match this lookup, or
+     * null if the lookup has no lower bound. This is used by ordered
+     * indexes to limit the range of keys scanned. The bound does not
+     * have to be tight, matches() is still called for the keys in
+     * the range.
+     */
+    protected Key lowerBound() {
+        return null;
+    }
+
+    /**
+     * Returns the largest index key that can match this lookup, or
+     * null if the lookup has no upper bound.
+     */
+    protected Key upperBound() {
+        return null;
+    }
+
+    /**
+     * Returns true if the single-valued lookups built from this
+     * lookup spec need index scans. Multi-valued lookups are expanded
+     * into single-valued lookups with the same structure, so it is
+     * enough to check the first one. Index scans on an ordered index
+     * are done using a bounded range of keys instead of a full scan.
+     */
+    public boolean isScan() {
+        if(multiValued()) {
+            Tuples<Object> tuples=new Tuples<>();
+            iterate(tuples);
+            Iterator<List<Object>> itr=tuples.tuples();
+            return itr.hasNext()&&next(itr.next().iterator()).needsScan();
+        } else {
+            return needsScan();
+        }
+    }
     
     /**
      * If returns true, the lookup spec is multi-valued.
@@ -20,6 +20,8 @@ package com.redhat.lightblue.mindex;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -72,6 +74,13 @@ import com.redhat.lightblue.util.Tuples;
  * lookups and multi-value lookups is a simple lookup. If a range
  * lookup spec or prefix lookup spec is used, the lookup becomes an
  * index scan.
+ *
+ * An index can be ordered or unordered. An unordered index keeps the
+ * keys in a hash map, and index scans go through all the keys. An
+ * ordered index keeps the keys sorted using the key spec, so value
+ * lookups are log-time seeks, and range and prefix lookups only scan
+ * the keys between the lower and upper bounds of the lookup spec. Use
+ * an ordered index if the lookups need index scans.
  *    
  */
 public class MemDocIndex {
@@ -79,15 +88,41 @@ public class MemDocIndex {
     /**
      * The index keys are ordered based on the keyFields array
      */
-    private final HashMap<Key,Set<JsonDoc>> documents;   
+    private final Map<Key,Set<JsonDoc>> documents;   
+    /**
+     * If the index is ordered, this is the same map as documents,
+     * otherwise null
+     */
+    private final NavigableMap<Key,Set<JsonDoc>> orderedDocuments;
     public final KeySpec keySpec;
     
     /**
-     * Constructs a document index using the given key spec
+     * Constructs an unordered document index using the given key spec
      */
     public MemDocIndex(KeySpec keys) {
+        this(keys,false);
+    }
+
+    /**
+     * Constructs a document index using the given key spec. If
+     * ordered is true, the index keys are sorted using the key spec
+     */
+    public MemDocIndex(KeySpec keys,boolean ordered) {
         this.keySpec=keys;
-        this.documents=new HashMap<Key,Set<JsonDoc>>();
+        if(ordered) {
+            this.orderedDocuments=new TreeMap<Key,Set<JsonDoc>>(keys::compareKeys);
+            this.documents=orderedDocuments;
+        } else {
+            this.orderedDocuments=null;
+            this.documents=new HashMap<Key,Set<JsonDoc>>();
+        }
+    }
+
+    /**
+     * Returns if the index keys are ordered
+     */
+    public boolean isOrdered() {
+        return orderedDocuments!=null;
     }
     
     /**
@@ -135,13 +170,35 @@ public class MemDocIndex {
     }
 
     private void indexScan(LookupSpec spec,Set<JsonDoc> results) {
-        for(Map.Entry<Key,Set<JsonDoc>> entry:documents.entrySet()) {
+        Map<Key,Set<JsonDoc>> scanned=orderedDocuments==null?documents:range(spec);
+        for(Map.Entry<Key,Set<JsonDoc>> entry:scanned.entrySet()) {
             Key indexKey=entry.getKey();
             if(spec.matches(indexKey))
                 results.addAll(entry.getValue());
         }
     }
 
+    /**
+     * Returns the portion of the ordered index that lies between the
+     * bounds of the lookup spec
+     */
+    private NavigableMap<Key,Set<JsonDoc>> range(LookupSpec spec) {
+        Key low=spec.lowerBound();
+        Key high=spec.upperBound();
+        if(low!=null&&high!=null) {
+            if(keySpec.compareKeys(low,high)>0) {
+                return new TreeMap<Key,Set<JsonDoc>>();
+            }
+            return orderedDocuments.subMap(low,true,high,true);
+        } else if(low!=null) {
+            return orderedDocuments.tailMap(low,true);
+        } else if(high!=null) {
+            return orderedDocuments.headMap(high,true);
+        } else {
+            return orderedDocuments;
+        }
+    }
+
     private void indexLookup(LookupSpec spec,Set<JsonDoc> results) {
         Set<JsonDoc> docs=documents.get(spec.buildKey());
         if(docs!=null)
@@ -47,7 +47,46 @@ public class MultiValueLookupSpec extends SimpleKeyLookupSpec {
         }
     }
     
-    @Override protected boolean needsScan() {return true;}
+    @Override
+    public Key buildKey() {
+        if(values.size()==1) {
+            return new SimpleKey(values.iterator().next());
+        } else {
+            throw new IllegalStateException();
+        }
+    }
+
+    @Override
+    protected Key lowerBound() {
+        Object min=null;
+        boolean first=true;
+        for(Object x:values) {
+            if(first||key.type.compare(x,min)<0) {
+                min=x;
+            }
+            first=false;
+        }
+        return first?null:new SimpleKey(min);
+    }
+
+    @Override
+    protected Key upperBound() {
+        Object max=null;
+        boolean first=true;
+        for(Object x:values) {
+            if(first||key.type.compare(x,max)>0) {
+                max=x;
+            }
+            first=false;
+        }
+        return first?null:new SimpleKey(max);
+    }
+
+    /**
+     * A single value can be looked up directly, otherwise the values
+     * are iterated, or, if there are no values, the index is scanned
+     */
+    @Override protected boolean needsScan() {return values.size()!=1;}
     @Override protected boolean multiValued() {return values.size()>1;}
     
     @Override
@@ -20,6 +20,8 @@ package com.redhat.lightblue.mindex;
 
 import java.util.Iterator;
 
+import com.redhat.lightblue.metadata.types.StringType;
+
 import com.redhat.lightblue.util.Tuples;
 
 public class PrefixLookupSpec extends SimpleKeyLookupSpec {
@@ -45,6 +47,35 @@ public class PrefixLookupSpec extends SimpleKeyLookupSpec {
         return false;
     }
     
+    /**
+     * Case sensitive string prefixes can be bounded: all matching
+     * strings are between the prefix and the prefix with its last
+     * character incremented. Case insensitive matches are not
+     * contiguous in the key order, so they are not bounded.
+     */
+    private boolean bounded() {
+        return !caseInsensitive&&prefix.length()>0&&key.type instanceof StringType;
+    }
+
+    @Override
+    protected Key lowerBound() {
+        return bounded()?new SimpleKey(prefix):null;
+    }
+
+    @Override
+    protected Key upperBound() {
+        if(bounded()) {
+            char[] chars=prefix.toCharArray();
+            for(int i=chars.length-1;i>=0;i--) {
+                if(chars[i]!=Character.MAX_VALUE) {
+                    chars[i]++;
+                    return new SimpleKey(new String(chars,0,i+1));
+                }
+            }
+        }
+        return null;
+    }
+
     @Override protected boolean needsScan() {return true;}
     @Override protected boolean multiValued() {return false;}
     @Override protected boolean iterate(Tuples<Object> tuples) {return false;}
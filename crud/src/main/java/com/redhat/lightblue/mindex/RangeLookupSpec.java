@@ -34,13 +34,25 @@ public class RangeLookupSpec extends SimpleKeyLookupSpec {
     @Override
     public boolean matches(Key k) {
         if(k instanceof SimpleKey) {
-            return key.type.compare( from, ((SimpleKey)k).value) <=00 &&
-                key.type.compare( to, ((SimpleKey)k).value) >=0;
+            // A null 'from' is less than anything, so it needs no special treatment.
+            // A null 'to' means there is no upper limit
+            return key.type.compare( from, ((SimpleKey)k).value) <=0 &&
+                (to==null||key.type.compare( to, ((SimpleKey)k).value) >=0);
         } else {
             return false;
         }
     }
     
+    @Override
+    protected Key lowerBound() {
+        return from==null?null:new SimpleKey(from);
+    }
+
+    @Override
+    protected Key upperBound() {
+        return to==null?null:new SimpleKey(to);
+    }
+
     @Override protected boolean needsScan() {return true;}
     @Override protected boolean multiValued() {return false;}
     @Override protected boolean iterate(Tuples<Object> tuples) {return false;}
@@ -47,6 +47,16 @@ public class ValueLookupSpec extends SimpleKeyLookupSpec {
         }
     }
     
+    @Override
+    protected Key lowerBound() {
+        return buildKey();
+    }
+
+    @Override
+    protected Key upperBound() {
+        return buildKey();
+    }
+
     @Override protected boolean needsScan() {return false;}
     @Override protected boolean multiValued() {return false;}
     @Override protected boolean iterate(Tuples<Object> tuples) {return false;}
@@ -0,0 +1,102 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.lightblue.util.Path;
+
+public class CardinalityStatisticsTest {
+
+    @Test
+    public void searchSizeTest() {
+        CardinalityStatistics stats = new CardinalityStatistics(16);
+        Assert.assertNull(stats.getSearchSize("A", Arrays.asList(new Path("x"))));
+        stats.recordSearch("A", Arrays.asList(new Path("x"), new Path("y")), 10);
+        stats.recordSearch("A", Arrays.asList(new Path("x")), 20);
+        stats.recordSearch("A", null, 1000);
+        // Searches on more than one field are not attributed to the fields
+        Assert.assertEquals(20.0, stats.getSearchSize("A", Arrays.asList(new Path("x"))), 0.001);
+        Assert.assertNull(stats.getSearchSize("A", Arrays.asList(new Path("y"))));
+        Assert.assertEquals(10.0, stats.getSearchSize("A", Arrays.asList(new Path("y"), new Path("x"))), 0.001);
+        Assert.assertEquals(20.0, stats.getSearchSize("A", Arrays.asList(new Path("x"), new Path("z"))), 0.001);
+        Assert.assertEquals(1000.0, stats.getSearchSize("A", Collections.<Path>emptyList()), 0.001);
+        Assert.assertNull(stats.getSearchSize("B", null));
+    }
+
+    @Test
+    public void joinSizeTest() {
+        CardinalityStatistics stats = new CardinalityStatistics(16);
+        stats.recordJoin("C", Arrays.asList("A", "B"), 10, 50);
+        stats.recordJoin("C", Arrays.asList("B", "A"), 0, 50);
+        Assert.assertEquals(5.0, stats.getJoinSize("C", Arrays.asList("B", "A")), 0.001);
+        Assert.assertNull(stats.getJoinSize("C", Arrays.asList("A")));
+    }
+
+    @Test
+    public void generationTest() {
+        CardinalityStatistics stats = new CardinalityStatistics(16);
+        long g = stats.getGeneration("C");
+        stats.recordJoin("C", Arrays.asList("A"), 1, 100);
+        Assert.assertNotEquals(g, g = stats.getGeneration("C"));
+        // Small changes do not change the generation
+        stats.recordJoin("C", Arrays.asList("A"), 1, 110);
+        Assert.assertEquals(g, stats.getGeneration("C"));
+        // Other entities do not change the generation
+        stats.recordSearch("B", null, 5);
+        Assert.assertEquals(g, stats.getGeneration("C"));
+        for (int i = 0; i < 100; i++) {
+            stats.recordJoin("C", Arrays.asList("A"), 1, 1);
+        }
+        Assert.assertNotEquals(g, stats.getGeneration("C"));
+    }
+
+    @Test
+    public void hysteresisTest() {
+        CardinalityStatistics stats = new CardinalityStatistics(16);
+        // Bucket of 100 is 64-128
+        stats.recordSearch("A", null, 100);
+        long g = stats.getGeneration("A");
+        // Oscillating around 128 does not change the bucket
+        for (int i = 0; i < 100; i++) {
+            stats.recordSearch("A", null, i % 2 == 0 ? 120 : 140);
+        }
+        Assert.assertEquals(g, stats.getGeneration("A"));
+        for (int i = 0; i < 100; i++) {
+            stats.recordSearch("A", null, 300);
+        }
+        Assert.assertNotEquals(g, stats.getGeneration("A"));
+    }
+
+    @Test
+    public void boundedTest() {
+        CardinalityStatistics stats = new CardinalityStatistics(2);
+        stats.recordSearch("A", null, 1);
+        stats.recordSearch("B", null, 1);
+        stats.getSearchSize("A", null);
+        stats.recordSearch("C", null, 1);
+        Assert.assertEquals(2, stats.size());
+        Assert.assertNotNull(stats.getSearchSize("A", null));
+        Assert.assertNull(stats.getSearchSize("B", null));
+    }
+}
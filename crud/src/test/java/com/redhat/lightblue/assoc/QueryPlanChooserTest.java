@@ -18,6 +18,7 @@
  */
 package com.redhat.lightblue.assoc;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -258,4 +259,124 @@ public class QueryPlanChooserTest extends AbstractJsonNodeTest {
         Assert.assertEquals("B", chooser.getBestPlan().getSources()[0].getMetadata().getName());
         Assert.assertEquals(1, chooser.getBestPlan().getSources()[0].getData().getConjuncts().size());
     }
+
+    @Test
+    public void greedyIteratorTest() throws Exception {
+        GMD gmd = new GMD(projection("{'field':'obj1.c.*.b'}"), null);
+        CompositeMetadata md = CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"), gmd);
+        String[] queries = {"{'field':'field1','op':'=','rvalue':'s'}",
+            "{'field':'obj1.c.*.field1','op':'=','rvalue':'s'}",
+            "{'array':'obj1.c','elemMatch':{'field':'b.*.field1','op':'=','rvalue':'x'}}"};
+        for (String q : queries) {
+            QueryPlanChooser bruteForce = new QueryPlanChooser(md,
+                    new BruteForceQueryPlanIterator(),
+                    new IndexedFieldScorer(),
+                    query(q),
+                    null);
+            // Exhaustive limit 0 forces the greedy search
+            IndexedFieldScorer scorer = new IndexedFieldScorer();
+            QueryPlanChooser greedy = new QueryPlanChooser(md,
+                    new GreedyQueryPlanIterator(scorer, 0),
+                    scorer,
+                    query(q),
+                    null);
+            QueryPlan expected = bruteForce.choose();
+            QueryPlan actual = greedy.choose();
+            System.out.println("Brute force:" + expected.treeToString() + " greedy:" + actual.treeToString());
+            Assert.assertEquals(expected.getSources().length, actual.getSources().length);
+            Assert.assertEquals(expected.getSources()[0].getMetadata().getName(),
+                    actual.getSources()[0].getMetadata().getName());
+        }
+    }
+
+    @Test
+    public void planCacheTest() throws Exception {
+        GMD gmd = new GMD(projection("[{'field':'obj1.c','include':1},{'field':'b','include':1}]"), null);
+        CompositeMetadata md = CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"), gmd);
+        QueryPlanCache cache = new QueryPlanCache(16);
+        QueryPlanChooser chooser = new QueryPlanChooser(md,
+                new BruteForceQueryPlanIterator(),
+                new IndexedFieldScorer(),
+                query("{'field':'obj1.c.*.field1','op':'=','rvalue':'s'}"),
+                null,
+                cache);
+        Assert.assertEquals("C", chooser.choose().getSources()[0].getMetadata().getName());
+        Assert.assertEquals(1, cache.size());
+
+        // Same query shape, different value: the cached plan is used
+        chooser = new QueryPlanChooser(md,
+                new BruteForceQueryPlanIterator(),
+                new IndexedFieldScorer(),
+                query("{'field':'obj1.c.*.field1','op':'=','rvalue':'t'}"),
+                null,
+                cache);
+        QueryPlan plan = chooser.choose();
+        Assert.assertEquals("C", plan.getSources()[0].getMetadata().getName());
+        Assert.assertEquals("t", plan.getSources()[0].getData().getConjuncts().get(0).getClause().toJson().get("rvalue").asText());
+        Assert.assertEquals(1, cache.size());
+
+        // Replace the cached plan with the initial plan, which is not
+        // the best plan. The chooser should return it without iterating
+        IndexedFieldScorer scorer = new IndexedFieldScorer();
+        QueryPlan initial = new QueryPlan(md, scorer);
+        cache.put(QueryPlanCache.getKey(initial, new BruteForceQueryPlanIterator(), scorer,
+                query("{'field':'obj1.c.*.field1','op':'=','rvalue':'x'}")), initial);
+        Assert.assertEquals(1, cache.size());
+        chooser = new QueryPlanChooser(md,
+                new BruteForceQueryPlanIterator(),
+                new IndexedFieldScorer(),
+                query("{'field':'obj1.c.*.field1','op':'=','rvalue':'u'}"),
+                null,
+                cache);
+        Assert.assertEquals("A", chooser.choose().getSources()[0].getMetadata().getName());
+
+        // Reloaded metadata: the cached plan is not used
+        CompositeMetadata reloaded = CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"), gmd);
+        chooser = new QueryPlanChooser(reloaded,
+                new BruteForceQueryPlanIterator(),
+                new IndexedFieldScorer(),
+                query("{'field':'obj1.c.*.field1','op':'=','rvalue':'v'}"),
+                null,
+                cache);
+        Assert.assertEquals("C", chooser.choose().getSources()[0].getMetadata().getName());
+        Assert.assertEquals(1, cache.size());
+
+        cache.invalidate("C");
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void statisticsScorerTest() throws Exception {
+        GMD gmd = new GMD(projection("[{'field':'obj1.c','include':1},{'field':'b','include':1}]"), null);
+        CompositeMetadata md = CompositeMetadata.buildCompositeMetadata(getMd("composite/A.json"), gmd);
+        String q = "{'$and':[{'field':'field1','op':'=','rvalue':'s'},{'field':'obj1.c.*.field1','op':'=','rvalue':'s'}]}";
+        QueryPlanChooser chooser = new QueryPlanChooser(md,
+                new BruteForceQueryPlanIterator(),
+                new IndexedFieldScorer(),
+                query(q),
+                null);
+        Assert.assertEquals("C", chooser.choose().getSources()[0].getMetadata().getName());
+
+        // Searches on A.field1 are observed to be more selective, so A
+        // should be searched first
+        CardinalityStatistics stats = new CardinalityStatistics(16);
+        stats.recordSearch("A", Arrays.asList(new Path("field1")), 1);
+        stats.recordSearch("C", Arrays.asList(new Path("field1")), 50000);
+        chooser = new QueryPlanChooser(md,
+                new BruteForceQueryPlanIterator(),
+                new StatisticsScorer(stats),
+                query(q),
+                null);
+        Assert.assertEquals("A", chooser.choose().getSources()[0].getMetadata().getName());
+
+        // Plan cache keys change only with the statistics of the entities
+        // of the plan
+        StatisticsScorer scorer = new StatisticsScorer(stats);
+        BruteForceQueryPlanIterator itr = new BruteForceQueryPlanIterator();
+        String key = QueryPlanCache.getKey(new QueryPlan(md, scorer, null), itr, scorer, query(q));
+        stats.recordSearch("X", null, 10);
+        Assert.assertEquals(key, QueryPlanCache.getKey(new QueryPlan(md, scorer, null), itr, scorer, query(q)));
+        stats.recordSearch("A", null, 10);
+        Assert.assertNotEquals(key, QueryPlanCache.getKey(new QueryPlan(md, scorer, null), itr, scorer, query(q)));
+    }
 }
@@ -4,7 +4,10 @@ import java.util.List;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 
 import java.util.concurrent.Executors;
 
@@ -33,6 +36,8 @@ import com.redhat.lightblue.metadata.*;
 import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
 import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.metadata.types.BigDecimalType;
+import com.redhat.lightblue.metadata.types.IntegerType;
 import com.redhat.lightblue.metadata.test.DatabaseMetadata;
 import com.redhat.lightblue.util.test.AbstractJsonSchemaTest;
 import com.redhat.lightblue.TestDataStoreParser;
@@ -227,4 +232,105 @@ public class JoinTest extends AbstractJsonSchemaTest {
         }
         Assert.assertFalse(itr.hasNext());
     }
+
+    @Test
+    public void hashJoinTest() throws Exception {
+        CompositeMetadata amd = getCmd("A", projection("[{'field':'obj1.c'},{'field':'obj1.c.*.b'}]"));
+        CompositeMetadata cmd = amd.getChildMetadata(new Path("obj1.c"));
+        CompositeMetadata bmd = cmd.getChildMetadata(new Path("obj1.c.*.b"));
+        QueryPlan qp = new QueryPlan(amd, new SimpleScorer());
+        ExecutionBlock ablock = new ExecutionBlock(amd, qp.getNode(amd));
+        ExecutionBlock bblock = new ExecutionBlock(amd, qp.getNode(bmd));
+        ExecutionBlock cblock = new ExecutionBlock(amd, qp.getNode(cmd));
+
+        List<ResultDocument>[] docs = new List[3];
+        docs[0] = new ArrayList<>();
+        docs[1] = new ArrayList<>();
+        docs[2] = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            docs[0].add(resultDoc(ablock, "{'_id':" + i + ",'x':" + (i % 5) + "}"));
+        }
+        for (int i = 0; i < 8; i++) {
+            // Values are strings here, they are converted to the key type
+            docs[1].add(resultDoc(bblock, "{'_id':" + i + ",'y':'" + (i % 4) + "'}"));
+        }
+        docs[1].add(resultDoc(bblock, "{'_id':8}"));
+        docs[0].add(resultDoc(ablock, "{'_id':20}"));
+        for (int i = 0; i < 3; i++) {
+            docs[2].add(resultDoc(cblock, "{'_id':" + i + "}"));
+        }
+        Map<Path, Path>[] keys = new Map[3];
+        keys[0] = new HashMap<>();
+        keys[0].put(new Path("f"), new Path("x"));
+        keys[1] = new HashMap<>();
+        keys[1].put(new Path("f"), new Path("y"));
+        keys[2] = new HashMap<>();
+        Map<Path, Type> types = new HashMap<>();
+        types.put(new Path("f"), IntegerType.TYPE);
+
+        List<String> expected = new ArrayList<>();
+        for (ResultDocument a : docs[0]) {
+            for (ResultDocument b : docs[1]) {
+                for (ResultDocument c : docs[2]) {
+                    JsonNode x = a.getDoc().get(new Path("x"));
+                    JsonNode y = b.getDoc().get(new Path("y"));
+                    if (x == null ? y == null : y != null && x.asText().equals(y.asText())) {
+                        expected.add(a.getDoc().get(new Path("_id")) + ":" + b.getDoc().get(new Path("_id")) + ":" + c.getDoc().get(new Path("_id")));
+                    }
+                }
+            }
+        }
+        List<String> actual = new ArrayList<>();
+        for (Iterator<List<ResultDocument>> itr = new Join.HashJoinIterator(docs, keys, types); itr.hasNext();) {
+            List<ResultDocument> t = itr.next();
+            Assert.assertSame(ablock, t.get(0).getBlock());
+            Assert.assertSame(bblock, t.get(1).getBlock());
+            Assert.assertSame(cblock, t.get(2).getBlock());
+            actual.add(t.get(0).getDoc().get(new Path("_id")) + ":" + t.get(1).getDoc().get(new Path("_id")) + ":" + t.get(2).getDoc().get(new Path("_id")));
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        Assert.assertEquals(4 * 4 * 2 * 3 + 3, expected.size());
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void hashJoinKeyNormalizationTest() throws Exception {
+        CompositeMetadata amd = getCmd("A", projection("[{'field':'obj1.c'},{'field':'obj1.c.*.b'}]"));
+        CompositeMetadata bmd = amd.getChildMetadata(new Path("obj1.c")).getChildMetadata(new Path("obj1.c.*.b"));
+        QueryPlan qp = new QueryPlan(amd, new SimpleScorer());
+        ExecutionBlock ablock = new ExecutionBlock(amd, qp.getNode(amd));
+        ExecutionBlock bblock = new ExecutionBlock(amd, qp.getNode(bmd));
+
+        List<ResultDocument>[] docs = new List[2];
+        docs[0] = new ArrayList<>();
+        docs[1] = new ArrayList<>();
+        docs[0].add(resultDoc(ablock, "{'_id':0,'x':1.5}"));
+        docs[0].add(resultDoc(ablock, "{'_id':1,'x':0}"));
+        docs[1].add(resultDoc(bblock, "{'_id':0,'y':'1.50'}"));
+        docs[1].add(resultDoc(bblock, "{'_id':1,'y':'0.000'}"));
+        Map<Path, Path>[] keys = new Map[2];
+        keys[0] = new HashMap<>();
+        keys[0].put(new Path("f"), new Path("x"));
+        keys[1] = new HashMap<>();
+        keys[1].put(new Path("f"), new Path("y"));
+        Map<Path, Type> types = new HashMap<>();
+        types.put(new Path("f"), BigDecimalType.TYPE);
+
+        Assert.assertTrue(Join.HashJoinIterator.canHash(docs, keys, types));
+        List<String> actual = new ArrayList<>();
+        for (Iterator<List<ResultDocument>> itr = new Join.HashJoinIterator(docs, keys, types); itr.hasNext();) {
+            List<ResultDocument> t = itr.next();
+            actual.add(t.get(0).getDoc().get(new Path("_id")) + ":" + t.get(1).getDoc().get(new Path("_id")));
+        }
+        Collections.sort(actual);
+        Assert.assertEquals(Arrays.asList("0:0", "1:1"), actual);
+
+        // Values that cannot be converted, or arrays, are not hashed
+        docs[1].add(resultDoc(bblock, "{'_id':2,'y':'x'}"));
+        Assert.assertFalse(Join.HashJoinIterator.canHash(docs, keys, types));
+        docs[1].remove(2);
+        docs[1].add(resultDoc(bblock, "{'_id':2,'y':[1]}"));
+        Assert.assertFalse(Join.HashJoinIterator.canHash(docs, keys, types));
+    }
 }
@@ -194,6 +194,27 @@ public class SearchesTest extends AbstractJsonSchemaTest {
         JSONAssert.assertEquals("{field:_id,op:$eq,rvalue:2}", map.get(slot).toString(), false);
     }
 
+    @Test
+    public void collapseDisjunctsTest() throws Exception {
+        List<QueryExpression> list = Searches.collapseDisjuncts(Arrays.asList(
+                query("{'field':'_id','op':'=','rvalue':'1'}"),
+                query("{'field':'_id','op':'=','rvalue':'2'}"),
+                query("{'field':'_id','op':'=','rvalue':'1'}"),
+                query("{'field':'_id','op':'$in','values':['2','3']}"),
+                query("{'field':'x','op':'=','rvalue':'a'}"),
+                query("{'field':'x','op':'=','rvalue':null}"),
+                query("{'field':'x','op':'=','rvalue':null}"),
+                query("{'$and':[{'field':'x','op':'=','rvalue':'a'},{'field':'y','op':'=','rvalue':'b'}]}"),
+                query("{'$and':[{'field':'x','op':'=','rvalue':'a'},{'field':'y','op':'=','rvalue':'b'}]}"),
+                query("{'field':'y','op':'>','rvalue':'1'}")));
+        Assert.assertEquals(5, list.size());
+        JSONAssert.assertEquals("{'field':'_id','op':'$in','values':['1','2','3']}", list.get(0).toString(), true);
+        JSONAssert.assertEquals("{'field':'x','op':'$eq','rvalue':'a'}", list.get(1).toString(), true);
+        JSONAssert.assertEquals("{'field':'x','op':'$eq','rvalue':null}", list.get(2).toString(), true);
+        JSONAssert.assertEquals("{'$and':[{'field':'x','op':'$eq','rvalue':'a'},{'field':'y','op':'$eq','rvalue':'b'}]}", list.get(3).toString(), true);
+        JSONAssert.assertEquals("{'field':'y','op':'$gt','rvalue':'1'}", list.get(4).toString(), true);
+    }
+
     @Test
     public void writeQueriesForJoin1() throws Exception {
         CompositeMetadata umd = getCmd("U", projection("[{'field':'legalEntities.*.legalEntity'}]"));
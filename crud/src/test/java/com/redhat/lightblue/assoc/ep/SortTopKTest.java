@@ -0,0 +1,141 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc.ep;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.TestDataStoreParser;
+import com.redhat.lightblue.assoc.QueryPlan;
+import com.redhat.lightblue.assoc.scorers.SimpleScorer;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.mediator.OperationContext;
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.TypeResolver;
+import com.redhat.lightblue.metadata.parser.Extensions;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.test.AbstractJsonSchemaTest;
+
+public class SortTopKTest extends AbstractJsonSchemaTest {
+
+    private ExecutionBlock block;
+    private ExecutionContext ctx;
+
+    @Before
+    public void setup() throws Exception {
+        JsonNode node = loadJsonNode("composite/A.json");
+        Extensions<JsonNode> extensions = new Extensions<>();
+        extensions.addDefaultExtensions();
+        extensions.registerDataStoreParser("mongo", new TestDataStoreParser<JsonNode>());
+        TypeResolver resolver = new DefaultTypes();
+        JSONMetadataParser parser = new JSONMetadataParser(extensions, resolver, JsonNodeFactory.instance);
+        EntityMetadata md = parser.parseEntityMetadata(node);
+        PredefinedFields.ensurePredefinedFields(md);
+        CompositeMetadata amd = CompositeMetadata.buildCompositeMetadata(md, (field, entityName, version) -> null);
+        QueryPlan qp = new QueryPlan(amd, new SimpleScorer());
+        block = new ExecutionBlock(amd, qp.getNode(amd));
+        FindRequest freq = new FindRequest();
+        freq.setEntityVersion(new EntityVersion("A", "1"));
+        OperationContext opctx = new OperationContext(freq,
+                null,
+                new Factory(),
+                CRUDOperation.FIND,
+                null,
+                null,
+                new HashSet<String>(),
+                null);
+        ctx = new ExecutionContext(opctx, Executors.newSingleThreadExecutor());
+    }
+
+    private Sort sort(String s) throws Exception {
+        return Sort.fromJson(JsonUtils.json(s.replaceAll("\'", "\"")));
+    }
+
+    private List<ResultDocument> docs(int n) throws Exception {
+        Random rnd = new Random(1);
+        List<ResultDocument> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            // Few distinct values, so there are plenty of ties
+            String s = "{'_id':'" + i + "','field1':'v" + rnd.nextInt(20) + "'}";
+            list.add(new ResultDocument(block, new JsonDoc(JsonUtils.json(s.replaceAll("\'", "\"")))));
+        }
+        return list;
+    }
+
+    private List<String> ids(Step<ResultDocument> step) {
+        return step.getResults(ctx).stream().
+                map(d -> d.getDoc().get(new Path("_id")).asText()).
+                collect(Collectors.toList());
+    }
+
+    private List<String> expected(List<ResultDocument> docs, Sort sort, int skip, Integer limit) {
+        Step<ResultDocument> step = new Skip<>(block, skip, new Source<>(new SortResults(block, new Source<>(new JoinTest.TestStep(block, docs)), sort)));
+        if (limit != null) {
+            step = new Limit<>(block, limit, new Source<>(step));
+        }
+        return ids(step);
+    }
+
+    @Test
+    public void boundedTest() throws Exception {
+        List<ResultDocument> docs = docs(500);
+        for (String s : new String[]{"{'field1':'$asc'}", "{'field1':'$desc'}", "[{'field1':'$desc'},{'_id':'$asc'}]"}) {
+            Sort sort = sort(s);
+            for (int[] page : new int[][]{{0, 10}, {0, 1}, {10, 25}, {490, 20}, {600, 10}, {0, 0}}) {
+                SortTopK step = new SortTopK(block, new Source<>(new JoinTest.TestStep(block, docs)), sort, page[0], page[1], 1000);
+                Assert.assertTrue(step.isBounded());
+                Assert.assertEquals(s + " " + page[0], expected(docs, sort, page[0], page[1]), ids(step));
+            }
+        }
+    }
+
+    @Test
+    public void deepPageTest() throws Exception {
+        List<ResultDocument> docs = docs(500);
+        Sort sort = sort("{'field1':'$asc'}");
+        SortTopK step = new SortTopK(block, new Source<>(new JoinTest.TestStep(block, docs)), sort, 100, 50, 100);
+        Assert.assertFalse(step.isBounded());
+        Assert.assertEquals(expected(docs, sort, 100, 50), ids(step));
+
+        step = new SortTopK(block, new Source<>(new JoinTest.TestStep(block, docs)), sort, 100, null, 1000);
+        Assert.assertFalse(step.isBounded());
+        Assert.assertEquals(expected(docs, sort, 100, null), ids(step));
+    }
+}
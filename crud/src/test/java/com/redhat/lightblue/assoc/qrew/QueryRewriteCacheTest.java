@@ -0,0 +1,119 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.assoc.qrew;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryLogicalOperator;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.util.JsonUtils;
+
+public class QueryRewriteCacheTest {
+
+    private final QueryRewriter rw = new QueryRewriter();
+
+    private static QueryExpression json(String s) throws Exception {
+        return QueryExpression.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private List<QueryExpression> expected(QueryExpression q) {
+        QueryExpression cnf = rw.rewrite(q);
+        List<QueryExpression> list = new ArrayList<>();
+        if (cnf instanceof NaryLogicalExpression && ((NaryLogicalExpression) cnf).getOp() == NaryLogicalOperator._and) {
+            list.addAll(((NaryLogicalExpression) cnf).getQueries());
+        } else {
+            list.add(cnf);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the conjuncts as strings with the value lists sorted, the
+     * order of values in a list depends on the rewrite order
+     */
+    private static List<String> normalize(List<QueryExpression> list) {
+        List<String> ret = new ArrayList<>();
+        for (QueryExpression q : list) {
+            ret.add(normalize(q.toJson()).toString());
+        }
+        return ret;
+    }
+
+    private static JsonNode normalize(JsonNode node) {
+        if (node instanceof ObjectNode) {
+            Iterator<Map.Entry<String, JsonNode>> itr = node.fields();
+            while (itr.hasNext()) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                if ("values".equals(entry.getKey())) {
+                    List<String> values = new ArrayList<>();
+                    for (JsonNode v : entry.getValue()) {
+                        values.add(v.toString());
+                    }
+                    Collections.sort(values);
+                    entry.setValue(JsonNodeFactory.instance.textNode(values.toString()));
+                } else {
+                    normalize(entry.getValue());
+                }
+            }
+        } else if (node instanceof ArrayNode) {
+            for (JsonNode x : node) {
+                normalize(x);
+            }
+        }
+        return node;
+    }
+
+    private void check(QueryRewriteCache cache, String q) throws Exception {
+        Assert.assertEquals(normalize(expected(json(q))), normalize(cache.getConjuncts(json(q))));
+    }
+
+    @Test
+    public void sameShapeTest() throws Exception {
+        QueryRewriteCache cache = new QueryRewriteCache(rw, 16);
+        check(cache, "{'$and':[{'field':'a','op':'=','rvalue':1},{'$or':[{'field':'b','op':'=','rvalue':'x'},{'field':'b','op':'=','rvalue':'y'}]}]}");
+        Assert.assertEquals(1, cache.size());
+        check(cache, "{'$and':[{'field':'a','op':'=','rvalue':2},{'$or':[{'field':'b','op':'=','rvalue':'z'},{'field':'b','op':'=','rvalue':'w'}]}]}");
+        Assert.assertEquals(1, cache.size());
+        check(cache, "{'$not':{'$and':[{'field':'a','op':'=','rvalue':2},{'field':'c','op':'$in','values':[1,2]}]}}");
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void listParameterTest() throws Exception {
+        QueryRewriteCache cache = new QueryRewriteCache(rw, 16);
+        check(cache, "{'$or':[{'field':'a','op':'$in','values':[1,2]},{'field':'a','op':'$in','values':[3]},{'field':'a','op':'=','rvalue':4}]}");
+        check(cache, "{'$or':[{'field':'a','op':'$in','values':[5,6,7]},{'field':'a','op':'$in','values':[8,9]},{'field':'a','op':'=','rvalue':10}]}");
+        Assert.assertEquals(1, cache.size());
+        List<QueryExpression> conjuncts = cache.getConjuncts(json("{'$or':[{'field':'a','op':'$in','values':[5,6,7]},{'field':'a','op':'$in','values':[8,9]},{'field':'a','op':'=','rvalue':10}]}"));
+        Assert.assertEquals(1, conjuncts.size());
+        Assert.assertEquals(6, conjuncts.get(0).toJson().get("values").size());
+    }
+}
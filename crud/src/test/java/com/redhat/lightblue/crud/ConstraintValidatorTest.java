@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -349,6 +350,59 @@ public class ConstraintValidatorTest extends AbstractJsonSchemaTest {
         Assert.assertEquals(1, validator.getDocErrors().size());
     }
 
+    @Test
+    public void testValidationPlanReuse() throws Exception {
+        EntityMetadata md = EvalTestContext.getMd("./user-complex-md.json");
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+
+        ValidationPlan plan = factory.getConstraintValidator(md).getValidationPlan();
+        Assert.assertFalse(plan.isEmpty());
+        Assert.assertSame(plan, factory.getConstraintValidator(md).getValidationPlan());
+        // Another metadata instance for the same version gets a new plan
+        Assert.assertNotSame(plan, factory.getConstraintValidator(EvalTestContext.getMd("./user-complex-md.json")).getValidationPlan());
+        // Changing the registry discards plans
+        factory.addFieldConstraintValidator("test", new StringLengthChecker());
+        Assert.assertNotSame(plan, factory.getConstraintValidator(md).getValidationPlan());
+    }
+
+    @Test
+    public void testParallelValidationErrors() throws Exception {
+        EntityMetadata md = EvalTestContext.getMd("./user-complex-md.json");
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+
+        List<JsonDoc> docs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            JsonDoc doc = EvalTestContext.getDoc("./user-complex.json");
+            if (i % 3 == 0) {
+                // Fix the identity error of every third document
+                doc.modify(new Path("_id"), JsonNodeFactory.instance.textNode("id" + i), true);
+            }
+            docs.add(doc);
+        }
+
+        ConstraintValidator serial = factory.getConstraintValidator(md);
+        serial.validateDocs(docs);
+        Assert.assertFalse(serial.getDocErrors().isEmpty());
+
+        ConstraintValidator parallel = factory.getConstraintValidator(md);
+        ExecutorService executor = factory.getExecutionPool().newSession(4);
+        try {
+            parallel.validateDocs(docs, executor, 7);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(serial.getDocErrors().size(), parallel.getDocErrors().size());
+        for (JsonDoc doc : docs) {
+            Assert.assertEquals(String.valueOf(serial.getDocErrors().get(doc)),
+                    String.valueOf(parallel.getDocErrors().get(doc)));
+        }
+        Assert.assertEquals(serial.getErrors(), parallel.getErrors());
+    }
+
     @SuppressWarnings("serial")
     protected static class TestEntityConstraint implements EntityConstraint {
 
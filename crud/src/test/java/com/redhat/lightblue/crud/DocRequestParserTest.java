@@ -0,0 +1,105 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+
+public class DocRequestParserTest {
+
+    private static DocRequestParser parser(String s) throws Exception {
+        return new DocRequestParser(new ByteArrayInputStream(s.replace('\'', '"').getBytes(StandardCharsets.UTF_8)),
+                JsonNodeFactory.instance);
+    }
+
+    @Test
+    public void arrayDataTest() throws Exception {
+        DocRequestParser p = parser("{'entity':'test','data':[{'a':1},{'a':2},{'a':3}],'returnFields':null}");
+        Assert.assertEquals("test", p.getEnvelope().get("entity").asText());
+        int n = 0;
+        while (p.hasNext()) {
+            JsonDoc doc = p.next();
+            n++;
+            Assert.assertEquals(n, doc.getRoot().get("a").asInt());
+        }
+        Assert.assertEquals(3, n);
+        Assert.assertTrue(p.getEnvelope().has("returnFields"));
+        Assert.assertFalse(p.getEnvelope().has("data"));
+    }
+
+    @Test
+    public void singleObjectDataTest() throws Exception {
+        DocRequestParser p = parser("{'data':{'a':1},'entity':'test'}");
+        Assert.assertTrue(p.hasNext());
+        Assert.assertEquals(1, p.next().getRoot().get("a").asInt());
+        Assert.assertFalse(p.hasNext());
+        Assert.assertEquals("test", p.getEnvelope().get("entity").asText());
+    }
+
+    @Test
+    public void fieldsAfterDataTest() throws Exception {
+        DocRequestParser p = parser("{'entity':'test','data':[{'a':1},{'a':2}],'upsert':true,'projection':{'field':'a'}}");
+        Assert.assertTrue(p.getEnvelope().get("upsert").asBoolean());
+        Assert.assertTrue(p.getEnvelope().has("projection"));
+        Assert.assertEquals(1, p.next().getRoot().get("a").asInt());
+        Assert.assertEquals(2, p.next().getRoot().get("a").asInt());
+        Assert.assertFalse(p.hasNext());
+    }
+
+    @Test
+    public void emptyDataTest() throws Exception {
+        DocRequestParser p = parser("{'entity':'test','data':[],'upsert':true}");
+        Assert.assertFalse(p.hasNext());
+        Assert.assertTrue(p.getEnvelope().get("upsert").asBoolean());
+
+        p = parser("{'entity':'test'}");
+        Assert.assertFalse(p.hasNext());
+    }
+
+    @Test
+    public void nextBatchTest() throws Exception {
+        DocRequestParser p = parser("{'data':[{'a':1},{'a':2},{'a':3},{'a':4},{'a':5}]}");
+        List<JsonDoc> batch = p.nextBatch(2);
+        Assert.assertEquals(2, batch.size());
+        batch = p.nextBatch(2);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals(4, batch.get(1).getRoot().get("a").asInt());
+        batch = p.nextBatch(2);
+        Assert.assertEquals(1, batch.size());
+        Assert.assertTrue(p.nextBatch(2).isEmpty());
+    }
+
+    @Test
+    public void invalidDataTest() throws Exception {
+        try {
+            parser("{'data':[1,2]}").next();
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(CrudConstants.ERR_INVALID_REQUEST, e.getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.util.metrics.DefaultMetricsRegistry;
+import com.redhat.lightblue.util.metrics.JsonMetricsExporter;
+import com.redhat.lightblue.util.metrics.MetricsRegistry;
+
+public class ExecutionPoolTest {
+
+    private ExecutionPool pool;
+
+    @After
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelismBudgetTest() throws Exception {
+        pool = new ExecutionPool(4);
+        ExecutorService session = pool.newSession(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            session.submit(() -> {
+                int n = running.incrementAndGet();
+                max.accumulateAndGet(n, Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                }
+                running.decrementAndGet();
+                latch.countDown();
+            });
+        }
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(max.get() <= 2);
+        session.shutdown();
+        Assert.assertTrue(session.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, pool.getOpenSessionCount());
+    }
+
+    @Test
+    public void nestedWaitTest() throws Exception {
+        pool = new ExecutionPool(1);
+        ExecutorService session = pool.newSession(1);
+        Future<Integer> f = session.submit(() -> {
+            List<Future<Integer>> list = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final int x = i;
+                list.add(session.submit(() -> x));
+            }
+            int sum = 0;
+            for (Future<Integer> x : list) {
+                sum += x.get();
+            }
+            return sum;
+        });
+        Assert.assertEquals(3, f.get().intValue());
+        session.shutdown();
+    }
+
+    @Test
+    public void fairnessTest() throws Exception {
+        pool = new ExecutionPool(1);
+        ExecutorService a = pool.newSession(1);
+        ExecutorService b = pool.newSession(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(6);
+        a.submit(() -> {
+            gate.await();
+            order.add("a0");
+            latch.countDown();
+            return null;
+        });
+        for (int i = 1; i < 5; i++) {
+            final String s = "a" + i;
+            a.submit(() -> {
+                order.add(s);
+                latch.countDown();
+            });
+        }
+        b.submit(() -> {
+            order.add("b0");
+            latch.countDown();
+        });
+        gate.countDown();
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, order.indexOf("b0"));
+    }
+
+    @Test
+    public void queueDepthTest() throws Exception {
+        pool = new ExecutionPool(1);
+        ExecutorService session = pool.newSession(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        session.submit(() -> {
+            started.countDown();
+            gate.await();
+            return null;
+        });
+        started.await();
+        List<Future<?>> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            list.add(session.submit(() -> {
+            }));
+        }
+        Assert.assertEquals(5, pool.getQueueDepth());
+        Assert.assertEquals(1, pool.getActiveTaskCount());
+        Assert.assertTrue(pool.getMaxQueueDepth() >= 5);
+        gate.countDown();
+        for (Future<?> f : list) {
+            f.get();
+        }
+        Assert.assertEquals(0, pool.getQueueDepth());
+        session.shutdown();
+        Assert.assertTrue(session.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, pool.getActiveTaskCount());
+    }
+
+    @Test
+    public void metricsTest() throws Exception {
+        pool = new ExecutionPool(2);
+        MetricsRegistry registry = new DefaultMetricsRegistry();
+        pool.registerMetrics(registry);
+        ExecutorService session = pool.newSession(2);
+        List<Future<Integer>> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final int x = i;
+            list.add(session.submit(() -> x));
+        }
+        for (Future<Integer> f : list) {
+            f.get();
+        }
+        JsonNode json = JsonMetricsExporter.toJson(registry);
+        Assert.assertEquals(2, json.get("gauges").get("executionPool.poolSize").asInt());
+        Assert.assertEquals(1, json.get("gauges").get("executionPool.openSessions").asInt());
+        Assert.assertTrue(json.get("gauges").get("executionPool.maxQueueDepth").asInt() >= 1);
+        Assert.assertEquals(5, json.get("timers").get("executionPool.wait").get("count").asInt());
+        session.shutdown();
+        Assert.assertEquals(0, JsonMetricsExporter.toJson(registry).get("gauges").get("executionPool.openSessions").asInt());
+    }
+
+    @Test
+    public void waitingThreadBudgetTest() throws Exception {
+        pool = new ExecutionPool(2);
+        ExecutorService session = pool.newSession(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        List<Future<?>> list = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            list.add(session.submit(() -> {
+                int n = running.incrementAndGet();
+                max.accumulateAndGet(n, Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                }
+                running.decrementAndGet();
+            }));
+        }
+        // This thread runs the pending tasks while it waits, within the session budget
+        list.get(list.size() - 1).get();
+        for (Future<?> f : list) {
+            f.get();
+        }
+        session.shutdown();
+        Assert.assertTrue(session.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, max.get());
+        Assert.assertEquals(6, pool.getCompletedTaskCount());
+        Assert.assertEquals(0, pool.getActiveTaskCount());
+    }
+
+    @Test
+    public void factoryMetricsRegistryTest() throws Exception {
+        Factory factory = new Factory();
+        try {
+            factory.getExecutionPool();
+            MetricsRegistry registry = new DefaultMetricsRegistry();
+            factory.setMetricsRegistry(registry);
+            JsonNode json = JsonMetricsExporter.toJson(registry);
+            Assert.assertEquals(factory.getExecutionPoolSize(), json.get("gauges").get("executionPool.poolSize").asInt());
+        } finally {
+            factory.shutdown();
+        }
+    }
+}
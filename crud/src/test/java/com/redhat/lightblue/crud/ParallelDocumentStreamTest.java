@@ -0,0 +1,185 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelDocumentStreamTest {
+
+    private ExecutionPool pool;
+    private ExecutorService session;
+
+    @Before
+    public void init() {
+        pool = new ExecutionPool(4);
+        session = pool.newSession(3);
+    }
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static List<Integer> list(int n) {
+        List<Integer> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            l.add(i);
+        }
+        return l;
+    }
+
+    @Test
+    public void preservesOrderTest() throws Exception {
+        for (int n : new int[]{0, 1, 9, 10, 11, 1000}) {
+            ParallelDocumentStream<Integer, String> stream = new ParallelDocumentStream<>(new ListDocumentStream<>(list(n)),
+                    i -> {
+                        if (i % 7 == 0) {
+                            Thread.yield();
+                        }
+                        return "d" + i;
+                    }, session, 10, 3);
+            List<String> listened = new ArrayList<>();
+            stream.addListener(listened::add);
+            List<String> result = new ArrayList<>();
+            while (stream.hasNext()) {
+                result.add(stream.next());
+            }
+            stream.close();
+            Assert.assertEquals(n, result.size());
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals("d" + i, result.get(i));
+            }
+            Assert.assertEquals(result, listened);
+        }
+    }
+
+    @Test
+    public void mapInParallelTest() throws Exception {
+        Thread consumer = Thread.currentThread();
+        List<Thread> mapThreads = new ArrayList<>();
+        DocumentStream<String> mapped = DocumentStream.map(new ListDocumentStream<>(list(100)), i -> {
+            synchronized (mapThreads) {
+                mapThreads.add(Thread.currentThread());
+            }
+            return "d" + i;
+        });
+        List<String> listened = new ArrayList<>();
+        mapped.addListener(d -> {
+            Assert.assertSame(consumer, Thread.currentThread());
+            listened.add(d);
+        });
+        Assert.assertTrue(ParallelDocumentStream.isMapped(mapped));
+        Assert.assertFalse(ParallelDocumentStream.isMapped(new ListDocumentStream<>(list(1))));
+        DocumentStream<String> stream = ParallelDocumentStream.mapInParallel(mapped, session, 10, 3, mapped::close);
+        List<String> result = new ArrayList<>();
+        while (stream.hasNext()) {
+            result.add(stream.next());
+        }
+        stream.close();
+        Assert.assertEquals(100, result.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("d" + i, result.get(i));
+        }
+        Assert.assertEquals(result, listened);
+        // The mapping function runs on the pool
+        Assert.assertEquals(100, mapThreads.size());
+        Assert.assertFalse(mapThreads.contains(consumer));
+    }
+
+    @Test
+    public void boundedReadAheadTest() throws Exception {
+        AtomicInteger read = new AtomicInteger();
+        ListDocumentStream<Integer> source = new ListDocumentStream<>(list(100));
+        source.addListener(i -> read.incrementAndGet());
+        ParallelDocumentStream<Integer, Integer> stream = new ParallelDocumentStream<>(source, null, session, 5, 2);
+        Assert.assertEquals(Integer.valueOf(0), stream.next());
+        stream.close();
+        // At most two chunks are read ahead
+        Assert.assertTrue(read.get() <= 10);
+    }
+
+    @Test
+    public void closeTest() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        ParallelDocumentStream<Integer, Integer> stream = new ParallelDocumentStream<>(list(100).iterator(), i -> i, session, 5, 2, () -> closed.set(true));
+        stream.next();
+        stream.close();
+        Assert.assertTrue(closed.get());
+    }
+
+    @Test
+    public void errorTest() throws Exception {
+        ParallelDocumentStream<Integer, Integer> stream = new ParallelDocumentStream<>(list(100).iterator(), i -> {
+            if (i == 42) {
+                throw new IllegalStateException("42");
+            }
+            return i;
+        }, session, 5, 2, null);
+        int n = 0;
+        try {
+            while (stream.hasNext()) {
+                stream.next();
+                n++;
+            }
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("42", e.getMessage());
+        }
+        Assert.assertEquals(40, n);
+        stream.close();
+    }
+
+    @Test
+    public void consumeOnPoolThreadTest() throws Exception {
+        ExecutionPool single = new ExecutionPool(1);
+        try {
+            ExecutorService s = single.newSession(1);
+            // The only pool thread consumes the stream, so the chunks cannot be read on the pool
+            CompletableFuture<List<String>> f = new CompletableFuture<>();
+            s.execute(() -> {
+                ParallelDocumentStream<Integer, String> stream = new ParallelDocumentStream<>(new ListDocumentStream<>(list(95)),
+                        i -> "d" + i, s, 10, 3);
+                List<String> result = new ArrayList<>();
+                while (stream.hasNext()) {
+                    result.add(stream.next());
+                }
+                stream.close();
+                f.complete(result);
+            });
+            List<String> result = f.get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(95, result.size());
+            for (int i = 0; i < 95; i++) {
+                Assert.assertEquals("d" + i, result.get(i));
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+}
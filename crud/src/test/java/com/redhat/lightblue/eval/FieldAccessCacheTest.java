@@ -0,0 +1,102 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+public class FieldAccessCacheTest extends AbstractJsonNodeTest {
+
+    private EntityMetadata md;
+
+    @Before
+    public void setUp() throws Exception {
+        md = EvalTestContext.getMd("./testMetadata.json");
+    }
+
+    private static Set<String> roles(String... roles) {
+        return new HashSet<>(Arrays.asList(roles));
+    }
+
+    @Test
+    public void cachedPerRoleSetTest() throws Exception {
+        FieldAccessCache cache = new FieldAccessCache(10);
+        Set<Path> s1 = cache.getInaccessibleFields(md, roles("somerole", "other"), FieldAccessRoleEvaluator.Operation.find);
+        Assert.assertTrue(s1.contains(new Path("field1")));
+        Assert.assertSame(s1, cache.getInaccessibleFields(md, roles("other", "somerole"), FieldAccessRoleEvaluator.Operation.find));
+        Assert.assertEquals(1, cache.size());
+
+        Set<Path> s2 = cache.getInaccessibleFields(md, roles("test.field1-find"), FieldAccessRoleEvaluator.Operation.find);
+        Assert.assertFalse(s2.contains(new Path("field1")));
+        Assert.assertEquals(2, cache.size());
+
+        cache.getInaccessibleFields(md, roles("somerole"), FieldAccessRoleEvaluator.Operation.insert);
+        Assert.assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void invalidateTest() throws Exception {
+        FieldAccessCache cache = new FieldAccessCache(10);
+        Set<Path> s1 = cache.getInaccessibleFields(md, roles("somerole"), FieldAccessRoleEvaluator.Operation.find);
+        cache.invalidate("someOtherEntity");
+        Assert.assertSame(s1, cache.getInaccessibleFields(md, roles("somerole"), FieldAccessRoleEvaluator.Operation.find));
+        cache.invalidate(md.getName());
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNotSame(s1, cache.getInaccessibleFields(md, roles("somerole"), FieldAccessRoleEvaluator.Operation.find));
+        cache.invalidate(null);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void boundedTest() throws Exception {
+        FieldAccessCache cache = new FieldAccessCache(2);
+        cache.getInaccessibleFields(md, roles("a"), FieldAccessRoleEvaluator.Operation.find);
+        cache.getInaccessibleFields(md, roles("b"), FieldAccessRoleEvaluator.Operation.find);
+        cache.getInaccessibleFields(md, roles("c"), FieldAccessRoleEvaluator.Operation.find);
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void excludeFieldsTest() throws Exception {
+        Set<Path> inaccessible = new HashSet<>(Arrays.asList(new Path("field1"), new Path("field6.nf1")));
+
+        Projection p = EvalTestContext.projectionFromJson("{'field':'field2'}");
+        Assert.assertSame(p, FieldAccessRoleEvaluator.excludeFields(p, inaccessible));
+
+        p = EvalTestContext.projectionFromJson("{'field':'*','recursive':1}");
+        Projection x = FieldAccessRoleEvaluator.excludeFields(p, inaccessible);
+        Assert.assertNotSame(p, x);
+        Assert.assertEquals(Projection.Inclusion.explicit_exclusion, x.getFieldInclusion(new Path("field1")));
+        Assert.assertEquals(Projection.Inclusion.explicit_exclusion, x.getFieldInclusion(new Path("field6.nf1")));
+        Assert.assertTrue(x.isFieldRequiredToEvaluateProjection(new Path("field2")));
+
+        Assert.assertNull(FieldAccessRoleEvaluator.excludeFields(null, inaccessible));
+        Assert.assertSame(p, FieldAccessRoleEvaluator.excludeFields(p, new HashSet<>()));
+    }
+}
@@ -0,0 +1,98 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+public class ProjectionPlanTest extends AbstractJsonNodeTest {
+
+    EntityMetadata md;
+
+    @Before
+    public void setUp() throws Exception {
+        jsonDoc = EvalTestContext.getDoc("./sample1.json");
+        md = EvalTestContext.getMd("./testMetadata.json");
+    }
+
+    private Projector projector(String s) throws Exception {
+        return Projector.getInstance(EvalTestContext.projectionFromJson(s), md);
+    }
+
+    @Test
+    public void planMatchesFullProjectionTest() throws Exception {
+        String[] projections = {
+            "{'field':'field2'}",
+            "[{'field':'field2'},{'field':'field6.*'}]",
+            "[{'field':'field6.nf7'},{'field':'field1'}]",
+            "[{'field':'field6.nf7','recursive':1},{'field':'field6.nf5'}]",
+            "[{'field':'field6.nf5.*'},{'field':'field6.nf11'}]",
+            "{'field':'field7.*.elemf1'}",
+            "[{'field':'field7.1.elemf2'},{'field':'field7.*.elemf3'}]",
+            "{'field':'field7.*','recursive':1}",
+            "{'field':'field8.*.nnf4.*.elemf1'}",
+            "{'field':'*','recursive':1}",
+            "{'field':'*'}",
+            "{'field':'nonexistent.field'}",
+            "[]"
+        };
+        for (String s : projections) {
+            Projector p = projector(s);
+            Assert.assertNotNull(s, ProjectionPlan.compile(p));
+            JsonDoc expected = p.projectAllFields(jsonDoc, JSON_NODE_FACTORY);
+            Assert.assertEquals(s, expected.toString(), p.project(jsonDoc, JSON_NODE_FACTORY).toString());
+        }
+    }
+
+    @Test
+    public void notCompiledTest() throws Exception {
+        Assert.assertNull(ProjectionPlan.compile(projector("[{'field':'*','recursive':1},{'field':'field6','include':false}]")));
+        Assert.assertNull(ProjectionPlan.compile(projector("{'field':'field7','range':[1,2],'project':{'field':'*'}}")));
+        Assert.assertNull(ProjectionPlan.compile(projector("{'field':'field7','match':{'field':'elemf3','op':'>','rvalue':4},'project':{'field':'*'}}")));
+    }
+
+    @Test
+    public void sharedProjectorTest() throws Exception {
+        Projector p = projector("[{'field':'field6.nf7','recursive':1},{'field':'field6.nf5'}]");
+        String expected = p.projectAllFields(jsonDoc, JSON_NODE_FACTORY).toString();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(() -> p.project(jsonDoc, JSON_NODE_FACTORY).toString()));
+            }
+            for (Future<String> f : results) {
+                Assert.assertEquals(expected, f.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
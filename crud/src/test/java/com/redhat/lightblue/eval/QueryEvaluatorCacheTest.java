@@ -0,0 +1,87 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.eval;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+public class QueryEvaluatorCacheTest extends AbstractJsonNodeTest {
+
+    private EntityMetadata md;
+    private QueryEvaluatorCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        md = EvalTestContext.getMd("./testMetadata.json");
+        jsonDoc = EvalTestContext.getDoc("./sample1.json");
+        cache = new QueryEvaluatorCache(2);
+    }
+
+    private boolean eval(String query) throws Exception {
+        QueryExpression q = EvalTestContext.queryExpressionFromJson(query);
+        boolean result = cache.getInstance(q, md).evaluate(jsonDoc).getResult();
+        Assert.assertEquals(QueryEvaluator.getInstance(q, md).evaluate(jsonDoc).getResult(), result);
+        return result;
+    }
+
+    @Test
+    public void sameShapeReusesEvaluator() throws Exception {
+        Assert.assertTrue(eval("{'field':'field3','op':'=','rvalue':3}"));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertFalse(eval("{'field':'field3','op':'=','rvalue':4}"));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(eval("{'field':'field3','op':'>','rvalue':2}"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void boundedTest() throws Exception {
+        Assert.assertTrue(eval("{'field':'field3','op':'=','rvalue':3}"));
+        Assert.assertTrue(eval("{'field':'field3','op':'>','rvalue':2}"));
+        Assert.assertTrue(eval("{'field':'field3','op':'<','rvalue':4}"));
+        Assert.assertEquals(2, cache.size());
+        // Same values with reloaded metadata
+        md = EvalTestContext.getMd("./testMetadata.json");
+        Assert.assertTrue(eval("{'field':'field3','op':'<','rvalue':4}"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void inListParameterTest() throws Exception {
+        Assert.assertTrue(eval("{'field':'field6.nf3','op':'$in','values':[1,2,3,4]}"));
+        Assert.assertFalse(eval("{'field':'field6.nf3','op':'$in','values':[5,6]}"));
+        Assert.assertTrue(eval("{'field':'field6.nf3','op':'$nin','values':[5,6]}"));
+    }
+
+    @Test
+    public void nestedQueryParameterTest() throws Exception {
+        Assert.assertTrue(eval("{'$and':[{'field':'field1','op':'=','rvalue':'value1'},{'field':'field3','op':'=','rvalue':3}]}"));
+        Assert.assertFalse(eval("{'$and':[{'field':'field1','op':'=','rvalue':'value1'},{'field':'field3','op':'=','rvalue':4}]}"));
+        Assert.assertTrue(eval("{'$not':{'field':'field3','op':'=','rvalue':4}}"));
+        Assert.assertTrue(eval("{'array':'field7','elemMatch':{'field':'elemf3','op':'>','rvalue':3}}"));
+        Assert.assertFalse(eval("{'array':'field7','elemMatch':{'field':'elemf3','op':'>','rvalue':10}}"));
+        Assert.assertTrue(eval("{'array':'field6.nf6','contains':'$any','values':['two','five']}"));
+        Assert.assertFalse(eval("{'array':'field6.nf6','contains':'$all','values':['two','five']}"));
+    }
+}
@@ -182,4 +182,33 @@ public class ValueComparisonEvaluatorTest extends AbstractJsonNodeTest {
         QueryEvaluationContext ctx = qe.evaluate(jsonDoc);
         Assert.assertTrue(ctx.getResult());
     }
+
+    @Test
+    public void compareDates() throws Exception {
+        jsonDoc.modify(new Path("dateField"), JsonNodeFactory.instance.textNode("20160510T10:00:00.000+0000"), false);
+        QueryExpression q = EvalTestContext.queryExpressionFromJson("{ '$and' : [ {'field':'dateField','op':'>=','rvalue':'20160510T00:00:00.000+0000'},{'field':'dateField','op':'<','rvalue':'20160511T00:00:00.000+0000'}] }");
+        Assert.assertTrue(QueryEvaluator.getInstance(q, md).evaluate(jsonDoc).getResult());
+        q = EvalTestContext.queryExpressionFromJson("{'field':'dateField','op':'>','rvalue':'20160510T10:00:00.000+0000'}");
+        Assert.assertFalse(QueryEvaluator.getInstance(q, md).evaluate(jsonDoc).getResult());
+    }
+
+    @Test
+    public void comparePrimitives() throws Exception {
+        QueryExpression q = EvalTestContext.queryExpressionFromJson("{ '$and' : [ {'field':'field3','op':'=','rvalue':'3'},{'field':'field4','op':'<','rvalue':4.5},{'field':'field5','op':'=','rvalue':true}] }");
+        Assert.assertTrue(QueryEvaluator.getInstance(q, md).evaluate(jsonDoc).getResult());
+        q = EvalTestContext.queryExpressionFromJson("{'field':'field5','op':'=','rvalue':false}");
+        Assert.assertFalse(QueryEvaluator.getInstance(q, md).evaluate(jsonDoc).getResult());
+    }
+
+    @Test
+    public void sameNodeDifferentTypes() throws Exception {
+        // Jackson shares the node instance for small ints, so both fields hold the same node
+        jsonDoc.modify(new Path("field3"), JsonNodeFactory.instance.numberNode(1), false);
+        jsonDoc.modify(new Path("field4"), JsonNodeFactory.instance.numberNode(1), false);
+        Assert.assertSame(jsonDoc.get(new Path("field3")), jsonDoc.get(new Path("field4")));
+        QueryExpression q = EvalTestContext.queryExpressionFromJson("{ '$and' : [ {'field':'field3','op':'=','rvalue':1},{'field':'field4','op':'$in','values':[1]},{'field':'field4','op':'=','rvalue':1}] }");
+        Assert.assertTrue(QueryEvaluator.getInstance(q, md).evaluate(jsonDoc).getResult());
+        q = EvalTestContext.queryExpressionFromJson("{ '$and' : [ {'field':'field4','op':'=','rvalue':1},{'field':'field3','op':'$in','values':[1]}] }");
+        Assert.assertTrue(QueryEvaluator.getInstance(q, md).evaluate(jsonDoc).getResult());
+    }
 }
@@ -22,6 +22,8 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import javax.management.RuntimeErrorException;
@@ -56,6 +58,8 @@ import com.redhat.lightblue.crud.DocCtx;
 import com.redhat.lightblue.crud.ListDocumentStream;
 import com.redhat.lightblue.crud.DocumentStream;
 
+import com.redhat.lightblue.util.metrics.DefaultMetricsRegistry;
+import com.redhat.lightblue.util.metrics.MetricKey;
 import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.Path;
@@ -302,6 +306,28 @@ public class HookManagerTest extends AbstractJsonNodeTest {
         }
     }
 
+    @Test
+    public void hookDocumentIsolationTest() throws Exception {
+        HookManager hooks = new HookManager(resolver, nodeFactory);
+        TestOperationContext ctx = setupContext(CRUDOperation.UPDATE);
+
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+
+        // hook1 and hook2 get their own documents, changes made by one are
+        // not visible to the other
+        Assert.assertEquals(hook1.processed.size(), hook2.processed.size());
+        for (int i = 0; i < hook1.processed.size(); i++) {
+            HookDoc d1 = hook1.processed.get(i);
+            HookDoc d2 = hook2.processed.get(i);
+            Assert.assertNotSame(d1.getPreDoc().getRoot(), d2.getPreDoc().getRoot());
+            Assert.assertNotSame(d1.getPostDoc().getRoot(), d2.getPostDoc().getRoot());
+            d1.getPostDoc().modify(new Path("field1"), nodeFactory.textNode("changed"), false);
+            Assert.assertEquals("field" + i, d2.getPostDoc().get(new Path("field1")).asText());
+            Assert.assertEquals("field" + i, ctx.getInputDocuments().get(i).get(new Path("field1")).asText());
+        }
+    }
+
     @Test
     public void crudDeleteQueueTest() throws Exception {
         HookManager hooks = new HookManager(resolver, nodeFactory);
@@ -492,4 +518,187 @@ public class HookManagerTest extends AbstractJsonNodeTest {
         }
     }
 
+    public static class CollectingHook implements CRUDHook {
+        private final String name;
+        final List<HookDoc> processed = new ArrayList<>();
+        final List<String> threads = new ArrayList<>();
+        int calls;
+
+        public CollectingHook(String n) {
+            name = n;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public synchronized void processHook(EntityMetadata md,
+                                             HookConfiguration cfg,
+                                             List<HookDoc> processedDocuments) {
+            calls++;
+            processed.addAll(processedDocuments);
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+
+    public static class CollectingSyncHook extends CollectingHook implements SynchronousHook {
+        public CollectingSyncHook(String n) {
+            super(n);
+        }
+    }
+
+    @Test
+    public void asyncDispatchTest() throws Exception {
+        CollectingHook async = new CollectingHook("hook1");
+        CollectingSyncHook sync = new CollectingSyncHook("hook2");
+        DefaultMetricsRegistry metrics = new DefaultMetricsRegistry();
+        AsyncHookDispatcher dispatcher = new AsyncHookDispatcher(16, 64, AsyncHookDispatcher.OverflowPolicy.BLOCK, metrics);
+        HookManager hooks = new HookManager(new TestHookResolver(async, sync, mediatorHook, errorHook), nodeFactory, dispatcher);
+        TestOperationContext ctx = setupContext(CRUDOperation.UPDATE);
+
+        hooks.queueHooks(ctx);
+        hooks.queueHooks(ctx);
+        hooks.callQueuedHooks();
+
+        // Synchronous hook is called before callQueuedHooks returns
+        Assert.assertEquals(20, sync.processed.size());
+        Assert.assertEquals(2, sync.calls);
+        Assert.assertFalse(sync.threads.get(0).startsWith("lightblue-hook-"));
+
+        Assert.assertTrue(dispatcher.flush(10000));
+        synchronized (async) {
+            Assert.assertEquals(20, async.processed.size());
+            Assert.assertTrue(async.threads.get(0).startsWith("lightblue-hook-hook1"));
+            for (HookDoc doc : async.processed) {
+                Assert.assertNotNull(doc.getPreDoc());
+                Assert.assertNotNull(doc.getPostDoc());
+            }
+        }
+        Assert.assertEquals(2, metrics.counter(new MetricKey("test", "hook.hook1", "queued")).getCount());
+        Assert.assertEquals(20, metrics.counter(new MetricKey("test", "hook.hook1", "delivered")).getCount());
+        // The error hook failure is recorded, and does not stop the others
+        Assert.assertEquals(20, metrics.counter(new MetricKey("test", "hook.EH", "failed")).getCount());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void asyncBatchAndOverflowTest() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingHook hook = new CollectingHook("slow") {
+            @Override
+            public void processHook(EntityMetadata md, HookConfiguration cfg, List<HookDoc> processedDocuments) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                super.processHook(md, cfg, processedDocuments);
+            }
+        };
+        DefaultMetricsRegistry metrics = new DefaultMetricsRegistry();
+        AsyncHookDispatcher dispatcher = new AsyncHookDispatcher(2, 3, AsyncHookDispatcher.OverflowPolicy.DISCARD, metrics);
+        EntityMetadata md = getMD("./testMetadata.json");
+        HookConfiguration cfg = new TestHook1Config();
+        List<HookDoc> docs = new ArrayList<>();
+        docs.add(new HookDoc(md, null, new JsonDoc(nodeFactory.objectNode()), CRUDOperation.INSERT, null));
+
+        Assert.assertTrue(dispatcher.dispatch("slow", hook, md, cfg, () -> docs));
+        entered.await();
+        // Worker is busy, two calls are queued, the third one is dropped
+        Assert.assertTrue(dispatcher.dispatch("slow", hook, md, cfg, () -> docs));
+        Assert.assertTrue(dispatcher.dispatch("slow", hook, md, cfg, () -> docs));
+        Assert.assertFalse(dispatcher.dispatch("slow", hook, md, cfg, () -> docs));
+        Assert.assertEquals(2, dispatcher.getQueueDepth("slow"));
+        release.countDown();
+
+        Assert.assertTrue(dispatcher.flush(10000));
+        synchronized (hook) {
+            Assert.assertEquals(3, hook.processed.size());
+            // The two queued calls are delivered in one batch
+            Assert.assertEquals(2, hook.calls);
+        }
+        Assert.assertEquals(1, metrics.counter(new MetricKey(md.getName(), "hook.slow", "dropped")).getCount());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void asyncHookErrorTest() throws Exception {
+        CollectingHook hook = new CollectingHook("err") {
+            int n = 0;
+
+            @Override
+            public void processHook(EntityMetadata md, HookConfiguration cfg, List<HookDoc> processedDocuments) {
+                if (n++ == 0) {
+                    throw new AssertionError("hook error");
+                }
+                super.processHook(md, cfg, processedDocuments);
+            }
+        };
+        DefaultMetricsRegistry metrics = new DefaultMetricsRegistry();
+        AsyncHookDispatcher dispatcher = new AsyncHookDispatcher(1, 1, AsyncHookDispatcher.OverflowPolicy.BLOCK, metrics);
+        EntityMetadata md = getMD("./testMetadata.json");
+        HookConfiguration cfg = new TestHook1Config();
+        List<HookDoc> docs = new ArrayList<>();
+        docs.add(new HookDoc(md, null, new JsonDoc(nodeFactory.objectNode()), CRUDOperation.INSERT, null));
+
+        Assert.assertTrue(dispatcher.dispatch("err", hook, md, cfg, () -> docs));
+        Assert.assertTrue(dispatcher.flush(10000));
+        // The worker survives the error and delivers the next calls
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(dispatcher.dispatch("err", hook, md, cfg, () -> docs));
+        }
+        Assert.assertTrue(dispatcher.flush(10000));
+        synchronized (hook) {
+            Assert.assertEquals(3, hook.processed.size());
+        }
+        Assert.assertEquals(1, metrics.counter(new MetricKey(md.getName(), "hook.err", "failed")).getCount());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void asyncCallerRunsIsSerialTest() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CollectingHook hook = new CollectingHook("cr") {
+            @Override
+            public void processHook(EntityMetadata md, HookConfiguration cfg, List<HookDoc> processedDocuments) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                super.processHook(md, cfg, processedDocuments);
+                running.decrementAndGet();
+            }
+        };
+        AsyncHookDispatcher dispatcher = new AsyncHookDispatcher(1, 1, AsyncHookDispatcher.OverflowPolicy.CALLER_RUNS, null);
+        EntityMetadata md = getMD("./testMetadata.json");
+        HookConfiguration cfg = new TestHook1Config();
+        List<HookDoc> docs = new ArrayList<>();
+        docs.add(new HookDoc(md, null, new JsonDoc(nodeFactory.objectNode()), CRUDOperation.INSERT, null));
+
+        Assert.assertTrue(dispatcher.dispatch("cr", hook, md, cfg, () -> docs));
+        entered.await();
+        Assert.assertTrue(dispatcher.dispatch("cr", hook, md, cfg, () -> docs));
+        // The queue is full, this call runs in a caller thread after the worker call
+        Thread caller = new Thread(() -> dispatcher.dispatch("cr", hook, md, cfg, () -> docs));
+        caller.start();
+        Thread.sleep(50);
+        release.countDown();
+        caller.join();
+        Assert.assertTrue(dispatcher.flush(10000));
+        synchronized (hook) {
+            Assert.assertEquals(3, hook.processed.size());
+        }
+        Assert.assertEquals(1, maxRunning.get());
+        dispatcher.shutdown();
+    }
 }
@@ -42,7 +42,10 @@ import com.redhat.lightblue.crud.Factory;
 import com.redhat.lightblue.crud.CRUDInsertionResponse;
 import com.redhat.lightblue.crud.FindRequest;
 import com.redhat.lightblue.crud.InsertionRequest;
+import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.Metadata;
+import com.redhat.lightblue.metadata.ReferenceField;
+import com.redhat.lightblue.metadata.test.DatabaseMetadata;
 
 public class BulkTest extends AbstractMediatorTest {
 
@@ -338,4 +341,144 @@ public class BulkTest extends AbstractMediatorTest {
 
         Assert.assertTrue(validator.valid);
     }
+
+    @Test
+    public void parallelOrderedBulkDifferentEntitiesTest() throws Exception {
+        BulkRequest breq = new BulkRequest();
+
+        InsertionRequest ireq = new InsertionRequest();
+        ireq.setEntityVersion(new EntityVersion("test", "1.0"));
+        ireq.setEntityData(loadJsonNode("./sample1.json"));
+        ireq.setReturnFields(null);
+        ireq.setClientId(new RestClientIdentification(Arrays.asList("test-insert", "test-update")));
+
+        FindRequest freq = new FindRequest();
+        freq.setEntityVersion(new EntityVersion("other", "1.0"));
+        freq.setClientId(new RestClientIdentification(Arrays.asList("test-find")));
+
+        breq.add(ireq);
+        breq.add(freq);
+        breq.add(freq);
+
+        PFindCb findCb = new PFindCb();
+        PInsertCb insertCb = new PInsertCb();
+        ((TestMediator) mediator).findCb = findCb;
+        ((TestMediator) mediator).insertCb = insertCb;
+
+        ValidatorThread validator = new ValidatorThread(findCb, insertCb) {
+            @Override
+            public void run() {
+                try {
+                    LOGGER.debug("Check if the insert and the finds on the other entity run together");
+                    while (insert.nested.get() < 1 || find.nested.get() < 2) {
+                        Thread.sleep(1);
+                    }
+                    find.sem.release(2);
+                    insert.sem.release(1);
+                    valid = true;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        validator.start();
+
+        BulkResponse bresp = mediator.bulkRequest(breq);
+        validator.join();
+
+        Assert.assertTrue(validator.valid);
+        Assert.assertEquals(3, bresp.getEntries().size());
+        for (Response r : bresp.getEntries()) {
+            Assert.assertNotNull(r);
+        }
+    }
+
+    @Test
+    public void parallelOrderedBulkReferencedEntityTest() throws Exception {
+        // test references child, so a find on test may read child
+        ReferenceField ref = new ReferenceField("ref");
+        ref.setEntityName("child");
+        ref.setVersionValue("1.0");
+        mdManager.md.getFields().addNew(ref);
+
+        BulkRequest breq = new BulkRequest();
+
+        InsertionRequest ireq = new InsertionRequest();
+        ireq.setEntityVersion(new EntityVersion("child", "1.0"));
+        ireq.setEntityData(loadJsonNode("./sample1.json"));
+        ireq.setReturnFields(null);
+        ireq.setClientId(new RestClientIdentification(Arrays.asList("test-insert", "test-update")));
+
+        FindRequest freq = new FindRequest();
+        freq.setEntityVersion(new EntityVersion("test", "1.0"));
+        freq.setClientId(new RestClientIdentification(Arrays.asList("test-find")));
+
+        breq.add(ireq);
+        breq.add(freq);
+
+        PFindCb findCb = new PFindCb();
+        PInsertCb insertCb = new PInsertCb();
+        ((TestMediator) mediator).findCb = findCb;
+        ((TestMediator) mediator).insertCb = insertCb;
+
+        ValidatorThread validator = new ValidatorThread(findCb, insertCb) {
+            @Override
+            public void run() {
+                try {
+                    while (insert.nested.get() < 1) {
+                        Thread.sleep(1);
+                    }
+                    LOGGER.debug("The find on test should wait for the insert on child");
+                    Thread.sleep(50);
+                    boolean findWaited = find.nested.get() == 0;
+                    insert.sem.release(1);
+                    while (find.nested.get() < 1) {
+                        Thread.sleep(1);
+                    }
+                    find.sem.release(1);
+                    valid = findWaited;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        validator.start();
+
+        BulkResponse bresp = mediator.bulkRequest(breq);
+        validator.join();
+
+        Assert.assertTrue(validator.valid);
+        Assert.assertEquals(2, bresp.getEntries().size());
+    }
+
+    @Test
+    public void orderedBulkReferencedEntitiesMemoizedTest() throws Exception {
+        // test references child, and child references itself
+        ReferenceField ref = new ReferenceField("ref");
+        ref.setEntityName("child");
+        ref.setVersionValue("1.0");
+        mdManager.md.getFields().addNew(ref);
+        AtomicInteger metadataCalls = new AtomicInteger();
+        Metadata counting = new DatabaseMetadata() {
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName, String version) {
+                metadataCalls.incrementAndGet();
+                return mdManager.md;
+            }
+        };
+        TestMediator m = new TestMediator(counting, mediator.factory);
+        m.findCb = req -> new Response();
+
+        BulkRequest breq = new BulkRequest();
+        FindRequest freq = new FindRequest();
+        freq.setEntityVersion(new EntityVersion("test", "1.0"));
+        for (int i = 0; i < 5; i++) {
+            breq.add(freq);
+        }
+        BulkResponse bresp = m.bulkRequest(breq);
+
+        Assert.assertEquals(5, bresp.getEntries().size());
+        // The reference graph of test:1.0 is walked once: test, then child
+        Assert.assertEquals(2, metadataCalls.get());
+    }
 }
@@ -26,12 +26,14 @@ import java.util.ArrayList;
 import java.util.Iterator;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.PredefinedFields;
 import com.redhat.lightblue.metadata.parser.Extensions;
@@ -181,11 +183,7 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
     }
 
     public void initMediator(int memoryIndexThreshold) throws Exception {
-        Factory factory = new Factory();
-        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
-        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
-        factory.setMemoryIndexThreshold(memoryIndexThreshold);
-        factory.addCRUDController("mongo", new CompositeTestCrudController(new TestCrudController.GetData() {
+        initMediator(memoryIndexThreshold,new TestCrudController.GetData() {
             public List<JsonDoc> getData(String entityName) {
                 try {
                     List<JsonDoc> docs = new ArrayList<>();
@@ -202,7 +200,15 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
                     throw new RuntimeException(e);
                 }
             }
-        }));
+        });
+    }
+
+    public void initMediator(int memoryIndexThreshold,TestCrudController.GetData gd) throws Exception {
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+        factory.setMemoryIndexThreshold(memoryIndexThreshold);
+        factory.addCRUDController("mongo", new CompositeTestCrudController(gd));
         mediator = new TestMediator(new TestMetadata(), factory);
         updateQuery = null;
         findError = null;
@@ -318,6 +324,118 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
         Assert.assertEquals(1, response.getEntityData().get(2).get("b").size());
     }
 
+    private TestCrudController.GetData manyAData() {
+        return new TestCrudController.GetData() {
+            public List<JsonDoc> getData(String entityName) {
+                List<JsonDoc> docs = new ArrayList<>();
+                if("A".equals(entityName)) {
+                    for(int i=0;i<600;i++) {
+                        ObjectNode node=nodeFactory.objectNode();
+                        node.set("_id",nodeFactory.textNode(String.format("A%04d",i)));
+                        node.set("objectType",nodeFactory.textNode("A"));
+                        node.set("b_ref",nodeFactory.textNode(String.format("B%02d",i%50)));
+                        docs.add(new JsonDoc(node));
+                    }
+                } else if("B".equals(entityName)) {
+                    for(int i=0;i<50;i++) {
+                        ObjectNode node=nodeFactory.objectNode();
+                        node.set("_id",nodeFactory.textNode(String.format("B%02d",i)));
+                        node.set("objectType",nodeFactory.textNode("B"));
+                        docs.add(new JsonDoc(node));
+                    }
+                }
+                return docs;
+            }
+        };
+    }
+
+    /**
+     * Retrieves more parent documents than a single assemble batch
+     */
+    @Test
+    public void retrieveAandB_multipleBatches() throws Exception {
+        initMediator(16,manyAData());
+        FindRequest fr = new FindRequest();
+        fr.setQuery(query("{'field':'objectType','op':'=','rvalue':'A'}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'}]"));
+        fr.setSort(sort("{'_id':'$asc'}"));
+        fr.setEntityVersion(new EntityVersion("A", "1.0.0"));
+        Response response = mediator.find(fr);
+        Assert.assertTrue(response.getErrors().isEmpty());
+        Assert.assertEquals(600, response.getMatchCount());
+        Assert.assertEquals(600, response.getEntityData().size());
+        for(int i=0;i<600;i++) {
+            JsonNode doc=response.getEntityData().get(i);
+            Assert.assertEquals(String.format("A%04d",i), doc.get("_id").asText());
+            Assert.assertEquals(1, doc.get("b").size());
+            Assert.assertEquals(String.format("B%02d",i%50), doc.get("b").get(0).get("_id").asText());
+        }
+
+        fr.setFrom(250l);
+        fr.setTo(299l);
+        response = mediator.find(fr);
+        Assert.assertEquals(600, response.getMatchCount());
+        Assert.assertEquals(50, response.getEntityData().size());
+        Assert.assertEquals("A0250", response.getEntityData().get(0).get("_id").asText());
+        Assert.assertEquals("B00", response.getEntityData().get(0).get("b").get(0).get("_id").asText());
+    }
+
+    @Test
+    public void retrieveAandB_parallelResults() throws Exception {
+        initMediator(16,manyAData());
+        mediator.factory.setResultChunkSize(7);
+        mediator.factory.setResultProcessingParallelism(3);
+        FindRequest fr = new FindRequest();
+        fr.setQuery(query("{'field':'objectType','op':'=','rvalue':'A'}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'}]"));
+        fr.setSort(sort("{'_id':'$asc'}"));
+        fr.setEntityVersion(new EntityVersion("A", "1.0.0"));
+        Response response = mediator.find(fr);
+        Assert.assertTrue(response.getErrors().isEmpty());
+        Assert.assertEquals(600, response.getEntityData().size());
+        for(int i=0;i<600;i++) {
+            JsonNode doc=response.getEntityData().get(i);
+            Assert.assertEquals(String.format("A%04d",i), doc.get("_id").asText());
+            Assert.assertEquals(String.format("B%02d",i%50), doc.get("b").get(0).get("_id").asText());
+        }
+    }
+
+    @Test
+    public void retrieveAandB_compositeMetadataCache() throws Exception {
+        CompositeMetadataCache cache = new CompositeMetadataCache(60000, 16);
+        mediator.factory.setCompositeMetadataCache(cache);
+
+        FindRequest fr = new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'}]"));
+        fr.setEntityVersion(new EntityVersion("A", "1.0.0"));
+        Response response = mediator.find(fr);
+        Assert.assertEquals(1, response.getEntityData().size());
+        Assert.assertEquals(1, cache.size());
+        CompositeMetadata cmd = getLastContext(mediator).getTopLevelEntityMetadata();
+
+        // Same references, different query value: cached metadata is reused
+        fr.setQuery(query("{'field':'_id','op':'=','rvalue':'A02'}"));
+        response = mediator.find(fr);
+        Assert.assertEquals(1, response.getEntityData().size());
+        Assert.assertEquals("B", response.getEntityData().get(0).get("b").get(0).get("objectType").asText());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertSame(cmd, getLastContext(mediator).getTopLevelEntityMetadata());
+
+        // B is not projected: a different composite metadata
+        fr.setProjection(projection("{'field':'_id'}"));
+        response = mediator.find(fr);
+        Assert.assertEquals(1, response.getEntityData().size());
+        Assert.assertNull(response.getEntityData().get(0).get("b"));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotSame(cmd, getLastContext(mediator).getTopLevelEntityMetadata());
+
+        cache.invalidate("B");
+        Assert.assertEquals(1, cache.size());
+        cache.invalidate(null);
+        Assert.assertEquals(0, cache.size());
+    }
+
     @Test
     public void retrieveAandBonly_manyA_nullproj() throws Exception {
         FindRequest fr = new FindRequest();
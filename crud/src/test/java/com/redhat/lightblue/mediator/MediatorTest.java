@@ -18,6 +18,8 @@
  */
 package com.redhat.lightblue.mediator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -26,11 +28,13 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.EntityVersion;
 import com.redhat.lightblue.OperationStatus;
 import com.redhat.lightblue.Response;
+import com.redhat.lightblue.ResponseStreamWriter;
 import com.redhat.lightblue.ResultMetadata;
 import com.redhat.lightblue.crud.CRUDDeleteResponse;
 import com.redhat.lightblue.crud.CRUDFindResponse;
@@ -45,13 +49,16 @@ import com.redhat.lightblue.crud.SaveRequest;
 import com.redhat.lightblue.crud.UpdateRequest;
 import com.redhat.lightblue.crud.WithRange;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.DocRequestParser;
 import com.redhat.lightblue.crud.ListDocumentStream;
 import com.redhat.lightblue.metadata.MetadataStatus;
 import com.redhat.lightblue.query.BinaryComparisonOperator;
 import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
 import com.redhat.lightblue.query.Value;
 import com.redhat.lightblue.query.ValueComparisonExpression;
 import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
 import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.Error;
 
@@ -384,6 +391,103 @@ public class MediatorTest extends AbstractMediatorTest {
         }
     }
 
+    @Test
+    public void findStreamingTest() throws Exception {
+        FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+
+        mdManager.md.getAccess().getFind().setRoles("anyone");
+        mockCrudController.findResponse = new CRUDFindResponse();
+        mockCrudController.findResponse.setSize(10);
+        mockCrudController.findCb=ctx->{
+            ArrayList<DocCtx> docs=new ArrayList<>();
+            for(int i=0;i<10;i++) {
+                ObjectNode node=JsonNodeFactory.instance.objectNode();
+                node.put("field1",Integer.toString(i));
+                docs.add(new DocCtx(new JsonDoc(node),getRmd(Integer.toString(i))));
+            }
+            ctx.setDocumentStream(new ListDocumentStream(docs));
+        };
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        Response response;
+        try (ResponseStreamWriter writer=new ResponseStreamWriter(out)) {
+            response = mediator.find(req, writer);
+        }
+        Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+        Assert.assertNull(response.getEntityData());
+
+        JsonNode json=JsonUtils.json(out.toString("UTF-8"));
+        Assert.assertEquals("test",json.get("entity").asText());
+        Assert.assertEquals("COMPLETE",json.get("status").asText());
+        Assert.assertEquals(10,json.get("matchCount").asInt());
+        Assert.assertEquals(10,json.get("processed").size());
+        Assert.assertEquals(10,json.get("resultMetadata").size());
+        for(int i=0;i<10;i++) {
+            Assert.assertEquals(Integer.toString(i),json.get("processed").get(i).get("field1").asText());
+        }
+    }
+
+    @Test
+    public void streamedInsertTest() throws Exception {
+        InsertionRequest req = new InsertionRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setReturnFields(null);
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-insert", "test-update")));
+        ArrayNode data = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i < 5; i++) {
+            data.add(loadJsonNode("./sample1.json"));
+        }
+        ObjectNode body = JsonNodeFactory.instance.objectNode();
+        body.set("data", data);
+        List<Integer> batches = new ArrayList<>();
+        mockCrudController.insertResponse = new CRUDInsertionResponse();
+        mockCrudController.insertCb = ctx -> {
+            batches.add(ctx.getInputDocuments().size());
+            mockCrudController.insertResponse.setNumInserted(ctx.getInputDocuments().size());
+        };
+        mediator.factory.setIngestionBatchSize(2);
+
+        Response response = mediator.insert(req, new DocRequestParser(new ByteArrayInputStream(body.toString().getBytes("UTF-8")),
+                JsonNodeFactory.instance));
+
+        Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+        Assert.assertEquals(Arrays.asList(2, 2, 1), batches);
+        Assert.assertEquals(5, response.getModifiedCount());
+        Assert.assertEquals(0, response.getErrors().size());
+    }
+
+    @Test
+    public void streamedSaveFieldsAfterDataTest() throws Exception {
+        ArrayNode data = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i < 3; i++) {
+            data.add(loadJsonNode("./sample1.json"));
+        }
+        ObjectNode body = JsonNodeFactory.instance.objectNode();
+        body.set("entity", JsonNodeFactory.instance.textNode("test"));
+        body.set("entityVersion", JsonNodeFactory.instance.textNode("1.0"));
+        body.set("data", data);
+        body.set("upsert", JsonNodeFactory.instance.booleanNode(true));
+        body.set("projection", JsonNodeFactory.instance.objectNode().put("field", "field1"));
+        DocRequestParser parser = new DocRequestParser(new ByteArrayInputStream(body.toString().getBytes("UTF-8")),
+                JsonNodeFactory.instance);
+        SaveRequest req = SaveRequest.fromJson(parser.getEnvelope());
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-insert", "test-update")));
+        List<Boolean> upserts = new ArrayList<>();
+        mockCrudController.saveResponse = new CRUDSaveResponse();
+        mockCrudController.saveCb = ctx -> {
+            upserts.add(mockCrudController.saveUpsert);
+            mockCrudController.saveResponse.setNumSaved(ctx.getInputDocuments().size());
+        };
+        mediator.factory.setIngestionBatchSize(2);
+
+        Response response = mediator.save(req, parser);
+
+        Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+        Assert.assertNotNull(req.getReturnFields());
+        Assert.assertEquals(Arrays.asList(true, true), upserts);
+        Assert.assertEquals(3, response.getModifiedCount());
+    }
+
     @Test
     public void queryTimeoutTest() throws Exception {
         FindRequest req = new FindRequest();
@@ -417,6 +521,24 @@ public class MediatorTest extends AbstractMediatorTest {
         Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
     }
 
+    @Test
+    public void findProjectionExcludesInaccessibleFieldsTest() throws Exception {
+        FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setProjection(new FieldProjection(new Path("*"), true, true));
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-find")));
+
+        // There is no field access cache, so the inaccessible fields are
+        // computed for the request
+        Assert.assertNull(mediator.factory.getFieldAccessCache());
+        mockCrudController.findResponse = new CRUDFindResponse();
+        mockCrudController.findCb=ctx->ctx.setDocumentStream(new ListDocumentStream<DocCtx>(new ArrayList<DocCtx>()));
+        Response response = mediator.find(req);
+        Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+        Assert.assertEquals(Projection.Inclusion.explicit_exclusion, mockCrudController.findProjection.getFieldInclusion(new Path("field1")));
+        Assert.assertEquals(Projection.Inclusion.implicit_inclusion, mockCrudController.findProjection.getFieldInclusion(new Path("field2")));
+    }
+
     @Test
     public void optionalQueryTest() throws Exception {
         FindRequest req = new FindRequest();
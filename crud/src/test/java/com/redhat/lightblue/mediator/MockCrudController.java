@@ -29,6 +29,8 @@ public final class MockCrudController implements CRUDController, ExtensionSuppor
     CRUDFindResponse findResponse;
     CRUDInsertionResponse insertResponse;
     CRUDOperationContext ctx;
+    boolean saveUpsert;
+    Projection findProjection;
 
     Callback insertCb=x->{};
     Callback saveCb=x->{};
@@ -55,6 +57,7 @@ public final class MockCrudController implements CRUDController, ExtensionSuppor
                                  boolean upsert,
                                  Projection projection) {
         this.ctx = ctx;
+        this.saveUpsert = upsert;
         saveCb.cb(ctx);
         ctx.setDocumentStream(new ListDocumentStream<DocCtx>(ctx.getInputDocuments()==null?new ArrayList<>():ctx.getInputDocuments()));
         return saveResponse;
@@ -85,6 +88,7 @@ public final class MockCrudController implements CRUDController, ExtensionSuppor
                                  Sort sort,
                                  Long from,
                                  Long to) {
+        this.findProjection = projection;
         findCb.cb(ctx);
         return findResponse;
     }
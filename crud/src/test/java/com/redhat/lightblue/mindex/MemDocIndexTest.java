@@ -378,4 +378,100 @@ public class MemDocIndexTest extends AbstractJsonSchemaTest {
         Assert.assertEquals("field1:2",results.iterator().next().get(new Path("field1")).asText());
     }
 
+
+    @Test
+    public void orderedRangeValueLookupTest() throws Exception {
+        EntityMetadata md=getMd("testMetadata.json");
+        List<JsonDoc> docs=fill();
+
+        SimpleKeySpec spec=new SimpleKeySpec(qfi(md,"field1","field1"));
+        MemDocIndex index=new MemDocIndex(spec,true);
+        Assert.assertTrue(index.isOrdered());
+        
+        for(JsonDoc doc:docs)
+            index.add(doc);
+
+        Set<JsonDoc> results=index.find(new RangeLookupSpec(spec,"field1:10","field1:15"));
+        Assert.assertEquals(6,results.size());
+        Set<String> values=results.stream().map(d->d.get(new Path("field1")).asText()).collect(Collectors.toSet());
+        for(int i=10;i<=15;i++)
+            Assert.assertTrue(values.contains("field1:"+i));
+
+        // Open ranges
+        Assert.assertEquals(10,index.find(new RangeLookupSpec(spec,"field1:90",null)).size());
+        Assert.assertEquals(3,index.find(new RangeLookupSpec(spec,null,"field1:10")).size());
+        // Empty range
+        Assert.assertEquals(0,index.find(new RangeLookupSpec(spec,"field1:15","field1:10")).size());
+    }
+
+    @Test
+    public void orderedPrefixLookupTest() throws Exception {
+        EntityMetadata md=getMd("testMetadata.json");
+        List<JsonDoc> docs=fill();
+
+        SimpleKeySpec spec=new SimpleKeySpec(qfi(md,"field1","field1"));
+        MemDocIndex index=new MemDocIndex(spec,true);
+        
+        for(JsonDoc doc:docs)
+            index.add(doc);
+
+        Assert.assertEquals(11,index.find(new PrefixLookupSpec(spec,"field1:1",false)).size());
+        Assert.assertEquals(11,index.find(new PrefixLookupSpec(spec,"FIELD1:1",true)).size());
+        Assert.assertEquals(0,index.find(new PrefixLookupSpec(spec,"FIELD1:1",false)).size());
+        Assert.assertEquals(100,index.find(new PrefixLookupSpec(spec,"field",false)).size());
+    }
+
+    @Test
+    public void orderedValueLookupTest() throws Exception {
+        EntityMetadata md=getMd("testMetadata.json");
+        List<JsonDoc> docs=fill();
+
+        SimpleKeySpec spec=new SimpleKeySpec(qfi(md,"field4","field4"));
+        MemDocIndex index=new MemDocIndex(spec,true);
+        
+        for(JsonDoc doc:docs)
+            index.add(doc);
+        
+        Assert.assertEquals(1,index.find(new ValueLookupSpec(spec,new Integer(10))).size());
+        Assert.assertEquals(0,index.find(new ValueLookupSpec(spec,new Integer(11))).size());
+        Assert.assertEquals(50,index.find(new ValueLookupSpec(spec,null)).size());
+        Assert.assertEquals(5,index.find(new RangeLookupSpec(spec,new Integer(10),new Integer(18))).size());
+    }
+
+    @Test
+    public void orderedCompositeRangeLookupTest() throws Exception {
+        EntityMetadata md=getMd("testMetadata.json");
+        List<JsonDoc> docs=fill();
+
+        SimpleKeySpec spec1=new SimpleKeySpec(qfi(md,"field1","field1"));
+        SimpleKeySpec spec2=new SimpleKeySpec(qfi(md,"field2","field2"));
+        CompositeKeySpec aspec=new CompositeKeySpec(new KeySpec[] {spec1,spec2});
+        MemDocIndex index=new MemDocIndex(aspec,true);
+        
+        for(JsonDoc doc:docs)
+            index.add(doc);
+
+        LookupSpec ls=new CompositeLookupSpec(new LookupSpec[] {new RangeLookupSpec(spec1,"field1:10","field1:15"),
+                                                                new ValueLookupSpec(spec2,"field2:10")});
+        Assert.assertTrue(ls.isScan());
+        Set<JsonDoc> results=index.find(ls);
+        Assert.assertEquals(1,results.size());
+        Assert.assertEquals("field1:10",results.iterator().next().get(new Path("field1")).asText());
+
+        results=index.find(new CompositeLookupSpec(new LookupSpec[] {new ValueLookupSpec(spec1,"field1:12"),
+                                                                     new PrefixLookupSpec(spec2,"field2:1",false)}));
+        Assert.assertEquals(1,results.size());
+        Assert.assertEquals("field1:12",results.iterator().next().get(new Path("field1")).asText());
+
+        HashSet<Object> values1=new HashSet<>();
+        values1.add("field1:10");
+        values1.add("field1:11");
+        ls=new CompositeLookupSpec(new LookupSpec[] {new MultiValueLookupSpec(spec1,values1),
+                                                     new ValueLookupSpec(spec2,"field2:11")});
+        Assert.assertFalse(ls.isScan());
+        results=index.find(ls);
+        Assert.assertEquals(1,results.size());
+        Assert.assertEquals("field1:11",results.iterator().next().get(new Path("field1")).asText());
+    }
+
 }
@@ -0,0 +1,293 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.util.BoundedCache;
+
+/**
+ * A Metadata decorator that caches entity metadata and entity info
+ * retrieved from the underlying metadata implementation.
+ *
+ * Cached entries expire after a time-to-live, and the number of
+ * cached entries is bounded, the least recently used entries are
+ * evicted first. All entries of an entity are invalidated when that
+ * entity is modified through this object (new metadata or schema,
+ * entity info update, status change, or removal), or when
+ * {@link #invalidate(String)} is called for that entity. The
+ * underlying metadata does not notify this object of changes made by
+ * other means, such as changes made on other nodes or directly in the
+ * metadata store, so those changes are seen only after the cached
+ * entries expire. Using this class means accepting that stale window.
+ *
+ * Invalidation listeners are notified with the name of the
+ * invalidated entity, or null if all entries are invalidated, so that
+ * caches built on top of metadata can be invalidated as well.
+ */
+public class CachingMetadata implements Metadata {
+
+    private static final long serialVersionUID = 1l;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingMetadata.class);
+
+    private final Metadata metadata;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    private transient BoundedCache<Key, Entry> cache;
+    // Incremented at every invalidation, so that values loaded
+    // concurrently with an invalidation are not cached
+    private long generation;
+
+    private static final class Key {
+        private final String entityName;
+        private final String version;
+        private final boolean info;
+
+        Key(String entityName, String version, boolean info) {
+            this.entityName = entityName;
+            this.version = version;
+            this.info = info;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entityName, version, info);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key k = (Key) o;
+                return info == k.info
+                        && Objects.equals(entityName, k.entityName)
+                        && Objects.equals(version, k.version);
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * @param metadata The underlying metadata implementation
+     * @param ttlMillis Time-to-live for cached entries in milliseconds. If
+     * &lt;=0, entries do not expire.
+     * @param maxEntries Maximum number of cached entries
+     */
+    public CachingMetadata(Metadata metadata, long ttlMillis, int maxEntries) {
+        this.metadata = metadata;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Returns the underlying metadata implementation
+     */
+    public Metadata getMetadata() {
+        return metadata;
+    }
+
+    public void addInvalidationListener(Consumer<String> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    /**
+     * Invalidates all cached entries of the given entity
+     */
+    public void invalidate(String entityName) {
+        LOGGER.debug("Invalidating {}", entityName);
+        synchronized (this) {
+            generation++;
+            getCache().removeIf((k, e) -> Objects.equals(k.entityName, entityName));
+        }
+        for (Consumer<String> listener : invalidationListeners) {
+            listener.accept(entityName);
+        }
+    }
+
+    /**
+     * Invalidates all cached entries
+     */
+    public void invalidateAll() {
+        LOGGER.debug("Invalidating all");
+        synchronized (this) {
+            generation++;
+            getCache().clear();
+        }
+        for (Consumer<String> listener : invalidationListeners) {
+            listener.accept(null);
+        }
+    }
+
+    @Override
+    public EntityMetadata getEntityMetadata(String entityName, String version) {
+        Key key = new Key(entityName, version, false);
+        EntityMetadata md = (EntityMetadata) get(key);
+        if (md == null) {
+            long gen = getGeneration();
+            md = metadata.getEntityMetadata(entityName, version);
+            if (md != null) {
+                put(key, md, gen);
+            }
+        }
+        return md;
+    }
+
+    @Override
+    public EntityInfo getEntityInfo(String entityName) {
+        Key key = new Key(entityName, null, true);
+        EntityInfo info = (EntityInfo) get(key);
+        if (info == null) {
+            long gen = getGeneration();
+            info = metadata.getEntityInfo(entityName);
+            if (info != null) {
+                put(key, info, gen);
+            }
+        }
+        return info;
+    }
+
+    @Override
+    public Response getDependencies(String entityName, String version) {
+        return metadata.getDependencies(entityName, version);
+    }
+
+    @Override
+    public Response getAccess(String entityName, String version) {
+        return metadata.getAccess(entityName, version);
+    }
+
+    @Override
+    public String[] getEntityNames(MetadataStatus... statuses) {
+        return metadata.getEntityNames(statuses);
+    }
+
+    @Override
+    public VersionInfo[] getEntityVersions(String entityName) {
+        return metadata.getEntityVersions(entityName);
+    }
+
+    @Override
+    public void createNewMetadata(EntityMetadata md) {
+        try {
+            metadata.createNewMetadata(md);
+        } finally {
+            invalidate(md.getName());
+        }
+    }
+
+    @Override
+    public void createNewSchema(EntityMetadata md) {
+        try {
+            metadata.createNewSchema(md);
+        } finally {
+            invalidate(md.getName());
+        }
+    }
+
+    @Override
+    public void updateEntityInfo(EntityInfo ei) {
+        try {
+            metadata.updateEntityInfo(ei);
+        } finally {
+            invalidate(ei.getName());
+        }
+    }
+
+    @Override
+    public void setMetadataStatus(String entityName,
+                                  String version,
+                                  MetadataStatus newStatus,
+                                  String comment) {
+        try {
+            metadata.setMetadataStatus(entityName, version, newStatus, comment);
+        } finally {
+            invalidate(entityName);
+        }
+    }
+
+    @Override
+    public void removeEntity(String entityName) {
+        try {
+            metadata.removeEntity(entityName);
+        } finally {
+            invalidate(entityName);
+        }
+    }
+
+    @Override
+    public Map<MetadataRole, List<String>> getMappedRoles() {
+        return metadata.getMappedRoles();
+    }
+
+    /**
+     * Returns the number of cached entries
+     */
+    public synchronized int size() {
+        return getCache().size();
+    }
+
+    private synchronized Object get(Key key) {
+        Entry e = getCache().get(key);
+        if (e != null) {
+            if (ttlMillis > 0 && e.expires < System.currentTimeMillis()) {
+                getCache().remove(key);
+                return null;
+            }
+            return e.value;
+        }
+        return null;
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    private synchronized void put(Key key, Object value, long gen) {
+        if (gen == generation) {
+            getCache().put(key, new Entry(value, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE));
+        }
+    }
+
+    private BoundedCache<Key, Entry> getCache() {
+        if (cache == null) {
+            cache = new BoundedCache<>(maxEntries);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,122 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.test.DatabaseMetadata;
+
+public class CachingMetadataTest {
+
+    private final Map<String, Integer> loads = new HashMap<>();
+    private final List<String> invalidated = new ArrayList<>();
+    private CachingMetadata md;
+
+    private class CountingMetadata extends DatabaseMetadata {
+        @Override
+        public EntityMetadata getEntityMetadata(String entityName, String version) {
+            loads.merge(entityName + ":" + version, 1, Integer::sum);
+            return new EntityMetadata(entityName);
+        }
+
+        @Override
+        public EntityInfo getEntityInfo(String entityName) {
+            loads.merge(entityName, 1, Integer::sum);
+            return new EntityInfo(entityName);
+        }
+
+        @Override
+        public void setMetadataStatus(String entityName, String version, MetadataStatus newStatus, String comment) {
+        }
+    }
+
+    @Before
+    public void init() {
+        loads.clear();
+        invalidated.clear();
+        md = new CachingMetadata(new CountingMetadata(), 60000, 3);
+        md.addInvalidationListener(invalidated::add);
+    }
+
+    @Test
+    public void cachesEntityMetadataAndInfo() {
+        EntityMetadata a = md.getEntityMetadata("a", "1.0.0");
+        Assert.assertSame(a, md.getEntityMetadata("a", "1.0.0"));
+        Assert.assertNotSame(a, md.getEntityMetadata("a", null));
+        EntityInfo info = md.getEntityInfo("a");
+        Assert.assertSame(info, md.getEntityInfo("a"));
+        Assert.assertEquals(1, (int) loads.get("a:1.0.0"));
+        Assert.assertEquals(1, (int) loads.get("a:null"));
+        Assert.assertEquals(1, (int) loads.get("a"));
+        Assert.assertEquals(3, md.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        md.getEntityMetadata("a", null);
+        md.getEntityMetadata("b", null);
+        md.getEntityMetadata("c", null);
+        md.getEntityMetadata("a", null);
+        md.getEntityMetadata("d", null);
+        Assert.assertEquals(3, md.size());
+        md.getEntityMetadata("a", null);
+        Assert.assertEquals(1, (int) loads.get("a:null"));
+        md.getEntityMetadata("b", null);
+        Assert.assertEquals(2, (int) loads.get("b:null"));
+    }
+
+    @Test
+    public void expiresEntries() throws Exception {
+        md = new CachingMetadata(new CountingMetadata(), 1, 3);
+        md.getEntityMetadata("a", null);
+        Thread.sleep(10);
+        md.getEntityMetadata("a", null);
+        Assert.assertEquals(2, (int) loads.get("a:null"));
+    }
+
+    @Test
+    public void statusChangeInvalidates() {
+        md.getEntityMetadata("a", "1.0.0");
+        md.getEntityMetadata("b", "1.0.0");
+        md.setMetadataStatus("a", "1.0.0", MetadataStatus.DISABLED, null);
+        Assert.assertEquals(1, md.size());
+        Assert.assertEquals("a", invalidated.get(0));
+        md.getEntityMetadata("a", "1.0.0");
+        Assert.assertEquals(2, (int) loads.get("a:1.0.0"));
+    }
+
+    @Test
+    public void explicitInvalidation() {
+        md.getEntityMetadata("a", "1.0.0");
+        md.getEntityInfo("a");
+        md.invalidate("a");
+        Assert.assertEquals(0, md.size());
+        md.getEntityMetadata("a", "1.0.0");
+        md.invalidateAll();
+        Assert.assertEquals(0, md.size());
+        Assert.assertNull(invalidated.get(1));
+    }
+}
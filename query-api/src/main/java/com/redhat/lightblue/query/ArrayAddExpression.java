@@ -104,7 +104,7 @@ public class ArrayAddExpression extends ArrayUpdateExpression {
                 ObjectNode objArg = (ObjectNode) arg;
                 if (objArg.size() == 1) {
                     Map.Entry<String, JsonNode> item = objArg.fields().next();
-                    Path field = new Path(item.getKey());
+                    Path field = Path.valueOf(item.getKey());
                     JsonNode valueNode = item.getValue();
                     List<RValueExpression> rvalues = new ArrayList<>();
                     if (valueNode instanceof ArrayNode) {
@@ -97,7 +97,7 @@ public class ArrayContainsExpression extends ArrayComparisonExpression {
     public static ArrayContainsExpression fromJson(ObjectNode node) {
         JsonNode x = node.get("array");
         if (x != null) {
-            Path field = new Path(x.asText());
+            Path field = Path.valueOf(x.asText());
             x = node.get("contains");
             if (x != null) {
                 ContainsOperator op = ContainsOperator.fromString(x.asText());
@@ -74,7 +74,7 @@ public class ArrayMatchExpression extends ArrayComparisonExpression {
     public static ArrayMatchExpression fromJson(ObjectNode node) {
         JsonNode x = node.get("array");
         if (x != null) {
-            Path field = new Path(x.asText());
+            Path field = Path.valueOf(x.asText());
             x = node.get("elemMatch");
             if (x != null) {
                 return new ArrayMatchExpression(field, QueryExpression.fromJson(x));
@@ -40,7 +40,7 @@ public abstract class BasicProjection extends Projection {
             throw Error.get(QueryConstants.ERR_INVALID_PROJECTION, "field");
         }
 
-        Path path = getNonRelativePath(new Path(field));
+        Path path = getNonRelativePath(Path.valueOf(field));
 
         // Processing of optional elements. We decide on the type of
         // the final object based on what fields this object has
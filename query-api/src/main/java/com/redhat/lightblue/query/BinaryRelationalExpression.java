@@ -43,10 +43,10 @@ public abstract class BinaryRelationalExpression extends RelationalExpression {
                 if (op != null) {
                     x = node.get("field");
                     if (x != null) {
-                        Path field = new Path(x.asText());
+                        Path field = Path.valueOf(x.asText());
                         x = node.get("rfield");
                         if (x != null) {
-                            return new FieldComparisonExpression(field, op, new Path(x.asText()));
+                            return new FieldComparisonExpression(field, op, Path.valueOf(x.asText()));
                         } else {
                             x = node.get("rvalue");
                             if (x != null) {
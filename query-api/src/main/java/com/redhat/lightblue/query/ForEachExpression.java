@@ -98,7 +98,7 @@ public class ForEachExpression extends ArrayUpdateExpression {
                         if ("$update".equals(entry.getKey())) {
                             updateNode = entry.getValue();
                         } else {
-                            field = new Path(entry.getKey());
+                            field = Path.valueOf(entry.getKey());
                             queryNode = entry.getValue();
                         }
                     }
@@ -74,10 +74,10 @@ public class NaryFieldRelationalExpression extends NaryRelationalExpression {
                 if (op != null) {
                     x = node.get("field");
                     if (x != null) {
-                        Path field = new Path(x.asText());
+                        Path field = Path.valueOf(x.asText());
                         x = node.get("rfield");
                         if (x != null) {
-                            return new NaryFieldRelationalExpression(field, op, new Path(x.asText()));
+                            return new NaryFieldRelationalExpression(field, op, Path.valueOf(x.asText()));
                         }
                     }
                 }
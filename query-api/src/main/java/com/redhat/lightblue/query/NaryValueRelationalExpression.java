@@ -95,7 +95,7 @@ public class NaryValueRelationalExpression extends NaryRelationalExpression {
                 if (op != null) {
                     x = node.get("field");
                     if (x != null) {
-                        Path field = new Path(x.asText());
+                        Path field = Path.valueOf(x.asText());
                         x = node.get("values");
                         if (x instanceof ArrayNode) {
                             ArrayList<Value> values = new ArrayList<>(((ArrayNode) x).size());
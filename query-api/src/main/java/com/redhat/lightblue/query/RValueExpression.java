@@ -124,7 +124,7 @@ public class RValueExpression extends JsonObject {
             if (node.size() == 1) {
                 JsonNode path = node.get("$valueof");
                 if (path != null && path.isValueNode()) {
-                    return new RValueExpression(new Path(path.asText()));
+                    return new RValueExpression(Path.valueOf(path.asText()));
                 } else {
                     return new RValueExpression(new Value(node));
                 }
@@ -128,7 +128,7 @@ public class RegexMatchExpression extends RelationalExpression {
     public static RegexMatchExpression fromJson(ObjectNode node) {
         JsonNode x = node.get("field");
         if (x != null) {
-            Path field = new Path(x.asText());
+            Path field = Path.valueOf(x.asText());
             x = node.get("regex");
             if (x != null) {
                 String regex = x.asText();
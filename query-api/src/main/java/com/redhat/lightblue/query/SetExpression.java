@@ -107,7 +107,7 @@ public class SetExpression extends PrimitiveUpdateExpression {
                 List<FieldAndRValue> list = new ArrayList<>();
                 for (Iterator<Map.Entry<String, JsonNode>> itr = arg.fields(); itr.hasNext();) {
                     Map.Entry<String, JsonNode> entry = itr.next();
-                    Path field = new Path(entry.getKey());
+                    Path field = Path.valueOf(entry.getKey());
                     RValueExpression rvalue = RValueExpression.fromJson(entry.getValue());
                     list.add(new FieldAndRValue(field, rvalue));
                 }
@@ -68,7 +68,7 @@ public class SortKey extends Sort {
         }
         String fieldString = node.fieldNames().next();
         String dir = node.get(fieldString).asText();
-        Path field = new Path(fieldString);
+        Path field = Path.valueOf(fieldString);
         boolean desc;
         switch (dir) {
             case "$asc":
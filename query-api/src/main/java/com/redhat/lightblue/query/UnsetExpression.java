@@ -79,10 +79,10 @@ public class UnsetExpression extends PrimitiveUpdateExpression {
                 List<Path> fields = new ArrayList<>();
                 if (val instanceof ArrayNode) {
                     for (Iterator<JsonNode> itr = ((ArrayNode) val).elements(); itr.hasNext();) {
-                        fields.add(new Path(itr.next().asText()));
+                        fields.add(Path.valueOf(itr.next().asText()));
                     }
                 } else if (val.isValueNode()) {
-                    fields.add(new Path(val.asText()));
+                    fields.add(Path.valueOf(val.asText()));
                 }
                 return new UnsetExpression(fields);
             }
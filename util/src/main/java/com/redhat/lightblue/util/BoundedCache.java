@@ -0,0 +1,113 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * A thread safe map with a bounded number of entries. When a new entry
+ * exceeds the bound, the least recently used entry is evicted.
+ */
+public class BoundedCache<K, V> {
+
+    private final int maxEntries;
+    private final Map<K, V> entries;
+
+    /**
+     * @param maxEntries Maximum number of entries. Values less than 1 are
+     * treated as 1.
+     */
+    public BoundedCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > BoundedCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the value for the key, or null if there is none, and marks the
+     * entry as recently used
+     */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Returns the value for the key. If there is none, computes it and adds
+     * it to the cache. The value is computed without holding the lock, so
+     * concurrent callers may compute the same value more than once.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> fn) {
+        V value = get(key);
+        if (value == null) {
+            value = fn.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Adds or replaces the value for the key
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * Removes the entry for the key, and returns its value
+     */
+    public synchronized V remove(K key) {
+        return entries.remove(key);
+    }
+
+    /**
+     * Removes the entries matching the predicate
+     */
+    public synchronized void removeIf(BiPredicate<? super K, ? super V> predicate) {
+        for (Iterator<Map.Entry<K, V>> itr = entries.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry<K, V> e = itr.next();
+            if (predicate.test(e.getKey(), e.getValue())) {
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -21,12 +21,13 @@ package com.redhat.lightblue.util;
 import java.util.List;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.ListIterator;
 import java.util.LinkedList;
 import java.util.Iterator;
-import java.util.HashSet;
 
 /**
  * Compares two documents represented as an object tree, and builds an list of
@@ -69,6 +70,12 @@ import java.util.HashSet;
  * If new elements are added to an array, or existing elements are removed, the
  * addition and removal appear as diff, and any node that shifted during the
  * operation appears within a Move.
+ *
+ * If the caller is only interested in changes to certain fields, the
+ * comparison can be limited to those fields using
+ * compareNodes(node1,node2,fields). Then the subtrees that do not contain
+ * any of the fields are not compared, and subtrees whose structural hashes
+ * and contents are equal are skipped.
  */
 public abstract class DocComparator<BaseType, ValueType, ObjectType, ArrayType> {
 
@@ -381,10 +388,13 @@ public abstract class DocComparator<BaseType, ValueType, ObjectType, ArrayType>
         @Override
         public int hashCode() {
             if (hcode == null) {
+                // Use the value hash, so identities that are equal
+                // according to the comparator are hashed to the same
+                // bucket
                 int code = 0;
                 for (int i = 0; i < nodes.length; i++) {
                     if (nodes[i] != null) {
-                        code += nodes[i].hashCode();
+                        code += isValue(nodes[i]) ? valueHash(asValue(nodes[i])) : nodes[i].hashCode();
                     }
                 }
                 hcode = code;
@@ -427,6 +437,14 @@ public abstract class DocComparator<BaseType, ValueType, ObjectType, ArrayType>
 
     protected abstract boolean equals(ValueType v1, ValueType v2);
 
+    /**
+     * Returns a hash code for the value. Values that are equal according
+     * to equals(v1,v2) must have the same hash code.
+     */
+    protected int valueHash(ValueType value) {
+        return value.hashCode();
+    }
+
     protected abstract Iterator<Map.Entry<String, BaseType>> getFields(ObjectType o);
 
     protected abstract boolean hasField(ObjectType value, String field);
@@ -538,6 +556,215 @@ public abstract class DocComparator<BaseType, ValueType, ObjectType, ArrayType>
         return ret;
     }
 
+    /**
+     * Compares two documents, and returns the differences in the given
+     * fields only. The subtrees of the documents that don't contain any of
+     * the given fields are not compared. The fields themselves are compared
+     * recursively, so the returned difference contains all the changes under
+     * the given fields. Array indexes are given as '*' in the field names.
+     *
+     * The returned difference is not a complete edit script, and the number
+     * of changed and unchanged fields are computed only for the compared
+     * subtrees.
+     */
+    public Difference<BaseType> compareNodes(BaseType node1, BaseType node2, Collection<Path> fields)
+            throws InvalidArrayIdentity, DuplicateArrayIdentity {
+        FieldTree tree = new FieldTree();
+        for (Path field : fields) {
+            tree.add(field);
+        }
+        return compareFields(new MutablePath(), node1, new MutablePath(), node2, tree, new IdentityHashMap<>());
+    }
+
+    /**
+     * A tree of the fields of interest. A field is included in the tree if
+     * it is one of the fields of interest, or one of their ancestors.
+     */
+    private static final class FieldTree {
+        private final Map<String, FieldTree> children = new HashMap<>();
+        private boolean included;
+
+        void add(Path field) {
+            FieldTree t = this;
+            int n = field.numSegments();
+            for (int i = 0; i < n; i++) {
+                String name = field.head(i);
+                FieldTree child = t.children.get(name);
+                if (child == null) {
+                    t.children.put(name, child = new FieldTree());
+                }
+                t = child;
+            }
+            t.included = true;
+        }
+    }
+
+    private Difference<BaseType> compareFields(MutablePath field1,
+                                               BaseType node1,
+                                               MutablePath field2,
+                                               BaseType node2,
+                                               FieldTree tree,
+                                               Map<BaseType, Integer> hashes)
+            throws InvalidArrayIdentity, DuplicateArrayIdentity {
+        if (tree.included) {
+            if (node1 == node2
+                    || (structuralHash(node1, hashes) == structuralHash(node2, hashes) && sameNodes(node1, node2))) {
+                return new Difference<>(1);
+            }
+            return compareNodes(field1, node1, field2, node2);
+        }
+        if (node1 == node2) {
+            return new Difference<>(1);
+        }
+        if (isObject(node1) && isObject(node2)) {
+            ObjectType obj1 = asObject(node1);
+            ObjectType obj2 = asObject(node2);
+            Difference<BaseType> ret = new Difference<>();
+            for (Map.Entry<String, FieldTree> entry : tree.children.entrySet()) {
+                String fieldName = entry.getKey();
+                boolean has1 = hasField(obj1, fieldName);
+                boolean has2 = hasField(obj2, fieldName);
+                if (has1 || has2) {
+                    field1.push(fieldName);
+                    field2.push(fieldName);
+                    if (has1 && has2) {
+                        ret.add(compareFields(field1, getField(obj1, fieldName),
+                                field2, getField(obj2, fieldName), entry.getValue(), hashes));
+                    } else if (has1) {
+                        ret.add(new Removal(field1, getField(obj1, fieldName)));
+                    } else {
+                        ret.add(new Addition(field2, getField(obj2, fieldName)));
+                    }
+                    field2.pop();
+                    field1.pop();
+                }
+            }
+            return ret;
+        } else if (isArray(node1) && isArray(node2)) {
+            FieldTree elementTree = tree.children.get(Path.ANY);
+            if (elementTree == null) {
+                return new Difference<>();
+            }
+            IdentityExtractor ext = getArrayIdentityExtractor(field1);
+            if (ext == null) {
+                // Elements are associated by comparing them completely
+                return compareArraysNoId(field1, asArray(node1), field2, asArray(node2));
+            }
+            ArrayType arr1 = asArray(node1);
+            ArrayType arr2 = asArray(node2);
+            Difference<BaseType> ret = new Difference<>();
+            final Map<Object, Integer> identities1 = getIdentityMap(field1, arr1, ext);
+            final Map<Object, Integer> identities2 = getIdentityMap(field2, arr2, ext);
+            for (Map.Entry<Object, Integer> entry1 : identities1.entrySet()) {
+                int index1 = entry1.getValue();
+                field1.push(index1);
+                Integer index2 = identities2.get(entry1.getKey());
+                if (index2 == null) {
+                    ret.add(new Removal(field1, getElement(arr1, index1)));
+                } else {
+                    field2.push(index2);
+                    if (index2 != index1) {
+                        ret.add(new Move(field1, field2, getElement(arr1, index1)));
+                    }
+                    ret.add(compareFields(field1, getElement(arr1, index1),
+                            field2, getElement(arr2, index2), elementTree, hashes));
+                    field2.pop();
+                }
+                field1.pop();
+            }
+            for (Map.Entry<Object, Integer> entry2 : identities2.entrySet()) {
+                if (!identities1.containsKey(entry2.getKey())) {
+                    field2.push(entry2.getValue());
+                    ret.add(new Addition(field2, getElement(arr2, entry2.getValue())));
+                    field2.pop();
+                }
+            }
+            return ret;
+        } else {
+            // Not both containers, so compareNodes does not descend
+            return compareNodes(field1, node1, field2, node2);
+        }
+    }
+
+    /**
+     * Returns a hash code computed from the contents of the node. Nodes that
+     * are equal according to the comparator have the same hash code. The
+     * hash codes of container nodes are cached in the given map.
+     */
+    protected int structuralHash(BaseType node, Map<BaseType, Integer> hashes) {
+        if (isNull(node)) {
+            return 0;
+        } else if (isValue(node)) {
+            return valueHash(asValue(node));
+        }
+        Integer hash = hashes.get(node);
+        if (hash == null) {
+            int h;
+            if (isObject(node)) {
+                h = 0;
+                for (Iterator<Map.Entry<String, BaseType>> fields = getFields(asObject(node)); fields.hasNext();) {
+                    Map.Entry<String, BaseType> field = fields.next();
+                    h += field.getKey().hashCode() ^ structuralHash(field.getValue(), hashes);
+                }
+            } else if (isArray(node)) {
+                ArrayType arr = asArray(node);
+                int n = size(arr);
+                h = 1;
+                for (int i = 0; i < n; i++) {
+                    h = 31 * h + structuralHash(getElement(arr, i), hashes);
+                }
+            } else {
+                h = node.hashCode();
+            }
+            hashes.put(node, hash = h);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns true if comparing the two nodes would not result in any
+     * differences. This does not build a difference, and returns as soon as
+     * a difference is found.
+     */
+    protected boolean sameNodes(BaseType node1, BaseType node2) {
+        if (node1 == node2) {
+            return true;
+        } else if (isValue(node1) && isValue(node2)) {
+            return equals(asValue(node1), asValue(node2));
+        } else if (isArray(node1) && isArray(node2)) {
+            ArrayType arr1 = asArray(node1);
+            ArrayType arr2 = asArray(node2);
+            int n = size(arr1);
+            if (n != size(arr2)) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                if (!sameNodes(getElement(arr1, i), getElement(arr2, i))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (isObject(node1) && isObject(node2)) {
+            ObjectType obj1 = asObject(node1);
+            ObjectType obj2 = asObject(node2);
+            for (Iterator<Map.Entry<String, BaseType>> fields = getFields(obj1); fields.hasNext();) {
+                Map.Entry<String, BaseType> field = fields.next();
+                if (!hasField(obj2, field.getKey())
+                        || !sameNodes(field.getValue(), getField(obj2, field.getKey()))) {
+                    return false;
+                }
+            }
+            for (Iterator<Map.Entry<String, BaseType>> fields = getFields(obj2); fields.hasNext();) {
+                if (!hasField(obj1, fields.next().getKey())) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return isNull(node1) && isNull(node2);
+        }
+    }
+
     public IdentityExtractor getArrayIdentityExtractor(Path arrayField) {
         MutablePath p = new MutablePath();
         int n = arrayField.numSegments();
@@ -619,28 +846,6 @@ public abstract class DocComparator<BaseType, ValueType, ObjectType, ArrayType>
         return ret;
     }
 
-    private static class Pair {
-        private final int i1, i2;
-
-        public int hashCode() {
-            return i1 * 1001 + i2;
-        }
-
-        public boolean equals(Object o) {
-            try {
-                return ((Pair) o).i1 == i1
-                        && ((Pair) o).i2 == i2;
-            } catch (Exception e) {
-                return false;
-            }
-        }
-
-        public Pair(int i1, int i2) {
-            this.i1 = i1;
-            this.i2 = i2;
-        }
-    }
-
     /**
      * Computes difference between arrays by comparing every element recursively
      * and trying to find the closest match
@@ -652,61 +857,70 @@ public abstract class DocComparator<BaseType, ValueType, ObjectType, ArrayType>
             throws InvalidArrayIdentity, DuplicateArrayIdentity {
         Difference<BaseType> ret = new Difference<>();
         IndexAssoc assoc = new IndexAssoc(size(node1), size(node2));
-        HashSet<Pair> comparedPairs = new HashSet<>();
+
+        // Bucket the elements of node2 by their structural hashes, so
+        // exact matches can be found without comparing all pairs
+        Map<BaseType, Integer> hashes = new IdentityHashMap<>();
+        Map<Integer, List<Integer>> buckets = new HashMap<>();
+        for (assoc.start2(); assoc.hasNext2();) {
+            int index2 = assoc.next2();
+            int hash = structuralHash(getElement(node2, index2), hashes);
+            List<Integer> bucket = buckets.get(hash);
+            if (bucket == null) {
+                buckets.put(hash, bucket = new ArrayList<>(1));
+            }
+            bucket.add(index2);
+        }
 
         // First associate exact matches
-        // We loop through the unassociated elements of node1, and node2
-        // If the nodes are equal, we associate them
-        // if they are not, we note the distance between the two, so later
-        // we don't need to re-compare them
+        // We loop through the unassociated elements of node1. If there
+        // is an equal unassociated node in node2, we associate them. If
+        // not, we note the distance between node1 and all unassociated
+        // node2 elements, so later we don't need to re-compare them
         for (assoc.start1(); assoc.hasNext1();) {
             int index1 = assoc.next1();
             BaseType element1 = getElement(node1, index1);
-            field1.push(index1);
-
-            for (assoc.start2(); assoc.hasNext2();) {
-                int index2 = assoc.next2();
-                BaseType element2 = getElement(node2, index2);
-                field2.push(index2);
-
-                comparedPairs.add(new Pair(index1, index2));
+            Integer match = null;
+            List<Integer> bucket = buckets.get(structuralHash(element1, hashes));
+            if (bucket != null) {
+                for (Integer index2 : bucket) {
+                    if (assoc.isUnassociated2(index2) && sameNodes(element1, getElement(node2, index2))) {
+                        match = index2;
+                        break;
+                    }
+                }
+            }
+            if (match != null) {
+                assoc.associate(index1, match);
+            } else {
+                field1.push(index1);
+                for (assoc.start2(); assoc.hasNext2();) {
+                    int index2 = assoc.next2();
+                    BaseType element2 = getElement(node2, index2);
+                    field2.push(index2);
 
-                Difference diff = compareNodes(field1, element1, field2, element2);
-                if (diff.same()) {
-                    assoc.associate(index1, index2);
+                    Difference diff = compareNodes(field1, element1, field2, element2);
+                    if (diff.same()) {
+                        assoc.associate(index1, index2);
+                        field2.pop();
+                        break;
+                    } else {
+                        assoc.recordDistance(index1, index2, diff);
+                    }
                     field2.pop();
-                    break;
-                } else {
-                    assoc.recordDistance(index1, index2, diff);
                 }
-                field2.pop();
+                field1.pop();
             }
-            field1.pop();
         }
 
         // Here, we associated all exact matching nodes
-        // All remaining nodes need to be compared to each other
-        // First compare all node1 elements to node2 elements
+        // Associate the remaining node1 elements with the closest node2
+        // elements using the distances recorded above
         for (assoc.start1(); assoc.hasNext1();) {
             int index1 = assoc.next1();
             BaseType element1 = getElement(node1, index1);
             field1.push(index1);
 
-            for (assoc.start2(); assoc.hasNext2();) {
-                int index2 = assoc.next2();
-                BaseType element2 = getElement(node2, index2);
-                field2.push(index2);
-
-                Pair p = new Pair(index1, index2);
-                // Do we have a distance recorded for these nodes?
-                if (comparedPairs.contains(p)) {
-                    // No distance: compare the nodes
-                    Difference diff = compareNodes(field1, element1, field2, element2);
-                    assoc.recordDistance(index1, index2, diff);
-                    comparedPairs.add(p);
-                }
-                field2.pop();
-            }
             IxDiff ixdiff = assoc.getMin(index1);
             // If an object has changed more that 0.5 (more than half
             // of its fields are changed), then it is not a match
@@ -846,6 +1060,14 @@ public abstract class DocComparator<BaseType, ValueType, ObjectType, ArrayType>
             return last2 = ix2.get(itr2);
         }
 
+        /**
+         * Returns true if the given index of the second array is not
+         * associated yet
+         */
+        public boolean isUnassociated2(int index) {
+            return ix2.contains(index);
+        }
+
         public void remove2(int index) {
             int l2 = ix2.indexOf(index);
             if (l2 >= 0) {
@@ -19,6 +19,9 @@
 package com.redhat.lightblue.util;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.StringTokenizer;
 
 import org.slf4j.Logger;
@@ -134,6 +137,28 @@ public final class Error extends RuntimeException {
         return new Error(THREAD_CONTEXT.get(), errorCode, null);
     }
 
+    /**
+     * Returns a copy of the current thread context
+     */
+    public static List<String> getThreadContext() {
+        return new ArrayList<>(THREAD_CONTEXT.get());
+    }
+
+    /**
+     * Replaces the current thread context with the given context. Used
+     * to carry the error context of a thread to the tasks it runs on
+     * other threads.
+     */
+    public static void setThreadContext(Collection<String> context) {
+        if (context == null || context.isEmpty()) {
+            reset();
+        } else {
+            ArrayDeque<String> c = THREAD_CONTEXT.get();
+            c.clear();
+            c.addAll(context);
+        }
+    }
+
     /**
      * Resets the stack thread context
      */
@@ -132,6 +132,15 @@ public class JsonCompare extends DocComparator<JsonNode, ValueNode, ObjectNode,
         }
     }
 
+    @Override
+    protected int valueHash(ValueNode value) {
+        if (value.isNumber()) {
+            return value.asText().hashCode();
+        } else {
+            return value.hashCode();
+        }
+    }
+
     @Override
     protected Iterator<Map.Entry<String, JsonNode>> getFields(ObjectNode node) {
         return node.fields();
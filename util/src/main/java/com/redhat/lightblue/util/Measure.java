@@ -20,34 +20,72 @@ package com.redhat.lightblue.util;
 
 import java.util.Map;
 import java.util.HashMap;
-import java.util.ArrayList;
 
+import com.redhat.lightblue.util.metrics.Counter;
+import com.redhat.lightblue.util.metrics.MetricKey;
+import com.redhat.lightblue.util.metrics.MetricsRegistry;
+import com.redhat.lightblue.util.metrics.Timer;
+
+/**
+ * Measures the phases of an operation. Calls to begin(phase) and
+ * end(phase) can be nested. Durations are accumulated in this object
+ * so they can be written to the log with toString(), and if there is
+ * a metrics registry, they are also recorded to the timer of the
+ * entity/operation/phase, along with counts passed to count().
+ */
 public class Measure {
 
+    private final MetricsRegistry registry;
+    private final String entity;
+    private final String operation;
     private final Map<String, Stat> map = new HashMap<>();
 
-    private static class Stat {
+    private final class Stat {
+        private final String phase;
         private long total;
         private long numSamples;
-        private final ArrayList<Long> stack = new ArrayList<>(32);
+        private long[] stack = new long[4];
+        private int depth;
+        private Timer timer;
+        private Counter counter;
+
+        Stat(String phase) {
+            this.phase = phase;
+        }
 
         public void push(long l) {
-            stack.add(l);
+            if (depth == stack.length) {
+                long[] s = new long[depth * 2];
+                System.arraycopy(stack, 0, s, 0, depth);
+                stack = s;
+            }
+            stack[depth++] = l;
         }
 
         public void pop(long l) {
-            int n = stack.size();
-            if (n > 0) {
-                n--;
-                long entry = stack.get(n);
-                stack.remove(n);
-                next(l - entry);
+            if (depth > 0) {
+                next(l - stack[--depth]);
             }
         }
 
         public void next(long value) {
             total += value;
             numSamples++;
+            if (registry != null) {
+                if (timer == null) {
+                    timer = registry.timer(new MetricKey(entity, operation, phase));
+                }
+                timer.update(value);
+            }
+        }
+
+        public void count(long n) {
+            if (registry != null) {
+                if (counter == null) {
+                    counter = registry.counter(new MetricKey(entity, operation, phase));
+                }
+                counter.inc(n);
+            }
         }
 
         public long avg() {
@@ -59,25 +97,58 @@ public class Measure {
         }
     }
 
-    public void begin(String f) {
+    /**
+     * Constructs a measure that is not backed by a metrics registry
+     */
+    public Measure() {
+        this(null, null, null);
+    }
+
+    /**
+     * Constructs a measure that records to the given registry
+     *
+     * @param registry The metrics registry, can be null
+     * @param entity The entity name to record metrics under
+     * @param operation The operation name to record metrics under
+     */
+    public Measure(MetricsRegistry registry, String entity, String operation) {
+        this.registry = registry;
+        this.entity = entity;
+        this.operation = operation;
+    }
+
+    private Stat getStat(String f) {
         Stat s = map.get(f);
         if (s == null) {
-            map.put(f, s = new Stat());
+            map.put(f, s = new Stat(f));
         }
-        s.push(System.nanoTime());
+        return s;
+    }
+
+    public synchronized void begin(String f) {
+        getStat(f).push(System.nanoTime());
     }
 
-    public void end(String f) {
+    public synchronized void end(String f) {
         Stat s = map.get(f);
         if (s != null) {
             s.pop(System.nanoTime());
         }
     }
 
-    public String toString() {
+    /**
+     * Adds n to the counter of the given phase
+     */
+    public synchronized void count(String f, long n) {
+        getStat(f).count(n);
+    }
+
+    public synchronized String toString() {
         StringBuilder bld = new StringBuilder();
         for (Map.Entry<String, Stat> entry : map.entrySet()) {
-            bld.append(entry.getKey()).append(',').append(entry.getValue().toString()).append('\n');
+            if (entry.getValue().numSamples > 0) {
+                bld.append(entry.getKey()).append(',').append(entry.getValue().toString()).append('\n');
+            }
         }
         return bld.toString();
     }
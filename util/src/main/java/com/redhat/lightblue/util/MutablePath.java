@@ -81,7 +81,7 @@ public class MutablePath extends Path {
     @Override
     public Path immutableCopy() {
         Path p = new Path();
-        p.setData(new PathRep(getData()));
+        p.setData(getData().compactCopy());
         return p;
     }
 
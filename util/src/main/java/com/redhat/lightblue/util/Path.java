@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a path in a tree, of the form
@@ -50,6 +51,9 @@ import java.util.List;
  *
  * Implementation is optimized to be fast to toString and hashCode, and does not
  * occupy too much memory when a lot of paths are created from a common prefix.
+ * Prefixes and suffixes of immutable paths share the segments of the source
+ * path. Paths that are used repeatedly can be obtained from a pool of
+ * canonical instances using Path.valueOf(String) or Path.intern().
  *
  * $parent and $this keywords can be used to create relative paths.
  * <pre>
@@ -76,6 +80,13 @@ public class Path implements Comparable<Path>, Serializable {
     public static final Path EMPTY = new Path();
     public static final Path ANYPATH = new Path(ANY);
 
+    /**
+     * Maximum number of paths kept in the pool of canonical paths
+     */
+    private static final int POOL_LIMIT = 8192;
+
+    private static final ConcurrentHashMap<String, Path> POOL = new ConcurrentHashMap<>();
+
     private PathRep data;
 
     /**
@@ -89,7 +100,8 @@ public class Path implements Comparable<Path>, Serializable {
      * Constructs a copy of x
      */
     public Path(Path x) {
-        data = new PathRep(x.data);
+        // Immutable paths can share the representation
+        data = x instanceof MutablePath ? new PathRep(x.data) : x.data;
     }
 
     /**
@@ -113,9 +125,45 @@ public class Path implements Comparable<Path>, Serializable {
     }
 
     public Path(String x) {
-        this();
         List<String> s = parse(x);
-        data.append(s);
+        data = new PathRep(s.toArray(new String[s.size()]));
+    }
+
+    /**
+     * Returns the canonical immutable path for the given string. Paths
+     * returned from this method are shared, and their string value, hash
+     * code, and number of ANYs are computed once.
+     */
+    public static Path valueOf(String x) {
+        Path p = POOL.get(x);
+        if (p == null) {
+            p = pool(x, new Path(x));
+        }
+        return p;
+    }
+
+    /**
+     * Returns the canonical immutable instance of this path
+     */
+    public Path intern() {
+        String s = toString();
+        Path p = POOL.get(s);
+        if (p == null) {
+            p = pool(s, this instanceof MutablePath ? immutableCopy() : this);
+        }
+        return p;
+    }
+
+    private static Path pool(String key, Path p) {
+        p.hashCode();
+        p.nAnys();
+        if (POOL.size() < POOL_LIMIT) {
+            Path existing = POOL.putIfAbsent(key, p);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return p;
     }
 
     protected void setData(PathRep pr) {
@@ -226,13 +274,7 @@ public class Path implements Comparable<Path>, Serializable {
      * Returns the number of ANY elements in the path
      */
     public int nAnys() {
-        int n = 0;
-        for (Iterator<String> itr = data.iterator(); itr.hasNext();) {
-            if (ANY.equals(itr.next())) {
-                n++;
-            }
-        }
-        return n;
+        return data.nAnys();
     }
 
     @Override
@@ -245,7 +287,7 @@ public class Path implements Comparable<Path>, Serializable {
      * elements from the end (if x is negative), or selecting x elements from
      * the beginning (if x is positive). If the path is a mutable path, the
      * returned path is a mutable path. If the path is an immutable path, the
-     * returned path is an immutable path.
+     * returned path is an immutable path sharing the segments of this path.
      *
      * @param x number of elements to remove from end, or include from the
      * beginning
@@ -267,14 +309,16 @@ public class Path implements Comparable<Path>, Serializable {
      * Returns a new path that is a suffix of this path obtained by removing -x
      * elements from the beginning (if x is negative), or selecting x elements
      * from the end (if x is positive). If the path is a mutable path, the
-     * returned path is a mutable path.
+     * returned path is a mutable path. The returned path shares the segments
+     * of this path until it is modified.
      */
     public Path suffix(final int x) {
         Path p;
         if (this instanceof MutablePath) {
             p = new MutablePath((MutablePath) this);
         } else {
-            p = new Path(this);
+            p = new Path();
+            p.data = new PathRep(data);
         }
         int n = p.data.size();
         if (x >= 0) {
@@ -293,12 +337,11 @@ public class Path implements Comparable<Path>, Serializable {
      * @return true if it matches, else false
      */
     public boolean matches(Path pattern) {
-        if (data.size() == pattern.data.size()) {
-            Iterator<String> patternDataItr = pattern.data.iterator();
-            Iterator<String> dataItr = data.iterator();
-            while (patternDataItr.hasNext() && dataItr.hasNext()) {
-                String pat = patternDataItr.next();
-                String val = dataItr.next();
+        int n = data.size();
+        if (n == pattern.data.size()) {
+            for (int i = 0; i < n; i++) {
+                String pat = pattern.data.get(i);
+                String val = data.get(i);
                 if (!(val.equals(pat) || pat.equals(ANY))) {
                     return false;
                 }
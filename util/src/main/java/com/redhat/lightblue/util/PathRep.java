@@ -19,59 +19,118 @@
 package com.redhat.lightblue.util;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Internal representation of Path
+ *
+ * The segments are kept in a range of an array. Copies and prefixes share the
+ * array with the source, and the array is copied before it is modified if it
+ * is shared.
  */
 class PathRep implements Serializable, Comparable<PathRep> {
     private static final long serialVersionUID = 1l;
 
-    private final List<String> segments;
+    private static final String[] EMPTY = new String[0];
+
+    private String[] segments;
+    private int offset;
+    private int size;
+    /**
+     * If true, the segments array may be referenced by other PathReps, so it
+     * has to be copied before modification
+     */
+    private boolean shared;
 
     private transient String stringValue = null;
     private transient int hashValue = 0;
+    // Number of ANYs+1, 0 if not computed
+    private transient int nAnysValue = 0;
 
     /**
      * Creates an empty path
      */
     public PathRep() {
-        segments = new ArrayList<>(10);
+        segments = EMPTY;
+    }
+
+    /**
+     * Creates a path with the given segments. The array is owned by the new
+     * path.
+     */
+    public PathRep(String[] segments) {
+        this.segments = segments;
+        this.size = segments.length;
     }
 
     /**
-     * Copy ctor
+     * Copy ctor. The copy shares the segments with data.
      */
     public PathRep(PathRep data) {
-        segments = new ArrayList<>(data.segments);
+        segments = data.segments;
+        offset = data.offset;
+        size = data.size;
+        shared = data.shared = true;
         stringValue = data.stringValue;
         hashValue = data.hashValue;
+        nAnysValue = data.nAnysValue;
     }
 
     /**
-     * Prefix copy ctor
+     * Prefix copy ctor. The prefix shares the segments with data.
      *
      * @param data source
      * @param x If x>0, x elements from the beginning are copied. If x<0, -x
      * elements from the end are removed
      */
     public PathRep(PathRep data, int x) {
-        int k = data.segments.size();
-        segments = new ArrayList<>(k);
+        int k = data.size;
         int n;
         if (x >= 0) {
             n = k > x ? x : k;
         } else {
             n = k + x;
         }
-        for (String s : data.segments) {
-            if (n <= 0) {
-                break;
+        segments = data.segments;
+        offset = data.offset;
+        size = n < 0 ? 0 : n;
+        shared = data.shared = true;
+        if (size == k) {
+            stringValue = data.stringValue;
+            hashValue = data.hashValue;
+            nAnysValue = data.nAnysValue;
+        }
+    }
+
+    /**
+     * Returns a copy of this path that does not share its segments
+     */
+    public PathRep compactCopy() {
+        PathRep ret = new PathRep(Arrays.copyOfRange(segments, offset, offset + size));
+        ret.stringValue = stringValue;
+        ret.hashValue = hashValue;
+        ret.nAnysValue = nAnysValue;
+        return ret;
+    }
+
+    /**
+     * Makes sure the segments array is owned by this path, and has room for
+     * at least capacity segments
+     */
+    private void ensureWritable(int capacity) {
+        if (shared || offset + capacity > segments.length) {
+            int newCapacity = capacity;
+            if (!shared && segments.length > 0) {
+                newCapacity = Math.max(capacity, size * 2);
             }
-            segments.add(s);
-            n--;
+            String[] newSegments = new String[newCapacity];
+            System.arraycopy(segments, offset, newSegments, 0, size);
+            segments = newSegments;
+            offset = 0;
+            shared = false;
         }
     }
 
@@ -79,7 +138,10 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Clears the path
      */
     public void clear() {
-        segments.clear();
+        segments = EMPTY;
+        offset = 0;
+        size = 0;
+        shared = false;
         resetState();
     }
 
@@ -89,27 +151,42 @@ class PathRep implements Serializable, Comparable<PathRep> {
     public void resetState() {
         stringValue = null;
         hashValue = 0;
+        nAnysValue = 0;
     }
 
     /**
      * Returns the number of segments
      */
     public int size() {
-        return segments.size();
+        return size;
     }
 
     /**
      * Returns the element at the index
      */
     public String get(int index) {
-        return segments.get(index);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return segments[offset + index];
     }
 
     /**
      * Removes the element at index
      */
     public void remove(int index) {
-        segments.remove(index);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        if (index < size - 1) {
+            ensureWritable(size);
+            System.arraycopy(segments, offset + index + 1, segments, offset + index, size - index - 1);
+        }
+        // Removing the last element does not modify the array
+        size--;
+        if (!shared) {
+            segments[offset + size] = null;
+        }
         resetState();
     }
 
@@ -117,7 +194,11 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Sets the element at index
      */
     public void set(int index, String x) {
-        segments.set(index, x);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        ensureWritable(size);
+        segments[offset + index] = x;
         resetState();
     }
 
@@ -125,22 +206,69 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Returns an iterator over segments
      */
     public Iterator<String> iterator() {
-        return segments.iterator();
+        return new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return segments[offset + next++];
+            }
+        };
+    }
+
+    /**
+     * Returns the number of '*' segments
+     */
+    public int nAnys() {
+        if (nAnysValue == 0) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (Path.ANY.equals(segments[offset + i])) {
+                    n++;
+                }
+            }
+            nAnysValue = n + 1;
+        }
+        return nAnysValue - 1;
     }
 
     @Override
     public int hashCode() {
         if (hashValue == 0) {
-            hashValue = segments.hashCode();
+            int h = 1;
+            for (int i = 0; i < size; i++) {
+                h = 31 * h + segments[offset + i].hashCode();
+            }
+            hashValue = h;
         }
         return hashValue;
     }
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (o instanceof PathRep) {
             PathRep r = (PathRep) o;
-            return r.segments.equals(segments);
+            if (r.size != size
+                    || (hashValue != 0 && r.hashValue != 0 && hashValue != r.hashValue)) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!segments[offset + i].equals(r.segments[r.offset + i])) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -150,22 +278,14 @@ class PathRep implements Serializable, Comparable<PathRep> {
      */
     public void shiftLeft(final int from) {
         if (from > 0) {
-            int n = segments.size();
-            if (from >= n) {
-                segments.clear();
+            if (from >= size) {
+                clear();
             } else {
-                int iFrom = from;
-                int k = n - iFrom;
-                int to = 0;
-                for (int i = 0; i < k; i++) {
-                    segments.set(to++, segments.get(iFrom++));
-                }
-                k = n - k;
-                for (int i = 0; i < k; i++) {
-                    segments.remove(--n);
-                }
+                // Only the range changes, the array is not modified
+                offset += from;
+                size -= from;
+                resetState();
             }
-            resetState();
         }
     }
 
@@ -173,26 +293,36 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Appends p to the end of this
      */
     public void append(PathRep p) {
-        append(p.segments);
-        resetState();
+        if (p.size > 0) {
+            ensureWritable(size + p.size);
+            System.arraycopy(p.segments, p.offset, segments, offset + size, p.size);
+            size += p.size;
+            resetState();
+        }
     }
 
     /**
      * Appends the string segments to the end of this
      */
     public void append(List<String> x) {
-        segments.addAll(x);
-        resetState();
+        int n = x.size();
+        if (n > 0) {
+            ensureWritable(size + n);
+            for (String s : x) {
+                segments[offset + size++] = s;
+            }
+            resetState();
+        }
     }
 
     @Override
     public int compareTo(PathRep x) {
-        int tn = segments.size();
-        int xn = x.segments.size();
+        int tn = size;
+        int xn = x.size;
         int n = tn > xn ? xn : tn;
         int index = 0;
         while (index < n) {
-            int cmp = segments.get(index).compareTo(x.segments.get(index));
+            int cmp = segments[offset + index].compareTo(x.segments[x.offset + index]);
             if (cmp != 0) {
                 return cmp;
             }
@@ -204,15 +334,12 @@ class PathRep implements Serializable, Comparable<PathRep> {
     @Override
     public String toString() {
         if (stringValue == null) {
-            StringBuilder buf = new StringBuilder(segments.size() * 8);
-            boolean first = true;
-            for (String x : segments) {
-                if (first) {
-                    first = false;
-                } else {
+            StringBuilder buf = new StringBuilder(size * 8);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
                     buf.append('.');
                 }
-                buf.append(x);
+                buf.append(segments[offset + i]);
             }
             stringValue = buf.toString();
         }
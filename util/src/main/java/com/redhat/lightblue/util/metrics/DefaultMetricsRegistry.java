@@ -0,0 +1,87 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The default in-process metrics registry. Metrics are kept in memory
+ * for the lifetime of the registry, and can be exported using a
+ * MetricsExporter.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+
+    private final Map<MetricKey, AdderCounter> counters = new ConcurrentHashMap<>();
+    private final Map<MetricKey, BucketHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<MetricKey, BucketHistogram> timers = new ConcurrentHashMap<>();
+    private final Map<MetricKey, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private static final class AdderCounter implements Counter {
+        private final LongAdder value = new LongAdder();
+
+        @Override
+        public void inc(long n) {
+            value.add(n);
+        }
+
+        @Override
+        public long getCount() {
+            return value.sum();
+        }
+    }
+
+    @Override
+    public Counter counter(MetricKey key) {
+        return counters.computeIfAbsent(key, k -> new AdderCounter());
+    }
+
+    @Override
+    public Histogram histogram(MetricKey key) {
+        return histograms.computeIfAbsent(key, k -> new BucketHistogram());
+    }
+
+    @Override
+    public Timer timer(MetricKey key) {
+        return timers.computeIfAbsent(key, k -> new BucketHistogram());
+    }
+
+    @Override
+    public void gauge(MetricKey key, LongSupplier value) {
+        gauges.put(key, value);
+    }
+
+    @Override
+    public void export(MetricsExporter exporter) {
+        for (Map.Entry<MetricKey, AdderCounter> entry : counters.entrySet()) {
+            exporter.counter(entry.getKey(), entry.getValue().getCount());
+        }
+        for (Map.Entry<MetricKey, BucketHistogram> entry : histograms.entrySet()) {
+            exporter.histogram(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        for (Map.Entry<MetricKey, BucketHistogram> entry : timers.entrySet()) {
+            exporter.timer(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        for (Map.Entry<MetricKey, LongSupplier> entry : gauges.entrySet()) {
+            exporter.gauge(entry.getKey(), entry.getValue().getAsLong());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Exports metrics as a JSON document of the form:
+ * <pre>
+ *  {
+ *    "counters": { "entity.operation.phase": count, ... },
+ *    "histograms": { "entity.operation.phase": { "count":..., "min":..., "mean":..., "p50":..., "p90":..., "p99":..., "max":... }, ... },
+ *    "timers": { ... same as histograms, values in nanoseconds },
+ *    "gauges": { "entity.operation.phase": value, ... }
+ *  }
+ * </pre>
+ */
+public class JsonMetricsExporter implements MetricsExporter {
+
+    private final ObjectNode counters;
+    private final ObjectNode histograms;
+    private final ObjectNode timers;
+    private final ObjectNode gauges;
+    private final ObjectNode root;
+
+    public JsonMetricsExporter(JsonNodeFactory factory) {
+        root = factory.objectNode();
+        counters = root.putObject("counters");
+        histograms = root.putObject("histograms");
+        timers = root.putObject("timers");
+        gauges = root.putObject("gauges");
+    }
+
+    public JsonMetricsExporter() {
+        this(JsonNodeFactory.instance);
+    }
+
+    /**
+     * Exports the registry and returns the resulting document
+     */
+    public static JsonNode toJson(MetricsRegistry registry) {
+        JsonMetricsExporter exporter = new JsonMetricsExporter();
+        registry.export(exporter);
+        return exporter.getRoot();
+    }
+
+    public JsonNode getRoot() {
+        return root;
+    }
+
+    @Override
+    public void counter(MetricKey key, long count) {
+        counters.put(key.toString(), count);
+    }
+
+    @Override
+    public void histogram(MetricKey key, Snapshot snapshot) {
+        write(histograms.putObject(key.toString()), snapshot);
+    }
+
+    @Override
+    public void timer(MetricKey key, Snapshot snapshot) {
+        write(timers.putObject(key.toString()), snapshot);
+    }
+
+    @Override
+    public void gauge(MetricKey key, long value) {
+        gauges.put(key.toString(), value);
+    }
+
+    private static void write(ObjectNode node, Snapshot snapshot) {
+        node.put("count", snapshot.getCount());
+        node.put("min", snapshot.getMin());
+        node.put("mean", snapshot.getMean());
+        node.put("p50", snapshot.getValue(0.5));
+        node.put("p90", snapshot.getValue(0.9));
+        node.put("p99", snapshot.getValue(0.99));
+        node.put("max", snapshot.getMax());
+    }
+}
@@ -0,0 +1,90 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util.metrics;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Identifies a metric by entity, operation, and phase. Entity and
+ * operation can be null for metrics that are not specific to an
+ * entity or an operation.
+ */
+public final class MetricKey implements Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private final String entity;
+    private final String operation;
+    private final String phase;
+    private final int hash;
+
+    public MetricKey(String entity, String operation, String phase) {
+        this.entity = entity;
+        this.operation = operation;
+        this.phase = phase;
+        this.hash = Objects.hash(entity, operation, phase);
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof MetricKey) {
+            MetricKey k = (MetricKey) o;
+            return hash == k.hash
+                    && Objects.equals(entity, k.entity)
+                    && Objects.equals(operation, k.operation)
+                    && Objects.equals(phase, k.phase);
+        }
+        return false;
+    }
+
+    /**
+     * Returns entity.operation.phase, omitting the null components
+     */
+    @Override
+    public String toString() {
+        StringBuilder bld = new StringBuilder();
+        for (String s : new String[]{entity, operation, phase}) {
+            if (s != null) {
+                if (bld.length() > 0) {
+                    bld.append('.');
+                }
+                bld.append(s);
+            }
+        }
+        return bld.toString();
+    }
+}
@@ -0,0 +1,38 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util.metrics;
+
+/**
+ * Receives the metrics of a registry when the registry is exported
+ */
+public interface MetricsExporter {
+
+    void counter(MetricKey key, long count);
+
+    void histogram(MetricKey key, Snapshot snapshot);
+
+    void timer(MetricKey key, Snapshot snapshot);
+
+    /**
+     * Receives the current value of a gauge. Exporters that do not
+     * support gauges ignore it.
+     */
+    default void gauge(MetricKey key, long value) {
+    }
+}
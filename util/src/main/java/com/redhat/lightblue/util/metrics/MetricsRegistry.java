@@ -0,0 +1,49 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics SPI. A registry creates and keeps the metrics, and
+ * exports them on demand. The same metric instance is returned for
+ * the same key, so callers can keep references to metrics instead of
+ * looking them up every time.
+ */
+public interface MetricsRegistry {
+
+    Counter counter(MetricKey key);
+
+    Histogram histogram(MetricKey key);
+
+    Timer timer(MetricKey key);
+
+    /**
+     * Registers a gauge whose value is read from the supplier when the
+     * registry is exported. Registering a gauge with an existing key
+     * replaces it. Registries that do not support gauges ignore it.
+     */
+    default void gauge(MetricKey key, LongSupplier value) {
+    }
+
+    /**
+     * Passes all metrics to the exporter
+     */
+    void export(MetricsExporter exporter);
+}
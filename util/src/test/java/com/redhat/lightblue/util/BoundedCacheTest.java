@@ -0,0 +1,61 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void evictionTest() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        Assert.assertEquals(1, (int) cache.get("a"));
+        cache.put("c", 3);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(1, (int) cache.get("a"));
+        Assert.assertEquals(3, (int) cache.get("c"));
+    }
+
+    @Test
+    public void computeIfAbsentTest() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(4);
+        Assert.assertEquals(1, (int) cache.computeIfAbsent("a", k -> 1));
+        Assert.assertEquals(1, (int) cache.computeIfAbsent("a", k -> 2));
+        Assert.assertNull(cache.computeIfAbsent("b", k -> null));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void removeTest() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(4);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        Assert.assertEquals(1, (int) cache.remove("a"));
+        cache.removeIf((k, v) -> v == 2);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(3, (int) cache.get("c"));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+}
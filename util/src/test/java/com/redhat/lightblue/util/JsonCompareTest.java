@@ -18,6 +18,7 @@
  */
 package com.redhat.lightblue.util;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -27,6 +28,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class JsonCompareTest {
 
@@ -211,6 +213,41 @@ public class JsonCompareTest {
 
     }
 
+    @Test
+    public void testFieldComparison() throws Exception {
+        JsonCompare cmp = new JsonCompare();
+        cmp.addArrayIdentity(new Path("d"), new Path("id"));
+        JsonNode doc1 = json("{'a':1,'b':{'x':1,'y':2},'d':[ {'id':1,'q':'1','w':'2'}, {'id':2,'q':'3','w':'4'},{'id':3,'q':'5','w':'6'}]}");
+        JsonNode doc2 = json("{'a':2,'b':{'x':1,'y':3},'d':[ {'id':2,'q':'3','w':'5'}, {'id':1,'q':'0','w':'2'},{'id':3,'q':'5','w':'6'}]}");
+        List<Path> fields = new ArrayList<>();
+        fields.add(new Path("b.x"));
+        fields.add(new Path("d.*.w"));
+        JsonCompare.Difference diff = cmp.compareNodes(doc1, doc2, fields);
+        System.out.println(diff);
+        Assert.assertEquals(3, diff.getDelta().size());
+        Assert.assertTrue(hasDelta(diff.getDelta(), JsonCompare.Modification.class, "d.1.w", "d.0.w"));
+        Assert.assertTrue(hasDelta(diff.getDelta(), JsonCompare.Move.class, "d.0", "d.1"));
+        Assert.assertTrue(hasDelta(diff.getDelta(), JsonCompare.Move.class, "d.1", "d.0"));
+
+        fields.clear();
+        fields.add(new Path("b"));
+        diff = cmp.compareNodes(doc1, doc2, fields);
+        Assert.assertEquals(1, diff.getDelta().size());
+        Assert.assertTrue(hasDelta(diff.getDelta(), JsonCompare.Modification.class, "b.y", "b.y"));
+    }
+
+    @Test
+    public void testArrayIdentityNumericTypes() throws Exception {
+        JsonCompare cmp = new JsonCompare();
+        cmp.addArrayIdentity(new Path("d"), new Path("id"));
+        JsonNode doc1 = json("{'d':[ {'id':1,'q':'1'}]}");
+        JsonNode doc2 = json("{'d':[ {'id':1,'q':'2'}]}");
+        ((ObjectNode) doc2.get("d").get(0)).put("id", new BigDecimal(1));
+        JsonCompare.Difference diff = cmp.compareNodes(doc1, doc2);
+        Assert.assertEquals(1, diff.getDelta().size());
+        Assert.assertTrue(hasDelta(diff.getDelta(), JsonCompare.Modification.class, "d.0.q", "d.0.q"));
+    }
+
     /**
      * Returns if the given type delta exists, with given fields. Any field can
      * be null
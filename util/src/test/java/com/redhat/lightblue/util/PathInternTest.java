@@ -0,0 +1,44 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PathInternTest {
+
+    @Test
+    public void valueOfReturnsCanonicalPath() {
+        Path p = Path.valueOf("a.*.b.*");
+        Assert.assertSame(p, Path.valueOf("a.*.b.*"));
+        Assert.assertEquals(new Path("a.*.b.*"), p);
+        Assert.assertEquals(2, p.nAnys());
+    }
+
+    @Test
+    public void internMutablePath() {
+        MutablePath mp = new MutablePath("x.y");
+        mp.push("z");
+        Path p = mp.intern();
+        Assert.assertFalse(p instanceof MutablePath);
+        Assert.assertSame(p, Path.valueOf("x.y.z"));
+        mp.pop();
+        Assert.assertEquals("x.y.z", p.toString());
+    }
+}
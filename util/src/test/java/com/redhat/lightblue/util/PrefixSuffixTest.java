@@ -68,4 +68,23 @@ public class PrefixSuffixTest {
         Assert.assertEquals("", p.suffix(-5).toString());
         Assert.assertEquals("", p.suffix(-6).toString());
     }
+
+    @Test
+    public void modifyPrefixSuffixCopies() {
+        Path p = new Path("zero.one.two.three.four");
+        MutablePath pfx = p.prefix(2).mutableCopy();
+        pfx.push("x");
+        MutablePath sfx = p.suffix(2).mutableCopy();
+        sfx.set(0, "y");
+        MutablePath mp = new MutablePath(p);
+        Path mpfx = mp.prefix(-1);
+        mp.setLast("z");
+        Assert.assertEquals("zero.one.x", pfx.toString());
+        Assert.assertEquals("y.four", sfx.toString());
+        Assert.assertEquals("zero.one.two.three.z", mp.toString());
+        Assert.assertEquals("zero.one.two.three", mpfx.toString());
+        Assert.assertEquals("zero.one.two.three.four", p.toString());
+        Assert.assertEquals(new Path("zero.one"), p.prefix(2));
+        Assert.assertEquals(new Path("zero.one").hashCode(), p.prefix(2).hashCode());
+    }
 }
@@ -0,0 +1,105 @@
+ /*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.util.Measure;
+
+public class DefaultMetricsRegistryTest {
+
+    @Test
+    public void bucketBoundsTest() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 100, 1000, 123456789L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long v : values) {
+            int index = BucketHistogram.bucketIndex(v);
+            Assert.assertTrue(index >= 0 && index < BucketHistogram.NUM_BUCKETS);
+            long upper = BucketHistogram.bucketUpperBound(index);
+            Assert.assertTrue(v + " " + upper, upper >= v);
+            // Relative error is bounded by 1/16
+            Assert.assertTrue(v + " " + upper, upper - v <= Math.max(0, v / 16));
+            if (index > 0) {
+                Assert.assertTrue(BucketHistogram.bucketUpperBound(index - 1) < v);
+            }
+        }
+    }
+
+    @Test
+    public void percentileTest() {
+        Histogram h = new DefaultMetricsRegistry().histogram(new MetricKey("e", "find", "x"));
+        for (int i = 1; i <= 1000; i++) {
+            h.update(i);
+        }
+        Snapshot s = h.getSnapshot();
+        Assert.assertEquals(1000, s.getCount());
+        Assert.assertEquals(1, s.getMin());
+        Assert.assertEquals(1000, s.getMax());
+        Assert.assertEquals(500.5, s.getMean(), 0.001);
+        Assert.assertEquals(500, s.getValue(0.5), 500 / 16);
+        Assert.assertEquals(990, s.getValue(0.99), 990 / 16);
+        Assert.assertEquals(1000, s.getValue(1));
+        Assert.assertEquals(1, s.getValue(0));
+    }
+
+    @Test
+    public void sameMetricForSameKeyTest() {
+        MetricsRegistry registry = new DefaultMetricsRegistry();
+        Assert.assertSame(registry.timer(new MetricKey("e", "find", "x")), registry.timer(new MetricKey("e", "find", "x")));
+        Assert.assertNotSame(registry.timer(new MetricKey("e", "find", "x")), registry.timer(new MetricKey("f", "find", "x")));
+        registry.counter(new MetricKey("e", null, "c")).inc();
+        registry.counter(new MetricKey("e", null, "c")).inc(2);
+        Assert.assertEquals(3, registry.counter(new MetricKey("e", null, "c")).getCount());
+    }
+
+    @Test
+    public void measureTest() {
+        MetricsRegistry registry = new DefaultMetricsRegistry();
+        Measure m = new Measure(registry, "e", "find");
+        m.begin("outer");
+        m.begin("inner");
+        m.end("inner");
+        m.begin("inner");
+        m.end("inner");
+        m.end("outer");
+        m.end("unknown");
+        m.count("docs", 5);
+
+        Assert.assertEquals(2, registry.timer(new MetricKey("e", "find", "inner")).getSnapshot().getCount());
+        Assert.assertEquals(1, registry.timer(new MetricKey("e", "find", "outer")).getSnapshot().getCount());
+        Assert.assertEquals(5, registry.counter(new MetricKey("e", "find", "docs")).getCount());
+
+        JsonNode json = JsonMetricsExporter.toJson(registry);
+        Assert.assertEquals(5, json.get("counters").get("e.find.docs").asLong());
+        Assert.assertEquals(2, json.get("timers").get("e.find.inner").get("count").asLong());
+        Assert.assertNotNull(json.get("timers").get("e.find.outer").get("p99"));
+    }
+
+    @Test
+    public void gaugeTest() {
+        MetricsRegistry registry = new DefaultMetricsRegistry();
+        long[] value = {1};
+        registry.gauge(new MetricKey(null, "pool", "size"), () -> value[0]);
+        Assert.assertEquals(1, JsonMetricsExporter.toJson(registry).get("gauges").get("pool.size").asLong());
+        value[0] = 7;
+        Assert.assertEquals(7, JsonMetricsExporter.toJson(registry).get("gauges").get("pool.size").asLong());
+    }
+}